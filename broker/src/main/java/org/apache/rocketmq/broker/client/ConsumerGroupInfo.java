@@ -43,6 +43,7 @@ public class ConsumerGroupInfo {
     private volatile MessageModel messageModel;
     private volatile ConsumeFromWhere consumeFromWhere;
     private volatile long lastUpdateTimestamp = System.currentTimeMillis();
+    private volatile long membershipVersion = 0;
 
     public ConsumerGroupInfo(String groupName, ConsumeType consumeType, MessageModel messageModel,
         ConsumeFromWhere consumeFromWhere) {
@@ -238,6 +239,14 @@ public class ConsumerGroupInfo {
         this.lastUpdateTimestamp = lastUpdateTimestamp;
     }
 
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    public void setMembershipVersion(long membershipVersion) {
+        this.membershipVersion = membershipVersion;
+    }
+
     public ConsumeFromWhere getConsumeFromWhere() {
         return consumeFromWhere;
     }
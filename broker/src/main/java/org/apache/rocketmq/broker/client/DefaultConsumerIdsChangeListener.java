@@ -42,9 +42,10 @@ public class DefaultConsumerIdsChangeListener implements ConsumerIdsChangeListen
                     return;
                 }
                 List<Channel> channels = (List<Channel>) args[0];
+                Long version = args.length > 1 ? (Long) args[1] : null;
                 if (channels != null && brokerController.getBrokerConfig().isNotifyConsumerIdsChangedEnable()) {
                     for (Channel chl : channels) {
-                        this.brokerController.getBroker2Client().notifyConsumerIdsChanged(chl, group);
+                        this.brokerController.getBroker2Client().notifyConsumerIdsChanged(chl, group, version);
                     }
                 }
                 break;
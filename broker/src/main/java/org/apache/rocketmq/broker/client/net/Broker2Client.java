@@ -17,6 +17,8 @@
 package org.apache.rocketmq.broker.client.net;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ClientChannelInfo;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
@@ -75,6 +77,33 @@ public class Broker2Client {
         }
     }
 
+    /**
+     * Write check requests to the channel together, and flush once.
+     */
+    public void checkProducerTransactionState(
+        final String group,
+        final Channel channel,
+        final List<CheckTransactionStateRequestHeader> requestHeaders,
+        final List<MessageExt> messageExts) throws Exception {
+        for (int i = 0; i < requestHeaders.size(); i++) {
+            final MessageExt messageExt = messageExts.get(i);
+            RemotingCommand request =
+                RemotingCommand.createRequestCommand(RequestCode.CHECK_TRANSACTION_STATE, requestHeaders.get(i));
+            request.setBody(MessageDecoder.encode(messageExt, false));
+            request.markOnewayRPC();
+            channel.write(request).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        log.error("Check transaction failed because invoke producer exception. group={}, msgId={}, error={}",
+                            group, messageExt.getMsgId(), String.valueOf(future.cause()));
+                    }
+                }
+            });
+        }
+        channel.flush();
+    }
+
     public RemotingCommand callClient(final Channel channel,
                                       final RemotingCommand request
     ) throws RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
@@ -84,6 +113,13 @@ public class Broker2Client {
     public void notifyConsumerIdsChanged(
         final Channel channel,
         final String consumerGroup) {
+        this.notifyConsumerIdsChanged(channel, consumerGroup, null);
+    }
+
+    public void notifyConsumerIdsChanged(
+        final Channel channel,
+        final String consumerGroup,
+        final Long membershipVersion) {
         if (null == consumerGroup) {
             log.error("notifyConsumerIdsChanged consumerGroup is null");
             return;
@@ -91,6 +127,7 @@ public class Broker2Client {
 
         NotifyConsumerIdsChangedRequestHeader requestHeader = new NotifyConsumerIdsChangedRequestHeader();
         requestHeader.setConsumerGroup(consumerGroup);
+        requestHeader.setMembershipVersion(membershipVersion);
         RemotingCommand request =
             RemotingCommand.createRequestCommand(RequestCode.NOTIFY_CONSUMER_IDS_CHANGED, requestHeader);
 
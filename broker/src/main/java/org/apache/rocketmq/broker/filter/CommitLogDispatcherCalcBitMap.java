@@ -23,11 +23,11 @@ import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.filter.util.BitsArray;
+import org.apache.rocketmq.filter.util.BloomFilter;
 import org.apache.rocketmq.store.CommitLogDispatcher;
 import org.apache.rocketmq.store.DispatchRequest;
 
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
 
 /**
  * Calculate bit map of filter.
@@ -52,48 +52,36 @@ public class CommitLogDispatcherCalcBitMap implements CommitLogDispatcher {
 
         try {
 
-            Collection<ConsumerFilterData> filterDatas = consumerFilterManager.get(request.getTopic());
+            ConsumerFilterPlan filterPlan = consumerFilterManager.getFilterPlan(request.getTopic());
 
-            if (filterDatas == null || filterDatas.isEmpty()) {
+            if (filterPlan == null) {
                 return;
             }
 
-            Iterator<ConsumerFilterData> iterator = filterDatas.iterator();
+            BloomFilter bloomFilter = this.consumerFilterManager.getBloomFilter();
             BitsArray filterBitMap = BitsArray.create(
-                this.consumerFilterManager.getBloomFilter().getM()
+                bloomFilter.getM()
             );
 
             long startTime = System.currentTimeMillis();
-            while (iterator.hasNext()) {
-                ConsumerFilterData filterData = iterator.next();
 
-                if (filterData.getCompiledExpression() == null) {
-                    log.error("[BUG] Consumer in filter manager has no compiled expression! {}", filterData);
-                    continue;
-                }
-
-                if (filterData.getBloomFilterData() == null) {
-                    log.error("[BUG] Consumer in filter manager has no bloom data! {}", filterData);
-                    continue;
-                }
-
-                Object ret = null;
-                try {
-                    MessageEvaluationContext context = new MessageEvaluationContext(request.getPropertiesMap());
+            // evaluate expressions of all consumers together, the shared ones only once.
+            List<ConsumerFilterData> matched = filterPlan.evaluate(new MessageEvaluationContext(request.getPropertiesMap()));
 
-                    ret = filterData.getCompiledExpression().evaluate(context);
-                } catch (Throwable e) {
-                    log.error("Calc filter bit map error!commitLogOffset={}, consumer={}, {}", request.getCommitLogOffset(), filterData, e);
-                }
-
-                log.debug("Result of Calc bit map:ret={}, data={}, props={}, offset={}", ret, filterData, request.getPropertiesMap(), request.getCommitLogOffset());
+            log.debug("Result of Calc bit map:matched={}, props={}, offset={}", matched, request.getPropertiesMap(), request.getCommitLogOffset());
 
-                // eval true
-                if (ret != null && ret instanceof Boolean && (Boolean) ret) {
-                    consumerFilterManager.getBloomFilter().hashTo(
+            for (ConsumerFilterData filterData : matched) {
+                if (bloomFilter.isValid(filterData.getBloomFilterData())) {
+                    bloomFilter.hashTo(
                         filterData.getBloomFilterData(),
                         filterBitMap
                     );
+                } else {
+                    // bloom filter is resizing, data of consumer is not regenerated yet.
+                    bloomFilter.hashTo(
+                        ConsumerFilterManager.bloomKey(filterData.getConsumerGroup(), filterData.getTopic()),
+                        filterBitMap
+                    );
                 }
             }
 
@@ -102,7 +90,8 @@ public class CommitLogDispatcherCalcBitMap implements CommitLogDispatcher {
             long elapsedTime = UtilAll.computeElapsedTimeMilliseconds(startTime);
             // 1ms
             if (elapsedTime >= 1) {
-                log.warn("Spend {} ms to calc bit map, consumerNum={}, topic={}", elapsedTime, filterDatas.size(), request.getTopic());
+                log.warn("Spend {} ms to calc bit map, consumerNum={}, expressionNum={}, topic={}", elapsedTime,
+                    filterPlan.getConsumerNum(), filterPlan.getEntryNum(), request.getTopic());
             }
         } catch (Throwable e) {
             log.error("Calc bit map error! topic={}, offset={}, queueId={}, {}", request.getTopic(), request.getCommitLogOffset(), request.getQueueId(), e);
@@ -18,6 +18,7 @@
 package org.apache.rocketmq.broker.filter;
 
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.BrokerPathConfigHelper;
 import org.apache.rocketmq.common.ConfigManager;
@@ -46,11 +47,20 @@ public class ConsumerFilterManager extends ConfigManager {
 
     private static final long MS_24_HOUR = 24 * 3600 * 1000;
 
+    /**
+     * Min num of messages not matched to estimate the false positive rate of bloom filter.
+     */
+    private static final long MIN_SAMPLE_NUM_TO_ADJUST = 1000;
+
     private ConcurrentMap<String/*Topic*/, FilterDataMapByTopic>
         filterDataByTopic = new ConcurrentHashMap<String/*Topic*/, FilterDataMapByTopic>(256);
 
+    // expected consumer num of current bloom filter, which may be adjusted from the configured one.
+    private int bloomFilterExpectNum;
+
     private transient BrokerController brokerController;
-    private transient BloomFilter bloomFilter;
+    private transient volatile BloomFilter bloomFilter;
+    private transient final FilterEfficiencyStats filterEfficiencyStats = new FilterEfficiencyStats();
 
     public ConsumerFilterManager() {
         // just for test
@@ -63,6 +73,7 @@ public class ConsumerFilterManager extends ConfigManager {
             brokerController.getBrokerConfig().getMaxErrorRateOfBloomFilter(),
             brokerController.getBrokerConfig().getExpectConsumerNumUseFilter()
         );
+        this.bloomFilterExpectNum = this.bloomFilter.getN();
         // then set bit map length of store config.
         brokerController.getMessageStoreConfig().setBitMapLengthConsumeQueueExt(
             this.bloomFilter.getM()
@@ -152,9 +163,13 @@ public class ConsumerFilterManager extends ConfigManager {
             filterDataMapByTopic = prev != null ? prev : temp;
         }
 
-        BloomFilterData bloomFilterData = bloomFilter.generate(consumerGroup + "#" + topic);
+        // under the same lock as resizing, otherwise data generated by the old bloom filter may be stored after the
+        // new one is published, and stays invalid as heartbeats of the same version are ignored.
+        synchronized (this) {
+            BloomFilterData bloomFilterData = bloomFilter.generate(bloomKey(consumerGroup, topic));
 
-        return filterDataMapByTopic.register(consumerGroup, expression, type, bloomFilterData, clientVersion);
+            return filterDataMapByTopic.register(consumerGroup, expression, type, bloomFilterData, clientVersion);
+        }
     }
 
     public void unRegister(final String consumerGroup) {
@@ -206,10 +221,106 @@ public class ConsumerFilterManager extends ConfigManager {
         return this.filterDataByTopic.get(topic).getGroupFilterData().values();
     }
 
+    /**
+     * Get evaluation plan of all expression filters of topic, build it if filter data is changed.
+     *
+     * @return maybe null
+     */
+    public ConsumerFilterPlan getFilterPlan(final String topic) {
+        FilterDataMapByTopic filterDataMapByTopic = this.filterDataByTopic.get(topic);
+        if (filterDataMapByTopic == null || filterDataMapByTopic.getGroupFilterData().isEmpty()) {
+            return null;
+        }
+
+        return filterDataMapByTopic.filterPlan();
+    }
+
     public BloomFilter getBloomFilter() {
         return bloomFilter;
     }
 
+    public FilterEfficiencyStats getFilterEfficiencyStats() {
+        return filterEfficiencyStats;
+    }
+
+    public static String bloomKey(final String consumerGroup, final String topic) {
+        return consumerGroup + "#" + topic;
+    }
+
+    /**
+     * Enlarge bloom filter if there are more consumers of a topic than expected, or the observed false positive
+     * rate is much higher than the expected one. Only bit map of messages dispatched after adjusting uses the new
+     * bloom filter, the old ones are ignored when pulling, as their length is different.
+     *
+     * @param maxExpectNum upper limit of expected consumer num, which decides the length of bit map.
+     * @return true if bloom filter is enlarged.
+     */
+    public boolean adjustBloomFilter(final int maxExpectNum) {
+        int maxConsumerNum = 0;
+        for (FilterDataMapByTopic filterDataMapByTopic : this.filterDataByTopic.values()) {
+            int consumerNum = 0;
+            for (ConsumerFilterData filterData : filterDataMapByTopic.getGroupFilterData().values()) {
+                if (!filterData.isDead()) {
+                    consumerNum++;
+                }
+            }
+            maxConsumerNum = Math.max(maxConsumerNum, consumerNum);
+        }
+
+        long falseHit = 0;
+        long miss = 0;
+        for (Map.Entry<String, FilterEfficiencyStats.Window> entry : this.filterEfficiencyStats.roll().entrySet()) {
+            FilterEfficiencyStats.Window window = entry.getValue();
+            if (window.getHit() + window.getMiss() + window.getAbsent() > 0) {
+                log.info("Filter efficiency of topic {}: {}", entry.getKey(), window);
+            }
+            falseHit += window.getFalseHit();
+            miss += window.getMiss();
+        }
+
+        BloomFilter current = this.bloomFilter;
+        int expectNum = Math.max(current.getN(), maxConsumerNum);
+        if (falseHit + miss >= MIN_SAMPLE_NUM_TO_ADJUST && falseHit * 100 > (falseHit + miss) * current.getF() * 2) {
+            log.warn("False positive rate of bloom filter is too high, falseHit={}, miss={}, {}", falseHit, miss, current);
+            expectNum = Math.max(expectNum, current.getN() * 2);
+        }
+        expectNum = Math.min(expectNum, maxExpectNum);
+
+        if (expectNum <= current.getN()) {
+            return false;
+        }
+
+        resizeBloomFilter(expectNum);
+        return true;
+    }
+
+    /**
+     * Replace bloom filter by one expecting {@code expectNum} consumers, bloom filter data of all consumers are
+     * regenerated.
+     */
+    public synchronized void resizeBloomFilter(final int expectNum) {
+        BloomFilter old = this.bloomFilter;
+        BloomFilter bloomFilter = BloomFilter.createByFn(old.getF(), expectNum);
+
+        // regenerate filter data before publishing new bloom filter, bit map is never calculated by new bloom
+        // filter with the old data.
+        for (FilterDataMapByTopic filterDataMapByTopic : this.filterDataByTopic.values()) {
+            for (ConsumerFilterData filterData : filterDataMapByTopic.getGroupFilterData().values()) {
+                filterData.setBloomFilterData(
+                    bloomFilter.generate(bloomKey(filterData.getConsumerGroup(), filterData.getTopic()))
+                );
+            }
+        }
+
+        this.bloomFilter = bloomFilter;
+        this.bloomFilterExpectNum = bloomFilter.getN();
+        if (this.brokerController != null) {
+            this.brokerController.getMessageStoreConfig().setBitMapLengthConsumeQueueExt(bloomFilter.getM());
+        }
+
+        log.info("Resize bloom filter from {} to {}", old, bloomFilter);
+    }
+
     @Override
     public String encode() {
         return encode(false);
@@ -229,6 +340,12 @@ public class ConsumerFilterManager extends ConfigManager {
     public void decode(final String jsonString) {
         ConsumerFilterManager load = RemotingSerializable.fromJson(jsonString, ConsumerFilterManager.class);
         if (load != null && load.filterDataByTopic != null) {
+            BloomFilter bloomFilter = this.bloomFilter;
+            if (load.bloomFilterExpectNum > bloomFilter.getN()) {
+                // bloom filter was enlarged before.
+                bloomFilter = BloomFilter.createByFn(bloomFilter.getF(), load.bloomFilterExpectNum);
+            }
+
             boolean bloomChanged = false;
             for (String topic : load.filterDataByTopic.keySet()) {
                 FilterDataMapByTopic dataMapByTopic = load.filterDataByTopic.get(topic);
@@ -254,9 +371,9 @@ public class ConsumerFilterManager extends ConfigManager {
 
                     // check whether bloom filter is changed
                     // if changed, ignore the bit map calculated before.
-                    if (!this.bloomFilter.isValid(filterData.getBloomFilterData())) {
+                    if (!bloomFilter.isValid(filterData.getBloomFilterData())) {
                         bloomChanged = true;
-                        log.info("Bloom filter is changed!So ignore all filter data persisted! {}, {}", this.bloomFilter, filterData.getBloomFilterData());
+                        log.info("Bloom filter is changed!So ignore all filter data persisted! {}, {}", bloomFilter, filterData.getBloomFilterData());
                         break;
                     }
 
@@ -274,6 +391,14 @@ public class ConsumerFilterManager extends ConfigManager {
 
             if (!bloomChanged) {
                 this.filterDataByTopic = load.filterDataByTopic;
+                if (bloomFilter != this.bloomFilter) {
+                    log.info("Use bloom filter enlarged before: {}", bloomFilter);
+                    this.bloomFilter = bloomFilter;
+                    this.bloomFilterExpectNum = bloomFilter.getN();
+                    if (this.brokerController != null) {
+                        this.brokerController.getMessageStoreConfig().setBitMapLengthConsumeQueueExt(bloomFilter.getM());
+                    }
+                }
             }
         }
     }
@@ -302,16 +427,26 @@ public class ConsumerFilterManager extends ConfigManager {
                 if (filterData.howLongAfterDeath() >= (this.brokerController == null ? MS_24_HOUR : this.brokerController.getBrokerConfig().getFilterDataCleanTimeSpan())) {
                     log.info("Remove filter consumer {}, died too long!", filterDataByGroup.getValue());
                     filterDataIterator.remove();
+                    filterDataMapByTopic.getValue().changed();
                 }
             }
 
             if (filterDataMapByTopic.getValue().getGroupFilterData().isEmpty()) {
                 log.info("Topic has no consumer, remove it! {}", filterDataMapByTopic.getKey());
                 topicIterator.remove();
+                this.filterEfficiencyStats.remove(filterDataMapByTopic.getKey());
             }
         }
     }
 
+    public int getBloomFilterExpectNum() {
+        return bloomFilterExpectNum;
+    }
+
+    public void setBloomFilterExpectNum(final int bloomFilterExpectNum) {
+        this.bloomFilterExpectNum = bloomFilterExpectNum;
+    }
+
     public ConcurrentMap<String, FilterDataMapByTopic> getFilterDataByTopic() {
         return filterDataByTopic;
     }
@@ -327,6 +462,9 @@ public class ConsumerFilterManager extends ConfigManager {
 
         private String topic;
 
+        private transient final AtomicLong version = new AtomicLong(0);
+        private transient volatile ConsumerFilterPlan plan;
+
         public FilterDataMapByTopic() {
         }
 
@@ -365,6 +503,7 @@ public class ConsumerFilterManager extends ConfigManager {
 
                 old = this.groupFilterData.putIfAbsent(consumerGroup, consumerFilterData);
                 if (old == null) {
+                    changed();
                     log.info("New consumer filter registered: {}", consumerFilterData);
                     return true;
                 } else {
@@ -384,6 +523,7 @@ public class ConsumerFilterManager extends ConfigManager {
                         return false;
                     } else {
                         this.groupFilterData.put(consumerGroup, consumerFilterData);
+                        changed();
                         log.info("New consumer filter registered(concurrent): {}, old: {}", consumerFilterData, old);
                         return true;
                     }
@@ -419,11 +559,13 @@ public class ConsumerFilterManager extends ConfigManager {
                     if (consumerFilterData == null) {
                         // new expression compile error, remove old, let client report error.
                         this.groupFilterData.remove(consumerGroup);
+                        changed();
                         return false;
                     }
                     consumerFilterData.setBloomFilterData(bloomFilterData);
 
                     this.groupFilterData.put(consumerGroup, consumerFilterData);
+                    changed();
 
                     log.info("Consumer filter info change, old: {}, new: {}, change: {}",
                         old, consumerFilterData, change);
@@ -445,6 +587,26 @@ public class ConsumerFilterManager extends ConfigManager {
             log.info("Re alive consumer filter: {}, oldDeadTime: {}", filterData, oldDeadTime);
         }
 
+        /**
+         * Mark filter data changed, so the evaluation plan will be rebuilt.
+         */
+        void changed() {
+            this.version.incrementAndGet();
+        }
+
+        ConsumerFilterPlan filterPlan() {
+            long currentVersion = this.version.get();
+            ConsumerFilterPlan currentPlan = this.plan;
+            if (currentPlan == null || currentPlan.getVersion() != currentVersion) {
+                currentPlan = new ConsumerFilterPlan(this.groupFilterData.values(), currentVersion);
+                this.plan = currentPlan;
+                log.info("Build consumer filter plan, topic={}, version={}, consumers={}, expressions={}, indexed={}",
+                    this.topic, currentVersion, currentPlan.getConsumerNum(), currentPlan.getEntryNum(),
+                    currentPlan.getIndexedEntryNum());
+            }
+            return currentPlan;
+        }
+
         public final ConsumerFilterData get(String consumerGroup) {
             return this.groupFilterData.get(consumerGroup);
         }
@@ -455,6 +617,7 @@ public class ConsumerFilterManager extends ConfigManager {
 
         public void setGroupFilterData(final ConcurrentHashMap<String, ConsumerFilterData> groupFilterData) {
             this.groupFilterData = groupFilterData;
+            changed();
         }
 
         public String getTopic() {
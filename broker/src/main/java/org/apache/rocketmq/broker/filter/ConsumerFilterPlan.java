@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.filter;
+
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.filter.expression.EvaluationContext;
+import org.apache.rocketmq.filter.expression.Expression;
+import org.apache.rocketmq.filter.expression.ExpressionCompiler;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluation plan of all expression filters subscribed to one topic.
+ * <p>
+ * Consumers having the same expression share one evaluation. Expressions requiring a string equality,
+ * e.g. {@code region = 'x' AND age > 18}, are indexed by the property and value, so only those whose value
+ * equals the one of message are evaluated.
+ * </p>
+ * <p>
+ * The plan is immutable, rebuilt when filter data of topic is changed.
+ * </p>
+ */
+public class ConsumerFilterPlan {
+
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.FILTER_LOGGER_NAME);
+
+    private final long version;
+    private final int consumerNum;
+    private final List<Entry> unindexedEntries = new ArrayList<Entry>();
+    private final Map<String/*property*/, Map<String/*value*/, List<Entry>>> equalityIndex =
+        new HashMap<String, Map<String, List<Entry>>>();
+    private final Map<String/*property*/, List<Entry>> equalityEntries = new HashMap<String, List<Entry>>();
+    private final int entryNum;
+
+    public ConsumerFilterPlan(final Collection<ConsumerFilterData> filterDatas, final long version) {
+        this.version = version;
+
+        Map<String, Entry> entryByExpression = new LinkedHashMap<String, Entry>();
+        int consumerNum = 0;
+        for (ConsumerFilterData filterData : filterDatas) {
+            if (filterData.getCompiledExpression() == null) {
+                log.error("[BUG] Consumer in filter manager has no compiled expression! {}", filterData);
+                continue;
+            }
+
+            if (filterData.getBloomFilterData() == null) {
+                log.error("[BUG] Consumer in filter manager has no bloom data! {}", filterData);
+                continue;
+            }
+
+            String key = filterData.getExpressionType() + "#" + filterData.getExpression();
+            Entry entry = entryByExpression.get(key);
+            if (entry == null) {
+                entry = new Entry(filterData.getCompiledExpression());
+                entryByExpression.put(key, entry);
+            }
+            entry.filterDatas.add(filterData);
+            consumerNum++;
+        }
+        this.consumerNum = consumerNum;
+        this.entryNum = entryByExpression.size();
+
+        for (Entry entry : entryByExpression.values()) {
+            ExpressionCompiler.EqualityPredicate predicate = ExpressionCompiler.findRequiredEquality(entry.expression);
+            if (predicate == null) {
+                this.unindexedEntries.add(entry);
+                continue;
+            }
+
+            entry.equalityOnly = predicate.isWhole();
+
+            Map<String, List<Entry>> byValue = this.equalityIndex.get(predicate.getProperty());
+            if (byValue == null) {
+                byValue = new HashMap<String, List<Entry>>();
+                this.equalityIndex.put(predicate.getProperty(), byValue);
+                this.equalityEntries.put(predicate.getProperty(), new ArrayList<Entry>());
+            }
+            List<Entry> entries = byValue.get(predicate.getValue());
+            if (entries == null) {
+                entries = new ArrayList<Entry>();
+                byValue.put(predicate.getValue(), entries);
+            }
+            entries.add(entry);
+            this.equalityEntries.get(predicate.getProperty()).add(entry);
+        }
+    }
+
+    /**
+     * Evaluate all expressions of the plan.
+     *
+     * @return filter data of consumers whose expression is true.
+     */
+    public List<ConsumerFilterData> evaluate(final EvaluationContext context) {
+        List<ConsumerFilterData> matched = new ArrayList<ConsumerFilterData>();
+
+        for (Map.Entry<String, Map<String, List<Entry>>> index : this.equalityIndex.entrySet()) {
+            Object value;
+            try {
+                value = context.get(index.getKey());
+            } catch (Throwable e) {
+                log.error("Calc filter plan error! property={}, {}", index.getKey(), e);
+                continue;
+            }
+
+            if (value == null) {
+                // the equality is not true.
+                continue;
+            }
+
+            if (value instanceof String) {
+                List<Entry> entries = index.getValue().get(value);
+                if (entries != null) {
+                    for (Entry entry : entries) {
+                        if (entry.equalityOnly) {
+                            matched.addAll(entry.filterDatas);
+                        } else {
+                            entry.evaluate(context, matched);
+                        }
+                    }
+                }
+            } else {
+                for (Entry entry : this.equalityEntries.get(index.getKey())) {
+                    entry.evaluate(context, matched);
+                }
+            }
+        }
+
+        for (Entry entry : this.unindexedEntries) {
+            entry.evaluate(context, matched);
+        }
+
+        return matched;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getConsumerNum() {
+        return consumerNum;
+    }
+
+    /**
+     * @return number of distinct expressions.
+     */
+    public int getEntryNum() {
+        return entryNum;
+    }
+
+    /**
+     * @return number of distinct expressions indexed by equality.
+     */
+    public int getIndexedEntryNum() {
+        return this.entryNum - this.unindexedEntries.size();
+    }
+
+    static class Entry {
+        private final Expression expression;
+        private final List<ConsumerFilterData> filterDatas = new ArrayList<ConsumerFilterData>(1);
+        private boolean equalityOnly;
+
+        Entry(final Expression expression) {
+            this.expression = expression;
+        }
+
+        void evaluate(final EvaluationContext context, final List<ConsumerFilterData> matched) {
+            Object ret = null;
+            try {
+                ret = this.expression.evaluate(context);
+            } catch (Throwable e) {
+                log.error("Calc filter plan error! expression={}, consumers={}, {}", this.expression, this.filterDatas.size(), e);
+            }
+
+            if (ret != null && ret instanceof Boolean && (Boolean) ret) {
+                matched.addAll(this.filterDatas);
+            }
+        }
+    }
+}
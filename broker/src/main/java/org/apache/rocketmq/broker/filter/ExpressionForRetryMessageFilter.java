@@ -54,15 +54,15 @@ public class ExpressionForRetryMessageFilter extends ExpressionMessageFilter {
 
         ConsumerFilterData realFilterData = this.consumerFilterData;
         Map<String, String> tempProperties = properties;
-        boolean decoded = false;
         if (isRetryTopic) {
             // retry topic, use original filter data.
             // poor performance to support retry filter.
+            String realTopic;
             if (tempProperties == null && msgBuffer != null) {
-                decoded = true;
-                tempProperties = MessageDecoder.decodeProperties(msgBuffer);
+                realTopic = MessageDecoder.decodeProperty(msgBuffer, MessageConst.PROPERTY_RETRY_TOPIC);
+            } else {
+                realTopic = tempProperties.get(MessageConst.PROPERTY_RETRY_TOPIC);
             }
-            String realTopic = tempProperties.get(MessageConst.PROPERTY_RETRY_TOPIC);
             String group = subscriptionData.getTopic().substring(MixAll.RETRY_GROUP_TOPIC_PREFIX.length());
             realFilterData = this.consumerFilterManager.get(realTopic, group);
         }
@@ -73,20 +73,21 @@ public class ExpressionForRetryMessageFilter extends ExpressionMessageFilter {
             return true;
         }
 
-        if (!decoded && tempProperties == null && msgBuffer != null) {
-            tempProperties = MessageDecoder.decodeProperties(msgBuffer);
-        }
-
         Object ret = null;
+        MessageEvaluationContext context = null;
         try {
-            MessageEvaluationContext context = new MessageEvaluationContext(tempProperties);
+            if (tempProperties == null && msgBuffer != null) {
+                context = new MessageEvaluationContext(msgBuffer);
+            } else {
+                context = new MessageEvaluationContext(tempProperties);
+            }
 
             ret = realFilterData.getCompiledExpression().evaluate(context);
         } catch (Throwable e) {
-            log.error("Message Filter error, " + realFilterData + ", " + tempProperties, e);
+            log.error("Message Filter error, " + realFilterData + ", " + context, e);
         }
 
-        log.debug("Pull eval result: {}, {}, {}", ret, realFilterData, tempProperties);
+        log.debug("Pull eval result: {}, {}, {}", ret, realFilterData, context);
 
         if (ret == null || !(ret instanceof Boolean)) {
             return false;
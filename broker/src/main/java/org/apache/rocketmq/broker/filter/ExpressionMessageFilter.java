@@ -21,11 +21,11 @@ import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.filter.ExpressionType;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
-import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.filter.util.BitsArray;
 import org.apache.rocketmq.filter.util.BloomFilter;
 import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.ConsumeQueueTagsSummary;
 import org.apache.rocketmq.store.MessageFilter;
 
 import java.nio.ByteBuffer;
@@ -39,6 +39,8 @@ public class ExpressionMessageFilter implements MessageFilter {
     protected final ConsumerFilterData consumerFilterData;
     protected final ConsumerFilterManager consumerFilterManager;
     protected final boolean bloomDataValid;
+    // whether the last message is matched by bit map, to find out false hit when matching by commit log.
+    protected boolean lastMatchedByBitMap = false;
 
     public ExpressionMessageFilter(SubscriptionData subscriptionData, ConsumerFilterData consumerFilterData,
         ConsumerFilterManager consumerFilterManager) {
@@ -59,6 +61,7 @@ public class ExpressionMessageFilter implements MessageFilter {
 
     @Override
     public boolean isMatchedByConsumeQueue(Long tagsCode, ConsumeQueueExt.CqExtUnit cqExtUnit) {
+        this.lastMatchedByBitMap = false;
         if (null == subscriptionData) {
             return true;
         }
@@ -94,8 +97,12 @@ public class ExpressionMessageFilter implements MessageFilter {
 
             byte[] filterBitMap = cqExtUnit.getFilterBitMap();
             BloomFilter bloomFilter = this.consumerFilterManager.getBloomFilter();
+            FilterEfficiencyStats stats = this.consumerFilterManager.getFilterEfficiencyStats();
+            // bit map may be calculated by another bloom filter, if the bloom filter is resized.
             if (filterBitMap == null || !this.bloomDataValid
-                || filterBitMap.length * Byte.SIZE != consumerFilterData.getBloomFilterData().getBitNum()) {
+                || filterBitMap.length * Byte.SIZE != consumerFilterData.getBloomFilterData().getBitNum()
+                || !bloomFilter.isValid(consumerFilterData.getBloomFilterData())) {
+                stats.incBitMapAbsent(consumerFilterData.getTopic());
                 return true;
             }
 
@@ -104,6 +111,12 @@ public class ExpressionMessageFilter implements MessageFilter {
                 bitsArray = BitsArray.create(filterBitMap);
                 boolean ret = bloomFilter.isHit(consumerFilterData.getBloomFilterData(), bitsArray);
                 log.debug("Pull {} by bit map:{}, {}, {}", ret, consumerFilterData, bitsArray, cqExtUnit);
+                if (ret) {
+                    stats.incBitMapHit(consumerFilterData.getTopic());
+                    this.lastMatchedByBitMap = true;
+                } else {
+                    stats.incBitMapMiss(consumerFilterData.getTopic());
+                }
                 return ret;
             } catch (Throwable e) {
                 log.error("bloom filter error, sub=" + subscriptionData
@@ -114,6 +127,30 @@ public class ExpressionMessageFilter implements MessageFilter {
         return true;
     }
 
+    @Override
+    public boolean isMatchedByTagsSummary(ConsumeQueueTagsSummary.Block block) {
+        if (null == block || null == subscriptionData) {
+            return true;
+        }
+
+        if (subscriptionData.isClassFilterMode()) {
+            return true;
+        }
+
+        // only tags code is summarized.
+        if (!ExpressionType.isTagType(subscriptionData.getExpressionType())
+            || subscriptionData.getSubString().equals(SubscriptionData.SUB_ALL)) {
+            return true;
+        }
+
+        for (Integer code : subscriptionData.getCodeSet()) {
+            if (block.mayContain(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public boolean isMatchedByCommitLog(ByteBuffer msgBuffer, Map<String, String> properties) {
         if (subscriptionData == null) {
@@ -137,26 +174,33 @@ public class ExpressionMessageFilter implements MessageFilter {
             return true;
         }
 
-        if (tempProperties == null && msgBuffer != null) {
-            tempProperties = MessageDecoder.decodeProperties(msgBuffer);
-        }
-
         Object ret = null;
+        MessageEvaluationContext context = null;
         try {
-            MessageEvaluationContext context = new MessageEvaluationContext(tempProperties);
+            // lookup properties in buffer directly instead of decoding all of them.
+            if (tempProperties == null && msgBuffer != null) {
+                context = new MessageEvaluationContext(msgBuffer);
+            } else {
+                context = new MessageEvaluationContext(tempProperties);
+            }
 
             ret = realFilterData.getCompiledExpression().evaluate(context);
         } catch (Throwable e) {
-            log.error("Message Filter error, " + realFilterData + ", " + tempProperties, e);
+            log.error("Message Filter error, " + realFilterData + ", " + context, e);
         }
 
-        log.debug("Pull eval result: {}, {}, {}", ret, realFilterData, tempProperties);
+        log.debug("Pull eval result: {}, {}, {}", ret, realFilterData, context);
 
-        if (ret == null || !(ret instanceof Boolean)) {
-            return false;
+        boolean matched = ret != null && ret instanceof Boolean && (Boolean) ret;
+
+        if (this.lastMatchedByBitMap) {
+            this.lastMatchedByBitMap = false;
+            if (!matched) {
+                this.consumerFilterManager.getFilterEfficiencyStats().incBitMapFalseHit(realFilterData.getTopic());
+            }
         }
 
-        return (Boolean) ret;
+        return matched;
     }
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Efficiency of filtering by bit map when pulling, per topic.
+ * <ul>
+ * <li>hit: bit map says the message may match.</li>
+ * <li>miss: bit map says the message does not match, which is skipped without reading commit log.</li>
+ * <li>false hit: bit map says the message may match, but it does not match when evaluated by commit log.</li>
+ * <li>absent: no usable bit map, e.g. bit map is calculated by another bloom filter.</li>
+ * </ul>
+ */
+public class FilterEfficiencyStats {
+
+    private final ConcurrentMap<String/*Topic*/, TopicStats> topicStatsTable =
+        new ConcurrentHashMap<String, TopicStats>(64);
+
+    public void incBitMapHit(final String topic) {
+        getOrCreate(topic).bitMapHit.incrementAndGet();
+    }
+
+    public void incBitMapMiss(final String topic) {
+        getOrCreate(topic).bitMapMiss.incrementAndGet();
+    }
+
+    public void incBitMapFalseHit(final String topic) {
+        getOrCreate(topic).bitMapFalseHit.incrementAndGet();
+    }
+
+    public void incBitMapAbsent(final String topic) {
+        getOrCreate(topic).bitMapAbsent.incrementAndGet();
+    }
+
+    public TopicStats get(final String topic) {
+        return this.topicStatsTable.get(topic);
+    }
+
+    /**
+     * @return stats of each topic since last roll.
+     */
+    public Map<String, Window> roll() {
+        Map<String, Window> windows = new HashMap<String, Window>(this.topicStatsTable.size());
+        for (Map.Entry<String, TopicStats> entry : this.topicStatsTable.entrySet()) {
+            windows.put(entry.getKey(), entry.getValue().roll());
+        }
+        return windows;
+    }
+
+    public void remove(final String topic) {
+        this.topicStatsTable.remove(topic);
+    }
+
+    private TopicStats getOrCreate(final String topic) {
+        TopicStats stats = this.topicStatsTable.get(topic);
+        if (stats == null) {
+            stats = new TopicStats();
+            TopicStats prev = this.topicStatsTable.putIfAbsent(topic, stats);
+            if (prev != null) {
+                stats = prev;
+            }
+        }
+        return stats;
+    }
+
+    public static class TopicStats {
+        private final AtomicLong bitMapHit = new AtomicLong(0);
+        private final AtomicLong bitMapMiss = new AtomicLong(0);
+        private final AtomicLong bitMapFalseHit = new AtomicLong(0);
+        private final AtomicLong bitMapAbsent = new AtomicLong(0);
+
+        private Window last = new Window(0, 0, 0, 0);
+
+        private synchronized Window roll() {
+            Window current = new Window(this.bitMapHit.get(), this.bitMapMiss.get(),
+                this.bitMapFalseHit.get(), this.bitMapAbsent.get());
+            Window delta = new Window(current.hit - this.last.hit, current.miss - this.last.miss,
+                current.falseHit - this.last.falseHit, current.absent - this.last.absent);
+            this.last = current;
+            return delta;
+        }
+
+        public long getBitMapHit() {
+            return bitMapHit.get();
+        }
+
+        public long getBitMapMiss() {
+            return bitMapMiss.get();
+        }
+
+        public long getBitMapFalseHit() {
+            return bitMapFalseHit.get();
+        }
+
+        public long getBitMapAbsent() {
+            return bitMapAbsent.get();
+        }
+    }
+
+    public static class Window {
+        private final long hit;
+        private final long miss;
+        private final long falseHit;
+        private final long absent;
+
+        public Window(final long hit, final long miss, final long falseHit, final long absent) {
+            this.hit = hit;
+            this.miss = miss;
+            this.falseHit = falseHit;
+            this.absent = absent;
+        }
+
+        /**
+         * @return observed false positive rate of bloom filter, that is, how many messages not matched are
+         * not filtered by bit map.
+         */
+        public double getFalsePositiveRate() {
+            long negative = this.falseHit + this.miss;
+            return negative == 0 ? 0 : (double) this.falseHit / negative;
+        }
+
+        public long getHit() {
+            return hit;
+        }
+
+        public long getMiss() {
+            return miss;
+        }
+
+        public long getFalseHit() {
+            return falseHit;
+        }
+
+        public long getAbsent() {
+            return absent;
+        }
+
+        @Override
+        public String toString() {
+            return "Window{" +
+                "hit=" + hit +
+                ", miss=" + miss +
+                ", falseHit=" + falseHit +
+                ", absent=" + absent +
+                ", falsePositiveRate=" + String.format("%.4f", getFalsePositiveRate()) +
+                '}';
+        }
+    }
+}
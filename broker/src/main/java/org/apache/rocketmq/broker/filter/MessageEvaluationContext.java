@@ -17,24 +17,43 @@
 
 package org.apache.rocketmq.broker.filter;
 
+import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.filter.expression.EvaluationContext;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Evaluation context from message.
+ * <p>
+ * If created from message buffer in commit log, properties are looked up directly from the buffer,
+ * only the values of referenced properties are decoded.
+ * </p>
  */
 public class MessageEvaluationContext implements EvaluationContext {
 
     private Map<String, String> properties;
 
+    private ByteBuffer msgBuffer;
+    private int propertiesPosition;
+    private int propertiesLength;
+
     public MessageEvaluationContext(Map<String, String> properties) {
         this.properties = properties;
     }
 
+    public MessageEvaluationContext(ByteBuffer msgBuffer) {
+        this.msgBuffer = msgBuffer;
+        this.propertiesPosition = MessageDecoder.decodePropertiesPosition(msgBuffer);
+        this.propertiesLength = msgBuffer.getShort(this.propertiesPosition - 2);
+    }
+
     @Override
     public Object get(final String name) {
+        if (this.msgBuffer != null) {
+            return MessageDecoder.findProperty(this.msgBuffer, this.propertiesPosition, this.propertiesLength, name);
+        }
         if (this.properties == null) {
             return null;
         }
@@ -43,6 +62,10 @@ public class MessageEvaluationContext implements EvaluationContext {
 
     @Override
     public Map<String, Object> keyValues() {
+        Map<String, String> properties = this.properties;
+        if (properties == null && this.msgBuffer != null) {
+            properties = MessageDecoder.decodeProperties(this.msgBuffer.duplicate());
+        }
         if (properties == null) {
             return null;
         }
@@ -55,4 +78,9 @@ public class MessageEvaluationContext implements EvaluationContext {
 
         return copy;
     }
+
+    @Override
+    public String toString() {
+        return String.valueOf(keyValues());
+    }
 }
@@ -26,6 +26,8 @@ import org.apache.rocketmq.broker.client.ClientChannelInfo;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.broker.filter.ConsumerFilterData;
 import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
+import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
+import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.broker.transaction.queue.TransactionalMessageUtil;
 import org.apache.rocketmq.common.AclConfig;
@@ -268,6 +270,7 @@ public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements
         topicConfig.setTopicFilterType(requestHeader.getTopicFilterTypeEnum());
         topicConfig.setPerm(requestHeader.getPerm());
         topicConfig.setTopicSysFlag(requestHeader.getTopicSysFlag() == null ? 0 : requestHeader.getTopicSysFlag());
+        topicConfig.setIndexedProperties(requestHeader.getIndexedProperties());
 
         this.brokerController.getTopicConfigManager().updateTopicConfig(topicConfig);
 
@@ -1419,6 +1422,17 @@ public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements
         runtimeInfo.put("EndTransactionThreadPoolQueueCapacity",
             String.valueOf(this.brokerController.getBrokerConfig().getEndTransactionPoolQueueCapacity()));
 
+        TransactionalMessageService transactionalMessageService = this.brokerController.getTransactionalMessageService();
+        if (transactionalMessageService != null) {
+            runtimeInfo.put("transactionUnresolvedHalfMsgNums", String.valueOf(transactionalMessageService.getUnresolvedHalfMessageNums()));
+            runtimeInfo.put("transactionExpiredHalfMsgNums", String.valueOf(transactionalMessageService.getExpiredHalfMessageNums()));
+        }
+        AbstractTransactionalMessageCheckListener checkListener = this.brokerController.getTransactionalMessageCheckListener();
+        if (checkListener != null) {
+            runtimeInfo.put("transactionCheckPendingNums", String.valueOf(checkListener.getCheckDispatcher().getPendingNums()));
+            runtimeInfo.put("transactionCheckDroppedNums", String.valueOf(checkListener.getCheckDispatcher().getDroppedNums()));
+        }
+
         runtimeInfo.put("dispatchBehindBytes", String.valueOf(this.brokerController.getMessageStore().dispatchBehindBytes()));
         runtimeInfo.put("pageCacheLockTimeMills", String.valueOf(this.brokerController.getMessageStore().lockTimeMills()));
 
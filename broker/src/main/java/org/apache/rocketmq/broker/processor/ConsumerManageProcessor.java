@@ -18,12 +18,15 @@ package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.ChannelHandlerContext;
 import java.util.List;
+import java.util.Map;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseHeader;
@@ -55,6 +58,8 @@ public class ConsumerManageProcessor extends AsyncNettyRequestProcessor implemen
                 return this.getConsumerListByGroup(ctx, request);
             case RequestCode.UPDATE_CONSUMER_OFFSET:
                 return this.updateConsumerOffset(ctx, request);
+            case RequestCode.UPDATE_CONSUMER_OFFSET_BATCH:
+                return this.updateConsumerOffsetBatch(ctx, request);
             case RequestCode.QUERY_CONSUMER_OFFSET:
                 return this.queryConsumerOffset(ctx, request);
             default:
@@ -80,10 +85,13 @@ public class ConsumerManageProcessor extends AsyncNettyRequestProcessor implemen
             this.brokerController.getConsumerManager().getConsumerGroupInfo(
                 requestHeader.getConsumerGroup());
         if (consumerGroupInfo != null) {
+            // read the version first, so the version never claims a newer membership than the list
+            long membershipVersion = consumerGroupInfo.getMembershipVersion();
             List<String> clientIds = consumerGroupInfo.getAllClientId();
             if (!clientIds.isEmpty()) {
                 GetConsumerListByGroupResponseBody body = new GetConsumerListByGroupResponseBody();
                 body.setConsumerIdList(clientIds);
+                body.setMembershipVersion(membershipVersion);
                 response.setBody(body.encode());
                 response.setCode(ResponseCode.SUCCESS);
                 response.setRemark(null);
@@ -116,6 +124,20 @@ public class ConsumerManageProcessor extends AsyncNettyRequestProcessor implemen
         return response;
     }
 
+    private RemotingCommand updateConsumerOffsetBatch(ChannelHandlerContext ctx, RemotingCommand request) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final UpdateConsumerOffsetBatchRequestBody requestBody =
+            UpdateConsumerOffsetBatchRequestBody.decode(request.getBody(), UpdateConsumerOffsetBatchRequestBody.class);
+        final String clientHost = RemotingHelper.parseChannelRemoteAddr(ctx.channel());
+        for (Map.Entry<MessageQueue, Long> entry : requestBody.getOffsetTable().entrySet()) {
+            this.brokerController.getConsumerOffsetManager().commitOffset(clientHost, requestBody.getConsumerGroup(),
+                entry.getKey().getTopic(), entry.getKey().getQueueId(), entry.getValue());
+        }
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     private RemotingCommand queryConsumerOffset(ChannelHandlerContext ctx, RemotingCommand request)
         throws RemotingCommandException {
         final RemotingCommand response =
@@ -29,6 +29,7 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.QueryMessageByPropertyRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryMessageResponseHeader;
 import org.apache.rocketmq.common.protocol.header.ViewMessageRequestHeader;
@@ -38,6 +39,7 @@ import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.store.QueryMessageResult;
 import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.index.IndexService;
 
 public class QueryMessageProcessor extends AsyncNettyRequestProcessor implements NettyRequestProcessor {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
@@ -56,6 +58,8 @@ public class QueryMessageProcessor extends AsyncNettyRequestProcessor implements
                 return this.queryMessage(ctx, request);
             case RequestCode.VIEW_MESSAGE_BY_ID:
                 return this.viewMessageById(ctx, request);
+            case RequestCode.QUERY_MESSAGE_BY_PROPERTY:
+                return this.queryMessageByProperty(ctx, request);
             default:
                 break;
         }
@@ -85,12 +89,52 @@ public class QueryMessageProcessor extends AsyncNettyRequestProcessor implements
             requestHeader.setMaxNum(this.brokerController.getMessageStoreConfig().getDefaultQueryMaxNum());
         }
 
+        final long beginTime = System.currentTimeMillis();
         final QueryMessageResult queryMessageResult =
             this.brokerController.getMessageStore().queryMessage(requestHeader.getTopic(),
                 requestHeader.getKey(), requestHeader.getMaxNum(), requestHeader.getBeginTimestamp(),
                 requestHeader.getEndTimestamp());
         assert queryMessageResult != null;
+        this.brokerController.getBrokerStatsManager().incTopicQueryLatency(requestHeader.getTopic(),
+            (int) (System.currentTimeMillis() - beginTime));
 
+        return this.transferQueryResult(ctx, response, responseHeader, queryMessageResult);
+    }
+
+    public RemotingCommand queryMessageByProperty(ChannelHandlerContext ctx, RemotingCommand request)
+        throws RemotingCommandException {
+        final RemotingCommand response =
+            RemotingCommand.createResponseCommand(QueryMessageResponseHeader.class);
+        final QueryMessageResponseHeader responseHeader =
+            (QueryMessageResponseHeader) response.readCustomHeader();
+        final QueryMessageByPropertyRequestHeader requestHeader =
+            (QueryMessageByPropertyRequestHeader) request
+                .decodeCommandCustomHeader(QueryMessageByPropertyRequestHeader.class);
+
+        response.setOpaque(request.getOpaque());
+
+        if (!this.brokerController.getTopicIndexedPropertyResolver().isIndexed(requestHeader.getTopic(),
+            requestHeader.getPropertyName())) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("the property " + requestHeader.getPropertyName() + " is not indexed by topic "
+                + requestHeader.getTopic());
+            return response;
+        }
+
+        final long beginTime = System.currentTimeMillis();
+        final QueryMessageResult queryMessageResult =
+            this.brokerController.getMessageStore().queryMessage(requestHeader.getTopic(),
+                IndexService.buildPropertyKey(requestHeader.getPropertyName(), requestHeader.getPropertyValue()),
+                requestHeader.getMaxNum(), requestHeader.getBeginTimestamp(), requestHeader.getEndTimestamp());
+        assert queryMessageResult != null;
+        this.brokerController.getBrokerStatsManager().incTopicQueryLatency(requestHeader.getTopic(),
+            (int) (System.currentTimeMillis() - beginTime));
+
+        return this.transferQueryResult(ctx, response, responseHeader, queryMessageResult);
+    }
+
+    private RemotingCommand transferQueryResult(final ChannelHandlerContext ctx, final RemotingCommand response,
+        final QueryMessageResponseHeader responseHeader, final QueryMessageResult queryMessageResult) {
         responseHeader.setIndexLastUpdatePhyoffset(queryMessageResult.getIndexLastUpdatePhyoffset());
         responseHeader.setIndexLastUpdateTimestamp(queryMessageResult.getIndexLastUpdateTimestamp());
 
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.topic;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.store.index.IndexedPropertyResolver;
+
+/**
+ * Resolve indexed properties from topic config, names are parsed once for each change of config.
+ */
+public class TopicIndexedPropertyResolver implements IndexedPropertyResolver {
+
+    private final BrokerController brokerController;
+    private final ConcurrentMap<String/*Topic*/, ParsedProperties> parsedTable =
+        new ConcurrentHashMap<String, ParsedProperties>(64);
+
+    public TopicIndexedPropertyResolver(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+    }
+
+    @Override
+    public Set<String> getIndexedProperties(final String topic) {
+        TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(topic);
+        if (null == topicConfig || null == topicConfig.getIndexedProperties()) {
+            return null;
+        }
+
+        String indexedProperties = topicConfig.getIndexedProperties();
+        ParsedProperties parsed = this.parsedTable.get(topic);
+        if (null == parsed || !parsed.source.equals(indexedProperties)) {
+            parsed = new ParsedProperties(indexedProperties, topicConfig.indexedPropertySet());
+            this.parsedTable.put(topic, parsed);
+        }
+        return parsed.names;
+    }
+
+    /**
+     * @return whether the property is indexed for the topic.
+     */
+    public boolean isIndexed(final String topic, final String propertyName) {
+        Set<String> names = getIndexedProperties(topic);
+        return names != null && names.contains(propertyName);
+    }
+
+    private static class ParsedProperties {
+        private final String source;
+        private final Set<String> names;
+
+        ParsedProperties(final String source, final Set<String> names) {
+            this.source = source;
+            this.names = names;
+        }
+    }
+}
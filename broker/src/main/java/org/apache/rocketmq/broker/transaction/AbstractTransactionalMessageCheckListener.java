@@ -26,12 +26,8 @@ import org.apache.rocketmq.common.protocol.header.CheckTransactionStateRequestHe
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class AbstractTransactionalMessageCheckListener {
     private static final InternalLogger LOGGER = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
@@ -42,14 +38,7 @@ public abstract class AbstractTransactionalMessageCheckListener {
     protected final static int TCMT_QUEUE_NUMS = 1;
     protected final Random random = new Random(System.currentTimeMillis());
 
-    private static ExecutorService executorService = new ThreadPoolExecutor(2, 5, 100, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(2000), new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread thread = new Thread(r);
-            thread.setName("Transaction-msg-check-thread");
-            return thread;
-        }
-    }, new CallerRunsPolicy());
+    private final TransactionalCheckDispatcher checkDispatcher = new TransactionalCheckDispatcher(this);
 
     public AbstractTransactionalMessageCheckListener() {
     }
@@ -59,6 +48,34 @@ public abstract class AbstractTransactionalMessageCheckListener {
     }
 
     public void sendCheckMessage(MessageExt msgExt) throws Exception {
+        CheckTransactionStateRequestHeader checkTransactionStateRequestHeader = buildCheckRequestHeader(msgExt);
+        String groupId = msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
+        if (channel != null) {
+            brokerController.getBroker2Client().checkProducerTransactionState(groupId, channel, checkTransactionStateRequestHeader, msgExt);
+        } else {
+            LOGGER.warn("Check transaction failed, channel is null. groupId={}", groupId);
+        }
+    }
+
+    /**
+     * Send check requests of the same producer group through one channel.
+     */
+    public void sendCheckMessages(String groupId, List<MessageExt> msgExts) throws Exception {
+        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
+        if (null == channel) {
+            LOGGER.warn("Check transaction failed, channel is null. groupId={}, messages={}", groupId, msgExts.size());
+            return;
+        }
+
+        List<CheckTransactionStateRequestHeader> requestHeaders = new ArrayList<CheckTransactionStateRequestHeader>(msgExts.size());
+        for (MessageExt msgExt : msgExts) {
+            requestHeaders.add(buildCheckRequestHeader(msgExt));
+        }
+        brokerController.getBroker2Client().checkProducerTransactionState(groupId, channel, requestHeaders, msgExts);
+    }
+
+    private CheckTransactionStateRequestHeader buildCheckRequestHeader(MessageExt msgExt) {
         CheckTransactionStateRequestHeader checkTransactionStateRequestHeader = new CheckTransactionStateRequestHeader();
         checkTransactionStateRequestHeader.setCommitLogOffset(msgExt.getCommitLogOffset());
         checkTransactionStateRequestHeader.setOffsetMsgId(msgExt.getMsgId());
@@ -68,26 +85,20 @@ public abstract class AbstractTransactionalMessageCheckListener {
         msgExt.setTopic(msgExt.getUserProperty(MessageConst.PROPERTY_REAL_TOPIC));
         msgExt.setQueueId(Integer.parseInt(msgExt.getUserProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
         msgExt.setStoreSize(0);
-        String groupId = msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
-        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
-        if (channel != null) {
-            brokerController.getBroker2Client().checkProducerTransactionState(groupId, channel, checkTransactionStateRequestHeader, msgExt);
-        } else {
-            LOGGER.warn("Check transaction failed, channel is null. groupId={}", groupId);
-        }
+        return checkTransactionStateRequestHeader;
+    }
+
+    /**
+     * Queue the check request by producer group, it is sent by {@link TransactionalCheckDispatcher} fairly.
+     *
+     * @return false if the request is dropped, since too many requests of the group are waiting.
+     */
+    public boolean resolveHalfMsg(final MessageExt msgExt) {
+        return this.checkDispatcher.submit(msgExt);
     }
 
-    public void resolveHalfMsg(final MessageExt msgExt) {
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    sendCheckMessage(msgExt);
-                } catch (Exception e) {
-                    LOGGER.error("Send check message error!", e);
-                }
-            }
-        });
+    public TransactionalCheckDispatcher getCheckDispatcher() {
+        return checkDispatcher;
     }
 
     public BrokerController getBrokerController() {
@@ -95,7 +106,7 @@ public abstract class AbstractTransactionalMessageCheckListener {
     }
 
     public void shutDown() {
-        executorService.shutdown();
+        this.checkDispatcher.shutdown();
     }
 
     /**
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Dispatch check requests of half messages to producers fairly.
+ * <p>
+ * Requests are queued by producer group, and taken from groups in turn, at most
+ * {@link BrokerConfig#getTransactionCheckBatchSize()} each time and at most
+ * {@link BrokerConfig#getTransactionCheckMaxPerGroupPerSecond()} per second for a group, so a group with a backlog
+ * never starves others. Requests of a group taken together are written to one channel and flushed once.
+ * </p>
+ */
+public class TransactionalCheckDispatcher extends ServiceThread {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
+
+    private static final long IDLE_INTERVAL = 100L;
+
+    private final AbstractTransactionalMessageCheckListener listener;
+    private final ConcurrentMap<String/* producer group */, GroupQueue> groupQueueTable =
+        new ConcurrentHashMap<String, GroupQueue>(64);
+
+    public TransactionalCheckDispatcher(final AbstractTransactionalMessageCheckListener listener) {
+        this.listener = listener;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public String getServiceName() {
+        return TransactionalCheckDispatcher.class.getSimpleName();
+    }
+
+    /**
+     * @return false if the request is dropped, since too many requests of the group are waiting.
+     */
+    public boolean submit(final MessageExt msgExt) {
+        String group = String.valueOf(msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP));
+        GroupQueue groupQueue = this.groupQueueTable.get(group);
+        if (null == groupQueue) {
+            groupQueue = new GroupQueue(this.getBrokerConfig().getTransactionCheckPendingPerGroup());
+            GroupQueue prev = this.groupQueueTable.putIfAbsent(group, groupQueue);
+            if (prev != null) {
+                groupQueue = prev;
+            }
+        }
+
+        if (!groupQueue.pending.offer(msgExt)) {
+            groupQueue.dropped.incrementAndGet();
+            log.warn("Too many check requests of group {} waiting, drop the one of msgId={}", group, msgExt.getMsgId());
+            return false;
+        }
+
+        this.wakeup();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            try {
+                if (!this.dispatch()) {
+                    this.waitForRunning(IDLE_INTERVAL);
+                }
+            } catch (Throwable e) {
+                log.error(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    /**
+     * Take requests from each group in turn.
+     *
+     * @return true if any request is sent.
+     */
+    boolean dispatch() {
+        BrokerConfig brokerConfig = this.getBrokerConfig();
+        int batchSize = Math.max(1, brokerConfig.getTransactionCheckBatchSize());
+        int ratePerSecond = brokerConfig.getTransactionCheckMaxPerGroupPerSecond();
+        long now = System.currentTimeMillis();
+
+        boolean sent = false;
+        for (Map.Entry<String, GroupQueue> entry : this.groupQueueTable.entrySet()) {
+            GroupQueue groupQueue = entry.getValue();
+            if (groupQueue.pending.isEmpty()) {
+                continue;
+            }
+
+            int permits = groupQueue.acquire(batchSize, ratePerSecond, now);
+            if (permits <= 0) {
+                continue;
+            }
+
+            List<MessageExt> batch = new ArrayList<MessageExt>(permits);
+            groupQueue.pending.drainTo(batch, permits);
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            try {
+                this.listener.sendCheckMessages(entry.getKey(), batch);
+            } catch (Exception e) {
+                log.error("Send check messages of group {} error!", entry.getKey(), e);
+            }
+            groupQueue.sent.addAndGet(batch.size());
+            sent = true;
+        }
+        return sent;
+    }
+
+    public long getPendingNums() {
+        long pendingNums = 0;
+        for (GroupQueue groupQueue : this.groupQueueTable.values()) {
+            pendingNums += groupQueue.pending.size();
+        }
+        return pendingNums;
+    }
+
+    public long getDroppedNums() {
+        long droppedNums = 0;
+        for (GroupQueue groupQueue : this.groupQueueTable.values()) {
+            droppedNums += groupQueue.dropped.get();
+        }
+        return droppedNums;
+    }
+
+    public void logStats() {
+        for (Map.Entry<String, GroupQueue> entry : this.groupQueueTable.entrySet()) {
+            GroupQueue groupQueue = entry.getValue();
+            log.info("Check requests of group {}: pending={}, sent={}, dropped={}", entry.getKey(),
+                groupQueue.pending.size(), groupQueue.sent.get(), groupQueue.dropped.get());
+        }
+    }
+
+    private BrokerConfig getBrokerConfig() {
+        BrokerController brokerController = this.listener.getBrokerController();
+        return brokerController != null ? brokerController.getBrokerConfig() : new BrokerConfig();
+    }
+
+    static class GroupQueue {
+        private final LinkedBlockingQueue<MessageExt> pending;
+        private final AtomicLong sent = new AtomicLong(0);
+        private final AtomicLong dropped = new AtomicLong(0);
+        // token bucket, only accessed by the dispatching thread.
+        private double tokens = -1;
+        private long lastRefillTime;
+
+        GroupQueue(final int capacity) {
+            this.pending = new LinkedBlockingQueue<MessageExt>(Math.max(1, capacity));
+        }
+
+        int acquire(final int max, final int ratePerSecond, final long now) {
+            if (ratePerSecond <= 0) {
+                return max;
+            }
+
+            if (this.tokens < 0) {
+                this.tokens = ratePerSecond;
+            } else {
+                this.tokens = Math.min(ratePerSecond, this.tokens + (now - this.lastRefillTime) * ratePerSecond / 1000.0);
+            }
+            this.lastRefillTime = now;
+
+            int permits = (int) Math.min(max, this.tokens);
+            this.tokens -= permits;
+            return permits;
+        }
+    }
+}
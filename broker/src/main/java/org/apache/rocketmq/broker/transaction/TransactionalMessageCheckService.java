@@ -40,9 +40,12 @@ public class TransactionalMessageCheckService extends ServiceThread {
     public void run() {
         log.info("Start transaction check service thread!");
         long checkInterval = brokerController.getBrokerConfig().getTransactionCheckInterval();
+        AbstractTransactionalMessageCheckListener checkListener = brokerController.getTransactionalMessageCheckListener();
+        checkListener.getCheckDispatcher().start();
         while (!this.isStopped()) {
             this.waitForRunning(checkInterval);
         }
+        checkListener.shutDown();
         log.info("End transaction check service thread!");
     }
 
@@ -54,6 +57,7 @@ public class TransactionalMessageCheckService extends ServiceThread {
         log.info("Begin to check prepare message, begin time:{}", begin);
         this.brokerController.getTransactionalMessageService().check(timeout, checkMax, this.brokerController.getTransactionalMessageCheckListener());
         log.info("End to check prepare message, consumed time:{}", System.currentTimeMillis() - begin);
+        this.brokerController.getTransactionalMessageCheckListener().getCheckDispatcher().logStats();
     }
 
 }
@@ -76,6 +76,20 @@ public interface TransactionalMessageService {
      */
     void check(long transactionTimeout, int transactionCheckMax, AbstractTransactionalMessageCheckListener listener);
 
+    /**
+     * @return number of half messages neither committed nor rolled back, or -1 if unknown.
+     */
+    default long getUnresolvedHalfMessageNums() {
+        return -1;
+    }
+
+    /**
+     * @return number of half messages due for checking in the last check round, or -1 if unknown.
+     */
+    default long getExpiredHalfMessageNums() {
+        return -1;
+    }
+
     /**
      * Open transaction service.
      *
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.transaction.queue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+
+/**
+ * In-memory index of half messages not committed or rolled back yet, for each half queue.
+ * <p>
+ * Half queue and op queue are replayed incrementally from where the last check stopped, and commit or rollback
+ * markers are applied to the index directly, so a check only touches transactions to be checked.
+ * The index is rebuilt from committed offsets of half queue and op queue after restart.
+ * </p>
+ */
+public class HalfMessageIndex {
+
+    private final ConcurrentMap<Integer/* queueId */, QueueIndex> queueIndexTable =
+        new ConcurrentHashMap<Integer, QueueIndex>(8);
+
+    public QueueIndex get(final int queueId) {
+        return this.queueIndexTable.get(queueId);
+    }
+
+    /**
+     * @param halfOffset committed offset of half queue, replayed from it.
+     * @param opOffset committed offset of op queue, replayed from it.
+     */
+    public QueueIndex getOrCreate(final int queueId, final long halfOffset, final long opOffset) {
+        QueueIndex index = this.queueIndexTable.get(queueId);
+        if (null == index) {
+            index = new QueueIndex(halfOffset, opOffset);
+            QueueIndex prev = this.queueIndexTable.putIfAbsent(queueId, index);
+            if (prev != null) {
+                index = prev;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Apply commit or rollback of half message to the index.
+     */
+    public void remove(final int queueId, final long halfOffset) {
+        QueueIndex index = this.queueIndexTable.get(queueId);
+        if (index != null) {
+            index.markRemoved(halfOffset);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (QueueIndex index : this.queueIndexTable.values()) {
+            size += index.size();
+        }
+        return size;
+    }
+
+    public static class QueueIndex {
+        private final ConcurrentSkipListMap<Long/* half offset */, HalfEntry> halfEntries =
+            new ConcurrentSkipListMap<Long, HalfEntry>();
+        // resolved before replayed from half queue.
+        private final Set<Long/* half offset */> removedAhead = new HashSet<Long>();
+        // op messages which may be replayed again after restart.
+        private final TreeMap<Long/* op offset */, Long/* half offset */> pendingOps = new TreeMap<Long, Long>();
+        // immunity copies put back by older versions, resolved by the op message of the prepared half message.
+        private final Map<Long/* prepared half offset */, Long/* half offset */> immunityCopies =
+            new HashMap<Long, Long>();
+        private long halfReplayOffset;
+        private long opReplayOffset;
+
+        QueueIndex(final long halfReplayOffset, final long opReplayOffset) {
+            this.halfReplayOffset = halfReplayOffset;
+            this.opReplayOffset = opReplayOffset;
+        }
+
+        public synchronized void addHalf(final MessageExt msgExt) {
+            long halfOffset = msgExt.getQueueOffset();
+            if (halfOffset < this.halfReplayOffset) {
+                return;
+            }
+
+            if (!this.removedAhead.remove(halfOffset)) {
+                HalfEntry entry = new HalfEntry(msgExt);
+                this.halfEntries.put(halfOffset, entry);
+                if (entry.getPreparedQueueOffset() >= 0) {
+                    // the latest copy stands for the prepared half message and the copies before.
+                    Long prevCopy = this.immunityCopies.put(entry.getPreparedQueueOffset(), halfOffset);
+                    this.halfEntries.remove(entry.getPreparedQueueOffset());
+                    if (prevCopy != null) {
+                        this.halfEntries.remove(prevCopy);
+                    }
+                }
+            }
+            this.halfReplayOffset = halfOffset + 1;
+        }
+
+        /**
+         * Skip to next offset of half queue, e.g. the pulled range is illegal.
+         */
+        public synchronized void advanceHalfReplayOffset(final long nextOffset) {
+            if (nextOffset > this.halfReplayOffset) {
+                this.halfReplayOffset = nextOffset;
+                Iterator<Long> it = this.removedAhead.iterator();
+                while (it.hasNext()) {
+                    if (it.next() < nextOffset) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        public synchronized void addOp(final long opOffset, final long halfOffset) {
+            if (opOffset < this.opReplayOffset) {
+                return;
+            }
+
+            Long copyOffset = this.immunityCopies.get(halfOffset);
+            this.pendingOps.put(opOffset, copyOffset != null ? copyOffset : halfOffset);
+            this.markRemoved(halfOffset);
+            this.opReplayOffset = opOffset + 1;
+        }
+
+        public synchronized void advanceOpReplayOffset(final long nextOffset) {
+            if (nextOffset > this.opReplayOffset) {
+                this.opReplayOffset = nextOffset;
+            }
+        }
+
+        public synchronized void markRemoved(final long halfOffset) {
+            if (halfOffset < this.halfReplayOffset) {
+                HalfEntry removed = this.halfEntries.remove(halfOffset);
+                if (removed != null && removed.getPreparedQueueOffset() >= 0) {
+                    this.immunityCopies.remove(removed.getPreparedQueueOffset(), halfOffset);
+                }
+                Long copyOffset = this.immunityCopies.remove(halfOffset);
+                if (copyOffset != null) {
+                    this.markRemoved(copyOffset);
+                }
+            } else {
+                this.removedAhead.add(halfOffset);
+            }
+        }
+
+        /**
+         * @return offset of half queue before which all half messages are resolved.
+         */
+        public synchronized long getHalfCommitOffset() {
+            Map.Entry<Long, HalfEntry> first = this.halfEntries.firstEntry();
+            return first != null ? first.getKey() : this.halfReplayOffset;
+        }
+
+        /**
+         * @return offset of op queue before which no op message is needed to rebuild the index from half commit
+         * offset.
+         */
+        public synchronized long getOpCommitOffset() {
+            long halfCommitOffset = this.getHalfCommitOffset();
+            Iterator<Long> it = this.pendingOps.values().iterator();
+            while (it.hasNext()) {
+                if (it.next() < halfCommitOffset) {
+                    it.remove();
+                }
+            }
+            return this.pendingOps.isEmpty() ? this.opReplayOffset : this.pendingOps.firstKey();
+        }
+
+        public synchronized long getHalfReplayOffset() {
+            return halfReplayOffset;
+        }
+
+        public synchronized long getOpReplayOffset() {
+            return opReplayOffset;
+        }
+
+        public Iterable<Map.Entry<Long, HalfEntry>> entries() {
+            return this.halfEntries.entrySet();
+        }
+
+        public HalfEntry getEntry(final long halfOffset) {
+            return this.halfEntries.get(halfOffset);
+        }
+
+        public int size() {
+            return this.halfEntries.size();
+        }
+    }
+
+    /**
+     * Position and check state of a half message, only accessed by the checking thread.
+     */
+    public static class HalfEntry {
+        private final long commitLogOffset;
+        private final long bornTimestamp;
+        private final String checkImmunityTime;
+        private final long preparedQueueOffset;
+        private int checkTimes;
+        private long nextCheckTime = -1;
+
+        HalfEntry(final MessageExt msgExt) {
+            this.commitLogOffset = msgExt.getCommitLogOffset();
+            this.bornTimestamp = msgExt.getBornTimestamp();
+            this.checkImmunityTime = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
+            String checkTimesStr = msgExt.getProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES);
+            int checkTimes = 0;
+            if (checkTimesStr != null) {
+                try {
+                    checkTimes = Integer.parseInt(checkTimesStr);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            this.checkTimes = checkTimes;
+            String preparedQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
+            long preparedQueueOffset = -1;
+            if (preparedQueueOffsetStr != null) {
+                try {
+                    preparedQueueOffset = Long.parseLong(preparedQueueOffsetStr);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            this.preparedQueueOffset = preparedQueueOffset;
+        }
+
+        public long getCommitLogOffset() {
+            return commitLogOffset;
+        }
+
+        public long getBornTimestamp() {
+            return bornTimestamp;
+        }
+
+        public String getCheckImmunityTime() {
+            return checkImmunityTime;
+        }
+
+        /**
+         * @return offset of the prepared half message if this is an immunity copy put back by older versions,
+         * otherwise -1.
+         */
+        public long getPreparedQueueOffset() {
+            return preparedQueueOffset;
+        }
+
+        public int getCheckTimes() {
+            return checkTimes;
+        }
+
+        public void setCheckTimes(int checkTimes) {
+            this.checkTimes = checkTimes;
+        }
+
+        /**
+         * @return next time to check, -1 if it has never been calculated.
+         */
+        public long getNextCheckTime() {
+            return nextCheckTime;
+        }
+
+        public void setNextCheckTime(long nextCheckTime) {
+            this.nextCheckTime = nextCheckTime;
+        }
+    }
+}
@@ -221,11 +221,6 @@ public class TransactionalMessageBridge {
         return true;
     }
 
-    public PutMessageResult putMessageReturnResult(MessageExtBrokerInner messageInner) {
-        LOGGER.debug("[BUG-TO-FIX] Thread:{} msgID:{}", Thread.currentThread().getName(), messageInner.getMsgId());
-        return store.putMessage(messageInner);
-    }
-
     public boolean putMessage(MessageExtBrokerInner messageInner) {
         PutMessageResult putMessageResult = store.putMessage(messageInner);
         if (putMessageResult != null
@@ -238,40 +233,6 @@ public class TransactionalMessageBridge {
         }
     }
 
-    public MessageExtBrokerInner renewImmunityHalfMessageInner(MessageExt msgExt) {
-        MessageExtBrokerInner msgInner = renewHalfMessageInner(msgExt);
-        String queueOffsetFromPrepare = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
-        if (null != queueOffsetFromPrepare) {
-            MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET,
-                String.valueOf(queueOffsetFromPrepare));
-        } else {
-            MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET,
-                String.valueOf(msgExt.getQueueOffset()));
-        }
-
-        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
-
-        return msgInner;
-    }
-
-    public MessageExtBrokerInner renewHalfMessageInner(MessageExt msgExt) {
-        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
-        msgInner.setTopic(msgExt.getTopic());
-        msgInner.setBody(msgExt.getBody());
-        msgInner.setQueueId(msgExt.getQueueId());
-        msgInner.setMsgId(msgExt.getMsgId());
-        msgInner.setSysFlag(msgExt.getSysFlag());
-        msgInner.setTags(msgExt.getTags());
-        msgInner.setTagsCode(MessageExtBrokerInner.tagsString2tagsCode(msgInner.getTags()));
-        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
-        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgExt.getProperties()));
-        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
-        msgInner.setBornHost(msgExt.getBornHost());
-        msgInner.setStoreHost(msgExt.getStoreHost());
-        msgInner.setWaitStoreMsgOK(false);
-        return msgInner;
-    }
-
     private MessageExtBrokerInner makeOpMessageInner(Message message, MessageQueue messageQueue) {
         MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
         msgInner.setTopic(message.getTopic());
@@ -21,6 +21,7 @@ import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -32,27 +33,35 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.store.MessageExtBrokerInner;
 import org.apache.rocketmq.store.PutMessageResult;
-import org.apache.rocketmq.store.PutMessageStatus;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TransactionalMessageServiceImpl implements TransactionalMessageService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
 
     private TransactionalMessageBridge transactionalMessageBridge;
 
-    private static final int PULL_MSG_RETRY_NUMBER = 1;
+    private static final int PULL_MSG_BATCH_NUMBER = 32;
 
     private static final int MAX_PROCESS_TIME_LIMIT = 60000;
 
-    private static final int MAX_RETRY_COUNT_WHEN_HALF_NULL = 1;
+    private final HalfMessageIndex halfMessageIndex = new HalfMessageIndex();
+
+    private volatile ExecutorService checkExecutor;
+
+    /**
+     * Half messages found due for checking in the last round.
+     */
+    private final AtomicLong expiredNums = new AtomicLong(0);
 
     public TransactionalMessageServiceImpl(TransactionalMessageBridge transactionBridge) {
         this.transactionalMessageBridge = transactionBridge;
@@ -70,21 +79,6 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return transactionalMessageBridge.putHalfMessage(messageInner);
     }
 
-    private boolean needDiscard(MessageExt msgExt, int transactionCheckMax) {
-        String checkTimes = msgExt.getProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES);
-        int checkTime = 1;
-        if (null != checkTimes) {
-            checkTime = getInt(checkTimes);
-            if (checkTime >= transactionCheckMax) {
-                return true;
-            } else {
-                checkTime++;
-            }
-        }
-        msgExt.putUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES, String.valueOf(checkTime));
-        return false;
-    }
-
     private boolean needSkip(MessageExt msgExt) {
         long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
         if (valueOfCurrentMinusBorn
@@ -97,35 +91,9 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return false;
     }
 
-    private boolean putBackHalfMsgQueue(MessageExt msgExt, long offset) {
-        PutMessageResult putMessageResult = putBackToHalfQueueReturnResult(msgExt);
-        if (putMessageResult != null
-            && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
-            msgExt.setQueueOffset(
-                putMessageResult.getAppendMessageResult().getLogicsOffset());
-            msgExt.setCommitLogOffset(
-                putMessageResult.getAppendMessageResult().getWroteOffset());
-            msgExt.setMsgId(putMessageResult.getAppendMessageResult().getMsgId());
-            log.debug(
-                "Send check message, the offset={} restored in queueOffset={} "
-                    + "commitLogOffset={} "
-                    + "newMsgId={} realMsgId={} topic={}",
-                offset, msgExt.getQueueOffset(), msgExt.getCommitLogOffset(), msgExt.getMsgId(),
-                msgExt.getUserProperty(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX),
-                msgExt.getTopic());
-            return true;
-        } else {
-            log.error(
-                "PutBackToHalfQueueReturnResult write failed, topic: {}, queueId: {}, "
-                    + "msgId: {}",
-                msgExt.getTopic(), msgExt.getQueueId(), msgExt.getMsgId());
-            return false;
-        }
-    }
-
     @Override
-    public void check(long transactionTimeout, int transactionCheckMax,
-        AbstractTransactionalMessageCheckListener listener) {
+    public void check(final long transactionTimeout, final int transactionCheckMax,
+        final AbstractTransactionalMessageCheckListener listener) {
         try {
             String topic = TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC;
             Set<MessageQueue> msgQueues = transactionalMessageBridge.fetchMessageQueues(topic);
@@ -134,117 +102,25 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                 return;
             }
             log.debug("Check topic={}, queues={}", topic, msgQueues);
-            for (MessageQueue messageQueue : msgQueues) {
-                long startTime = System.currentTimeMillis();
-                MessageQueue opQueue = getOpQueue(messageQueue);
-                long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
-                long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
-                log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
-                if (halfOffset < 0 || opOffset < 0) {
-                    log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
-                        halfOffset, opOffset);
-                    continue;
-                }
+            this.expiredNums.set(0);
+            if (msgQueues.size() == 1) {
+                checkQueue(msgQueues.iterator().next(), transactionTimeout, transactionCheckMax, listener);
+                return;
+            }
 
-                List<Long> doneOpOffset = new ArrayList<>();
-                HashMap<Long, Long> removeMap = new HashMap<>();
-                PullResult pullResult = fillOpRemoveMap(removeMap, opQueue, opOffset, halfOffset, doneOpOffset);
-                if (null == pullResult) {
-                    log.error("The queue={} check msgOffset={} with opOffset={} failed, pullResult is null",
-                        messageQueue, halfOffset, opOffset);
-                    continue;
-                }
-                // single thread
-                int getMessageNullCount = 1;
-                long newOffset = halfOffset;
-                long i = halfOffset;
-                while (true) {
-                    if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
-                        log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
-                        break;
-                    }
-                    if (removeMap.containsKey(i)) {
-                        log.debug("Half offset {} has been committed/rolled back", i);
-                        Long removedOpOffset = removeMap.remove(i);
-                        doneOpOffset.add(removedOpOffset);
-                    } else {
-                        GetResult getResult = getHalfMsg(messageQueue, i);
-                        MessageExt msgExt = getResult.getMsg();
-                        if (msgExt == null) {
-                            if (getMessageNullCount++ > MAX_RETRY_COUNT_WHEN_HALF_NULL) {
-                                break;
-                            }
-                            if (getResult.getPullResult().getPullStatus() == PullStatus.NO_NEW_MSG) {
-                                log.debug("No new msg, the miss offset={} in={}, continue check={}, pull result={}", i,
-                                    messageQueue, getMessageNullCount, getResult.getPullResult());
-                                break;
-                            } else {
-                                log.info("Illegal offset, the miss offset={} in={}, continue check={}, pull result={}",
-                                    i, messageQueue, getMessageNullCount, getResult.getPullResult());
-                                i = getResult.getPullResult().getNextBeginOffset();
-                                newOffset = i;
-                                continue;
-                            }
-                        }
-
-                        if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
-                            listener.resolveDiscardMsg(msgExt);
-                            newOffset = i + 1;
-                            i++;
-                            continue;
-                        }
-                        if (msgExt.getStoreTimestamp() >= startTime) {
-                            log.debug("Fresh stored. the miss offset={}, check it later, store={}", i,
-                                new Date(msgExt.getStoreTimestamp()));
-                            break;
-                        }
-
-                        long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
-                        long checkImmunityTime = transactionTimeout;
-                        String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
-                        if (null != checkImmunityTimeStr) {
-                            checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
-                            if (valueOfCurrentMinusBorn < checkImmunityTime) {
-                                if (checkPrepareQueueOffset(removeMap, doneOpOffset, msgExt)) {
-                                    newOffset = i + 1;
-                                    i++;
-                                    continue;
-                                }
-                            }
-                        } else {
-                            if ((0 <= valueOfCurrentMinusBorn) && (valueOfCurrentMinusBorn < checkImmunityTime)) {
-                                log.debug("New arrived, the miss offset={}, check it later checkImmunity={}, born={}", i,
-                                    checkImmunityTime, new Date(msgExt.getBornTimestamp()));
-                                break;
-                            }
-                        }
-                        List<MessageExt> opMsg = pullResult.getMsgFoundList();
-                        boolean isNeedCheck = (opMsg == null && valueOfCurrentMinusBorn > checkImmunityTime)
-                            || (opMsg != null && (opMsg.get(opMsg.size() - 1).getBornTimestamp() - startTime > transactionTimeout))
-                            || (valueOfCurrentMinusBorn <= -1);
-
-                        if (isNeedCheck) {
-                            if (!putBackHalfMsgQueue(msgExt, i)) {
-                                continue;
-                            }
-                            listener.resolveHalfMsg(msgExt);
-                        } else {
-                            pullResult = fillOpRemoveMap(removeMap, opQueue, pullResult.getNextBeginOffset(), halfOffset, doneOpOffset);
-                            log.debug("The miss offset:{} in messageQueue:{} need to get more opMsg, result is:{}", i,
-                                messageQueue, pullResult);
-                            continue;
-                        }
+            // queues are independent, check them in parallel.
+            ExecutorService executor = getCheckExecutor();
+            List<Future<?>> futures = new ArrayList<Future<?>>(msgQueues.size());
+            for (final MessageQueue messageQueue : msgQueues) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkQueue(messageQueue, transactionTimeout, transactionCheckMax, listener);
                     }
-                    newOffset = i + 1;
-                    i++;
-                }
-                if (newOffset != halfOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(messageQueue, newOffset);
-                }
-                long newOpOffset = calculateOpOffset(doneOpOffset, opOffset);
-                if (newOpOffset != opOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
-                }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
             }
         } catch (Throwable e) {
             log.error("Check error", e);
@@ -252,118 +128,170 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     }
 
-    private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
-        long checkImmunityTime;
+    /**
+     * Check half messages of one queue, queues are checked by different threads.
+     */
+    private void checkQueue(MessageQueue messageQueue, long transactionTimeout, int transactionCheckMax,
+        AbstractTransactionalMessageCheckListener listener) {
+        long startTime = System.currentTimeMillis();
+        MessageQueue opQueue = getOpQueue(messageQueue);
+        long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
+        long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
+        log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
+        if (halfOffset < 0 || opOffset < 0) {
+            log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
+                halfOffset, opOffset);
+            return;
+        }
 
-        checkImmunityTime = getLong(checkImmunityTimeStr);
-        if (-1 == checkImmunityTime) {
-            checkImmunityTime = transactionTimeout;
-        } else {
-            checkImmunityTime *= 1000;
+        HalfMessageIndex.QueueIndex index =
+            this.halfMessageIndex.getOrCreate(messageQueue.getQueueId(), halfOffset, opOffset);
+        // half messages before op messages, so an op message never refers to a half message not replayed.
+        replayHalfQueue(messageQueue, index, startTime);
+        replayOpQueue(opQueue, index, startTime);
+        checkHalfMessages(messageQueue, index, startTime, transactionTimeout, transactionCheckMax, listener);
+
+        long newOffset = index.getHalfCommitOffset();
+        if (newOffset != halfOffset) {
+            transactionalMessageBridge.updateConsumeOffset(messageQueue, newOffset);
         }
-        return checkImmunityTime;
+        long newOpOffset = index.getOpCommitOffset();
+        if (newOpOffset != opOffset) {
+            transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
+        }
+        log.info("After check, the queue={} msgOffset={} opOffset={} unresolved={}", messageQueue, newOffset,
+            newOpOffset, index.size());
     }
 
     /**
-     * Read op message, parse op message, and fill removeMap
-     *
-     * @param removeMap Half message to be remove, key:halfOffset, value: opOffset.
-     * @param opQueue Op message queue.
-     * @param pullOffsetOfOp The begin offset of op message queue.
-     * @param miniOffset The current minimum offset of half message queue.
-     * @param doneOpOffset Stored op messages that have been processed.
-     * @return Op message result.
+     * Add half messages stored since last check to the index.
      */
-    private PullResult fillOpRemoveMap(HashMap<Long, Long> removeMap,
-        MessageQueue opQueue, long pullOffsetOfOp, long miniOffset, List<Long> doneOpOffset) {
-        PullResult pullResult = pullOpMsg(opQueue, pullOffsetOfOp, 32);
-        if (null == pullResult) {
-            return null;
-        }
-        if (pullResult.getPullStatus() == PullStatus.OFFSET_ILLEGAL
-            || pullResult.getPullStatus() == PullStatus.NO_MATCHED_MSG) {
-            log.warn("The miss op offset={} in queue={} is illegal, pullResult={}", pullOffsetOfOp, opQueue,
-                pullResult);
-            transactionalMessageBridge.updateConsumeOffset(opQueue, pullResult.getNextBeginOffset());
-            return pullResult;
-        } else if (pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
-            log.warn("The miss op offset={} in queue={} is NO_NEW_MSG, pullResult={}", pullOffsetOfOp, opQueue,
-                pullResult);
-            return pullResult;
-        }
-        List<MessageExt> opMsg = pullResult.getMsgFoundList();
-        if (opMsg == null) {
-            log.warn("The miss op offset={} in queue={} is empty, pullResult={}", pullOffsetOfOp, opQueue, pullResult);
-            return pullResult;
-        }
-        for (MessageExt opMessageExt : opMsg) {
-            Long queueOffset = getLong(new String(opMessageExt.getBody(), TransactionalMessageUtil.charset));
-            log.debug("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
-                opMessageExt.getTags(), opMessageExt.getQueueOffset(), queueOffset);
-            if (TransactionalMessageUtil.REMOVETAG.equals(opMessageExt.getTags())) {
-                if (queueOffset < miniOffset) {
-                    doneOpOffset.add(opMessageExt.getQueueOffset());
-                } else {
-                    removeMap.put(queueOffset, opMessageExt.getQueueOffset());
+    private void replayHalfQueue(MessageQueue messageQueue, HalfMessageIndex.QueueIndex index, long startTime) {
+        while (System.currentTimeMillis() - startTime <= MAX_PROCESS_TIME_LIMIT) {
+            long offset = index.getHalfReplayOffset();
+            PullResult pullResult = pullHalfMsg(messageQueue, offset, PULL_MSG_BATCH_NUMBER);
+            if (null == pullResult || pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
+                return;
+            }
+
+            if (pullResult.getPullStatus() != PullStatus.FOUND || pullResult.getMsgFoundList() == null) {
+                log.info("Illegal offset, the miss offset={} in={}, pull result={}", offset, messageQueue, pullResult);
+                if (pullResult.getNextBeginOffset() <= offset) {
+                    return;
                 }
             } else {
-                log.error("Found a illegal tag in opMessageExt= {} ", opMessageExt);
+                for (MessageExt msgExt : pullResult.getMsgFoundList()) {
+                    index.addHalf(msgExt);
+                }
+            }
+            index.advanceHalfReplayOffset(pullResult.getNextBeginOffset());
+            if (index.getHalfReplayOffset() == offset) {
+                return;
             }
         }
-        log.debug("Remove map: {}", removeMap);
-        log.debug("Done op list: {}", doneOpOffset);
-        return pullResult;
+        log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
     }
 
     /**
-     * If return true, skip this msg
-     *
-     * @param removeMap Op message map to determine whether a half message was responded by producer.
-     * @param doneOpOffset Op Message which has been checked.
-     * @param msgExt Half message
-     * @return Return true if put success, otherwise return false.
+     * Apply commit or rollback markers stored since last check to the index.
      */
-    private boolean checkPrepareQueueOffset(HashMap<Long, Long> removeMap, List<Long> doneOpOffset,
-        MessageExt msgExt) {
-        String prepareQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
-        if (null == prepareQueueOffsetStr) {
-            return putImmunityMsgBackToHalfQueue(msgExt);
-        } else {
-            long prepareQueueOffset = getLong(prepareQueueOffsetStr);
-            if (-1 == prepareQueueOffset) {
-                return false;
+    private void replayOpQueue(MessageQueue opQueue, HalfMessageIndex.QueueIndex index, long startTime) {
+        while (System.currentTimeMillis() - startTime <= MAX_PROCESS_TIME_LIMIT) {
+            long offset = index.getOpReplayOffset();
+            PullResult pullResult = pullOpMsg(opQueue, offset, PULL_MSG_BATCH_NUMBER);
+            if (null == pullResult || pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
+                return;
+            }
+
+            if (pullResult.getPullStatus() != PullStatus.FOUND || pullResult.getMsgFoundList() == null) {
+                log.warn("The miss op offset={} in queue={} is illegal, pullResult={}", offset, opQueue, pullResult);
+                if (pullResult.getNextBeginOffset() <= offset) {
+                    return;
+                }
             } else {
-                if (removeMap.containsKey(prepareQueueOffset)) {
-                    long tmpOpOffset = removeMap.remove(prepareQueueOffset);
-                    doneOpOffset.add(tmpOpOffset);
-                    return true;
-                } else {
-                    return putImmunityMsgBackToHalfQueue(msgExt);
+                for (MessageExt opMessageExt : pullResult.getMsgFoundList()) {
+                    Long queueOffset = getLong(new String(opMessageExt.getBody(), TransactionalMessageUtil.charset));
+                    log.debug("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
+                        opMessageExt.getTags(), opMessageExt.getQueueOffset(), queueOffset);
+                    if (TransactionalMessageUtil.REMOVETAG.equals(opMessageExt.getTags())) {
+                        index.addOp(opMessageExt.getQueueOffset(), queueOffset);
+                    } else {
+                        log.error("Found a illegal tag in opMessageExt= {} ", opMessageExt);
+                    }
                 }
             }
+            index.advanceOpReplayOffset(pullResult.getNextBeginOffset());
+            if (index.getOpReplayOffset() == offset) {
+                return;
+            }
         }
+        log.info("Queue={} process time reach max={}", opQueue, MAX_PROCESS_TIME_LIMIT);
     }
 
     /**
-     * Write messageExt to Half topic again
-     *
-     * @param messageExt Message will be write back to queue
-     * @return Put result can used to determine the specific results of storage.
+     * Send check requests for half messages unresolved after their check immunity time, or discard them.
      */
-    private PutMessageResult putBackToHalfQueueReturnResult(MessageExt messageExt) {
-        PutMessageResult putMessageResult = null;
-        try {
-            MessageExtBrokerInner msgInner = transactionalMessageBridge.renewHalfMessageInner(messageExt);
-            putMessageResult = transactionalMessageBridge.putMessageReturnResult(msgInner);
-        } catch (Exception e) {
-            log.warn("PutBackToHalfQueueReturnResult error", e);
+    private void checkHalfMessages(MessageQueue messageQueue, HalfMessageIndex.QueueIndex index, long startTime,
+        long transactionTimeout, int transactionCheckMax, AbstractTransactionalMessageCheckListener listener) {
+        for (Map.Entry<Long, HalfMessageIndex.HalfEntry> entry : index.entries()) {
+            if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
+                log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
+                break;
+            }
+
+            long halfOffset = entry.getKey();
+            HalfMessageIndex.HalfEntry halfEntry = entry.getValue();
+            long now = System.currentTimeMillis();
+            if (halfEntry.getNextCheckTime() < 0) {
+                long checkImmunityTime = transactionTimeout;
+                if (null != halfEntry.getCheckImmunityTime()) {
+                    checkImmunityTime = getImmunityTime(halfEntry.getCheckImmunityTime(), transactionTimeout);
+                }
+                halfEntry.setNextCheckTime(halfEntry.getBornTimestamp() + checkImmunityTime);
+            }
+            // born in future, the clock of producer may be wrong.
+            if (now < halfEntry.getNextCheckTime() && now >= halfEntry.getBornTimestamp()) {
+                continue;
+            }
+
+            MessageExt msgExt = transactionalMessageBridge.lookMessageByOffset(halfEntry.getCommitLogOffset());
+            if (null == msgExt) {
+                log.warn("Half message of offset={} in={} is not found, maybe expired, commitLogOffset={}",
+                    halfOffset, messageQueue, halfEntry.getCommitLogOffset());
+                index.markRemoved(halfOffset);
+                continue;
+            }
+
+            if (halfEntry.getCheckTimes() >= transactionCheckMax || needSkip(msgExt)) {
+                listener.resolveDiscardMsg(msgExt);
+                // never replayed again after restart.
+                deletePrepareMessage(msgExt);
+                index.markRemoved(halfOffset);
+                continue;
+            }
+
+            this.expiredNums.incrementAndGet();
+            int checkTimes = halfEntry.getCheckTimes() + 1;
+            msgExt.putUserProperty(MessageConst.PROPERTY_TRANSACTION_CHECK_TIMES, String.valueOf(checkTimes));
+            if (!listener.resolveHalfMsg(msgExt)) {
+                // dropped, neither counted as a check nor delayed, so it is due again in the next round.
+                continue;
+            }
+            halfEntry.setCheckTimes(checkTimes);
+            halfEntry.setNextCheckTime(now + transactionTimeout);
         }
-        return putMessageResult;
     }
 
-    private boolean putImmunityMsgBackToHalfQueue(MessageExt messageExt) {
-        MessageExtBrokerInner msgInner = transactionalMessageBridge.renewImmunityHalfMessageInner(messageExt);
-        return transactionalMessageBridge.putMessage(msgInner);
+    private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
+        long checkImmunityTime;
+
+        checkImmunityTime = getLong(checkImmunityTimeStr);
+        if (-1 == checkImmunityTime) {
+            checkImmunityTime = transactionTimeout;
+        } else {
+            checkImmunityTime *= 1000;
+        }
+        return checkImmunityTime;
     }
 
     /**
@@ -401,31 +329,6 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     }
 
-    private Integer getInt(String s) {
-        int v = -1;
-        try {
-            v = Integer.valueOf(s);
-        } catch (Exception e) {
-            log.error("GetInt error", e);
-        }
-        return v;
-
-    }
-
-    private long calculateOpOffset(List<Long> doneOffset, long oldOffset) {
-        Collections.sort(doneOffset);
-        long newOffset = oldOffset;
-        for (int i = 0; i < doneOffset.size(); i++) {
-            if (doneOffset.get(i) == newOffset) {
-                newOffset++;
-            } else {
-                break;
-            }
-        }
-        return newOffset;
-
-    }
-
     private MessageQueue getOpQueue(MessageQueue messageQueue) {
         MessageQueue opQueue = opQueueMap.get(messageQueue);
         if (opQueue == null) {
@@ -437,19 +340,6 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     }
 
-    private GetResult getHalfMsg(MessageQueue messageQueue, long offset) {
-        GetResult getResult = new GetResult();
-
-        PullResult result = pullHalfMsg(messageQueue, offset, PULL_MSG_RETRY_NUMBER);
-        getResult.setPullResult(result);
-        List<MessageExt> messageExts = result.getMsgFoundList();
-        if (messageExts == null) {
-            return getResult;
-        }
-        getResult.setMsg(messageExts.get(0));
-        return getResult;
-    }
-
     private OperationResult getHalfMessageByOffset(long commitLogOffset) {
         OperationResult response = new OperationResult();
         MessageExt messageExt = this.transactionalMessageBridge.lookMessageByOffset(commitLogOffset);
@@ -467,6 +357,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     public boolean deletePrepareMessage(MessageExt msgExt) {
         if (this.transactionalMessageBridge.putOpMessage(msgExt, TransactionalMessageUtil.REMOVETAG)) {
             log.debug("Transaction op message write successfully. messageId={}, queueId={} msgExt:{}", msgExt.getMsgId(), msgExt.getQueueId(), msgExt);
+            this.halfMessageIndex.remove(msgExt.getQueueId(), msgExt.getQueueOffset());
             return true;
         } else {
             log.error("Transaction op message write failed. messageId is {}, queueId is {}", msgExt.getMsgId(), msgExt.getQueueId());
@@ -484,6 +375,33 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
         return getHalfMessageByOffset(requestHeader.getCommitLogOffset());
     }
 
+    public HalfMessageIndex getHalfMessageIndex() {
+        return halfMessageIndex;
+    }
+
+    @Override
+    public long getUnresolvedHalfMessageNums() {
+        return this.halfMessageIndex.size();
+    }
+
+    @Override
+    public long getExpiredHalfMessageNums() {
+        return this.expiredNums.get();
+    }
+
+    private ExecutorService getCheckExecutor() {
+        if (null == this.checkExecutor) {
+            synchronized (this) {
+                if (null == this.checkExecutor) {
+                    int threadNums = transactionalMessageBridge.getBrokerController().getBrokerConfig().getTransactionCheckThreadPoolNums();
+                    this.checkExecutor = Executors.newFixedThreadPool(Math.max(1, threadNums),
+                        new ThreadFactoryImpl("TransactionCheckThread_", true));
+                }
+            }
+        }
+        return this.checkExecutor;
+    }
+
     @Override
     public boolean open() {
         return true;
@@ -491,7 +409,9 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     @Override
     public void close() {
-
+        if (this.checkExecutor != null) {
+            this.checkExecutor.shutdown();
+        }
     }
 
 }
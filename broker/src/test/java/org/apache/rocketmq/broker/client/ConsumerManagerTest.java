@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.remoting.protocol.LanguageCode;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerManagerTest {
+    private final String group = "FooBarGroup";
+    private final List<Object[]> changes = new ArrayList<Object[]>();
+    private ConsumerManager consumerManager;
+    private ClientChannelInfo clientInfo;
+    private ClientChannelInfo otherClientInfo;
+    private Set<SubscriptionData> subList;
+
+    @Mock
+    private Channel channel;
+    @Mock
+    private Channel otherChannel;
+
+    @Before
+    public void init() {
+        consumerManager = new ConsumerManager(new ConsumerIdsChangeListener() {
+            @Override
+            public void handle(ConsumerGroupEvent event, String group, Object... args) {
+                if (event == ConsumerGroupEvent.CHANGE) {
+                    changes.add(args);
+                }
+            }
+        });
+        clientInfo = new ClientChannelInfo(channel, "clientId", LanguageCode.JAVA, 0);
+        otherClientInfo = new ClientChannelInfo(otherChannel, "otherClientId", LanguageCode.JAVA, 0);
+        subList = Collections.singleton(new SubscriptionData("FooBar", "*"));
+    }
+
+    @Test
+    public void testRegisterConsumerIncreasesVersion() {
+        register(clientInfo, true);
+        long version = membershipVersion();
+        assertThat(version).isGreaterThan(0);
+        assertThat(changes).hasSize(1);
+        assertThat(changes.get(0)[1]).isEqualTo(version);
+
+        register(clientInfo, true);
+        assertThat(membershipVersion()).isEqualTo(version);
+        assertThat(changes).hasSize(1);
+
+        register(otherClientInfo, false);
+        assertThat(membershipVersion()).isGreaterThan(version);
+        assertThat(changes).hasSize(1);
+    }
+
+    @Test
+    public void testUnregisterConsumerIncreasesVersion() {
+        register(clientInfo, true);
+        register(otherClientInfo, true);
+        long version = membershipVersion();
+
+        consumerManager.unregisterConsumer(group, otherClientInfo, true);
+        assertThat(membershipVersion()).isGreaterThan(version);
+        assertThat(changes).hasSize(3);
+        assertThat(changes.get(2)[0]).isEqualTo(Collections.singletonList(channel));
+        assertThat(changes.get(2)[1]).isEqualTo(membershipVersion());
+    }
+
+    @Test
+    public void testDoChannelCloseEventIncreasesVersion() {
+        register(clientInfo, true);
+        register(otherClientInfo, true);
+        long version = membershipVersion();
+
+        consumerManager.doChannelCloseEvent("127.0.0.1:10911", otherChannel);
+        assertThat(membershipVersion()).isGreaterThan(version);
+        assertThat(changes).hasSize(3);
+        assertThat(changes.get(2)[1]).isEqualTo(membershipVersion());
+    }
+
+    @Test
+    public void testScanNotActiveChannelIncreasesVersionAndNotifies() throws Exception {
+        register(clientInfo, true);
+        register(otherClientInfo, true);
+        long version = membershipVersion();
+
+        consumerManager.scanNotActiveChannel();
+        assertThat(membershipVersion()).isEqualTo(version);
+        assertThat(changes).hasSize(2);
+
+        when(otherChannel.close()).thenReturn(mock(ChannelFuture.class));
+        consumerManager.getConsumerGroupInfo(group).getChannelInfoTable().get(otherChannel)
+            .setLastUpdateTimestamp(System.currentTimeMillis() - 1000 * 120 - 10);
+        consumerManager.scanNotActiveChannel();
+        assertThat(membershipVersion()).isGreaterThan(version);
+        assertThat(consumerManager.findChannel(group, "otherClientId")).isNull();
+        assertThat(changes).hasSize(3);
+        assertThat(changes.get(2)[0]).isEqualTo(Collections.singletonList(channel));
+        assertThat(changes.get(2)[1]).isEqualTo(membershipVersion());
+    }
+
+    private void register(final ClientChannelInfo info, final boolean notify) {
+        consumerManager.registerConsumer(group, info, ConsumeType.CONSUME_PASSIVELY, MessageModel.CLUSTERING,
+            ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET, subList, notify);
+    }
+
+    private long membershipVersion() {
+        return consumerManager.getConsumerGroupInfo(group).getMembershipVersion();
+    }
+}
@@ -19,7 +19,9 @@ package org.apache.rocketmq.broker.filter;
 
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.filter.ExpressionType;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.filter.util.BitsArray;
+import org.apache.rocketmq.store.ConsumeQueueExt;
 import org.apache.rocketmq.store.DispatchRequest;
 import org.junit.Test;
 
@@ -188,4 +190,84 @@ public class CommitLogDispatcherCalcBitMapTest {
             }
         }
     }
+
+    @Test
+    public void testDispatch_afterResizeBloomFilter() {
+        BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setEnableCalcFilterBitMap(true);
+
+        ConsumerFilterManager filterManager = ConsumerFilterManagerTest.gen(1, 10);
+
+        CommitLogDispatcherCalcBitMap calcBitMap = new CommitLogDispatcherCalcBitMap(brokerConfig,
+            filterManager);
+
+        Map<String, String> properties = new HashMap<String, String>(4);
+        properties.put("a", "25");
+
+        byte[] oldBitMap = dispatch(calcBitMap, "topic0", properties).getBitMap();
+
+        filterManager.resizeBloomFilter(filterManager.getBloomFilter().getN() * 2);
+
+        byte[] newBitMap = dispatch(calcBitMap, "topic0", properties).getBitMap();
+        assertThat(newBitMap.length * Byte.SIZE).isEqualTo(filterManager.getBloomFilter().getM());
+
+        // a > 10 and a < 30
+        ConsumerFilterData matched = filterManager.get("topic0", "CID_2");
+        // a > 40 and a < 60
+        ConsumerFilterData notMatched = filterManager.get("topic0", "CID_5");
+
+        ExpressionMessageFilter filter = new ExpressionMessageFilter(subscription(matched), matched, filterManager);
+        // bit map of old bloom filter is not used.
+        assertThat(filter.isMatchedByConsumeQueue(1L, new ConsumeQueueExt.CqExtUnit(1L, System.currentTimeMillis() + 1000, oldBitMap))).isTrue();
+        assertThat(filter.isMatchedByConsumeQueue(1L, new ConsumeQueueExt.CqExtUnit(1L, System.currentTimeMillis() + 1000, newBitMap))).isTrue();
+        assertThat(filter.isMatchedByCommitLog(null, properties)).isTrue();
+
+        filter = new ExpressionMessageFilter(subscription(notMatched), notMatched, filterManager);
+        assertThat(filter.isMatchedByConsumeQueue(1L, new ConsumeQueueExt.CqExtUnit(1L, System.currentTimeMillis() + 1000, newBitMap))).isFalse();
+
+        FilterEfficiencyStats.TopicStats stats = filterManager.getFilterEfficiencyStats().get("topic0");
+        assertThat(stats.getBitMapAbsent()).isEqualTo(1);
+        assertThat(stats.getBitMapHit()).isEqualTo(1);
+        assertThat(stats.getBitMapMiss()).isEqualTo(1);
+        assertThat(stats.getBitMapFalseHit()).isEqualTo(0);
+
+        // false hit
+        filter = new ExpressionMessageFilter(subscription(notMatched), notMatched, filterManager);
+        assertThat(filter.isMatchedByConsumeQueue(1L, new ConsumeQueueExt.CqExtUnit(1L, System.currentTimeMillis() + 1000, newBitMap))).isFalse();
+        BitsArray allSet = BitsArray.create(newBitMap);
+        for (int i = 0; i < allSet.bitLength(); i++) {
+            allSet.setBit(i, true);
+        }
+        assertThat(filter.isMatchedByConsumeQueue(1L, new ConsumeQueueExt.CqExtUnit(1L, System.currentTimeMillis() + 1000, allSet.bytes()))).isTrue();
+        assertThat(filter.isMatchedByCommitLog(null, properties)).isFalse();
+        assertThat(stats.getBitMapFalseHit()).isEqualTo(1);
+    }
+
+    private static DispatchRequest dispatch(CommitLogDispatcherCalcBitMap calcBitMap, String topic,
+        Map<String, String> properties) {
+        DispatchRequest dispatchRequest = new DispatchRequest(
+            topic,
+            0,
+            123,
+            100,
+            1L,
+            System.currentTimeMillis(),
+            0,
+            null,
+            UUID.randomUUID().toString(),
+            0,
+            0,
+            properties
+        );
+        calcBitMap.dispatch(dispatchRequest);
+        return dispatchRequest;
+    }
+
+    private static SubscriptionData subscription(ConsumerFilterData filterData) {
+        SubscriptionData subscriptionData = new SubscriptionData();
+        subscriptionData.setTopic(filterData.getTopic());
+        subscriptionData.setSubString(filterData.getExpression());
+        subscriptionData.setExpressionType(filterData.getExpressionType());
+        return subscriptionData;
+    }
 }
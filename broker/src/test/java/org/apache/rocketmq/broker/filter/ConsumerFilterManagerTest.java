@@ -21,6 +21,7 @@ import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.filter.ExpressionType;
 import org.apache.rocketmq.common.filter.FilterAPI;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.filter.util.BloomFilter;
 import org.junit.Test;
 
 import java.io.File;
@@ -274,4 +275,89 @@ public class ConsumerFilterManagerTest {
         }
     }
 
+    @Test
+    public void testResizeBloomFilter() {
+        ConsumerFilterManager filterManager = gen(2, 10);
+
+        BloomFilter old = filterManager.getBloomFilter();
+        filterManager.resizeBloomFilter(old.getN() * 2);
+
+        BloomFilter bloomFilter = filterManager.getBloomFilter();
+        assertThat(bloomFilter.getN()).isEqualTo(old.getN() * 2);
+        assertThat(bloomFilter.getM()).isGreaterThan(old.getM());
+        assertThat(filterManager.getBloomFilterExpectNum()).isEqualTo(bloomFilter.getN());
+
+        for (ConsumerFilterData filterData : filterManager.get("topic1")) {
+            assertThat(bloomFilter.isValid(filterData.getBloomFilterData())).isTrue();
+            assertThat(filterData.getBloomFilterData())
+                .isEqualTo(bloomFilter.generate(filterData.getConsumerGroup() + "#" + filterData.getTopic()));
+        }
+
+        try {
+            filterManager.persist();
+
+            ConsumerFilterManager loadFilter = new ConsumerFilterManager();
+            assertThat(loadFilter.load()).isTrue();
+
+            assertThat(loadFilter.getBloomFilter()).isEqualTo(bloomFilter);
+            assertThat(loadFilter.get("topic1", "CID_9")).isNotNull();
+        } finally {
+            UtilAll.deleteFile(new File("./unit_test"));
+        }
+    }
+
+    @Test
+    public void testResizeBloomFilter_concurrentRegister() throws InterruptedException {
+        final ConsumerFilterManager filterManager = gen(1, 1);
+        Thread register = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                filterManager.register("topic0", "CID_CONCURRENT", "a > 1", ExpressionType.SQL92, 1);
+            }
+        });
+
+        // register waits for resizing, so its bloom filter data is generated by the new bloom filter.
+        synchronized (filterManager) {
+            register.start();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (register.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(register.getState()).isEqualTo(Thread.State.BLOCKED);
+            filterManager.resizeBloomFilter(filterManager.getBloomFilter().getN() * 2);
+        }
+        register.join();
+
+        assertThat(filterManager.getBloomFilter().isValid(filterManager.get("topic0", "CID_CONCURRENT").getBloomFilterData())).isTrue();
+    }
+
+    @Test
+    public void testAdjustBloomFilter() {
+        ConsumerFilterManager filterManager = gen(1, 10);
+        int n = filterManager.getBloomFilter().getN();
+
+        // nothing observed.
+        assertThat(filterManager.adjustBloomFilter(1024)).isFalse();
+
+        // false positive rate is 50%, much more than 20%
+        FilterEfficiencyStats stats = filterManager.getFilterEfficiencyStats();
+        for (int i = 0; i < 1000; i++) {
+            stats.incBitMapMiss("topic0");
+            stats.incBitMapHit("topic0");
+            stats.incBitMapFalseHit("topic0");
+        }
+        assertThat(filterManager.adjustBloomFilter(n * 4)).isTrue();
+        assertThat(filterManager.getBloomFilter().getN()).isEqualTo(n * 2);
+
+        // stats are rolled.
+        assertThat(filterManager.adjustBloomFilter(n * 4)).isFalse();
+
+        // more consumers than expected, but limited.
+        for (int i = 0; i < n * 4; i++) {
+            filterManager.register("topic0", "CID_MORE_" + i, "a > 1", ExpressionType.SQL92, 1);
+        }
+        assertThat(filterManager.adjustBloomFilter(n * 3)).isTrue();
+        assertThat(filterManager.getBloomFilter().getN()).isEqualTo(n * 3);
+        assertThat(filterManager.adjustBloomFilter(n * 3)).isFalse();
+    }
 }
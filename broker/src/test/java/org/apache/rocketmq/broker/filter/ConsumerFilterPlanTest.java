@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.filter;
+
+import org.apache.rocketmq.common.filter.ExpressionType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumerFilterPlanTest {
+
+    private static final String[] EXPRESSIONS = new String[] {
+        "region = 'hz'",
+        "'sh' = region",
+        "region = 'hz' and a > 5",
+        "a > 5 and (region = 'sh' and b = 'x')",
+        "region = 'hz' or a > 5",
+        "region <> 'hz'",
+        "b = 'x'",
+        "b = 'x' and a < 3",
+        "a between 3 and 10",
+        "region is null"
+    };
+
+    private static final String[] VALUES = new String[] {
+        null, "hz", "sh", "x", "4", "7"
+    };
+
+    @Test
+    public void testEvaluateSameAsEachExpression() {
+        ConsumerFilterManager filterManager = new ConsumerFilterManager();
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            // two consumers share each expression.
+            filterManager.register("topic", "CID_" + i, EXPRESSIONS[i], ExpressionType.SQL92, 1);
+            filterManager.register("topic", "CID_SHARED_" + i, EXPRESSIONS[i], ExpressionType.SQL92, 1);
+        }
+
+        ConsumerFilterPlan plan = filterManager.getFilterPlan("topic");
+        assertThat(plan.getConsumerNum()).isEqualTo(EXPRESSIONS.length * 2);
+        assertThat(plan.getEntryNum()).isEqualTo(EXPRESSIONS.length);
+        assertThat(plan.getIndexedEntryNum()).isEqualTo(6);
+
+        for (String region : VALUES) {
+            for (String a : VALUES) {
+                for (String b : VALUES) {
+                    Map<String, String> properties = new HashMap<String, String>();
+                    properties.put("region", region);
+                    properties.put("a", a);
+                    properties.put("b", b);
+                    MessageEvaluationContext context = new MessageEvaluationContext(properties);
+
+                    Set<String> expected = new HashSet<String>();
+                    for (ConsumerFilterData filterData : filterManager.get("topic")) {
+                        if (isTrue(filterData, context)) {
+                            expected.add(filterData.getConsumerGroup());
+                        }
+                    }
+
+                    Set<String> actual = new HashSet<String>();
+                    for (ConsumerFilterData filterData : plan.evaluate(context)) {
+                        assertThat(actual.add(filterData.getConsumerGroup())).isTrue();
+                    }
+
+                    assertThat(actual).describedAs("%s", properties).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildWhenChanged() {
+        ConsumerFilterManager filterManager = new ConsumerFilterManager();
+        assertThat(filterManager.getFilterPlan("topic")).isNull();
+
+        filterManager.register("topic", "CID_0", "region = 'hz'", ExpressionType.SQL92, 1);
+
+        ConsumerFilterPlan plan = filterManager.getFilterPlan("topic");
+        assertThat(plan.getConsumerNum()).isEqualTo(1);
+        assertThat(filterManager.getFilterPlan("topic")).isSameAs(plan);
+
+        // same version, nothing changed.
+        filterManager.register("topic", "CID_0", "region = 'sh'", ExpressionType.SQL92, 1);
+        assertThat(filterManager.getFilterPlan("topic")).isSameAs(plan);
+
+        filterManager.register("topic", "CID_0", "region = 'sh'", ExpressionType.SQL92, 2);
+        ConsumerFilterPlan changed = filterManager.getFilterPlan("topic");
+        assertThat(changed).isNotSameAs(plan);
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("region", "sh");
+        assertThat(changed.evaluate(new MessageEvaluationContext(properties))).hasSize(1);
+
+        filterManager.register("topic", "CID_1", "region = 'sh'", ExpressionType.SQL92, 1);
+        changed = filterManager.getFilterPlan("topic");
+        assertThat(changed.getConsumerNum()).isEqualTo(2);
+        assertThat(changed.getEntryNum()).isEqualTo(1);
+        assertThat(changed.evaluate(new MessageEvaluationContext(properties))).hasSize(2);
+    }
+
+    private static boolean isTrue(ConsumerFilterData filterData, MessageEvaluationContext context) {
+        try {
+            return Boolean.TRUE.equals(filterData.getCompiledExpression().evaluate(context));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.filter;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.filter.FilterFactory;
+import org.apache.rocketmq.filter.expression.Expression;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageEvaluationContextTest {
+
+    @Test
+    public void testEvaluateOnMessageBuffer() throws Exception {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("topic");
+        messageExt.setBody("body".getBytes());
+        messageExt.setBornHost(new InetSocketAddress("127.0.0.1", 9000));
+        messageExt.setStoreHost(new InetSocketAddress("127.0.0.1", 9000));
+        messageExt.putUserProperty("region", "hangzhou");
+        messageExt.putUserProperty("price", "100");
+
+        ByteBuffer msgBuffer = ByteBuffer.wrap(MessageDecoder.encode(messageExt, false));
+        MessageEvaluationContext context = new MessageEvaluationContext(msgBuffer);
+
+        assertThat(context.get("region")).isEqualTo("hangzhou");
+        assertThat(context.get("price")).isEqualTo("100");
+        assertThat(context.get("none")).isNull();
+        assertThat(context.keyValues()).containsEntry("region", "hangzhou").containsEntry("price", "100");
+
+        Expression expression = FilterFactory.INSTANCE.get("SQL92").compile("region = 'hangzhou' and price between 50 and 200");
+        assertThat(expression.evaluate(context)).isEqualTo(Boolean.TRUE);
+        expression = FilterFactory.INSTANCE.get("SQL92").compile("region = 'beijing' or price > 200");
+        assertThat(expression.evaluate(context)).isEqualTo(Boolean.FALSE);
+    }
+}
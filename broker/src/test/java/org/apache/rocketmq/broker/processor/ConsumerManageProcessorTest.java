@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.processor;
+
+import io.netty.channel.ChannelHandlerContext;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerManageProcessorTest {
+    private ConsumerManageProcessor consumerManageProcessor;
+    @Spy
+    private BrokerController brokerController = new BrokerController(new BrokerConfig(), new NettyServerConfig(), new NettyClientConfig(), new MessageStoreConfig());
+    @Mock
+    private ChannelHandlerContext handlerContext;
+
+    private String group = "FooBarGroup";
+    private String topic = "FooBar";
+    private String brokerName = "DefaultBrokerName";
+
+    @Before
+    public void init() {
+        consumerManageProcessor = new ConsumerManageProcessor(brokerController);
+    }
+
+    @Test
+    public void testUpdateConsumerOffsetBatch() throws Exception {
+        Map<MessageQueue, Long> offsetTable = new HashMap<MessageQueue, Long>();
+        offsetTable.put(new MessageQueue(topic, brokerName, 0), 100L);
+        offsetTable.put(new MessageQueue(topic, brokerName, 1), 200L);
+        offsetTable.put(new MessageQueue("OtherTopic", brokerName, 0), 300L);
+
+        RemotingCommand response = consumerManageProcessor.processRequest(handlerContext,
+            createUpdateConsumerOffsetBatchCommand(offsetTable));
+
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(brokerController.getConsumerOffsetManager().queryOffset(group, topic, 0)).isEqualTo(100L);
+        assertThat(brokerController.getConsumerOffsetManager().queryOffset(group, topic, 1)).isEqualTo(200L);
+        assertThat(brokerController.getConsumerOffsetManager().queryOffset(group, "OtherTopic", 0)).isEqualTo(300L);
+    }
+
+    @Test
+    public void testUpdateConsumerOffsetBatch_Overwrite() throws Exception {
+        brokerController.getConsumerOffsetManager().commitOffset("127.0.0.1", group, topic, 0, 50L);
+        Map<MessageQueue, Long> offsetTable = new HashMap<MessageQueue, Long>();
+        offsetTable.put(new MessageQueue(topic, brokerName, 0), 80L);
+
+        RemotingCommand response = consumerManageProcessor.processRequest(handlerContext,
+            createUpdateConsumerOffsetBatchCommand(offsetTable));
+
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(brokerController.getConsumerOffsetManager().queryOffset(group, topic, 0)).isEqualTo(80L);
+        assertThat(brokerController.getConsumerOffsetManager().queryOffset(group, topic, 1)).isEqualTo(-1L);
+    }
+
+    private RemotingCommand createUpdateConsumerOffsetBatchCommand(Map<MessageQueue, Long> offsetTable) {
+        UpdateConsumerOffsetBatchRequestBody requestBody = new UpdateConsumerOffsetBatchRequestBody();
+        requestBody.setConsumerGroup(group);
+        requestBody.setOffsetTable(offsetTable);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_CONSUMER_OFFSET_BATCH, null);
+        request.setBody(requestBody.encode());
+        request.makeCustomHeaderToNet();
+        return request;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.processor;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.FileRegion;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.QueryMessageByPropertyRequestHeader;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.QueryMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.index.IndexService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueryMessageProcessorTest {
+    private QueryMessageProcessor queryMessageProcessor;
+    @Spy
+    private BrokerController brokerController = new BrokerController(new BrokerConfig(), new NettyServerConfig(), new NettyClientConfig(), new MessageStoreConfig());
+    @Mock
+    private MessageStore messageStore;
+    @Mock
+    private ChannelHandlerContext handlerContext;
+    @Mock
+    private Channel channel;
+    @Mock
+    private ChannelFuture channelFuture;
+
+    private String topic = "FooBar";
+    private String propertyName = "orderId";
+
+    @Before
+    public void init() {
+        brokerController.setMessageStore(messageStore);
+        TopicConfig topicConfig = new TopicConfig(topic);
+        topicConfig.setIndexedProperties(propertyName);
+        brokerController.getTopicConfigManager().getTopicConfigTable().put(topic, topicConfig);
+        queryMessageProcessor = new QueryMessageProcessor(brokerController);
+    }
+
+    @Test
+    public void testQueryMessageByProperty_NotIndexed() throws Exception {
+        RemotingCommand response = queryMessageProcessor.processRequest(handlerContext,
+            createQueryMessageByPropertyCommand("userId", "1024"));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SYSTEM_ERROR);
+        verify(messageStore, never()).queryMessage(anyString(), anyString(), anyInt(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testQueryMessageByProperty_NotFound() throws Exception {
+        when(messageStore.queryMessage(topic, IndexService.buildPropertyKey(propertyName, "1024"), 32, 0, 100))
+            .thenReturn(new QueryMessageResult());
+        RemotingCommand response = queryMessageProcessor.processRequest(handlerContext,
+            createQueryMessageByPropertyCommand(propertyName, "1024"));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.QUERY_NOT_FOUND);
+    }
+
+    @Test
+    public void testQueryMessageByProperty_Found() throws Exception {
+        QueryMessageResult queryMessageResult = new QueryMessageResult();
+        queryMessageResult.addMessage(new SelectMappedBufferResult(0, ByteBuffer.allocate(64), 64, null));
+        when(messageStore.queryMessage(topic, IndexService.buildPropertyKey(propertyName, "1024"), 32, 0, 100))
+            .thenReturn(queryMessageResult);
+        when(handlerContext.channel()).thenReturn(channel);
+        when(channel.writeAndFlush(any(FileRegion.class))).thenReturn(channelFuture);
+
+        RemotingCommand response = queryMessageProcessor.processRequest(handlerContext,
+            createQueryMessageByPropertyCommand(propertyName, "1024"));
+        // messages are written to channel directly
+        assertThat(response).isNull();
+        verify(channel).writeAndFlush(any(FileRegion.class));
+    }
+
+    private RemotingCommand createQueryMessageByPropertyCommand(String propertyName, String propertyValue) {
+        QueryMessageByPropertyRequestHeader requestHeader = new QueryMessageByPropertyRequestHeader();
+        requestHeader.setTopic(topic);
+        requestHeader.setPropertyName(propertyName);
+        requestHeader.setPropertyValue(propertyValue);
+        requestHeader.setMaxNum(32);
+        requestHeader.setBeginTimestamp(0L);
+        requestHeader.setEndTimestamp(100L);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.QUERY_MESSAGE_BY_PROPERTY, requestHeader);
+        request.makeCustomHeaderToNet();
+        return request;
+    }
+}
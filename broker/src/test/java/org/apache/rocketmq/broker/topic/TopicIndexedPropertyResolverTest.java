@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.topic;
+
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TopicIndexedPropertyResolverTest {
+
+    @Test
+    public void testGetIndexedProperties() {
+        BrokerController brokerController = new BrokerController(new BrokerConfig(), new NettyServerConfig(),
+            new NettyClientConfig(), new MessageStoreConfig());
+        TopicIndexedPropertyResolver resolver = brokerController.getTopicIndexedPropertyResolver();
+
+        TopicConfig topicConfig = new TopicConfig("indexedTopic");
+        brokerController.getTopicConfigManager().getTopicConfigTable().put(topicConfig.getTopicName(), topicConfig);
+        assertThat(resolver.getIndexedProperties("indexedTopic")).isNull();
+        assertThat(resolver.getIndexedProperties("absentTopic")).isNull();
+
+        topicConfig.setIndexedProperties("region, orderType,");
+        assertThat(resolver.getIndexedProperties("indexedTopic")).containsOnly("region", "orderType");
+        assertThat(resolver.isIndexed("indexedTopic", "region")).isTrue();
+        assertThat(resolver.isIndexed("indexedTopic", "color")).isFalse();
+
+        // config is changed
+        TopicConfig updated = new TopicConfig("indexedTopic");
+        updated.setIndexedProperties("color");
+        brokerController.getTopicConfigManager().getTopicConfigTable().put(updated.getTopicName(), updated);
+        assertThat(resolver.getIndexedProperties("indexedTopic")).containsOnly("color");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransactionalCheckDispatcherTest {
+
+    private final BrokerConfig brokerConfig = new BrokerConfig();
+    private final Map<String, List<Integer>> sentBatches = new HashMap<String, List<Integer>>();
+    private TransactionalCheckDispatcher dispatcher;
+
+    @Before
+    public void init() {
+        brokerConfig.setTransactionCheckBatchSize(4);
+        brokerConfig.setTransactionCheckMaxPerGroupPerSecond(0);
+        brokerConfig.setTransactionCheckPendingPerGroup(100);
+        BrokerController brokerController = mock(BrokerController.class);
+        when(brokerController.getBrokerConfig()).thenReturn(brokerConfig);
+
+        AbstractTransactionalMessageCheckListener listener = new AbstractTransactionalMessageCheckListener(brokerController) {
+            @Override
+            public void sendCheckMessages(String groupId, List<MessageExt> msgExts) {
+                List<Integer> batches = sentBatches.get(groupId);
+                if (batches == null) {
+                    batches = new ArrayList<Integer>();
+                    sentBatches.put(groupId, batches);
+                }
+                batches.add(msgExts.size());
+            }
+
+            @Override
+            public void resolveDiscardMsg(MessageExt msgExt) {
+            }
+        };
+        dispatcher = new TransactionalCheckDispatcher(listener);
+    }
+
+    @Test
+    public void testDispatchFairly() {
+        submit("busyGroup", 20);
+        submit("idleGroup", 2);
+
+        assertThat(dispatcher.dispatch()).isTrue();
+        // the idle group is not starved by the busy one.
+        assertThat(sentBatches.get("busyGroup")).containsExactly(4);
+        assertThat(sentBatches.get("idleGroup")).containsExactly(2);
+        assertThat(dispatcher.getPendingNums()).isEqualTo(16);
+
+        while (dispatcher.dispatch()) {
+        }
+        assertThat(sentBatches.get("busyGroup")).containsExactly(4, 4, 4, 4, 4);
+        assertThat(dispatcher.getPendingNums()).isZero();
+    }
+
+    @Test
+    public void testDispatchWithRateLimit() {
+        brokerConfig.setTransactionCheckMaxPerGroupPerSecond(6);
+        submit("group", 20);
+
+        assertThat(dispatcher.dispatch()).isTrue();
+        assertThat(dispatcher.dispatch()).isTrue();
+        // tokens of the second are used up.
+        assertThat(dispatcher.dispatch()).isFalse();
+        assertThat(sentBatches.get("group")).containsExactly(4, 2);
+        assertThat(dispatcher.getPendingNums()).isEqualTo(14);
+    }
+
+    @Test
+    public void testDropWhenTooManyPending() {
+        brokerConfig.setTransactionCheckPendingPerGroup(3);
+        submit("group", 5);
+
+        assertThat(dispatcher.getPendingNums()).isEqualTo(3);
+        assertThat(dispatcher.getDroppedNums()).isEqualTo(2);
+    }
+
+    private void submit(String group, int nums) {
+        for (int i = 0; i < nums; i++) {
+            MessageExt msgExt = new MessageExt();
+            MessageAccessor.putProperty(msgExt, MessageConst.PROPERTY_PRODUCER_GROUP, group);
+            dispatcher.submit(msgExt);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.transaction.queue;
+
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HalfMessageIndexTest {
+
+    @Test
+    public void testReplayAndRemove() {
+        HalfMessageIndex halfMessageIndex = new HalfMessageIndex();
+        HalfMessageIndex.QueueIndex index = halfMessageIndex.getOrCreate(0, 0, 0);
+        for (long i = 0; i < 5; i++) {
+            index.addHalf(createHalfMessage(i));
+        }
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(index.getHalfReplayOffset()).isEqualTo(5);
+
+        // replayed again after restart
+        index.addHalf(createHalfMessage(3));
+        assertThat(index.size()).isEqualTo(5);
+
+        halfMessageIndex.remove(0, 0);
+        index.addOp(0, 1);
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getHalfCommitOffset()).isEqualTo(2);
+        assertThat(index.getOpCommitOffset()).isEqualTo(1);
+
+        index.addOp(1, 3);
+        index.addOp(2, 2);
+        assertThat(index.getHalfCommitOffset()).isEqualTo(4);
+        // op of offset 3 is needed no longer once half commit offset passes it.
+        assertThat(index.getOpCommitOffset()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRemoveAhead() {
+        HalfMessageIndex halfMessageIndex = new HalfMessageIndex();
+        HalfMessageIndex.QueueIndex index = halfMessageIndex.getOrCreate(0, 10, 0);
+        index.addOp(0, 11);
+        index.addHalf(createHalfMessage(10));
+        index.addHalf(createHalfMessage(11));
+        index.addHalf(createHalfMessage(12));
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getEntry(11)).isNull();
+        assertThat(index.getHalfCommitOffset()).isEqualTo(10);
+        assertThat(index.getOpCommitOffset()).isEqualTo(0);
+
+        halfMessageIndex.remove(0, 10);
+        halfMessageIndex.remove(0, 12);
+        assertThat(index.getHalfCommitOffset()).isEqualTo(13);
+        assertThat(index.getOpCommitOffset()).isEqualTo(1);
+    }
+
+    @Test
+    public void testImmunityCopyOfOldVersion() {
+        HalfMessageIndex halfMessageIndex = new HalfMessageIndex();
+        HalfMessageIndex.QueueIndex index = halfMessageIndex.getOrCreate(0, 2, 0);
+        index.addHalf(createHalfMessage(2));
+        index.addHalf(createHalfMessage(3));
+        index.addHalf(createImmunityCopy(4, 2));
+        index.addHalf(createImmunityCopy(5, 2));
+        // copies stand for the prepared half message.
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getEntry(2)).isNull();
+        assertThat(index.getEntry(4)).isNull();
+        assertThat(index.getEntry(5).getPreparedQueueOffset()).isEqualTo(2);
+
+        // op message of the prepared half message resolves the copy.
+        index.addOp(0, 2);
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.getEntry(5)).isNull();
+        assertThat(index.getHalfCommitOffset()).isEqualTo(3);
+        // needed to rebuild the index from half offset 3 after restart.
+        assertThat(index.getOpCommitOffset()).isEqualTo(0);
+
+        halfMessageIndex.remove(0, 3);
+        assertThat(index.getHalfCommitOffset()).isEqualTo(6);
+        assertThat(index.getOpCommitOffset()).isEqualTo(1);
+    }
+
+    private MessageExt createImmunityCopy(long queueOffset, long preparedQueueOffset) {
+        MessageExt msgExt = createHalfMessage(queueOffset);
+        MessageAccessor.putProperty(msgExt, MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET,
+            String.valueOf(preparedQueueOffset));
+        return msgExt;
+    }
+
+    private MessageExt createHalfMessage(long queueOffset) {
+        MessageExt msgExt = new MessageExt();
+        msgExt.setQueueOffset(queueOffset);
+        msgExt.setCommitLogOffset(queueOffset * 100);
+        msgExt.setBornTimestamp(System.currentTimeMillis());
+        return msgExt;
+    }
+}
@@ -20,8 +20,6 @@ import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
 import org.apache.rocketmq.common.BrokerConfig;
-import org.apache.rocketmq.common.message.MessageAccessor;
-import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.topic.TopicValidator;
@@ -45,7 +43,6 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -131,14 +128,6 @@ public class TransactionalMessageBridgeTest {
         assertThat(result.getPullStatus()).isEqualTo(PullStatus.NO_NEW_MSG);
     }
 
-    @Test
-    public void testPutMessageReturnResult() {
-        when(messageStore.putMessage(any(MessageExtBrokerInner.class))).thenReturn(new PutMessageResult
-            (PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
-        PutMessageResult result = transactionBridge.putMessageReturnResult(createMessageBrokerInner());
-        assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
-    }
-
     @Test
     public void testPutMessage() {
         when(messageStore.putMessage(any(MessageExtBrokerInner.class))).thenReturn(new PutMessageResult
@@ -147,28 +136,6 @@ public class TransactionalMessageBridgeTest {
         assertThat(success).isEqualTo(true);
     }
 
-    @Test
-    public void testRenewImmunityHalfMessageInner() {
-        MessageExt messageExt = createMessageBrokerInner();
-        final String offset = "123456789";
-        MessageExtBrokerInner msgInner = transactionBridge.renewImmunityHalfMessageInner(messageExt);
-        MessageAccessor.putProperty(msgInner, MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET,offset);
-        assertThat(msgInner).isNotNull();
-        Map<String,String> properties = msgInner.getProperties();
-        assertThat(properties).isNotNull();
-        String resOffset = properties.get(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
-        assertThat(resOffset).isEqualTo(offset);
-    }
-
-
-    @Test
-    public void testRenewHalfMessageInner() {
-        MessageExt messageExt = new MessageExt();
-        long bornTimeStamp = messageExt.getBornTimestamp();
-        MessageExt messageExtRes = transactionBridge.renewHalfMessageInner(messageExt);
-        assertThat( messageExtRes.getBornTimestamp()).isEqualTo(bornTimeStamp);
-    }
-
     @Test
     public void testLookMessageByOffset(){
         when(messageStore.lookMessageByOffset(anyLong())).thenReturn(new MessageExt());
@@ -58,7 +58,12 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -109,9 +114,11 @@ public class TransactionalMessageServiceImplTest {
     @Test
     public void testCheck_withDiscard() {
         when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
-        when(bridge.getHalfMessage(0, 0, 1)).thenReturn(createDiscardPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hellp", 1));
-        when(bridge.getHalfMessage(0, 1, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
+        when(bridge.getHalfMessage(0, 0, 32)).thenReturn(createDiscardPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hellp", 1));
+        when(bridge.getHalfMessage(0, 6, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
         when(bridge.getOpMessage(anyInt(), anyLong(), anyInt())).thenReturn(createOpPulResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 1, "10", 1));
+        when(bridge.lookMessageByOffset(anyLong())).thenReturn(createMessageBrokerInner(5, TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, "hellp"));
+        when(bridge.putOpMessage(any(MessageExt.class), anyString())).thenReturn(true);
         long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
         int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
         final AtomicInteger checkMessage = new AtomicInteger(0);
@@ -124,18 +131,18 @@ public class TransactionalMessageServiceImplTest {
         }).when(listener).resolveDiscardMsg(any(MessageExt.class));
         queueTransactionMsgService.check(timeOut, checkMax, listener);
         assertThat(checkMessage.get()).isEqualTo(1);
+        assertThat(((TransactionalMessageServiceImpl) queueTransactionMsgService).getHalfMessageIndex().size()).isEqualTo(0);
+        verify(bridge).updateConsumeOffset(any(MessageQueue.class), eq(6L));
     }
 
     @Test
     public void testCheck_withCheck() {
         when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
-        when(bridge.getHalfMessage(0, 0, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hello", 1));
-        when(bridge.getHalfMessage(0, 1, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
+        when(bridge.getHalfMessage(0, 0, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hello", 1));
+        when(bridge.getHalfMessage(0, 6, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
         when(bridge.getOpMessage(anyInt(), anyLong(), anyInt())).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 1, "5", 0));
         when(bridge.getBrokerController()).thenReturn(this.brokerController);
-        when(bridge.renewHalfMessageInner(any(MessageExtBrokerInner.class))).thenReturn(createMessageBrokerInner());
-        when(bridge.putMessageReturnResult(any(MessageExtBrokerInner.class))).thenReturn(new PutMessageResult
-            (PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        when(bridge.lookMessageByOffset(anyLong())).thenReturn(createMessageBrokerInner(5, TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, "hello"));
         long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
         final int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
         final AtomicInteger checkMessage = new AtomicInteger(0);
@@ -143,11 +150,49 @@ public class TransactionalMessageServiceImplTest {
             @Override
             public Object answer(InvocationOnMock invocation) {
                 checkMessage.addAndGet(1);
-                return checkMessage;
+                return true;
             }
         }).when(listener).resolveHalfMsg(any(MessageExt.class));
         queueTransactionMsgService.check(timeOut, checkMax, listener);
         assertThat(checkMessage.get()).isEqualTo(1);
+
+        // checked again only after transaction timeout, and the half message is never put back.
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+        assertThat(checkMessage.get()).isEqualTo(1);
+        verify(bridge, atLeastOnce()).updateConsumeOffset(any(MessageQueue.class), eq(5L));
+    }
+
+    @Test
+    public void testCheck_withDropped() {
+        when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
+        when(bridge.getHalfMessage(0, 0, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hello", 1));
+        when(bridge.getHalfMessage(0, 6, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
+        when(bridge.getOpMessage(anyInt(), anyLong(), anyInt())).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 1, "5", 0));
+        when(bridge.getBrokerController()).thenReturn(this.brokerController);
+        when(bridge.lookMessageByOffset(anyLong())).thenReturn(createMessageBrokerInner(5, TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, "hello"));
+        when(listener.resolveHalfMsg(any(MessageExt.class))).thenReturn(false);
+        long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
+        int checkMax = 2;
+
+        // dropped checks are not counted, and the half message is due again in the next round.
+        for (int i = 0; i < checkMax + 1; i++) {
+            queueTransactionMsgService.check(timeOut, checkMax, listener);
+        }
+        verify(listener, times(checkMax + 1)).resolveHalfMsg(any(MessageExt.class));
+        verify(listener, never()).resolveDiscardMsg(any(MessageExt.class));
+        assertThat(((TransactionalMessageServiceImpl) queueTransactionMsgService).getHalfMessageIndex().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCheck_withCommitted() {
+        when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
+        when(bridge.getHalfMessage(0, 0, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 5, "hello", 1));
+        when(bridge.getOpMessage(0, 0, 32)).thenReturn(createOpPulResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 0, "5", 1));
+        long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
+        int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+        verify(listener, never()).resolveHalfMsg(any(MessageExt.class));
+        assertThat(((TransactionalMessageServiceImpl) queueTransactionMsgService).getHalfMessageIndex().size()).isEqualTo(0);
     }
 
     @Test
@@ -34,6 +34,7 @@ import org.apache.rocketmq.remoting.protocol.LanguageCode;
  */
 public class ClientConfig {
     public static final String SEND_MESSAGE_WITH_VIP_CHANNEL_PROPERTY = "com.rocketmq.sendMessageWithVIPChannel";
+    public static final String DECODE_MESSAGE_LAZILY_PROPERTY = "com.rocketmq.decodeMessageLazily";
     private String namesrvAddr = NameServerAddressUtils.getNameServerAddresses();
     private String clientIP = RemotingUtil.getLocalAddress();
     private String instanceName = System.getProperty("rocketmq.client.name", "DEFAULT");
@@ -60,6 +61,11 @@ public class ClientConfig {
 
     private boolean useTLS = TlsSystemConfig.tlsEnable;
 
+    /**
+     * Decode pulled messages lazily, body, properties and hosts are decoded on first access.
+     */
+    private boolean decodeMessageLazily = Boolean.parseBoolean(System.getProperty(DECODE_MESSAGE_LAZILY_PROPERTY, "false"));
+
     private LanguageCode language = LanguageCode.JAVA;
 
     public String buildMQClientId() {
@@ -154,6 +160,7 @@ public class ClientConfig {
         this.unitName = cc.unitName;
         this.vipChannelEnabled = cc.vipChannelEnabled;
         this.useTLS = cc.useTLS;
+        this.decodeMessageLazily = cc.decodeMessageLazily;
         this.namespace = cc.namespace;
         this.language = cc.language;
     }
@@ -172,6 +179,7 @@ public class ClientConfig {
         cc.unitName = unitName;
         cc.vipChannelEnabled = vipChannelEnabled;
         cc.useTLS = useTLS;
+        cc.decodeMessageLazily = decodeMessageLazily;
         cc.namespace = namespace;
         cc.language = language;
         return cc;
@@ -265,6 +273,14 @@ public class ClientConfig {
         this.useTLS = useTLS;
     }
 
+    public boolean isDecodeMessageLazily() {
+        return decodeMessageLazily;
+    }
+
+    public void setDecodeMessageLazily(boolean decodeMessageLazily) {
+        this.decodeMessageLazily = decodeMessageLazily;
+    }
+
     public LanguageCode getLanguage() {
         return language;
     }
@@ -138,6 +138,18 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private AllocateMessageQueueStrategy allocateMessageQueueStrategy;
 
+    /**
+     * Whether to hand over message queues cooperatively when rebalancing in clustering mode. The new owner takes the
+     * queue lock on broker before pulling, and the previous owner releases it after its consume offset is persisted,
+     * so the new owner usually starts from the offset the previous one reached.
+     * <p>
+     * The lock only gates the hand-over, it does not guarantee exclusive consumption: messages pulled by the previous
+     * owner may still be consumed after the lock is released, and a lock expires on broker if it is not renewed, so
+     * messages may still be consumed twice.
+     * </p>
+     */
+    private boolean cooperativeRebalance = false;
+
     /**
      * Subscription relationship
      */
@@ -173,6 +185,15 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private int consumeConcurrentlyMaxSpan = 2000;
 
+    /**
+     * Name of message property to order messages by when consuming orderly, e.g. {@code KEYS} for message keys.
+     * <p>
+     * If it is set, messages of one queue with different property values are consumed by different threads, while those
+     * with the same value are still consumed in order; offset of the queue is committed up to the minimum message not
+     * consumed. Default value is null, which orders the whole queue.
+     */
+    private String consumeOrderlyShardingKey = null;
+
     /**
      * Flow control threshold on queue level, each message queue will cache at most 1000 messages by default,
      * Consider the {@code pullBatchSize}, the instantaneous value may exceed the limit
@@ -210,6 +231,15 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private int pullThresholdSizeForTopic = -1;
 
+    /**
+     * Memory budget of cached messages of all queues of this consumer, default value is -1 MiB(Disabled)
+     * <p>
+     * If it is enabled, the budget is divided among queues by their consuming rate and backlog instead of
+     * {@code pullThresholdSizeForQueue}, and a queue stops pulling only when the budget is exhausted and it caches
+     * more than its share.
+     */
+    private int pullThresholdSizeForConsumer = -1;
+
     /**
      * Message pull Interval
      */
@@ -220,6 +250,12 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private int consumeMessageBatchMaxSize = 1;
 
+    /**
+     * Whether to adapt batch consumption size of each queue by cost of listener and backlog, in range of
+     * [1, {@code consumeMessageBatchMaxSize}]. It only takes effect when consuming concurrently.
+     */
+    private boolean consumeMessageBatchAdaptive = false;
+
     /**
      * Batch pull size
      */
@@ -254,6 +290,13 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private long consumeTimeout = 15;
 
+    /**
+     * Delay in milliseconds to persist consume offsets to broker after messages are consumed, offsets updated in the
+     * meantime are sent in one request per broker. -1 means offsets are only persisted every
+     * {@code persistConsumerOffsetInterval}. It only takes effect in clustering mode.
+     */
+    private long persistConsumerOffsetOnConsumedDelay = -1;
+
     /**
      * Maximum time to await message consuming when shutdown consumer, 0 indicates no await.
      */
@@ -502,6 +545,14 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.allocateMessageQueueStrategy = allocateMessageQueueStrategy;
     }
 
+    public boolean isCooperativeRebalance() {
+        return cooperativeRebalance;
+    }
+
+    public void setCooperativeRebalance(final boolean cooperativeRebalance) {
+        this.cooperativeRebalance = cooperativeRebalance;
+    }
+
     public int getConsumeConcurrentlyMaxSpan() {
         return consumeConcurrentlyMaxSpan;
     }
@@ -526,6 +577,14 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.consumeMessageBatchMaxSize = consumeMessageBatchMaxSize;
     }
 
+    public boolean isConsumeMessageBatchAdaptive() {
+        return consumeMessageBatchAdaptive;
+    }
+
+    public void setConsumeMessageBatchAdaptive(final boolean consumeMessageBatchAdaptive) {
+        this.consumeMessageBatchAdaptive = consumeMessageBatchAdaptive;
+    }
+
     public String getConsumerGroup() {
         return consumerGroup;
     }
@@ -622,6 +681,22 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.pullThresholdSizeForTopic = pullThresholdSizeForTopic;
     }
 
+    public String getConsumeOrderlyShardingKey() {
+        return consumeOrderlyShardingKey;
+    }
+
+    public void setConsumeOrderlyShardingKey(final String consumeOrderlyShardingKey) {
+        this.consumeOrderlyShardingKey = consumeOrderlyShardingKey;
+    }
+
+    public int getPullThresholdSizeForConsumer() {
+        return pullThresholdSizeForConsumer;
+    }
+
+    public void setPullThresholdSizeForConsumer(final int pullThresholdSizeForConsumer) {
+        this.pullThresholdSizeForConsumer = pullThresholdSizeForConsumer;
+    }
+
     public Map<String, String> getSubscription() {
         return subscription;
     }
@@ -891,6 +966,14 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.consumeTimeout = consumeTimeout;
     }
 
+    public long getPersistConsumerOffsetOnConsumedDelay() {
+        return persistConsumerOffsetOnConsumedDelay;
+    }
+
+    public void setPersistConsumerOffsetOnConsumedDelay(final long persistConsumerOffsetOnConsumedDelay) {
+        this.persistConsumerOffsetOnConsumedDelay = persistConsumerOffsetOnConsumedDelay;
+    }
+
     public long getAwaitTerminationMillisWhenShutdown() {
         return awaitTerminationMillisWhenShutdown;
     }
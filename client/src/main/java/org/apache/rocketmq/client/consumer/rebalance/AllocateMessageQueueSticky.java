@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.consumer.rebalance;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.consistenthash.HashFunction;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Sticky queue algorithm based on rendezvous hashing with bounded load. Each queue goes to the client with the highest
+ * hash weight among the clients not yet full, and each client holds either floor or ceil of the average number of
+ * queues. Assignment depends only on the queue and client ids, so most queues stay with their owners when clients
+ * join or leave.
+ */
+public class AllocateMessageQueueSticky implements AllocateMessageQueueStrategy {
+    private final InternalLogger log = ClientLogger.getLog();
+
+    private final HashFunction hashFunction;
+
+    public AllocateMessageQueueSticky() {
+        this(new MixHash());
+    }
+
+    public AllocateMessageQueueSticky(HashFunction hashFunction) {
+        if (hashFunction == null) {
+            throw new IllegalArgumentException("hashFunction is null");
+        }
+        this.hashFunction = hashFunction;
+    }
+
+    @Override
+    public List<MessageQueue> allocate(String consumerGroup, String currentCID, List<MessageQueue> mqAll,
+        List<String> cidAll) {
+
+        if (currentCID == null || currentCID.length() < 1) {
+            throw new IllegalArgumentException("currentCID is empty");
+        }
+        if (mqAll == null || mqAll.isEmpty()) {
+            throw new IllegalArgumentException("mqAll is null or mqAll empty");
+        }
+        if (cidAll == null || cidAll.isEmpty()) {
+            throw new IllegalArgumentException("cidAll is null or cidAll empty");
+        }
+
+        List<MessageQueue> result = new ArrayList<MessageQueue>();
+        if (!cidAll.contains(currentCID)) {
+            log.info("[BUG] ConsumerGroup: {} The consumerId: {} not in cidAll: {}",
+                consumerGroup,
+                currentCID,
+                cidAll);
+            return result;
+        }
+
+        int base = mqAll.size() / cidAll.size();
+        int extra = mqAll.size() % cidAll.size();
+        int[] loads = new int[cidAll.size()];
+        int fullExtra = 0;
+        for (MessageQueue mq : mqAll) {
+            String mqKey = mq.toString();
+            int owner = -1;
+            long ownerWeight = 0;
+            for (int i = 0; i < cidAll.size(); i++) {
+                if (loads[i] > base || loads[i] == base && fullExtra >= extra) {
+                    continue;
+                }
+                long weight = this.hashFunction.hash(cidAll.get(i) + "@" + mqKey);
+                if (owner < 0 || weight > ownerWeight) {
+                    owner = i;
+                    ownerWeight = weight;
+                }
+            }
+
+            if (loads[owner]++ == base) {
+                fullExtra++;
+            }
+            if (currentCID.equals(cidAll.get(owner))) {
+                result.add(mq);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "STICKY";
+    }
+
+    /**
+     * FNV-1a over the key chars, followed by the murmur3 finalizer to spread the bits.
+     */
+    private static class MixHash implements HashFunction {
+        @Override
+        public long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93fe1a85ec5L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -16,12 +16,16 @@
  */
 package org.apache.rocketmq.client.consumer.store;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
@@ -32,9 +36,14 @@ import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 
 /**
  * Remote storage implementation
@@ -45,6 +54,16 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
     private final String groupName;
     private ConcurrentMap<MessageQueue, AtomicLong> offsetTable =
         new ConcurrentHashMap<MessageQueue, AtomicLong>();
+    /**
+     * Brokers answered that batch update is not supported, offsets are updated one by one to them until
+     * {@code batchUnsupportedExpireMillis} passes, then batch update is tried again in case the broker is upgraded.
+     */
+    private final ConcurrentMap<String/* brokerAddr */, Long/* timestamp */> batchUnsupportedBrokers =
+        new ConcurrentHashMap<String, Long>();
+    private volatile long batchUnsupportedExpireMillis = 1000 * 60 * 10;
+    private final Set<MessageQueue> dirtyQueues = Collections.newSetFromMap(new ConcurrentHashMap<MessageQueue, Boolean>());
+    private final AtomicBoolean persistDirtyScheduled = new AtomicBoolean(false);
+    private volatile long persistOnUpdateDelayMillis = -1;
 
     public RemoteBrokerOffsetStore(MQClientInstance mQClientFactory, String groupName) {
         this.mQClientFactory = mQClientFactory;
@@ -63,14 +82,70 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
                 offsetOld = this.offsetTable.putIfAbsent(mq, new AtomicLong(offset));
             }
 
+            boolean updated = true;
             if (null != offsetOld) {
                 if (increaseOnly) {
-                    MixAll.compareAndIncreaseOnly(offsetOld, offset);
+                    updated = MixAll.compareAndIncreaseOnly(offsetOld, offset);
                 } else {
-                    offsetOld.set(offset);
+                    updated = offsetOld.getAndSet(offset) != offset;
+                }
+            }
+
+            if (updated && this.persistOnUpdateDelayMillis >= 0) {
+                this.dirtyQueues.add(mq);
+                this.schedulePersistDirty();
+            }
+        }
+    }
+
+    /**
+     * Persist updated offsets in batch after {@code persistOnUpdateDelayMillis}, updates in the meantime are coalesced.
+     * Negative value disables it, then offsets are only persisted by {@link #persistAll(Set)}.
+     */
+    public void setPersistOnUpdateDelayMillis(long persistOnUpdateDelayMillis) {
+        this.persistOnUpdateDelayMillis = persistOnUpdateDelayMillis;
+    }
+
+    /**
+     * How long a broker answering that batch update is not supported is updated one by one before batch is probed again.
+     */
+    public void setBatchUnsupportedExpireMillis(long batchUnsupportedExpireMillis) {
+        this.batchUnsupportedExpireMillis = batchUnsupportedExpireMillis;
+    }
+
+    private void schedulePersistDirty() {
+        if (!this.persistDirtyScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.mQClientFactory.getScheduledExecutorService().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    RemoteBrokerOffsetStore.this.persistDirty();
                 }
+            }, this.persistOnUpdateDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            this.persistDirtyScheduled.set(false);
+            log.warn("schedule persist dirty offsets exception, {}", this.groupName, e);
+        }
+    }
+
+    void persistDirty() {
+        this.persistDirtyScheduled.set(false);
+
+        Map<MessageQueue, Long> offsets = new HashMap<MessageQueue, Long>();
+        Iterator<MessageQueue> it = this.dirtyQueues.iterator();
+        while (it.hasNext()) {
+            MessageQueue mq = it.next();
+            it.remove();
+            AtomicLong offset = this.offsetTable.get(mq);
+            if (offset != null) {
+                offsets.put(mq, offset.get());
             }
         }
+
+        this.updateConsumeOffsetToBroker(offsets);
     }
 
     @Override
@@ -117,28 +192,22 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
             return;
 
         final HashSet<MessageQueue> unusedMQ = new HashSet<MessageQueue>();
+        final Map<MessageQueue, Long> offsets = new HashMap<MessageQueue, Long>();
 
         for (Map.Entry<MessageQueue, AtomicLong> entry : this.offsetTable.entrySet()) {
             MessageQueue mq = entry.getKey();
             AtomicLong offset = entry.getValue();
             if (offset != null) {
                 if (mqs.contains(mq)) {
-                    try {
-                        this.updateConsumeOffsetToBroker(mq, offset.get());
-                        log.info("[persistAll] Group: {} ClientId: {} updateConsumeOffsetToBroker {} {}",
-                            this.groupName,
-                            this.mQClientFactory.getClientId(),
-                            mq,
-                            offset.get());
-                    } catch (Exception e) {
-                        log.error("updateConsumeOffsetToBroker exception, " + mq.toString(), e);
-                    }
+                    offsets.put(mq, offset.get());
                 } else {
                     unusedMQ.add(mq);
                 }
             }
         }
 
+        this.updateConsumeOffsetToBroker(offsets);
+
         if (!unusedMQ.isEmpty()) {
             for (MessageQueue mq : unusedMQ) {
                 this.offsetTable.remove(mq);
@@ -185,6 +254,102 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
         return cloneOffsetTable;
     }
 
+    /**
+     * Update the Consumer Offsets with one request per broker, falls back to one way update of each queue for brokers not
+     * supporting it.
+     */
+    private void updateConsumeOffsetToBroker(Map<MessageQueue, Long> offsets) {
+        Map<String/* brokerName */, Map<MessageQueue, Long>> brokerOffsets = new HashMap<String, Map<MessageQueue, Long>>();
+        for (Map.Entry<MessageQueue, Long> entry : offsets.entrySet()) {
+            Map<MessageQueue, Long> table = brokerOffsets.get(entry.getKey().getBrokerName());
+            if (table == null) {
+                table = new HashMap<MessageQueue, Long>();
+                brokerOffsets.put(entry.getKey().getBrokerName(), table);
+            }
+            table.put(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, Map<MessageQueue, Long>> entry : brokerOffsets.entrySet()) {
+            FindBrokerResult findBrokerResult = this.mQClientFactory.findBrokerAddressInAdmin(entry.getKey());
+            if (null == findBrokerResult) {
+                this.mQClientFactory.updateTopicRouteInfoFromNameServer(entry.getValue().keySet().iterator().next().getTopic());
+                findBrokerResult = this.mQClientFactory.findBrokerAddressInAdmin(entry.getKey());
+            }
+
+            if (findBrokerResult != null && this.isBatchSupported(findBrokerResult.getBrokerAddr())) {
+                this.updateConsumeOffsetBatchToBroker(entry.getKey(), findBrokerResult.getBrokerAddr(), entry.getValue());
+                continue;
+            }
+
+            this.updateConsumeOffsetOneByOneToBroker(entry.getValue());
+        }
+    }
+
+    /**
+     * Update asynchronously, so a slow broker does not hold the client scheduled thread, which also sends heartbeat and
+     * updates route. Offsets are updated one by one if the broker does not support it.
+     */
+    private void updateConsumeOffsetBatchToBroker(final String brokerName, final String brokerAddr,
+        final Map<MessageQueue, Long> offsets) {
+        UpdateConsumerOffsetBatchRequestBody requestBody = new UpdateConsumerOffsetBatchRequestBody();
+        requestBody.setConsumerGroup(this.groupName);
+        requestBody.setOffsetTable(offsets);
+        try {
+            this.mQClientFactory.getMQClientAPIImpl().updateConsumerOffsetBatch(brokerAddr, requestBody, 1000 * 3,
+                new InvokeCallback() {
+                    @Override
+                    public void operationComplete(ResponseFuture responseFuture) {
+                        RemotingCommand response = responseFuture.getResponseCommand();
+                        if (null == response) {
+                            log.error("updateConsumeOffsetToBroker exception, " + brokerName, responseFuture.getCause());
+                        } else if (ResponseCode.SUCCESS == response.getCode()) {
+                            log.info("[persistAll] Group: {} ClientId: {} updateConsumeOffsetToBroker {} {}",
+                                RemoteBrokerOffsetStore.this.groupName,
+                                RemoteBrokerOffsetStore.this.mQClientFactory.getClientId(),
+                                brokerName,
+                                offsets);
+                        } else if (ResponseCode.REQUEST_CODE_NOT_SUPPORTED == response.getCode()) {
+                            log.info("broker {} does not support batch offset update, update one by one", brokerAddr);
+                            RemoteBrokerOffsetStore.this.batchUnsupportedBrokers.put(brokerAddr, System.currentTimeMillis());
+                            RemoteBrokerOffsetStore.this.updateConsumeOffsetOneByOneToBroker(offsets);
+                        } else {
+                            log.error("updateConsumeOffsetToBroker exception, {} code: {} remark: {}", brokerName,
+                                response.getCode(), response.getRemark());
+                        }
+                    }
+                });
+        } catch (Exception e) {
+            log.error("updateConsumeOffsetToBroker exception, " + brokerName, e);
+        }
+    }
+
+    private void updateConsumeOffsetOneByOneToBroker(final Map<MessageQueue, Long> offsets) {
+        for (Map.Entry<MessageQueue, Long> offset : offsets.entrySet()) {
+            try {
+                this.updateConsumeOffsetToBroker(offset.getKey(), offset.getValue());
+                log.info("[persistAll] Group: {} ClientId: {} updateConsumeOffsetToBroker {} {}",
+                    this.groupName,
+                    this.mQClientFactory.getClientId(),
+                    offset.getKey(),
+                    offset.getValue());
+            } catch (Exception e) {
+                log.error("updateConsumeOffsetToBroker exception, " + offset.getKey().toString(), e);
+            }
+        }
+    }
+
+    private boolean isBatchSupported(final String brokerAddr) {
+        Long timestamp = this.batchUnsupportedBrokers.get(brokerAddr);
+        if (null == timestamp) {
+            return true;
+        }
+        if (System.currentTimeMillis() - timestamp >= this.batchUnsupportedExpireMillis) {
+            this.batchUnsupportedBrokers.remove(brokerAddr, timestamp);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Update the Consumer Offset in one way, once the Master is off, updated to Slave, here need to be optimized.
      */
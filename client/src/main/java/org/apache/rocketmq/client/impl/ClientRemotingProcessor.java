@@ -135,8 +135,15 @@ public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implemen
         try {
             final NotifyConsumerIdsChangedRequestHeader requestHeader =
                 (NotifyConsumerIdsChangedRequestHeader) request.decodeCommandCustomHeader(NotifyConsumerIdsChangedRequestHeader.class);
+            final String brokerAddr = RemotingHelper.parseChannelRemoteAddr(ctx.channel());
+            if (!this.mqClientFactory.getConsumerIdsCache().invalidate(requestHeader.getConsumerGroup(), brokerAddr,
+                requestHeader.getMembershipVersion())) {
+                log.debug("receive broker's notification[{}], the consumer group: {} version: {} already known, ignore it",
+                    brokerAddr, requestHeader.getConsumerGroup(), requestHeader.getMembershipVersion());
+                return null;
+            }
             log.info("receive broker's notification[{}], the consumer group: {} changed, rebalance immediately",
-                RemotingHelper.parseChannelRemoteAddr(ctx.channel()),
+                brokerAddr,
                 requestHeader.getConsumerGroup());
             this.mqClientFactory.rebalanceImmediately();
         } catch (Exception e) {
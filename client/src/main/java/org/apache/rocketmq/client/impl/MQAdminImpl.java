@@ -46,6 +46,7 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageId;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.header.QueryMessageByPropertyRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryMessageResponseHeader;
 import org.apache.rocketmq.common.protocol.route.BrokerData;
@@ -292,9 +293,26 @@ public class MQAdminImpl {
         }
     }
 
+    /**
+     * Query messages whose user property {@code propertyName} equals {@code propertyValue}, the property must be
+     * indexed by the topic.
+     */
+    public QueryResult queryMessageByProperty(String topic, String propertyName, String propertyValue, int maxNum,
+        long begin, long end) throws MQClientException, InterruptedException {
+
+        return queryMessage(topic, propertyValue, maxNum, begin, end, false, propertyName);
+    }
+
     protected QueryResult queryMessage(String topic, String key, int maxNum, long begin, long end,
         boolean isUniqKey) throws MQClientException,
         InterruptedException {
+
+        return queryMessage(topic, key, maxNum, begin, end, isUniqKey, null);
+    }
+
+    private QueryResult queryMessage(String topic, String key, int maxNum, long begin, long end,
+        boolean isUniqKey, String propertyName) throws MQClientException,
+        InterruptedException {
         TopicRouteData topicRouteData = this.mQClientFactory.getAnExistTopicRouteData(topic);
         if (null == topicRouteData) {
             this.mQClientFactory.updateTopicRouteInfoFromNameServer(topic);
@@ -315,8 +333,65 @@ public class MQAdminImpl {
                 final List<QueryResult> queryResultList = new LinkedList<QueryResult>();
                 final ReadWriteLock lock = new ReentrantReadWriteLock(false);
 
+                final InvokeCallback invokeCallback = new InvokeCallback() {
+                    @Override
+                    public void operationComplete(ResponseFuture responseFuture) {
+                        try {
+                            RemotingCommand response = responseFuture.getResponseCommand();
+                            if (response != null) {
+                                switch (response.getCode()) {
+                                    case ResponseCode.SUCCESS: {
+                                        QueryMessageResponseHeader responseHeader = null;
+                                        try {
+                                            responseHeader =
+                                                (QueryMessageResponseHeader) response
+                                                    .decodeCommandCustomHeader(QueryMessageResponseHeader.class);
+                                        } catch (RemotingCommandException e) {
+                                            log.error("decodeCommandCustomHeader exception", e);
+                                            return;
+                                        }
+
+                                        List<MessageExt> wrappers =
+                                            MessageDecoder.decodes(ByteBuffer.wrap(response.getBody()), true);
+
+                                        QueryResult qr = new QueryResult(responseHeader.getIndexLastUpdateTimestamp(), wrappers);
+                                        try {
+                                            lock.writeLock().lock();
+                                            queryResultList.add(qr);
+                                        } finally {
+                                            lock.writeLock().unlock();
+                                        }
+                                        break;
+                                    }
+                                    default:
+                                        log.warn("getResponseCommand failed, {} {}", response.getCode(), response.getRemark());
+                                        break;
+                                }
+                            } else {
+                                log.warn("getResponseCommand return null");
+                            }
+                        } finally {
+                            countDownLatch.countDown();
+                        }
+                    }
+                };
+
                 for (String addr : brokerAddrs) {
                     try {
+                        if (propertyName != null) {
+                            QueryMessageByPropertyRequestHeader requestHeader = new QueryMessageByPropertyRequestHeader();
+                            requestHeader.setTopic(topic);
+                            requestHeader.setPropertyName(propertyName);
+                            requestHeader.setPropertyValue(key);
+                            requestHeader.setMaxNum(maxNum);
+                            requestHeader.setBeginTimestamp(begin);
+                            requestHeader.setEndTimestamp(end);
+
+                            this.mQClientFactory.getMQClientAPIImpl().queryMessageByProperty(addr, requestHeader,
+                                timeoutMillis * 3, invokeCallback);
+                            continue;
+                        }
+
                         QueryMessageRequestHeader requestHeader = new QueryMessageRequestHeader();
                         requestHeader.setTopic(topic);
                         requestHeader.setKey(key);
@@ -325,48 +400,7 @@ public class MQAdminImpl {
                         requestHeader.setEndTimestamp(end);
 
                         this.mQClientFactory.getMQClientAPIImpl().queryMessage(addr, requestHeader, timeoutMillis * 3,
-                            new InvokeCallback() {
-                                @Override
-                                public void operationComplete(ResponseFuture responseFuture) {
-                                    try {
-                                        RemotingCommand response = responseFuture.getResponseCommand();
-                                        if (response != null) {
-                                            switch (response.getCode()) {
-                                                case ResponseCode.SUCCESS: {
-                                                    QueryMessageResponseHeader responseHeader = null;
-                                                    try {
-                                                        responseHeader =
-                                                            (QueryMessageResponseHeader) response
-                                                                .decodeCommandCustomHeader(QueryMessageResponseHeader.class);
-                                                    } catch (RemotingCommandException e) {
-                                                        log.error("decodeCommandCustomHeader exception", e);
-                                                        return;
-                                                    }
-
-                                                    List<MessageExt> wrappers =
-                                                        MessageDecoder.decodes(ByteBuffer.wrap(response.getBody()), true);
-
-                                                    QueryResult qr = new QueryResult(responseHeader.getIndexLastUpdateTimestamp(), wrappers);
-                                                    try {
-                                                        lock.writeLock().lock();
-                                                        queryResultList.add(qr);
-                                                    } finally {
-                                                        lock.writeLock().unlock();
-                                                    }
-                                                    break;
-                                                }
-                                                default:
-                                                    log.warn("getResponseCommand failed, {} {}", response.getCode(), response.getRemark());
-                                                    break;
-                                            }
-                                        } else {
-                                            log.warn("getResponseCommand return null");
-                                        }
-                                    } finally {
-                                        countDownLatch.countDown();
-                                    }
-                                }
-                            }, isUniqKey);
+                            invokeCallback, isUniqKey);
                     } catch (Exception e) {
                         log.warn("queryMessage exception", e);
                     }
@@ -386,7 +420,13 @@ public class MQAdminImpl {
                     }
 
                     for (MessageExt msgExt : qr.getMessageList()) {
-                        if (isUniqKey) {
+                        if (propertyName != null) {
+                            if (key.equals(msgExt.getUserProperty(propertyName))) {
+                                messageList.add(msgExt);
+                            } else {
+                                log.warn("queryMessage by property, find message property not matched, maybe hash duplicate {}", msgExt.toString());
+                            }
+                        } else if (isUniqKey) {
                             if (msgExt.getMsgId().equals(key)) {
 
                                 if (messageList.size() > 0) {
@@ -86,6 +86,7 @@ import org.apache.rocketmq.common.protocol.body.SubscriptionGroupWrapper;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
 import org.apache.rocketmq.common.protocol.body.TopicList;
 import org.apache.rocketmq.common.protocol.body.UnlockBatchRequestBody;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.CloneGroupOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ConsumeMessageDirectlyResultRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ConsumerSendMsgBackRequestHeader;
@@ -120,6 +121,7 @@ import org.apache.rocketmq.common.protocol.header.QueryConsumeTimeSpanRequestHea
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetResponseHeader;
 import org.apache.rocketmq.common.protocol.header.QueryCorrectionOffsetHeader;
+import org.apache.rocketmq.common.protocol.header.QueryMessageByPropertyRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.QueryTopicConsumeByWhoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ResetOffsetRequestHeader;
@@ -278,6 +280,7 @@ public class MQClientAPIImpl {
         requestHeader.setTopicFilterType(topicConfig.getTopicFilterType().name());
         requestHeader.setTopicSysFlag(topicConfig.getTopicSysFlag());
         requestHeader.setOrder(topicConfig.isOrder());
+        requestHeader.setIndexedProperties(topicConfig.getIndexedProperties());
 
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_AND_CREATE_TOPIC, requestHeader);
 
@@ -484,7 +487,7 @@ public class MQClientAPIImpl {
                 if (timeoutMillis < costTimeSync) {
                     throw new RemotingTooMuchRequestException("sendMessage call timeout");
                 }
-                return this.sendMessageSync(addr, brokerName, msg, timeoutMillis - costTimeSync, request);
+                return this.sendMessageSync(addr, brokerName, msg, timeoutMillis - costTimeSync, request, producer);
             default:
                 assert false;
                 break;
@@ -498,11 +501,21 @@ public class MQClientAPIImpl {
         final String brokerName,
         final Message msg,
         final long timeoutMillis,
-        final RemotingCommand request
+        final RemotingCommand request,
+        final DefaultMQProducerImpl producer
     ) throws RemotingException, MQBrokerException, InterruptedException {
-        RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
-        assert response != null;
-        return this.processSendResponse(brokerName, msg, response,addr);
+        if (producer != null) {
+            producer.onSendStart(brokerName);
+        }
+        try {
+            RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
+            assert response != null;
+            return this.processSendResponse(brokerName, msg, response, addr);
+        } finally {
+            if (producer != null) {
+                producer.onSendEnd(brokerName);
+            }
+        }
     }
 
     private void sendMessageAsync(
@@ -520,9 +533,38 @@ public class MQClientAPIImpl {
         final DefaultMQProducerImpl producer
     ) throws InterruptedException, RemotingException {
         final long beginStartTime = System.currentTimeMillis();
+        producer.onSendStart(brokerName);
+        try {
+            this.invokeSendAsync(addr, brokerName, msg, timeoutMillis, request, sendCallback, topicPublishInfo,
+                instance, retryTimesWhenSendFailed, times, context, producer, beginStartTime);
+        } catch (InterruptedException e) {
+            producer.onSendEnd(brokerName);
+            throw e;
+        } catch (RemotingException e) {
+            producer.onSendEnd(brokerName);
+            throw e;
+        }
+    }
+
+    private void invokeSendAsync(
+        final String addr,
+        final String brokerName,
+        final Message msg,
+        final long timeoutMillis,
+        final RemotingCommand request,
+        final SendCallback sendCallback,
+        final TopicPublishInfo topicPublishInfo,
+        final MQClientInstance instance,
+        final int retryTimesWhenSendFailed,
+        final AtomicInteger times,
+        final SendMessageContext context,
+        final DefaultMQProducerImpl producer,
+        final long beginStartTime
+    ) throws InterruptedException, RemotingException {
         this.remotingClient.invokeAsync(addr, request, timeoutMillis, new InvokeCallback() {
             @Override
             public void operationComplete(ResponseFuture responseFuture) {
+                producer.onSendEnd(brokerName);
                 long cost = System.currentTimeMillis() - beginStartTime;
                 RemotingCommand response = responseFuture.getResponseCommand();
                 if (null == sendCallback && response != null) {
@@ -877,6 +919,14 @@ public class MQClientAPIImpl {
     }
 
     public List<String> getConsumerIdListByGroup(
+        final String addr,
+        final String consumerGroup,
+        final long timeoutMillis) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException,
+        MQBrokerException, InterruptedException {
+        return this.getConsumerListByGroup(addr, consumerGroup, timeoutMillis).getConsumerIdList();
+    }
+
+    public GetConsumerListByGroupResponseBody getConsumerListByGroup(
         final String addr,
         final String consumerGroup,
         final long timeoutMillis) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException,
@@ -891,9 +941,7 @@ public class MQClientAPIImpl {
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
                 if (response.getBody() != null) {
-                    GetConsumerListByGroupResponseBody body =
-                        GetConsumerListByGroupResponseBody.decode(response.getBody(), GetConsumerListByGroupResponseBody.class);
-                    return body.getConsumerIdList();
+                    return GetConsumerListByGroupResponseBody.decode(response.getBody(), GetConsumerListByGroupResponseBody.class);
                 }
             }
             default:
@@ -1008,6 +1056,19 @@ public class MQClientAPIImpl {
         this.remotingClient.invokeOneway(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis);
     }
 
+    public void updateConsumerOffsetBatch(
+        final String addr,
+        final UpdateConsumerOffsetBatchRequestBody requestBody,
+        final long timeoutMillis,
+        final InvokeCallback invokeCallback
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_CONSUMER_OFFSET_BATCH, null);
+        request.setBody(requestBody.encode());
+
+        this.remotingClient.invokeAsync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis,
+            invokeCallback);
+    }
+
     public int sendHearbeat(
         final String addr,
         final HeartbeatData heartbeatData,
@@ -1080,6 +1141,17 @@ public class MQClientAPIImpl {
             invokeCallback);
     }
 
+    public void queryMessageByProperty(
+        final String addr,
+        final QueryMessageByPropertyRequestHeader requestHeader,
+        final long timeoutMillis,
+        final InvokeCallback invokeCallback
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.QUERY_MESSAGE_BY_PROPERTY, requestHeader);
+        this.remotingClient.invokeAsync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis,
+            invokeCallback);
+    }
+
     public boolean registerClient(final String addr, final HeartbeatData heartbeat, final long timeoutMillis)
         throws RemotingException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, null);
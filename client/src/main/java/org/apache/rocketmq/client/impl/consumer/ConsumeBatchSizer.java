@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive size of message batches passed to the listener of one queue when consuming concurrently.
+ * <p>
+ * The size grows, at most doubled each time, until one batch costs about {@link #TARGET_BATCH_NANOS}, so cheap
+ * listeners are called with fewer tasks, and shrinks at once for expensive ones. It is also limited by backlog of the
+ * queue divided by consuming threads, so a small backlog is still spread over threads.
+ * </p>
+ */
+public class ConsumeBatchSizer {
+    static final long TARGET_BATCH_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(Long.parseLong(System.getProperty("rocketmq.client.consumeBatchTargetMillis", "10")));
+    private static final double EWMA_WEIGHT = 0.2;
+
+    /**
+     * Guarded by this
+     */
+    private double msgCostNanos = -1;
+    private volatile int batchSize = 1;
+
+    /**
+     * @param maxBatchSize max size configured.
+     * @param backlog messages cached by the queue.
+     * @param threadNum consuming threads.
+     * @return size of next batch, in [1, maxBatchSize].
+     */
+    public int getBatchSize(final int maxBatchSize, final long backlog, final int threadNum) {
+        if (maxBatchSize <= 1) {
+            return 1;
+        }
+        long byBacklog = backlog / Math.max(1, threadNum);
+        long size = Math.min(this.batchSize, byBacklog);
+        return (int) Math.max(1, Math.min(size, maxBatchSize));
+    }
+
+    /**
+     * Record cost of the listener.
+     *
+     * @param msgNum messages of the batch.
+     * @param costNanos time the listener took for the batch.
+     * @param maxBatchSize max size configured.
+     */
+    public synchronized void update(final int msgNum, final long costNanos, final int maxBatchSize) {
+        if (msgNum <= 0) {
+            return;
+        }
+
+        double cost = (double) Math.max(costNanos, 1) / msgNum;
+        this.msgCostNanos = this.msgCostNanos < 0 ? cost : EWMA_WEIGHT * cost + (1 - EWMA_WEIGHT) * this.msgCostNanos;
+
+        long target = (long) (TARGET_BATCH_NANOS / this.msgCostNanos);
+        if (target > this.batchSize) {
+            target = Math.min(target, (long) this.batchSize * 2);
+        }
+        this.batchSize = (int) Math.max(1, Math.min(target, maxBatchSize));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized double getMsgCostNanos() {
+        return msgCostNanos;
+    }
+}
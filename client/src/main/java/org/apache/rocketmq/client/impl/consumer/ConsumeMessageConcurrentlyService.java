@@ -91,6 +91,15 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
             }
 
         }, this.defaultMQPushConsumer.getConsumeTimeout(), this.defaultMQPushConsumer.getConsumeTimeout(), TimeUnit.MINUTES);
+
+        if (this.defaultMQPushConsumerImpl.getRebalanceImpl().isCooperative()) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.getRebalanceImpl().lockAll();
+                }
+            }, 1000 * 1, ProcessQueue.REBALANCE_LOCK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown(long awaitTerminateMillis) {
@@ -204,7 +213,11 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
         final ProcessQueue processQueue,
         final MessageQueue messageQueue,
         final boolean dispatchToConsume) {
-        final int consumeBatchSize = this.defaultMQPushConsumer.getConsumeMessageBatchMaxSize();
+        int consumeBatchSize = this.defaultMQPushConsumer.getConsumeMessageBatchMaxSize();
+        if (this.defaultMQPushConsumer.isConsumeMessageBatchAdaptive()) {
+            consumeBatchSize = processQueue.getConsumeBatchSizer().getBatchSize(consumeBatchSize,
+                processQueue.getMsgCount().get(), this.consumeExecutor.getCorePoolSize());
+        }
         if (msgs.size() <= consumeBatchSize) {
             ConsumeRequest consumeRequest = new ConsumeRequest(msgs, processQueue, messageQueue);
             try {
@@ -401,6 +414,7 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
             }
 
             long beginTimestamp = System.currentTimeMillis();
+            long beginNanos = System.nanoTime();
             boolean hasException = false;
             ConsumeReturnType returnType = ConsumeReturnType.SUCCESS;
             try {
@@ -419,6 +433,10 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
                 hasException = true;
             }
             long consumeRT = System.currentTimeMillis() - beginTimestamp;
+            if (defaultMQPushConsumer.isConsumeMessageBatchAdaptive()) {
+                processQueue.getConsumeBatchSizer().update(msgs.size(), System.nanoTime() - beginNanos,
+                    defaultMQPushConsumer.getConsumeMessageBatchMaxSize());
+            }
             if (null == status) {
                 if (hasException) {
                     returnType = ConsumeReturnType.EXCEPTION;
@@ -19,8 +19,12 @@ package org.apache.rocketmq.client.impl.consumer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -65,6 +69,13 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
     private final MessageQueueLock messageQueueLock = new MessageQueueLock();
     private final ScheduledExecutorService scheduledExecutorService;
     private volatile boolean stopped = false;
+    /**
+     * Name of message property to order by, null if the whole queue is ordered
+     */
+    private final String shardingKey;
+    private final int shardingLaneNum;
+    private final ConcurrentMap<ProcessQueue, ShardingLane[]> shardingLaneTable =
+        new ConcurrentHashMap<ProcessQueue, ShardingLane[]>();
 
     public ConsumeMessageOrderlyService(DefaultMQPushConsumerImpl defaultMQPushConsumerImpl,
         MessageListenerOrderly messageListener) {
@@ -84,6 +95,8 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
             new ThreadFactoryImpl("ConsumeMessageThread_"));
 
         this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("ConsumeMessageScheduledThread_"));
+        this.shardingKey = this.defaultMQPushConsumer.getConsumeOrderlyShardingKey();
+        this.shardingLaneNum = Math.max(1, this.defaultMQPushConsumer.getConsumeThreadMax());
     }
 
     public void start() {
@@ -95,6 +108,15 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
                 }
             }, 1000 * 1, ProcessQueue.REBALANCE_LOCK_INTERVAL, TimeUnit.MILLISECONDS);
         }
+
+        if (this.shardingKey != null) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    ConsumeMessageOrderlyService.this.cleanDroppedShardingLanes();
+                }
+            }, 1000 * 10, 1000 * 10, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown(long awaitTerminateMillis) {
@@ -199,12 +221,137 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
         final ProcessQueue processQueue,
         final MessageQueue messageQueue,
         final boolean dispathToConsume) {
+        if (this.shardingKey != null) {
+            this.submitShardingConsumeRequest(msgs, processQueue, messageQueue);
+            return;
+        }
+
         if (dispathToConsume) {
             ConsumeRequest consumeRequest = new ConsumeRequest(processQueue, messageQueue);
             this.consumeExecutor.submit(consumeRequest);
         }
     }
 
+    /**
+     * Append messages to lanes by hash of sharding key, each lane is consumed by at most one thread at a time.
+     */
+    private void submitShardingConsumeRequest(
+        final List<MessageExt> msgs,
+        final ProcessQueue processQueue,
+        final MessageQueue messageQueue) {
+        ShardingLane[] lanes = this.shardingLaneTable.get(processQueue);
+        if (null == lanes) {
+            lanes = new ShardingLane[this.shardingLaneNum];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new ShardingLane(processQueue, messageQueue);
+            }
+            ShardingLane[] prev = this.shardingLaneTable.putIfAbsent(processQueue, lanes);
+            if (prev != null) {
+                lanes = prev;
+            }
+        }
+
+        if (msgs != null) {
+            for (MessageExt msg : msgs) {
+                String key = msg.getProperty(this.shardingKey);
+                int index = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+                lanes[index].append(msg);
+            }
+        }
+
+        for (ShardingLane lane : lanes) {
+            if (lane.tryDispatch()) {
+                this.consumeExecutor.submit(new ShardingConsumeRequest(lane));
+            }
+        }
+    }
+
+    private void submitShardingConsumeRequestLater(final ShardingLane lane, final long suspendTimeMillis) {
+        long timeMillis = suspendTimeMillis;
+        if (timeMillis == -1) {
+            timeMillis = this.defaultMQPushConsumer.getSuspendCurrentQueueTimeMillis();
+        }
+
+        if (timeMillis < 10) {
+            timeMillis = 10;
+        } else if (timeMillis > 30000) {
+            timeMillis = 30000;
+        }
+
+        this.scheduledExecutorService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                ConsumeMessageOrderlyService.this.consumeExecutor.submit(new ShardingConsumeRequest(lane));
+            }
+        }, timeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void tryLockLaterAndReconsume(final ShardingLane lane, final long delayMills) {
+        this.scheduledExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean lockOK = ConsumeMessageOrderlyService.this.lockOneMQ(lane.messageQueue);
+                if (lockOK) {
+                    ConsumeMessageOrderlyService.this.submitShardingConsumeRequestLater(lane, 10);
+                } else {
+                    ConsumeMessageOrderlyService.this.submitShardingConsumeRequestLater(lane, 3000);
+                }
+            }
+        }, delayMills, TimeUnit.MILLISECONDS);
+    }
+
+    private void cleanDroppedShardingLanes() {
+        Iterator<ProcessQueue> it = this.shardingLaneTable.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().isDropped()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if the lane should go on consuming.
+     */
+    boolean processShardingConsumeResult(
+        final List<MessageExt> msgs,
+        final ConsumeOrderlyStatus status,
+        final ConsumeOrderlyContext context,
+        final ShardingLane lane
+    ) {
+        boolean acked = true;
+        switch (status) {
+            case COMMIT:
+            case ROLLBACK:
+                log.warn("the message queue consume result is illegal when consuming by sharding key, we think you want to ack these message {}",
+                    lane.messageQueue);
+            case SUCCESS:
+                this.getConsumerStatsManager().incConsumeOKTPS(consumerGroup, lane.messageQueue.getTopic(), msgs.size());
+                break;
+            case SUSPEND_CURRENT_QUEUE_A_MOMENT:
+                this.getConsumerStatsManager().incConsumeFailedTPS(consumerGroup, lane.messageQueue.getTopic(), msgs.size());
+                if (checkReconsumeTimes(msgs)) {
+                    // messages stay at head of the lane, other lanes go on.
+                    this.submitShardingConsumeRequestLater(lane, context.getSuspendCurrentQueueTimeMillis());
+                    acked = false;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (!acked) {
+            return false;
+        }
+
+        lane.poll(msgs.size());
+        long commitOffset = lane.processQueue.removeMessage(msgs);
+        if (commitOffset >= 0 && !lane.processQueue.isDropped()) {
+            this.defaultMQPushConsumerImpl.getOffsetStore().updateOffset(lane.messageQueue, commitOffset, true);
+        }
+        return true;
+    }
+
     public synchronized void lockMQPeriodically() {
         if (!this.stopped) {
             this.defaultMQPushConsumerImpl.getRebalanceImpl().lockAll();
@@ -557,4 +704,174 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
 
     }
 
+    static class ShardingLane {
+        private final ProcessQueue processQueue;
+        private final MessageQueue messageQueue;
+        /**
+         * Guarded by this
+         */
+        private final LinkedList<MessageExt> msgs = new LinkedList<MessageExt>();
+        private boolean running = false;
+
+        ShardingLane(final ProcessQueue processQueue, final MessageQueue messageQueue) {
+            this.processQueue = processQueue;
+            this.messageQueue = messageQueue;
+        }
+
+        synchronized void append(final MessageExt msg) {
+            this.msgs.addLast(msg);
+        }
+
+        /**
+         * @return true if the lane has messages and is not being consumed, the caller should consume it then.
+         */
+        synchronized boolean tryDispatch() {
+            if (this.running || this.msgs.isEmpty()) {
+                return false;
+            }
+            this.running = true;
+            return true;
+        }
+
+        synchronized List<MessageExt> peek(final int batchSize) {
+            List<MessageExt> result = new ArrayList<MessageExt>(Math.min(batchSize, this.msgs.size()));
+            Iterator<MessageExt> it = this.msgs.iterator();
+            while (it.hasNext() && result.size() < batchSize) {
+                result.add(it.next());
+            }
+            return result;
+        }
+
+        synchronized void poll(final int num) {
+            for (int i = 0; i < num && !this.msgs.isEmpty(); i++) {
+                this.msgs.removeFirst();
+            }
+        }
+
+        /**
+         * @return true if the lane is empty and stops running, false if messages are appended meanwhile.
+         */
+        synchronized boolean finish() {
+            if (this.msgs.isEmpty()) {
+                this.running = false;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return this.msgs.size();
+        }
+    }
+
+    class ShardingConsumeRequest implements Runnable {
+        private final ShardingLane lane;
+
+        ShardingConsumeRequest(final ShardingLane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            final ProcessQueue processQueue = this.lane.processQueue;
+            final MessageQueue messageQueue = this.lane.messageQueue;
+            final boolean clustering = MessageModel.CLUSTERING.equals(ConsumeMessageOrderlyService.this.defaultMQPushConsumerImpl.messageModel());
+            final long beginTime = System.currentTimeMillis();
+            while (true) {
+                if (processQueue.isDropped()) {
+                    log.warn("the message queue not be able to consume, because it's dropped. {}", messageQueue);
+                    return;
+                }
+
+                if (clustering && (!processQueue.isLocked() || processQueue.isLockExpired())) {
+                    log.warn("the message queue not locked or lock expired, so consume later, {}", messageQueue);
+                    ConsumeMessageOrderlyService.this.tryLockLaterAndReconsume(this.lane, 100);
+                    return;
+                }
+
+                if (System.currentTimeMillis() - beginTime > MAX_TIME_CONSUME_CONTINUOUSLY) {
+                    ConsumeMessageOrderlyService.this.submitShardingConsumeRequestLater(this.lane, 10);
+                    return;
+                }
+
+                List<MessageExt> msgs = this.lane.peek(defaultMQPushConsumer.getConsumeMessageBatchMaxSize());
+                if (msgs.isEmpty()) {
+                    if (this.lane.finish()) {
+                        return;
+                    }
+                    continue;
+                }
+                defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, defaultMQPushConsumer.getConsumerGroup());
+
+                final ConsumeOrderlyContext context = new ConsumeOrderlyContext(messageQueue);
+                ConsumeOrderlyStatus status = null;
+
+                ConsumeMessageContext consumeMessageContext = null;
+                if (defaultMQPushConsumerImpl.hasHook()) {
+                    consumeMessageContext = new ConsumeMessageContext();
+                    consumeMessageContext.setConsumerGroup(defaultMQPushConsumer.getConsumerGroup());
+                    consumeMessageContext.setNamespace(defaultMQPushConsumer.getNamespace());
+                    consumeMessageContext.setMq(messageQueue);
+                    consumeMessageContext.setMsgList(msgs);
+                    consumeMessageContext.setSuccess(false);
+                    consumeMessageContext.setProps(new HashMap<String, String>());
+                    defaultMQPushConsumerImpl.executeHookBefore(consumeMessageContext);
+                }
+
+                long beginTimestamp = System.currentTimeMillis();
+                ConsumeReturnType returnType = ConsumeReturnType.SUCCESS;
+                boolean hasException = false;
+                processQueue.getConsumeSharedLock().lock();
+                try {
+                    if (processQueue.isDropped()) {
+                        log.warn("consumeMessage, the message queue not be able to consume, because it's dropped. {}", messageQueue);
+                        return;
+                    }
+
+                    status = messageListener.consumeMessage(Collections.unmodifiableList(msgs), context);
+                } catch (Throwable e) {
+                    log.warn("consumeMessage exception: {} Group: {} Msgs: {} MQ: {}",
+                        RemotingHelper.exceptionSimpleDesc(e),
+                        ConsumeMessageOrderlyService.this.consumerGroup,
+                        msgs,
+                        messageQueue);
+                    hasException = true;
+                } finally {
+                    processQueue.getConsumeSharedLock().unlock();
+                }
+
+                long consumeRT = System.currentTimeMillis() - beginTimestamp;
+                if (null == status) {
+                    returnType = hasException ? ConsumeReturnType.EXCEPTION : ConsumeReturnType.RETURNNULL;
+                    status = ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                } else if (consumeRT >= defaultMQPushConsumer.getConsumeTimeout() * 60 * 1000) {
+                    returnType = ConsumeReturnType.TIME_OUT;
+                } else if (ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+                    returnType = ConsumeReturnType.FAILED;
+                }
+
+                if (ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+                    log.warn("consumeMessage Orderly return not OK, Group: {} Msgs: {} MQ: {}",
+                        ConsumeMessageOrderlyService.this.consumerGroup,
+                        msgs,
+                        messageQueue);
+                }
+
+                if (defaultMQPushConsumerImpl.hasHook()) {
+                    consumeMessageContext.getProps().put(MixAll.CONSUME_CONTEXT_TYPE, returnType.name());
+                    consumeMessageContext.setStatus(status.toString());
+                    consumeMessageContext.setSuccess(ConsumeOrderlyStatus.SUCCESS == status || ConsumeOrderlyStatus.COMMIT == status);
+                    defaultMQPushConsumerImpl.executeHookAfter(consumeMessageContext);
+                }
+
+                ConsumeMessageOrderlyService.this.getConsumerStatsManager()
+                    .incConsumeRT(ConsumeMessageOrderlyService.this.consumerGroup, messageQueue.getTopic(), consumeRT);
+
+                if (!ConsumeMessageOrderlyService.this.processShardingConsumeResult(msgs, status, context, this.lane)) {
+                    return;
+                }
+            }
+        }
+    }
+
 }
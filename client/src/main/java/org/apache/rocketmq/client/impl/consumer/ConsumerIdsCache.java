@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches consumer id list of each group between rebalances. An entry is dropped when a broker notifies a membership
+ * version newer than the one already seen from it, or when it gets older than {@code ttlMillis}, in case some
+ * notification is lost.
+ */
+public class ConsumerIdsCache {
+    private final long ttlMillis;
+    private final ConcurrentMap<String/* group */, CacheEntry> cacheTable =
+        new ConcurrentHashMap<String, CacheEntry>();
+    private final ConcurrentMap<String/* group@brokerAddr */, Long> versionTable =
+        new ConcurrentHashMap<String, Long>();
+    /**
+     * Increased by every invalidation, so a list fetched before it is not cached.
+     */
+    private final AtomicLong stamp = new AtomicLong(0);
+
+    public ConsumerIdsCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return a copy of the cached list, or null if absent or expired
+     */
+    public List<String> get(final String group, final long now) {
+        CacheEntry entry = this.cacheTable.get(group);
+        if (entry == null || now - entry.timestamp >= this.ttlMillis) {
+            return null;
+        }
+        return new ArrayList<String>(entry.consumerIdList);
+    }
+
+    public long stamp() {
+        return this.stamp.get();
+    }
+
+    /**
+     * @param stamp value of {@link #stamp()} taken before fetching the list
+     * @param membershipVersion version returned with the list, 0 if the broker does not track it
+     */
+    public void put(final String group, final String brokerAddr, final long membershipVersion,
+        final List<String> consumerIdList, final long stamp, final long now) {
+        if (membershipVersion > 0) {
+            this.advanceVersion(group + "@" + brokerAddr, membershipVersion);
+        }
+        if (consumerIdList == null || consumerIdList.isEmpty() || this.stamp.get() != stamp) {
+            return;
+        }
+        this.cacheTable.put(group, new CacheEntry(new ArrayList<String>(consumerIdList), now));
+    }
+
+    /**
+     * @param membershipVersion version carried by the notification, null if the broker does not track it
+     * @return false if the cached list of this group already reflects the change
+     */
+    public boolean invalidate(final String group, final String brokerAddr, final Long membershipVersion) {
+        if (membershipVersion != null && !this.advanceVersion(group + "@" + brokerAddr, membershipVersion)) {
+            return false;
+        }
+        this.stamp.incrementAndGet();
+        this.cacheTable.remove(group);
+        return true;
+    }
+
+    private boolean advanceVersion(final String key, final long version) {
+        while (true) {
+            Long prev = this.versionTable.putIfAbsent(key, version);
+            if (prev == null) {
+                return true;
+            }
+            if (prev >= version) {
+                return false;
+            }
+            if (this.versionTable.replace(key, prev, version)) {
+                return true;
+            }
+        }
+    }
+
+    private static class CacheEntry {
+        private final List<String> consumerIdList;
+        private final long timestamp;
+
+        CacheEntry(List<String> consumerIdList, long timestamp) {
+            this.consumerIdList = consumerIdList;
+            this.timestamp = timestamp;
+        }
+    }
+}
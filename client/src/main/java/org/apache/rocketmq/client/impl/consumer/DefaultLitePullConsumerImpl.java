@@ -335,6 +335,7 @@ public class DefaultLitePullConsumerImpl implements MQConsumerInner {
             mQClientFactory,
             this.defaultLitePullConsumer.getConsumerGroup(), isUnitMode());
         this.pullAPIWrapper.registerFilterMessageHook(filterMessageHookList);
+        this.pullAPIWrapper.setDecodeMessageLazily(this.defaultLitePullConsumer.isDecodeMessageLazily());
     }
 
     private void initOffsetStore() throws MQClientException {
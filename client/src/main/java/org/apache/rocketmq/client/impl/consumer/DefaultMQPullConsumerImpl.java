@@ -643,6 +643,7 @@ public class DefaultMQPullConsumerImpl implements MQConsumerInner {
                     mQClientFactory,
                     this.defaultMQPullConsumer.getConsumerGroup(), isUnitMode());
                 this.pullAPIWrapper.registerFilterMessageHook(filterMessageHookList);
+                this.pullAPIWrapper.setDecodeMessageLazily(this.defaultMQPullConsumer.isDecodeMessageLazily());
 
                 if (this.defaultMQPullConsumer.getOffsetStore() != null) {
                     this.offsetStore = this.defaultMQPullConsumer.getOffsetStore();
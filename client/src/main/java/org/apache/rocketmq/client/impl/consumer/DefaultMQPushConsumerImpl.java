@@ -17,6 +17,7 @@
 package org.apache.rocketmq.client.impl.consumer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -111,6 +112,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
     private ConsumeMessageService consumeMessageService;
     private long queueFlowControlTimes = 0;
     private long queueMaxSpanFlowControlTimes = 0;
+    private PullMemoryBudget pullMemoryBudget;
 
     public DefaultMQPushConsumerImpl(DefaultMQPushConsumer defaultMQPushConsumer, RPCHook rpcHook) {
         this.defaultMQPushConsumer = defaultMQPushConsumer;
@@ -246,7 +248,19 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             return;
         }
 
-        if (cachedMessageSizeInMiB > this.defaultMQPushConsumer.getPullThresholdSizeForQueue()) {
+        if (this.pullMemoryBudget != null) {
+            Collection<ProcessQueue> processQueues = this.rebalanceImpl.getProcessQueueTable().values();
+            if (!this.pullMemoryBudget.tryAcquire(processQueue, processQueues)) {
+                this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
+                if ((queueFlowControlTimes++ % 1000) == 0) {
+                    log.warn(
+                        "the cached message size exceeds the memory budget {} MiB of consumer, so do flow control, share={} MiB, count={}, size={} MiB, pullRequest={}, flowControlTimes={}",
+                        this.defaultMQPushConsumer.getPullThresholdSizeForConsumer(), this.pullMemoryBudget.getShare(processQueue, processQueues.size()) / (1024 * 1024),
+                        cachedMessageCount, cachedMessageSizeInMiB, pullRequest, queueFlowControlTimes);
+                }
+                return;
+            }
+        } else if (cachedMessageSizeInMiB > this.defaultMQPushConsumer.getPullThresholdSizeForQueue()) {
             this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
             if ((queueFlowControlTimes++ % 1000) == 0) {
                 log.warn(
@@ -558,6 +572,9 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             case RUNNING:
                 this.consumeMessageService.shutdown(awaitTerminateMillis);
                 this.persistConsumerOffset();
+                if (!this.consumeOrderly && this.rebalanceImpl.isCooperative()) {
+                    this.rebalanceImpl.unlockAll(false);
+                }
                 this.mQClientFactory.unregisterConsumer(this.defaultMQPushConsumer.getConsumerGroup());
                 this.mQClientFactory.shutdown();
                 log.info("the consumer [{}] shutdown OK", this.defaultMQPushConsumer.getConsumerGroup());
@@ -597,6 +614,11 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
                     mQClientFactory,
                     this.defaultMQPushConsumer.getConsumerGroup(), isUnitMode());
                 this.pullAPIWrapper.registerFilterMessageHook(filterMessageHookList);
+                this.pullAPIWrapper.setDecodeMessageLazily(this.defaultMQPushConsumer.isDecodeMessageLazily());
+
+                if (this.defaultMQPushConsumer.getPullThresholdSizeForConsumer() != -1) {
+                    this.pullMemoryBudget = new PullMemoryBudget(this.defaultMQPushConsumer.getPullThresholdSizeForConsumer() * 1024L * 1024L);
+                }
 
                 if (this.defaultMQPushConsumer.getOffsetStore() != null) {
                     this.offsetStore = this.defaultMQPushConsumer.getOffsetStore();
@@ -606,7 +628,10 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
                             this.offsetStore = new LocalFileOffsetStore(this.mQClientFactory, this.defaultMQPushConsumer.getConsumerGroup());
                             break;
                         case CLUSTERING:
-                            this.offsetStore = new RemoteBrokerOffsetStore(this.mQClientFactory, this.defaultMQPushConsumer.getConsumerGroup());
+                            RemoteBrokerOffsetStore remoteBrokerOffsetStore =
+                                new RemoteBrokerOffsetStore(this.mQClientFactory, this.defaultMQPushConsumer.getConsumerGroup());
+                            remoteBrokerOffsetStore.setPersistOnUpdateDelayMillis(this.defaultMQPushConsumer.getPersistConsumerOffsetOnConsumedDelay());
+                            this.offsetStore = remoteBrokerOffsetStore;
                             break;
                         default:
                             break;
@@ -801,6 +826,24 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             }
         }
 
+        if (this.defaultMQPushConsumer.getPullThresholdSizeForConsumer() != -1) {
+            // pullThresholdSizeForConsumer
+            if (this.defaultMQPushConsumer.getPullThresholdSizeForConsumer() < 1 || this.defaultMQPushConsumer.getPullThresholdSizeForConsumer() > 102400) {
+                throw new MQClientException(
+                    "pullThresholdSizeForConsumer Out of range [1, 102400]"
+                        + FAQUrl.suggestTodo(FAQUrl.CLIENT_PARAMETER_CHECK_URL),
+                    null);
+            }
+        }
+
+        // persistConsumerOffsetOnConsumedDelay
+        if (this.defaultMQPushConsumer.getPersistConsumerOffsetOnConsumedDelay() < -1) {
+            throw new MQClientException(
+                "persistConsumerOffsetOnConsumedDelay Out of range [-1, Long.MAX_VALUE]"
+                    + FAQUrl.suggestTodo(FAQUrl.CLIENT_PARAMETER_CHECK_URL),
+                null);
+        }
+
         // pullInterval
         if (this.defaultMQPushConsumer.getPullInterval() < 0 || this.defaultMQPushConsumer.getPullInterval() > 65535) {
             throw new MQClientException(
@@ -1107,6 +1150,10 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         this.serviceState = serviceState;
     }
 
+    public PullMemoryBudget getPullMemoryBudget() {
+        return pullMemoryBudget;
+    }
+
     public void adjustThreadPool() {
         long computeAccTotal = this.computeAccumulationTotal();
         long adjustThreadPoolNumsThreshold = this.defaultMQPushConsumer.getAdjustThreadPoolNumsThreshold();
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.rocketmq.common.message.MessageExt;
+
+/**
+ * Messages of one queue indexed by queue offset, kept in chunks each covering {@link #CHUNK_SIZE} consecutive
+ * offsets. Chunks are keyed by a sorted map and only those holding messages are kept, so memory and scanning cost
+ * follow the number of cached messages, not the range of their offsets, e.g. when most messages are filtered by tag.
+ * <p>
+ * Each chunk has two bitmaps: messages held (not acknowledged yet) and messages pending (not taken by orderly
+ * consumption yet, a subset of held). Acknowledging a message clears its bits by CAS, which is O(1) after the chunk
+ * is found and never blocks. The first pending message is found by scanning bitmap words of a few chunks in order.
+ * </p>
+ * <p>
+ * Methods changing structure of the index, that is, {@link #put(MessageExt)}, {@link #pollFirstPending()},
+ * {@link #reclaim()} and {@link #clear()}, must be called by one thread at a time, e.g. under a lock.
+ * The others could be called by any thread at any time.
+ * </p>
+ */
+public class MessageOffsetIndex {
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ConcurrentNavigableMap<Long/* chunk index */, Chunk> chunks = new ConcurrentSkipListMap<Long, Chunk>();
+
+    /**
+     * @return true if message at the offset is not held before.
+     */
+    public boolean put(final MessageExt msg) {
+        final long offset = msg.getQueueOffset();
+        final long index = offset >> CHUNK_SHIFT;
+
+        Chunk chunk = this.chunks.get(index);
+        if (chunk == null) {
+            chunk = new Chunk(index);
+            this.chunks.put(index, chunk);
+        }
+        return chunk.put((int) (offset & CHUNK_MASK), msg);
+    }
+
+    /**
+     * Acknowledge message at the offset, whether it is pending or taken.
+     *
+     * @return true if the message is held before, so only one of concurrent callers gets true.
+     */
+    public boolean ack(final long offset) {
+        Chunk chunk = this.chunks.get(offset >> CHUNK_SHIFT);
+        return chunk != null && chunk.ack((int) (offset & CHUNK_MASK));
+    }
+
+    /**
+     * Make a taken message pending again.
+     *
+     * @return false if the message is acknowledged already.
+     */
+    public boolean repend(final long offset) {
+        Chunk chunk = this.chunks.get(offset >> CHUNK_SHIFT);
+        return chunk != null && chunk.repend((int) (offset & CHUNK_MASK));
+    }
+
+    /**
+     * @return offset of the first pending message, -1 if there is none.
+     */
+    public long firstPendingOffset() {
+        for (Chunk chunk : this.chunks.values()) {
+            long bits = chunk.pending.get();
+            if (bits != 0) {
+                return (chunk.index << CHUNK_SHIFT) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return offset of the last pending message, -1 if there is none.
+     */
+    public long lastPendingOffset() {
+        for (Chunk chunk : this.chunks.descendingMap().values()) {
+            long bits = chunk.pending.get();
+            if (bits != 0) {
+                return (chunk.index << CHUNK_SHIFT) + (Long.SIZE - 1 - Long.numberOfLeadingZeros(bits));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first pending message, null if there is none.
+     */
+    public MessageExt peekFirstPending() {
+        for (Chunk chunk : this.chunks.values()) {
+            long bits = chunk.pending.get();
+            if (bits != 0) {
+                return chunk.messages.get(Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the first pending message, which is still held until acknowledged.
+     *
+     * @return the message taken, null if there is none.
+     */
+    public MessageExt pollFirstPending() {
+        for (Chunk chunk : this.chunks.values()) {
+            long bits;
+            while ((bits = chunk.pending.get()) != 0) {
+                MessageExt msg = chunk.take(Long.numberOfTrailingZeros(bits));
+                if (msg != null) {
+                    return msg;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean hasPending() {
+        return this.firstPendingOffset() >= 0;
+    }
+
+    /**
+     * @return number of pending messages, by counting bits of all chunks.
+     */
+    public int pendingCount() {
+        int count = 0;
+        for (Chunk chunk : this.chunks.values()) {
+            count += Long.bitCount(chunk.pending.get());
+        }
+        return count;
+    }
+
+    /**
+     * @return copy of pending messages, ordered by queue offset.
+     */
+    public TreeMap<Long, MessageExt> pendingSnapshot() {
+        TreeMap<Long, MessageExt> snapshot = new TreeMap<Long, MessageExt>();
+        for (Chunk chunk : this.chunks.values()) {
+            long bits = chunk.pending.get();
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                MessageExt msg = chunk.messages.get(bit);
+                if (msg != null) {
+                    snapshot.put((chunk.index << CHUNK_SHIFT) + bit, msg);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drop chunks all of whose messages are acknowledged.
+     */
+    public void reclaim() {
+        Iterator<Chunk> it = this.chunks.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().held.get() == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all messages, those acknowledged concurrently are not counted as held.
+     */
+    public void clear() {
+        for (Chunk chunk : this.chunks.values()) {
+            chunk.held.set(0);
+            chunk.pending.set(0);
+        }
+        this.chunks.clear();
+    }
+
+    /**
+     * @return number of chunks kept, including reclaimable ones.
+     */
+    public int getChunkCount() {
+        return this.chunks.size();
+    }
+
+    static class Chunk {
+        private final long index;
+        private final AtomicReferenceArray<MessageExt> messages = new AtomicReferenceArray<MessageExt>(CHUNK_SIZE);
+        private final AtomicLong held = new AtomicLong(0);
+        private final AtomicLong pending = new AtomicLong(0);
+
+        Chunk(final long index) {
+            this.index = index;
+        }
+
+        boolean put(final int bit, final MessageExt msg) {
+            this.messages.set(bit, msg);
+            boolean added = setBit(this.held, bit);
+            setBit(this.pending, bit);
+            return added;
+        }
+
+        boolean ack(final int bit) {
+            MessageExt msg = this.messages.get(bit);
+            if (!clearBit(this.held, bit)) {
+                return false;
+            }
+            clearBit(this.pending, bit);
+            // keep message put again concurrently with the same offset.
+            this.messages.compareAndSet(bit, msg, null);
+            return true;
+        }
+
+        boolean repend(final int bit) {
+            if ((this.held.get() & (1L << bit)) == 0) {
+                return false;
+            }
+            setBit(this.pending, bit);
+            return true;
+        }
+
+        MessageExt take(final int bit) {
+            MessageExt msg = this.messages.get(bit);
+            if (clearBit(this.pending, bit)) {
+                return msg;
+            }
+            return null;
+        }
+
+        private static boolean setBit(final AtomicLong bits, final int bit) {
+            final long mask = 1L << bit;
+            long value;
+            do {
+                value = bits.get();
+                if ((value & mask) != 0) {
+                    return false;
+                }
+            } while (!bits.compareAndSet(value, value | mask));
+            return true;
+        }
+
+        private static boolean clearBit(final AtomicLong bits, final int bit) {
+            final long mask = 1L << bit;
+            long value;
+            do {
+                value = bits.get();
+                if ((value & mask) == 0) {
+                    return false;
+                }
+            } while (!bits.compareAndSet(value, value & ~mask));
+            return true;
+        }
+    }
+}
@@ -19,7 +19,6 @@ package org.apache.rocketmq.client.impl.consumer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -30,6 +29,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.log.ClientLogger;
 import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.common.message.LazyMessageClientExt;
 import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -44,13 +44,24 @@ public class ProcessQueue {
     public final static long REBALANCE_LOCK_INTERVAL = Long.parseLong(System.getProperty("rocketmq.client.rebalance.lockInterval", "20000"));
     private final static long PULL_MAX_IDLE_TIME = Long.parseLong(System.getProperty("rocketmq.client.pull.pullMaxIdleTime", "120000"));
     private final InternalLogger log = ClientLogger.getLog();
-    private final ReadWriteLock treeMapLock = new ReentrantReadWriteLock();
-    private final TreeMap<Long, MessageExt> msgTreeMap = new TreeMap<Long, MessageExt>();
+    /**
+     * Taken by pulling thread and orderly consumption only, which change structure of the index.
+     * Concurrent consumption acknowledges messages without it.
+     */
+    private final Lock indexWriteLock = new ReentrantLock();
+    private final MessageOffsetIndex msgIndex = new MessageOffsetIndex();
     private final AtomicLong msgCount = new AtomicLong();
     private final AtomicLong msgSize = new AtomicLong();
-    private final Lock consumeLock = new ReentrantLock();
     /**
-     * A subset of msgTreeMap, will only be used when orderly consume
+     * Total size of messages ever put, written by pulling thread only
+     */
+    private volatile long putMsgSize = 0L;
+    /**
+     * Exclusive when consuming the whole queue orderly, shared among lanes when consuming orderly by sharding key
+     */
+    private final ReadWriteLock consumeLock = new ReentrantReadWriteLock();
+    /**
+     * Messages taken from msgIndex and not committed yet, will only be used when orderly consume
      */
     private final TreeMap<Long, MessageExt> consumingMsgOrderlyTreeMap = new TreeMap<Long, MessageExt>();
     private final AtomicLong tryUnlockTimes = new AtomicLong(0);
@@ -62,6 +73,7 @@ public class ProcessQueue {
     private volatile long lastLockTimestamp = System.currentTimeMillis();
     private volatile boolean consuming = false;
     private volatile long msgAccCnt = 0;
+    private final ConsumeBatchSizer consumeBatchSizer = new ConsumeBatchSizer();
 
     public boolean isLockExpired() {
         return (System.currentTimeMillis() - this.lastLockTimestamp) > REBALANCE_LOCK_MAX_LIVE_TIME;
@@ -79,45 +91,20 @@ public class ProcessQueue {
             return;
         }
 
-        int loop = msgTreeMap.size() < 16 ? msgTreeMap.size() : 16;
+        long count = msgCount.get();
+        int loop = count < 16 ? (int) count : 16;
         for (int i = 0; i < loop; i++) {
-            MessageExt msg = null;
-            try {
-                this.treeMapLock.readLock().lockInterruptibly();
-                try {
-                    if (!msgTreeMap.isEmpty() && System.currentTimeMillis() - Long.parseLong(MessageAccessor.getConsumeStartTimeStamp(msgTreeMap.firstEntry().getValue())) > pushConsumer.getConsumeTimeout() * 60 * 1000) {
-                        msg = msgTreeMap.firstEntry().getValue();
-                    } else {
-
-                        break;
-                    }
-                } finally {
-                    this.treeMapLock.readLock().unlock();
-                }
-            } catch (InterruptedException e) {
-                log.error("getExpiredMsg exception", e);
+            MessageExt msg = this.peekFirstPending();
+            if (msg == null || System.currentTimeMillis() - Long.parseLong(MessageAccessor.getConsumeStartTimeStamp(msg)) <= pushConsumer.getConsumeTimeout() * 60 * 1000) {
+                break;
             }
 
             try {
 
                 pushConsumer.sendMessageBack(msg, 3);
                 log.info("send expire msg back. topic={}, msgId={}, storeHost={}, queueId={}, queueOffset={}", msg.getTopic(), msg.getMsgId(), msg.getStoreHost(), msg.getQueueId(), msg.getQueueOffset());
-                try {
-                    this.treeMapLock.writeLock().lockInterruptibly();
-                    try {
-                        if (!msgTreeMap.isEmpty() && msg.getQueueOffset() == msgTreeMap.firstKey()) {
-                            try {
-                                removeMessage(Collections.singletonList(msg));
-                            } catch (Exception e) {
-                                log.error("send expired msg exception", e);
-                            }
-                        }
-                    } finally {
-                        this.treeMapLock.writeLock().unlock();
-                    }
-                } catch (InterruptedException e) {
-                    log.error("getExpiredMsg exception", e);
-                }
+                // no-op if it is removed by consuming thread meanwhile.
+                removeMessage(Collections.singletonList(msg));
             } catch (Exception e) {
                 log.error("send expired msg exception", e);
             }
@@ -127,20 +114,22 @@ public class ProcessQueue {
     public boolean putMessage(final List<MessageExt> msgs) {
         boolean dispatchToConsume = false;
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             try {
+                this.msgIndex.reclaim();
                 int validMsgCnt = 0;
                 for (MessageExt msg : msgs) {
-                    MessageExt old = msgTreeMap.put(msg.getQueueOffset(), msg);
-                    if (null == old) {
+                    if (this.msgIndex.put(msg)) {
                         validMsgCnt++;
                         this.queueOffsetMax = msg.getQueueOffset();
-                        msgSize.addAndGet(msg.getBody().length);
+                        int bodyLength = bodyLength(msg);
+                        this.putMsgSize += bodyLength;
+                        msgSize.addAndGet(bodyLength);
                     }
                 }
                 msgCount.addAndGet(validMsgCnt);
 
-                if (!msgTreeMap.isEmpty() && !this.consuming) {
+                if (this.msgIndex.hasPending() && !this.consuming) {
                     dispatchToConsume = true;
                     this.consuming = true;
                 }
@@ -156,7 +145,7 @@ public class ProcessQueue {
                     }
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("putMessage exception", e);
@@ -166,17 +155,12 @@ public class ProcessQueue {
     }
 
     public long getMaxSpan() {
-        try {
-            this.treeMapLock.readLock().lockInterruptibly();
-            try {
-                if (!this.msgTreeMap.isEmpty()) {
-                    return this.msgTreeMap.lastKey() - this.msgTreeMap.firstKey();
-                }
-            } finally {
-                this.treeMapLock.readLock().unlock();
+        long first = this.msgIndex.firstPendingOffset();
+        if (first >= 0) {
+            long last = this.msgIndex.lastPendingOffset();
+            if (last > first) {
+                return last - first;
             }
-        } catch (InterruptedException e) {
-            log.error("getMaxSpan exception", e);
         }
 
         return 0;
@@ -185,28 +169,27 @@ public class ProcessQueue {
     public long removeMessage(final List<MessageExt> msgs) {
         long result = -1;
         final long now = System.currentTimeMillis();
+        this.lastConsumeTimestamp = now;
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
-            this.lastConsumeTimestamp = now;
-            try {
-                if (!msgTreeMap.isEmpty()) {
-                    result = this.queueOffsetMax + 1;
-                    int removedCnt = 0;
-                    for (MessageExt msg : msgs) {
-                        MessageExt prev = msgTreeMap.remove(msg.getQueueOffset());
-                        if (prev != null) {
-                            removedCnt--;
-                            msgSize.addAndGet(0 - msg.getBody().length);
-                        }
-                    }
-                    msgCount.addAndGet(removedCnt);
-
-                    if (!msgTreeMap.isEmpty()) {
-                        result = msgTreeMap.firstKey();
-                    }
+            // read before scanning the index: every message up to it is put already, so if none of them is pending
+            // after the scan, it is safe to commit past it even if the pull thread puts more messages meanwhile.
+            final long offsetMax = this.queueOffsetMax;
+            int removedCnt = 0;
+            for (MessageExt msg : msgs) {
+                if (this.msgIndex.ack(msg.getQueueOffset())) {
+                    removedCnt--;
+                    msgSize.addAndGet(0 - bodyLength(msg));
                 }
-            } finally {
-                this.treeMapLock.writeLock().unlock();
+            }
+            if (removedCnt != 0) {
+                msgCount.addAndGet(removedCnt);
+            }
+
+            long firstOffset = this.msgIndex.firstPendingOffset();
+            if (firstOffset >= 0) {
+                result = firstOffset;
+            } else if (removedCnt != 0) {
+                result = offsetMax + 1;
             }
         } catch (Throwable t) {
             log.error("removeMessage exception", t);
@@ -215,8 +198,18 @@ public class ProcessQueue {
         return result;
     }
 
+    /**
+     * @return the first message not consumed yet without taking it, null if there is none.
+     */
+    public MessageExt peekFirstPending() {
+        return this.msgIndex.peekFirstPending();
+    }
+
+    /**
+     * @return snapshot of messages not consumed yet, ordered by queue offset, changing it does not affect this queue.
+     */
     public TreeMap<Long, MessageExt> getMsgTreeMap() {
-        return msgTreeMap;
+        return this.msgIndex.pendingSnapshot();
     }
 
     public AtomicLong getMsgCount() {
@@ -227,6 +220,13 @@ public class ProcessQueue {
         return msgSize;
     }
 
+    /**
+     * @return total size of messages consumed, removed or committed.
+     */
+    public long getConsumedMsgSize() {
+        return this.putMsgSize - this.msgSize.get();
+    }
+
     public boolean isDropped() {
         return dropped;
     }
@@ -245,12 +245,14 @@ public class ProcessQueue {
 
     public void rollback() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             try {
-                this.msgTreeMap.putAll(this.consumingMsgOrderlyTreeMap);
+                for (Long offset : this.consumingMsgOrderlyTreeMap.keySet()) {
+                    this.msgIndex.repend(offset);
+                }
                 this.consumingMsgOrderlyTreeMap.clear();
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("rollback exception", e);
@@ -259,19 +261,21 @@ public class ProcessQueue {
 
     public long commit() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             try {
                 Long offset = this.consumingMsgOrderlyTreeMap.lastKey();
                 msgCount.addAndGet(0 - this.consumingMsgOrderlyTreeMap.size());
                 for (MessageExt msg : this.consumingMsgOrderlyTreeMap.values()) {
-                    msgSize.addAndGet(0 - msg.getBody().length);
+                    this.msgIndex.ack(msg.getQueueOffset());
+                    msgSize.addAndGet(0 - bodyLength(msg));
                 }
                 this.consumingMsgOrderlyTreeMap.clear();
+                this.msgIndex.reclaim();
                 if (offset != null) {
                     return offset + 1;
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("commit exception", e);
@@ -282,14 +286,14 @@ public class ProcessQueue {
 
     public void makeMessageToConsumeAgain(List<MessageExt> msgs) {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             try {
                 for (MessageExt msg : msgs) {
                     this.consumingMsgOrderlyTreeMap.remove(msg.getQueueOffset());
-                    this.msgTreeMap.put(msg.getQueueOffset(), msg);
+                    this.msgIndex.repend(msg.getQueueOffset());
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("makeMessageToCosumeAgain exception", e);
@@ -300,18 +304,16 @@ public class ProcessQueue {
         List<MessageExt> result = new ArrayList<MessageExt>(batchSize);
         final long now = System.currentTimeMillis();
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             this.lastConsumeTimestamp = now;
             try {
-                if (!this.msgTreeMap.isEmpty()) {
-                    for (int i = 0; i < batchSize; i++) {
-                        Map.Entry<Long, MessageExt> entry = this.msgTreeMap.pollFirstEntry();
-                        if (entry != null) {
-                            result.add(entry.getValue());
-                            consumingMsgOrderlyTreeMap.put(entry.getKey(), entry.getValue());
-                        } else {
-                            break;
-                        }
+                for (int i = 0; i < batchSize; i++) {
+                    MessageExt msg = this.msgIndex.pollFirstPending();
+                    if (msg != null) {
+                        result.add(msg);
+                        consumingMsgOrderlyTreeMap.put(msg.getQueueOffset(), msg);
+                    } else {
+                        break;
                     }
                 }
 
@@ -319,7 +321,7 @@ public class ProcessQueue {
                     consuming = false;
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("take Messages exception", e);
@@ -329,30 +331,21 @@ public class ProcessQueue {
     }
 
     public boolean hasTempMessage() {
-        try {
-            this.treeMapLock.readLock().lockInterruptibly();
-            try {
-                return !this.msgTreeMap.isEmpty();
-            } finally {
-                this.treeMapLock.readLock().unlock();
-            }
-        } catch (InterruptedException e) {
-        }
-
-        return true;
+        return this.msgIndex.hasPending();
     }
 
     public void clear() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.indexWriteLock.lockInterruptibly();
             try {
-                this.msgTreeMap.clear();
+                this.msgIndex.clear();
                 this.consumingMsgOrderlyTreeMap.clear();
                 this.msgCount.set(0);
                 this.msgSize.set(0);
+                this.putMsgSize = 0L;
                 this.queueOffsetMax = 0L;
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.indexWriteLock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("rollback exception", e);
@@ -368,7 +361,14 @@ public class ProcessQueue {
     }
 
     public Lock getConsumeLock() {
-        return consumeLock;
+        return consumeLock.writeLock();
+    }
+
+    /**
+     * @return lock held by each lane consuming orderly by sharding key, which excludes {@link #getConsumeLock()}.
+     */
+    public Lock getConsumeSharedLock() {
+        return consumeLock.readLock();
     }
 
     public long getLastPullTimestamp() {
@@ -397,19 +397,23 @@ public class ProcessQueue {
 
     public void fillProcessQueueInfo(final ProcessQueueInfo info) {
         try {
-            this.treeMapLock.readLock().lockInterruptibly();
-
-            if (!this.msgTreeMap.isEmpty()) {
-                info.setCachedMsgMinOffset(this.msgTreeMap.firstKey());
-                info.setCachedMsgMaxOffset(this.msgTreeMap.lastKey());
-                info.setCachedMsgCount(this.msgTreeMap.size());
-                info.setCachedMsgSizeInMiB((int) (this.msgSize.get() / (1024 * 1024)));
-            }
+            this.indexWriteLock.lockInterruptibly();
+            try {
+                long minOffset = this.msgIndex.firstPendingOffset();
+                if (minOffset >= 0) {
+                    info.setCachedMsgMinOffset(minOffset);
+                    info.setCachedMsgMaxOffset(this.msgIndex.lastPendingOffset());
+                    info.setCachedMsgCount(this.msgIndex.pendingCount());
+                    info.setCachedMsgSizeInMiB((int) (this.msgSize.get() / (1024 * 1024)));
+                }
 
-            if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
-                info.setTransactionMsgMinOffset(this.consumingMsgOrderlyTreeMap.firstKey());
-                info.setTransactionMsgMaxOffset(this.consumingMsgOrderlyTreeMap.lastKey());
-                info.setTransactionMsgCount(this.consumingMsgOrderlyTreeMap.size());
+                if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
+                    info.setTransactionMsgMinOffset(this.consumingMsgOrderlyTreeMap.firstKey());
+                    info.setTransactionMsgMaxOffset(this.consumingMsgOrderlyTreeMap.lastKey());
+                    info.setTransactionMsgCount(this.consumingMsgOrderlyTreeMap.size());
+                }
+            } finally {
+                this.indexWriteLock.unlock();
             }
 
             info.setLocked(this.locked);
@@ -420,11 +424,13 @@ public class ProcessQueue {
             info.setLastPullTimestamp(this.lastPullTimestamp);
             info.setLastConsumeTimestamp(this.lastConsumeTimestamp);
         } catch (Exception e) {
-        } finally {
-            this.treeMapLock.readLock().unlock();
         }
     }
 
+    public ConsumeBatchSizer getConsumeBatchSizer() {
+        return consumeBatchSizer;
+    }
+
     public long getLastConsumeTimestamp() {
         return lastConsumeTimestamp;
     }
@@ -433,4 +439,13 @@ public class ProcessQueue {
         this.lastConsumeTimestamp = lastConsumeTimestamp;
     }
 
+    /**
+     * Body length of message, which does not decode body of lazily decoded message.
+     */
+    private static int bodyLength(final MessageExt msg) {
+        if (msg instanceof LazyMessageClientExt) {
+            return ((LazyMessageClientExt) msg).getBodyLength();
+        }
+        return msg.getBody().length;
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Memory budget of messages cached by all process queues of one push consumer.
+ * <p>
+ * The budget is divided into shares of process queues periodically, weighted by consuming rate of each queue, plus
+ * the mean rate if the queue has backlog in broker, so queues consumed fast or catching up get more. A queue could
+ * pull if its cached size is within its share, or total cached size of all queues is within the budget, that is,
+ * pulling is suspended only if the budget is exhausted and the queue caches more than its share.
+ * </p>
+ */
+public class PullMemoryBudget {
+    static final long REFRESH_INTERVAL_MILLIS = 1000;
+    private static final double RATE_EWMA_WEIGHT = 0.5;
+
+    private final long budgetBytes;
+    /**
+     * Guarded by this
+     */
+    private Map<ProcessQueue, QueueStat> statTable = new IdentityHashMap<ProcessQueue, QueueStat>();
+    private volatile Map<ProcessQueue, Long> shareTable = Collections.emptyMap();
+    private volatile long lastRefreshTimestamp = 0;
+
+    public PullMemoryBudget(final long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Illegal pull memory budget: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param processQueue queue to pull.
+     * @param processQueues all process queues of the consumer.
+     * @return true if the queue could pull.
+     */
+    public boolean tryAcquire(final ProcessQueue processQueue, final Collection<ProcessQueue> processQueues) {
+        long now = System.currentTimeMillis();
+        if (now - this.lastRefreshTimestamp >= REFRESH_INTERVAL_MILLIS) {
+            this.refresh(processQueues, now);
+        }
+
+        if (processQueue.getMsgSize().get() < this.getShare(processQueue, processQueues.size())) {
+            return true;
+        }
+
+        return getCachedSize(processQueues) < this.budgetBytes;
+    }
+
+    /**
+     * @return share of the queue, or an even share if it is assigned after last refresh.
+     */
+    public long getShare(final ProcessQueue processQueue, final int queueNum) {
+        Long share = this.shareTable.get(processQueue);
+        if (share != null) {
+            return share;
+        }
+        return this.budgetBytes / Math.max(1, queueNum);
+    }
+
+    synchronized void refresh(final Collection<ProcessQueue> processQueues, final long now) {
+        if (now - this.lastRefreshTimestamp < REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+
+        Map<ProcessQueue, QueueStat> stats = new IdentityHashMap<ProcessQueue, QueueStat>();
+        double totalRate = 0;
+        for (ProcessQueue pq : processQueues) {
+            if (pq.isDropped()) {
+                continue;
+            }
+
+            long consumedSize = pq.getConsumedMsgSize();
+            QueueStat stat = this.statTable.get(pq);
+            if (stat == null) {
+                stat = new QueueStat(consumedSize, now);
+            } else if (now > stat.lastTimestamp) {
+                double rate = (consumedSize - stat.lastConsumedSize) * 1000.0 / (now - stat.lastTimestamp);
+                stat.rate = RATE_EWMA_WEIGHT * rate + (1 - RATE_EWMA_WEIGHT) * stat.rate;
+                stat.lastConsumedSize = consumedSize;
+                stat.lastTimestamp = now;
+            }
+            stats.put(pq, stat);
+            totalRate += stat.rate;
+        }
+
+        double meanRate = stats.isEmpty() ? 0 : totalRate / stats.size();
+        double totalWeight = 0;
+        for (Map.Entry<ProcessQueue, QueueStat> entry : stats.entrySet()) {
+            QueueStat stat = entry.getValue();
+            // one byte per second, so a queue never gets nothing.
+            stat.weight = stat.rate + (entry.getKey().getMsgAccCnt() > 0 ? meanRate : 0) + 1;
+            totalWeight += stat.weight;
+        }
+
+        Map<ProcessQueue, Long> shares = new IdentityHashMap<ProcessQueue, Long>(stats.size());
+        for (Map.Entry<ProcessQueue, QueueStat> entry : stats.entrySet()) {
+            shares.put(entry.getKey(), (long) (this.budgetBytes * (entry.getValue().weight / totalWeight)));
+        }
+
+        this.statTable = stats;
+        this.shareTable = shares;
+        this.lastRefreshTimestamp = now;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public static long getCachedSize(final Collection<ProcessQueue> processQueues) {
+        long cachedSize = 0;
+        for (ProcessQueue pq : processQueues) {
+            cachedSize += pq.getMsgSize().get();
+        }
+        return cachedSize;
+    }
+
+    static class QueueStat {
+        private long lastConsumedSize;
+        private long lastTimestamp;
+        private double rate = 0;
+        private double weight = 0;
+
+        QueueStat(final long lastConsumedSize, final long lastTimestamp) {
+            this.lastConsumedSize = lastConsumedSize;
+            this.lastTimestamp = lastTimestamp;
+        }
+    }
+}
@@ -43,6 +43,8 @@ import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 
 public abstract class RebalanceImpl {
     protected static final InternalLogger log = ClientLogger.getLog();
+    private static final long COOPERATIVE_RETRY_INTERVAL_MILLIS =
+        Long.parseLong(System.getProperty("rocketmq.client.rebalance.cooperativeRetryInterval", "1000"));
     protected final ConcurrentMap<MessageQueue, ProcessQueue> processQueueTable = new ConcurrentHashMap<MessageQueue, ProcessQueue>(64);
     protected final ConcurrentMap<String/* topic */, Set<MessageQueue>> topicSubscribeInfoTable =
         new ConcurrentHashMap<String, Set<MessageQueue>>();
@@ -364,6 +366,7 @@ public abstract class RebalanceImpl {
             }
         }
 
+        boolean retryLater = false;
         List<PullRequest> pullRequestList = new ArrayList<PullRequest>();
         for (MessageQueue mq : mqSet) {
             if (!this.processQueueTable.containsKey(mq)) {
@@ -372,6 +375,12 @@ public abstract class RebalanceImpl {
                     continue;
                 }
 
+                if (!isOrder && this.isCooperative() && !this.lock(mq)) {
+                    log.info("doRebalance, {}, mq not released by previous owner yet, retry later, {}", consumerGroup, mq);
+                    retryLater = true;
+                    continue;
+                }
+
                 this.removeDirtyOffset(mq);
                 ProcessQueue pq = new ProcessQueue();
 
@@ -403,6 +412,10 @@ public abstract class RebalanceImpl {
             }
         }
 
+        if (retryLater) {
+            this.mQClientFactory.rebalanceLater(COOPERATIVE_RETRY_INTERVAL_MILLIS);
+        }
+
         this.dispatchPullRequest(pullRequestList);
 
         return changed;
@@ -415,6 +428,14 @@ public abstract class RebalanceImpl {
 
     public abstract ConsumeType consumeType();
 
+    /**
+     * Whether message queues are handed over cooperatively, by taking the queue lock on broker before pulling a newly
+     * allocated queue and releasing it after the consume offset of a removed queue is persisted.
+     */
+    public boolean isCooperative() {
+        return false;
+    }
+
     public abstract void removeDirtyOffset(final MessageQueue mq);
 
     /**
@@ -107,6 +107,10 @@ public class RebalancePushImpl extends RebalanceImpl {
 
             return false;
         }
+
+        if (this.isCooperative()) {
+            return this.unlockDelay(mq, pq);
+        }
         return true;
     }
 
@@ -127,6 +131,12 @@ public class RebalancePushImpl extends RebalanceImpl {
         return true;
     }
 
+    @Override
+    public boolean isCooperative() {
+        return this.defaultMQPushConsumerImpl.getDefaultMQPushConsumer().isCooperativeRebalance()
+            && MessageModel.CLUSTERING.equals(this.defaultMQPushConsumerImpl.messageModel());
+    }
+
     @Override
     public ConsumeType consumeType() {
         return ConsumeType.CONSUME_PASSIVELY;
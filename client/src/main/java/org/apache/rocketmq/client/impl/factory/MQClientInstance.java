@@ -29,9 +29,11 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,6 +48,7 @@ import org.apache.rocketmq.client.impl.FindBrokerResult;
 import org.apache.rocketmq.client.impl.MQAdminImpl;
 import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.MQClientManager;
+import org.apache.rocketmq.client.impl.consumer.ConsumerIdsCache;
 import org.apache.rocketmq.client.impl.consumer.DefaultMQPullConsumerImpl;
 import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
 import org.apache.rocketmq.client.impl.consumer.MQConsumerInner;
@@ -70,6 +73,7 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseBody;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
 import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
@@ -113,6 +117,13 @@ public class MQClientInstance {
     private final ClientRemotingProcessor clientRemotingProcessor;
     private final PullMessageService pullMessageService;
     private final RebalanceService rebalanceService;
+    private final AtomicBoolean rebalanceLaterScheduled = new AtomicBoolean(false);
+    /**
+     * Not longer than the rebalance interval by default, so periodic rebalance still refetches the lists in case
+     * the brokers do not notify.
+     */
+    private final ConsumerIdsCache consumerIdsCache = new ConsumerIdsCache(Long.parseLong(System.getProperty(
+        "rocketmq.client.rebalance.consumerIdsCacheMillis", "20000")));
     private final DefaultMQProducer defaultMQProducer;
     private final ConsumerStatsManager consumerStatsManager;
     private final AtomicLong sendHeartbeatTimesTotal = new AtomicLong(0);
@@ -968,6 +979,27 @@ public class MQClientInstance {
         this.rebalanceService.wakeup();
     }
 
+    /**
+     * Rebalance after a delay, ignored if a delayed rebalance is already waiting.
+     */
+    public void rebalanceLater(long delayMillis) {
+        if (!this.rebalanceLaterScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.scheduledExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    MQClientInstance.this.rebalanceLaterScheduled.set(false);
+                    MQClientInstance.this.rebalanceImmediately();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            this.rebalanceLaterScheduled.set(false);
+            log.warn("rebalanceLater rejected, the client may be shutting down", e);
+        }
+    }
+
     public void doRebalance() {
         for (Map.Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
             MQConsumerInner impl = entry.getValue();
@@ -1081,8 +1113,17 @@ public class MQClientInstance {
         }
 
         if (null != brokerAddr) {
+            List<String> cached = this.consumerIdsCache.get(group, System.currentTimeMillis());
+            if (cached != null) {
+                return cached;
+            }
+
             try {
-                return this.mQClientAPIImpl.getConsumerIdListByGroup(brokerAddr, group, 3000);
+                long stamp = this.consumerIdsCache.stamp();
+                GetConsumerListByGroupResponseBody body = this.mQClientAPIImpl.getConsumerListByGroup(brokerAddr, group, 3000);
+                this.consumerIdsCache.put(group, brokerAddr, body.getMembershipVersion(), body.getConsumerIdList(),
+                    stamp, System.currentTimeMillis());
+                return body.getConsumerIdList();
             } catch (Exception e) {
                 log.warn("getConsumerIdListByGroup exception, " + brokerAddr + " " + group, e);
             }
@@ -1091,6 +1132,10 @@ public class MQClientInstance {
         return null;
     }
 
+    public ConsumerIdsCache getConsumerIdsCache() {
+        return consumerIdsCache;
+    }
+
     public String findBrokerAddrByTopic(final String topic) {
         TopicRouteData topicRouteData = this.topicRouteTable.get(topic);
         if (topicRouteData != null) {
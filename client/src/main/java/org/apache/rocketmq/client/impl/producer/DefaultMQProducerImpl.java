@@ -116,6 +116,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     private int zipCompressLevel = Integer.parseInt(System.getProperty(MixAll.MESSAGE_COMPRESS_LEVEL, "5"));
     private MQFaultStrategy mqFaultStrategy = new MQFaultStrategy();
     private ExecutorService asyncSenderExecutor;
+    private ProduceAccumulator produceAccumulator;
 
     public DefaultMQProducerImpl(final DefaultMQProducer defaultMQProducer) {
         this(defaultMQProducer, null);
@@ -210,6 +211,12 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                     mQClientFactory.start();
                 }
 
+                if (this.defaultMQProducer.isAutoBatchEnable()) {
+                    this.produceAccumulator = new ProduceAccumulator(this, this.defaultMQProducer.getBatchLingerMs(),
+                        this.defaultMQProducer.getBatchMaxBytes());
+                    this.produceAccumulator.start();
+                }
+
                 log.info("the producer [{}] start OK. sendMessageWithVIPChannel={}", this.defaultMQProducer.getProducerGroup(),
                     this.defaultMQProducer.isSendMessageWithVIPChannel());
                 this.serviceState = ServiceState.RUNNING;
@@ -261,6 +268,12 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             case CREATE_JUST:
                 break;
             case RUNNING:
+                if (this.produceAccumulator != null) {
+                    this.produceAccumulator.shutdown();
+                    // the daemon thread is not joined, send the lingering batches here while the producer is
+                    // still registered and before the executor stops.
+                    this.produceAccumulator.flushAll();
+                }
                 this.mQClientFactory.unregisterProducer(this.defaultMQProducer.getProducerGroup());
                 this.defaultAsyncSenderExecutor.shutdown();
                 if (shutdownFactory) {
@@ -508,6 +521,10 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     @Deprecated
     public void send(final Message msg, final SendCallback sendCallback, final long timeout)
         throws MQClientException, RemotingException, InterruptedException {
+        if (this.tryToAppendBatch(msg, null, sendCallback, timeout)) {
+            return;
+        }
+
         final long beginStartTime = System.currentTimeMillis();
         ExecutorService executor = this.getAsyncSenderExecutor();
         try {
@@ -534,6 +551,53 @@ public class DefaultMQProducerImpl implements MQProducerInner {
 
     }
 
+    /**
+     * Append the message to batch of {@link ProduceAccumulator} if auto batch is enabled.
+     *
+     * @return true if the message is handled by accumulator, false if it should be sent alone.
+     */
+    private boolean tryToAppendBatch(final Message msg, final MessageQueue mq, final SendCallback sendCallback,
+        final long timeout) {
+        if (null == this.produceAccumulator) {
+            return false;
+        }
+
+        try {
+            this.makeSureStateOK();
+            Validators.checkMessage(msg, this.defaultMQProducer);
+            if (mq != null && !msg.getTopic().equals(mq.getTopic())) {
+                throw new MQClientException("message's topic not equal mq's topic", null);
+            }
+        } catch (MQClientException e) {
+            sendCallback.onException(e);
+            return true;
+        }
+
+        if (!this.produceAccumulator.canBatch(msg)) {
+            return false;
+        }
+
+        this.produceAccumulator.append(msg, mq, sendCallback, timeout);
+        return true;
+    }
+
+    /**
+     * Send a batch made by {@link ProduceAccumulator}, to {@code mq} if it is not null, otherwise to a queue selected
+     * by fault strategy.
+     */
+    void sendBatchAsync(final MessageBatch msgBatch, final MessageQueue mq, final SendCallback sendCallback,
+        final long timeout) throws MQClientException, RemotingException, MQBrokerException, InterruptedException {
+        if (null == mq) {
+            this.sendDefaultImpl(msgBatch, CommunicationMode.ASYNC, sendCallback, timeout);
+        } else {
+            this.sendKernelImpl(msgBatch, mq, CommunicationMode.ASYNC, sendCallback, null, timeout);
+        }
+    }
+
+    public ProduceAccumulator getProduceAccumulator() {
+        return produceAccumulator;
+    }
+
     public MessageQueue selectOneMessageQueue(final TopicPublishInfo tpInfo, final String lastBrokerName) {
         return this.mqFaultStrategy.selectOneMessageQueue(tpInfo, lastBrokerName);
     }
@@ -542,6 +606,14 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         this.mqFaultStrategy.updateFaultItem(brokerName, currentLatency, isolation);
     }
 
+    public void onSendStart(final String brokerName) {
+        this.mqFaultStrategy.onSendStart(brokerName);
+    }
+
+    public void onSendEnd(final String brokerName) {
+        this.mqFaultStrategy.onSendEnd(brokerName);
+    }
+
     private void validateNameServerSetting() throws MQClientException {
         List<String> nsList = this.getmQClientFactory().getMQClientAPIImpl().getNameServerAddressList();
         if (null == nsList || nsList.isEmpty()) {
@@ -592,13 +664,15 @@ public class DefaultMQProducerImpl implements MQProducerInner {
 
                         sendResult = this.sendKernelImpl(msg, mq, communicationMode, sendCallback, topicPublishInfo, timeout - costTime);
                         endTimestamp = System.currentTimeMillis();
-                        this.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev, false);
                         switch (communicationMode) {
                             case ASYNC:
+                                // latency of async send is updated when it is completed.
                                 return null;
                             case ONEWAY:
+                                this.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev, false);
                                 return null;
                             case SYNC:
+                                this.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev, false);
                                 if (sendResult.getSendStatus() != SendStatus.SEND_OK) {
                                     if (this.defaultMQProducer.isRetryAnotherBrokerWhenNotStoreOK()) {
                                         continue;
@@ -1066,6 +1140,10 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     @Deprecated
     public void send(final Message msg, final MessageQueue mq, final SendCallback sendCallback, final long timeout)
         throws MQClientException, RemotingException, InterruptedException {
+        if (this.tryToAppendBatch(msg, mq, sendCallback, timeout)) {
+            return;
+        }
+
         final long beginStartTime = System.currentTimeMillis();
         ExecutorService executor = this.getAsyncSenderExecutor();
         try {
@@ -1641,6 +1719,14 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         this.mqFaultStrategy.setSendLatencyFaultEnable(sendLatencyFaultEnable);
     }
 
+    public boolean isSendLatencyAdaptiveEnable() {
+        return this.mqFaultStrategy.isSendLatencyAdaptiveEnable();
+    }
+
+    public void setSendLatencyAdaptiveEnable(final boolean sendLatencyAdaptiveEnable) {
+        this.mqFaultStrategy.setSendLatencyAdaptiveEnable(sendLatencyAdaptiveEnable);
+    }
+
     public DefaultMQProducer getDefaultMQProducer() {
         return defaultMQProducer;
     }
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
+
+/**
+ * Accumulator of asynchronous sends, which groups messages into batches and sends each batch by one request.
+ * <p>
+ * Messages sent without queue are grouped by topic, the queue of a batch is selected when it is sent, so one batch
+ * goes to one queue. Messages sent to a queue are grouped by the queue. A batch is sent when it reaches
+ * {@code batchMaxBytes}, or it has waited for {@code batchLingerMs}.
+ * </p>
+ * <p>
+ * The callback of each message is completed individually when the batch is completed. Retrying is the same as the
+ * one of a single asynchronous send, that is, up to {@code retryTimesWhenSendAsyncFailed} times.
+ * </p>
+ */
+public class ProduceAccumulator extends ServiceThread {
+    private final InternalLogger log = ClientLogger.getLog();
+
+    private final DefaultMQProducerImpl producer;
+    private final long lingerMs;
+    private final int maxBytes;
+    private final ConcurrentMap<BatchKey, Batch> batchTable = new ConcurrentHashMap<BatchKey, Batch>(64);
+
+    public ProduceAccumulator(final DefaultMQProducerImpl producer, final long lingerMs, final int maxBytes) {
+        this.producer = producer;
+        this.lingerMs = Math.max(1, lingerMs);
+        this.maxBytes = maxBytes;
+        this.setDaemon(true);
+    }
+
+    /**
+     * @return true if the message could be sent in a batch, messages which can not be put into
+     * {@link MessageBatch} or larger than a batch are sent alone.
+     */
+    public boolean canBatch(final Message msg) {
+        return !(msg instanceof MessageBatch)
+            && msg.getDelayTimeLevel() <= 0
+            && msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) == null
+            && msg.isWaitStoreMsgOK()
+            && !msg.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)
+            && msg.getProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED) == null
+            && estimateSize(msg) < this.maxBytes;
+    }
+
+    /**
+     * Append a message to the batch of its topic, or of {@code mq} if it is not null.
+     */
+    public void append(final Message msg, final MessageQueue mq, final SendCallback sendCallback, final long timeout) {
+        MessageClientIDSetter.setUniqID(msg);
+        BatchKey key = new BatchKey(msg.getTopic(), mq);
+        int size = estimateSize(msg);
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            Batch batch = this.batchTable.get(key);
+            if (null == batch) {
+                batch = new Batch(key);
+                Batch prev = this.batchTable.putIfAbsent(key, batch);
+                if (prev != null) {
+                    batch = prev;
+                }
+            }
+
+            boolean added = batch.tryAdd(msg, sendCallback, size, deadline, this.maxBytes);
+            if (batch.isSealed()) {
+                this.batchTable.remove(key, batch);
+                if (batch.markFlushed()) {
+                    this.flush(batch);
+                }
+            }
+
+            if (added) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send all batches in the calling thread, no matter how long they have waited. The producer calls it when
+     * shutting down, so the batches are sent before the sender executor and the client stop.
+     */
+    public void flushAll() {
+        this.flushBatches(true, true);
+    }
+
+    public int getPendingBatchNums() {
+        return this.batchTable.size();
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            try {
+                this.waitForRunning(Math.max(1, this.lingerMs / 2));
+                this.flushBatches(false, false);
+            } catch (Throwable e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    @Override
+    public String getServiceName() {
+        return ProduceAccumulator.class.getSimpleName();
+    }
+
+    private void flushBatches(final boolean all, final boolean inCaller) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<BatchKey, Batch> entry : this.batchTable.entrySet()) {
+            Batch batch = entry.getValue();
+            if (all || now - batch.createTimestamp >= this.lingerMs) {
+                batch.seal();
+                this.batchTable.remove(entry.getKey(), batch);
+                if (batch.markFlushed()) {
+                    if (inCaller) {
+                        this.send(batch);
+                    } else {
+                        this.flush(batch);
+                    }
+                }
+            }
+        }
+    }
+
+    private void flush(final Batch batch) {
+        try {
+            this.producer.getAsyncSenderExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    send(batch);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.onException(new MQClientException("executor rejected ", e));
+        }
+    }
+
+    private void send(final Batch batch) {
+        long timeout = batch.deadline - System.currentTimeMillis();
+        if (timeout <= 0) {
+            batch.onException(new RemotingTooMuchRequestException("DEFAULT ASYNC send call timeout"));
+            return;
+        }
+
+        try {
+            MessageBatch msgBatch = MessageBatch.generateFromList(batch.msgs);
+            msgBatch.setBody(msgBatch.encode());
+            this.producer.sendBatchAsync(msgBatch, batch.key.mq, new BatchSendCallback(batch), timeout);
+        } catch (Throwable e) {
+            batch.onException(e);
+        }
+    }
+
+    /**
+     * Estimated size of message encoded in a batch.
+     */
+    static int estimateSize(final Message msg) {
+        // total size, magic code, body crc, flag, body length, properties length
+        int size = 4 + 4 + 4 + 4 + 4 + 2;
+        if (msg.getBody() != null) {
+            size += msg.getBody().length;
+        }
+        if (msg.getProperties() != null) {
+            for (Map.Entry<String, String> entry : msg.getProperties().entrySet()) {
+                // separators of name and value
+                size += entry.getKey().length() + 2;
+                if (entry.getValue() != null) {
+                    size += entry.getValue().length();
+                }
+            }
+        }
+        return size;
+    }
+
+    static class BatchKey {
+        private final String topic;
+        private final MessageQueue mq;
+
+        BatchKey(final String topic, final MessageQueue mq) {
+            this.topic = topic;
+            this.mq = mq;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) o;
+            return this.topic.equals(other.topic) && (this.mq == null ? other.mq == null : this.mq.equals(other.mq));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.topic.hashCode() + (this.mq == null ? 0 : this.mq.hashCode());
+        }
+    }
+
+    static class Batch {
+        private final BatchKey key;
+        private final long createTimestamp = System.currentTimeMillis();
+        private final List<Message> msgs = new ArrayList<Message>();
+        private final List<SendCallback> callbacks = new ArrayList<SendCallback>();
+        private final AtomicBoolean flushed = new AtomicBoolean(false);
+        private long deadline = Long.MAX_VALUE;
+        private int bytes = 0;
+        private volatile boolean sealed = false;
+
+        Batch(final BatchKey key) {
+            this.key = key;
+        }
+
+        /**
+         * @return true if added. The batch is sealed if it is full after adding, or the message does not fit.
+         */
+        synchronized boolean tryAdd(final Message msg, final SendCallback sendCallback, final int size,
+            final long deadline, final int maxBytes) {
+            if (this.sealed) {
+                return false;
+            }
+
+            if (!this.msgs.isEmpty() && this.bytes + size > maxBytes) {
+                this.sealed = true;
+                return false;
+            }
+
+            this.msgs.add(msg);
+            this.callbacks.add(sendCallback);
+            this.bytes += size;
+            this.deadline = Math.min(this.deadline, deadline);
+            if (this.bytes >= maxBytes) {
+                this.sealed = true;
+            }
+            return true;
+        }
+
+        synchronized void seal() {
+            this.sealed = true;
+        }
+
+        boolean isSealed() {
+            return sealed;
+        }
+
+        /**
+         * @return true if the caller should send this batch.
+         */
+        boolean markFlushed() {
+            return this.flushed.compareAndSet(false, true);
+        }
+
+        void onException(final Throwable e) {
+            for (SendCallback callback : this.callbacks) {
+                try {
+                    callback.onException(e);
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+    }
+
+    static class BatchSendCallback implements SendCallback {
+        private final Batch batch;
+
+        BatchSendCallback(final Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSuccess(final SendResult sendResult) {
+            String[] offsetMsgIds = sendResult.getOffsetMsgId() == null ? null : sendResult.getOffsetMsgId().split(",");
+            for (int i = 0; i < this.batch.msgs.size(); i++) {
+                String offsetMsgId = offsetMsgIds != null && offsetMsgIds.length == this.batch.msgs.size()
+                    ? offsetMsgIds[i] : sendResult.getOffsetMsgId();
+                SendResult result = new SendResult(sendResult.getSendStatus(),
+                    MessageClientIDSetter.getUniqID(this.batch.msgs.get(i)), offsetMsgId,
+                    sendResult.getMessageQueue(), sendResult.getQueueOffset() + i);
+                result.setTransactionId(sendResult.getTransactionId());
+                result.setRegionId(sendResult.getRegionId());
+                result.setTraceOn(sendResult.isTraceOn());
+                try {
+                    this.batch.callbacks.get(i).onSuccess(result);
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void onException(final Throwable e) {
+            this.batch.onException(e);
+        }
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.apache.rocketmq.client.latency;
 
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
 import org.apache.rocketmq.client.log.ClientLogger;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -26,8 +28,15 @@ public class MQFaultStrategy {
     private final static InternalLogger log = ClientLogger.getLog();
     private final LatencyFaultTolerance<String> latencyFaultTolerance = new LatencyFaultToleranceImpl();
 
+    private final SendLatencyStats sendLatencyStats = new SendLatencyStats();
+
     private boolean sendLatencyFaultEnable = false;
 
+    /**
+     * Select queue by EWMA latency and in-flight requests of broker, the better one of two candidates is chosen.
+     */
+    private boolean sendLatencyAdaptiveEnable = false;
+
     private long[] latencyMax = {50L, 100L, 550L, 1000L, 2000L, 3000L, 15000L};
     private long[] notAvailableDuration = {0L, 0L, 30000L, 60000L, 120000L, 180000L, 600000L};
 
@@ -55,7 +64,30 @@ public class MQFaultStrategy {
         this.sendLatencyFaultEnable = sendLatencyFaultEnable;
     }
 
+    public boolean isSendLatencyAdaptiveEnable() {
+        return sendLatencyAdaptiveEnable;
+    }
+
+    public void setSendLatencyAdaptiveEnable(final boolean sendLatencyAdaptiveEnable) {
+        this.sendLatencyAdaptiveEnable = sendLatencyAdaptiveEnable;
+    }
+
+    public SendLatencyStats getSendLatencyStats() {
+        return sendLatencyStats;
+    }
+
     public MessageQueue selectOneMessageQueue(final TopicPublishInfo tpInfo, final String lastBrokerName) {
+        if (this.sendLatencyAdaptiveEnable) {
+            try {
+                MessageQueue mq = this.selectByLatency(tpInfo, lastBrokerName);
+                if (mq != null) {
+                    return mq;
+                }
+            } catch (Exception e) {
+                log.error("Error occurred when selecting message queue by latency", e);
+            }
+        }
+
         if (this.sendLatencyFaultEnable) {
             try {
                 int index = tpInfo.getSendWhichQueue().incrementAndGet();
@@ -90,7 +122,67 @@ public class MQFaultStrategy {
         return tpInfo.selectOneMessageQueue(lastBrokerName);
     }
 
+    /**
+     * Power of two choices, one candidate is the next queue by round robin, the other is a random one. Brokers which
+     * are sent last time or not available are skipped if possible.
+     *
+     * @return null if no queue could be selected.
+     */
+    private MessageQueue selectByLatency(final TopicPublishInfo tpInfo, final String lastBrokerName) {
+        List<MessageQueue> queues = tpInfo.getMessageQueueList();
+        int size = queues.size();
+        if (size == 0) {
+            return null;
+        }
+
+        MessageQueue first = pickCandidate(queues, tpInfo.getSendWhichQueue().incrementAndGet(), lastBrokerName);
+        MessageQueue second = pickCandidate(queues, ThreadLocalRandom.current().nextInt(size), lastBrokerName);
+        if (null == first || null == second) {
+            return first != null ? first : second;
+        }
+
+        if (first.getBrokerName().equals(second.getBrokerName())) {
+            return first;
+        }
+
+        double firstScore = this.sendLatencyStats.getScore(first.getBrokerName());
+        double secondScore = this.sendLatencyStats.getScore(second.getBrokerName());
+        return secondScore < firstScore ? second : first;
+    }
+
+    private MessageQueue pickCandidate(final List<MessageQueue> queues, final int start, final String lastBrokerName) {
+        int size = queues.size();
+        for (int i = 0; i < size; i++) {
+            int pos = Math.abs((start + i) % size);
+            MessageQueue mq = queues.get(pos);
+            if (mq.getBrokerName().equals(lastBrokerName)) {
+                continue;
+            }
+            if (this.sendLatencyFaultEnable && !this.latencyFaultTolerance.isAvailable(mq.getBrokerName())) {
+                continue;
+            }
+            return mq;
+        }
+        return null;
+    }
+
+    public void onSendStart(final String brokerName) {
+        if (this.sendLatencyAdaptiveEnable) {
+            this.sendLatencyStats.onSendStart(brokerName);
+        }
+    }
+
+    public void onSendEnd(final String brokerName) {
+        if (this.sendLatencyAdaptiveEnable) {
+            this.sendLatencyStats.onSendEnd(brokerName);
+        }
+    }
+
     public void updateFaultItem(final String brokerName, final long currentLatency, boolean isolation) {
+        if (this.sendLatencyAdaptiveEnable) {
+            this.sendLatencyStats.updateLatency(brokerName, currentLatency, isolation);
+        }
+
         if (this.sendLatencyFaultEnable) {
             long duration = computeNotAvailableDuration(isolation ? 30000 : currentLatency);
             this.latencyFaultTolerance.updateFaultItem(brokerName, currentLatency, duration);
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.latency;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Send latency and in-flight requests of each broker.
+ * <p>
+ * Latency is kept as EWMA of samples, which decays toward zero while there is no sample, so a broker slowed down
+ * once gets traffic back gradually instead of being avoided forever.
+ * </p>
+ */
+public class SendLatencyStats {
+    /**
+     * Latency sample of a failed send, e.g. broker is busy or not reachable.
+     */
+    public static final long FAILURE_LATENCY = 3000L;
+
+    private final ConcurrentMap<String/* brokerName */, Item> itemTable = new ConcurrentHashMap<String, Item>(16);
+
+    private volatile double ewmaWeight = 0.3;
+    private volatile long decayMillis = 10 * 1000;
+
+    public void onSendStart(final String brokerName) {
+        getOrCreate(brokerName).inflight.incrementAndGet();
+    }
+
+    public void onSendEnd(final String brokerName) {
+        Item item = this.itemTable.get(brokerName);
+        if (item != null && item.inflight.decrementAndGet() < 0) {
+            item.inflight.set(0);
+        }
+    }
+
+    public void updateLatency(final String brokerName, final long latency, final boolean failed) {
+        getOrCreate(brokerName).update(failed ? Math.max(latency, FAILURE_LATENCY) : latency,
+            this.ewmaWeight, this.decayMillis);
+    }
+
+    /**
+     * @return score of broker, the lower the better, that is, expected latency weighted by in-flight requests.
+     */
+    public double getScore(final String brokerName) {
+        Item item = this.itemTable.get(brokerName);
+        if (null == item) {
+            return 0;
+        }
+        return item.getLatency(this.decayMillis) * (item.inflight.get() + 1);
+    }
+
+    public double getLatency(final String brokerName) {
+        Item item = this.itemTable.get(brokerName);
+        return item == null ? 0 : item.getLatency(this.decayMillis);
+    }
+
+    public int getInflight(final String brokerName) {
+        Item item = this.itemTable.get(brokerName);
+        return item == null ? 0 : item.inflight.get();
+    }
+
+    public void remove(final String brokerName) {
+        this.itemTable.remove(brokerName);
+    }
+
+    public double getEwmaWeight() {
+        return ewmaWeight;
+    }
+
+    public void setEwmaWeight(final double ewmaWeight) {
+        this.ewmaWeight = ewmaWeight;
+    }
+
+    public long getDecayMillis() {
+        return decayMillis;
+    }
+
+    public void setDecayMillis(final long decayMillis) {
+        this.decayMillis = decayMillis;
+    }
+
+    private Item getOrCreate(final String brokerName) {
+        Item item = this.itemTable.get(brokerName);
+        if (null == item) {
+            item = new Item();
+            Item prev = this.itemTable.putIfAbsent(brokerName, item);
+            if (prev != null) {
+                item = prev;
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public String toString() {
+        return "SendLatencyStats{" +
+            "itemTable=" + itemTable +
+            '}';
+    }
+
+    static class Item {
+        private final AtomicInteger inflight = new AtomicInteger(0);
+        private double latency = -1;
+        private long lastUpdateTimestamp;
+
+        synchronized void update(final long sample, final double weight, final long decayMillis) {
+            long now = System.currentTimeMillis();
+            if (this.latency < 0) {
+                this.latency = sample;
+            } else {
+                double decayed = decay(this.latency, now - this.lastUpdateTimestamp, decayMillis);
+                this.latency = decayed + weight * (sample - decayed);
+            }
+            this.lastUpdateTimestamp = now;
+        }
+
+        synchronized double getLatency(final long decayMillis) {
+            if (this.latency < 0) {
+                return 0;
+            }
+            return decay(this.latency, System.currentTimeMillis() - this.lastUpdateTimestamp, decayMillis);
+        }
+
+        private static double decay(final double latency, final long elapsed, final long decayMillis) {
+            if (elapsed <= 0 || decayMillis <= 0) {
+                return latency;
+            }
+            return latency * Math.exp(-(double) elapsed / decayMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "Item{" +
+                "inflight=" + inflight +
+                ", latency=" + latency +
+                ", lastUpdateTimestamp=" + lastUpdateTimestamp +
+                '}';
+        }
+    }
+}
@@ -117,6 +117,25 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
      */
     private int maxMessageSize = 1024 * 1024 * 4; // 4M
 
+    /**
+     * Indicate whether to group asynchronous sends into batches automatically. </p>
+     *
+     * Messages sent by {@link #send(Message, SendCallback)} or {@link #send(Message, MessageQueue, SendCallback)} are
+     * grouped by topic or queue, and each batch is sent by one request. The callback of each message is still invoked
+     * individually.
+     */
+    private boolean autoBatchEnable = false;
+
+    /**
+     * Maximum time in milliseconds for a message to wait in batch before it is sent.
+     */
+    private long batchLingerMs = 5;
+
+    /**
+     * Maximum size in bytes of a batch, a batch is sent once it reaches this size.
+     */
+    private int batchMaxBytes = 1024 * 32;
+
     /**
      * Interface of asynchronous transfer data
      */
@@ -1083,6 +1102,18 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
         this.defaultMQProducerImpl.setSendLatencyFaultEnable(sendLatencyFaultEnable);
     }
 
+    public boolean isSendLatencyAdaptiveEnable() {
+        return this.defaultMQProducerImpl.isSendLatencyAdaptiveEnable();
+    }
+
+    /**
+     * Select queue by EWMA latency and in-flight requests of broker, so traffic shifts away from a slow or busy
+     * broker gradually.
+     */
+    public void setSendLatencyAdaptiveEnable(final boolean sendLatencyAdaptiveEnable) {
+        this.defaultMQProducerImpl.setSendLatencyAdaptiveEnable(sendLatencyAdaptiveEnable);
+    }
+
     public int getRetryTimesWhenSendAsyncFailed() {
         return retryTimesWhenSendAsyncFailed;
     }
@@ -1095,4 +1126,27 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
         return traceDispatcher;
     }
 
+    public boolean isAutoBatchEnable() {
+        return autoBatchEnable;
+    }
+
+    public void setAutoBatchEnable(final boolean autoBatchEnable) {
+        this.autoBatchEnable = autoBatchEnable;
+    }
+
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+
+    public void setBatchLingerMs(final long batchLingerMs) {
+        this.batchLingerMs = batchLingerMs;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    public void setBatchMaxBytes(final int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
 }
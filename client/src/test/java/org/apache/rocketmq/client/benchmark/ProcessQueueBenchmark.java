@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Contention of {@link ProcessQueue} under concurrent consumption, compared with the former implementation keeping
+ * messages in a {@link TreeMap} guarded by a read write lock.
+ * <p>
+ * Each consuming thread removes one message; every {@link #PULL_BATCH} messages, the thread removing the message
+ * puts a batch pulled {@link #WINDOW} offsets ahead and checks the span, like pulling does. Run {@link #main(String[])}
+ * from IDE, or with the test classpath of this module; change threads by {@code -t}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ProcessQueueBenchmark {
+
+    private static final int WINDOW = 1024;
+    private static final int PULL_BATCH = 32;
+
+    @Param({"treeMap", "ring"})
+    private String impl;
+
+    private Queue queue;
+    private final AtomicLong consumeOffset = new AtomicLong(0);
+
+    @Setup
+    public void setup() {
+        this.queue = "ring".equals(this.impl) ? new RingQueue() : new TreeMapQueue();
+        for (long offset = 0; offset < WINDOW; offset += PULL_BATCH) {
+            this.queue.put(createBatch(offset));
+        }
+    }
+
+    @Benchmark
+    public void consume(Blackhole blackhole) {
+        long offset = this.consumeOffset.getAndIncrement();
+        blackhole.consume(this.queue.remove(Collections.singletonList(createMessage(offset))));
+        if (offset % PULL_BATCH == 0) {
+            blackhole.consume(this.queue.maxSpan());
+            this.queue.put(createBatch(offset + WINDOW));
+        }
+    }
+
+    private static List<MessageExt> createBatch(final long firstOffset) {
+        List<MessageExt> msgs = new ArrayList<MessageExt>(PULL_BATCH);
+        for (int i = 0; i < PULL_BATCH; i++) {
+            msgs.add(createMessage(firstOffset + i));
+        }
+        return msgs;
+    }
+
+    private static MessageExt createMessage(final long offset) {
+        MessageExt msg = new MessageExt();
+        msg.setQueueOffset(offset);
+        msg.setBody(new byte[0]);
+        return msg;
+    }
+
+    interface Queue {
+        void put(List<MessageExt> msgs);
+
+        long remove(List<MessageExt> msgs);
+
+        long maxSpan();
+    }
+
+    static class RingQueue implements Queue {
+        private final ProcessQueue processQueue = new ProcessQueue();
+
+        @Override
+        public void put(final List<MessageExt> msgs) {
+            this.processQueue.putMessage(msgs);
+        }
+
+        @Override
+        public long remove(final List<MessageExt> msgs) {
+            return this.processQueue.removeMessage(msgs);
+        }
+
+        @Override
+        public long maxSpan() {
+            return this.processQueue.getMaxSpan();
+        }
+    }
+
+    /**
+     * Put, remove and span of the former process queue.
+     */
+    static class TreeMapQueue implements Queue {
+        private final ReadWriteLock treeMapLock = new ReentrantReadWriteLock();
+        private final TreeMap<Long, MessageExt> msgTreeMap = new TreeMap<Long, MessageExt>();
+        private final AtomicLong msgCount = new AtomicLong();
+        private final AtomicLong msgSize = new AtomicLong();
+        private volatile long queueOffsetMax = 0L;
+
+        @Override
+        public void put(final List<MessageExt> msgs) {
+            this.treeMapLock.writeLock().lock();
+            try {
+                int validMsgCnt = 0;
+                for (MessageExt msg : msgs) {
+                    MessageExt old = this.msgTreeMap.put(msg.getQueueOffset(), msg);
+                    if (null == old) {
+                        validMsgCnt++;
+                        this.queueOffsetMax = msg.getQueueOffset();
+                        this.msgSize.addAndGet(msg.getBody().length);
+                    }
+                }
+                this.msgCount.addAndGet(validMsgCnt);
+            } finally {
+                this.treeMapLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public long remove(final List<MessageExt> msgs) {
+            long result = -1;
+            this.treeMapLock.writeLock().lock();
+            try {
+                if (!this.msgTreeMap.isEmpty()) {
+                    result = this.queueOffsetMax + 1;
+                    int removedCnt = 0;
+                    for (MessageExt msg : msgs) {
+                        MessageExt prev = this.msgTreeMap.remove(msg.getQueueOffset());
+                        if (prev != null) {
+                            removedCnt--;
+                            this.msgSize.addAndGet(0 - msg.getBody().length);
+                        }
+                    }
+                    this.msgCount.addAndGet(removedCnt);
+
+                    if (!this.msgTreeMap.isEmpty()) {
+                        result = this.msgTreeMap.firstKey();
+                    }
+                }
+            } finally {
+                this.treeMapLock.writeLock().unlock();
+            }
+            return result;
+        }
+
+        @Override
+        public long maxSpan() {
+            this.treeMapLock.readLock().lock();
+            try {
+                if (!this.msgTreeMap.isEmpty()) {
+                    return this.msgTreeMap.lastKey() - this.msgTreeMap.firstKey();
+                }
+            } finally {
+                this.treeMapLock.readLock().unlock();
+            }
+            return 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ProcessQueueBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.consumer.rebalance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AllocateMessageQueueStickyTest {
+    private static final String CID_PREFIX = "CID-";
+
+    private final AllocateMessageQueueStrategy strategy = new AllocateMessageQueueSticky();
+
+    @Test
+    public void testCurrentCIDNotExists() {
+        List<MessageQueue> result = strategy.allocate("", "CID-X", createMessageQueueList(6), createConsumerIdList(2));
+        assertThat(result).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCurrentCIDIllegalArgument() {
+        strategy.allocate("", "", createMessageQueueList(6), createConsumerIdList(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMessageQueueIllegalArgument() {
+        strategy.allocate("", CID_PREFIX + 0, null, createConsumerIdList(2));
+    }
+
+    @Test
+    public void testAllocateBalanced() {
+        for (int mqSize = 1; mqSize <= 40; mqSize += 3) {
+            for (int cidSize = 1; cidSize <= 12; cidSize++) {
+                Map<MessageQueue, String> allocation = allocate(createMessageQueueList(mqSize), createConsumerIdList(cidSize));
+                assertThat(allocation).hasSize(mqSize);
+
+                Map<String, Integer> loads = new HashMap<String, Integer>();
+                for (String cid : allocation.values()) {
+                    loads.put(cid, loads.containsKey(cid) ? loads.get(cid) + 1 : 1);
+                }
+                for (String cid : createConsumerIdList(cidSize)) {
+                    int load = loads.containsKey(cid) ? loads.get(cid) : 0;
+                    assertThat(load).isBetween(mqSize / cidSize, (mqSize + cidSize - 1) / cidSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFewQueuesMovedWhenConsumerJoinsOrLeaves() {
+        List<MessageQueue> mqAll = createMessageQueueList(210);
+        List<String> cidAll = createConsumerIdList(20);
+        Map<MessageQueue, String> before = allocate(mqAll, cidAll);
+
+        List<String> joined = createConsumerIdList(21);
+        int moved = countMoved(before, allocate(mqAll, joined));
+        int movedAveragely = countMoved(allocate(new AllocateMessageQueueAveragely(), mqAll, cidAll),
+            allocate(new AllocateMessageQueueAveragely(), mqAll, joined));
+        assertThat(moved).isLessThan(movedAveragely);
+        assertThat(moved).isLessThanOrEqualTo(2 * mqAll.size() / joined.size());
+
+        List<String> left = new ArrayList<String>(cidAll);
+        left.remove(7);
+        moved = countMoved(before, allocate(mqAll, left));
+        assertThat(moved).isLessThanOrEqualTo(2 * mqAll.size() / cidAll.size());
+    }
+
+    private static int countMoved(Map<MessageQueue, String> before, Map<MessageQueue, String> after) {
+        int moved = 0;
+        for (Map.Entry<MessageQueue, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(after.get(entry.getKey()))) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    private Map<MessageQueue, String> allocate(List<MessageQueue> mqAll, List<String> cidAll) {
+        return allocate(strategy, mqAll, cidAll);
+    }
+
+    private static Map<MessageQueue, String> allocate(AllocateMessageQueueStrategy strategy,
+        List<MessageQueue> mqAll, List<String> cidAll) {
+        Map<MessageQueue, String> allocation = new HashMap<MessageQueue, String>();
+        Set<MessageQueue> assigned = new HashSet<MessageQueue>();
+        for (String cid : cidAll) {
+            for (MessageQueue mq : strategy.allocate("testGroup", cid, mqAll, cidAll)) {
+                assertThat(assigned.add(mq)).isTrue();
+                allocation.put(mq, cid);
+            }
+        }
+        return allocation;
+    }
+
+    private static List<String> createConsumerIdList(int size) {
+        List<String> consumerIdList = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            consumerIdList.add(CID_PREFIX + i);
+        }
+        return consumerIdList;
+    }
+
+    private static List<MessageQueue> createMessageQueueList(int size) {
+        List<MessageQueue> messageQueueList = new ArrayList<MessageQueue>(size);
+        for (int i = 0; i < size; i++) {
+            messageQueueList.add(new MessageQueue("topic_test", "brokerName_" + i % 4, i / 4));
+        }
+        return messageQueueList;
+    }
+}
@@ -18,18 +18,27 @@ package org.apache.rocketmq.client.consumer.store;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.client.ClientConfig;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.impl.FindBrokerResult;
 import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -39,8 +48,13 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -106,6 +120,14 @@ public class RemoteBrokerOffsetStoreTest {
                 return null;
             }
         }).when(mqClientAPI).updateConsumerOffsetOneway(any(String.class), any(UpdateConsumerOffsetRequestHeader.class), any(Long.class));
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                UpdateConsumerOffsetBatchRequestBody requestBody = mock.getArgument(1);
+                when(mqClientAPI.queryConsumerOffset(anyString(), any(QueryConsumerOffsetRequestHeader.class), anyLong())).thenReturn(requestBody.getOffsetTable().get(messageQueue));
+                return null;
+            }
+        }).when(mqClientAPI).updateConsumerOffsetBatch(any(String.class), any(UpdateConsumerOffsetBatchRequestBody.class), any(Long.class), any(InvokeCallback.class));
 
         offsetStore.updateOffset(messageQueue, 1024, false);
         offsetStore.persist(messageQueue);
@@ -124,6 +146,113 @@ public class RemoteBrokerOffsetStoreTest {
         assertThat(offsetStore.readOffset(messageQueue, ReadOffsetType.READ_FROM_STORE)).isEqualTo(1025);
     }
 
+    @Test
+    public void testPersistAll_OneRequestPerBroker() throws Exception {
+        when(mQClientFactory.findBrokerAddressInAdmin("OtherBrokerName")).thenReturn(new FindBrokerResult("127.0.0.2", false));
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 8; i++) {
+            MessageQueue messageQueue = new MessageQueue(topic, i % 2 == 0 ? brokerName : "OtherBrokerName", i);
+            offsetStore.updateOffset(messageQueue, i, false);
+            mqs.add(messageQueue);
+        }
+
+        offsetStore.persistAll(mqs);
+
+        ArgumentCaptor<UpdateConsumerOffsetBatchRequestBody> captor = ArgumentCaptor.forClass(UpdateConsumerOffsetBatchRequestBody.class);
+        verify(mqClientAPI).updateConsumerOffsetBatch(eq("127.0.0.1"), captor.capture(), anyLong(), any(InvokeCallback.class));
+        assertThat(captor.getValue().getConsumerGroup()).isEqualTo(group);
+        assertThat(captor.getValue().getOffsetTable()).hasSize(4).containsEntry(new MessageQueue(topic, brokerName, 2), 2L);
+        verify(mqClientAPI).updateConsumerOffsetBatch(eq("127.0.0.2"), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, never()).updateConsumerOffsetOneway(anyString(), any(UpdateConsumerOffsetRequestHeader.class), anyLong());
+    }
+
+    @Test
+    public void testPersistAll_BatchNotSupported() throws Exception {
+        doAnswer(respond(ResponseCode.REQUEST_CODE_NOT_SUPPORTED))
+            .when(mqClientAPI).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 3; i++) {
+            MessageQueue messageQueue = new MessageQueue(topic, brokerName, i);
+            offsetStore.updateOffset(messageQueue, i, false);
+            mqs.add(messageQueue);
+        }
+
+        offsetStore.persistAll(mqs);
+        offsetStore.persistAll(mqs);
+
+        verify(mqClientAPI, times(1)).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, times(6)).updateConsumerOffsetOneway(anyString(), any(UpdateConsumerOffsetRequestHeader.class), anyLong());
+    }
+
+    @Test
+    public void testPersistAll_BatchNotSupportedExpired() throws Exception {
+        doAnswer(respond(ResponseCode.REQUEST_CODE_NOT_SUPPORTED))
+            .when(mqClientAPI).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        RemoteBrokerOffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        offsetStore.setBatchUnsupportedExpireMillis(0);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 3; i++) {
+            MessageQueue messageQueue = new MessageQueue(topic, brokerName, i);
+            offsetStore.updateOffset(messageQueue, i, false);
+            mqs.add(messageQueue);
+        }
+
+        offsetStore.persistAll(mqs);
+        offsetStore.persistAll(mqs);
+
+        verify(mqClientAPI, times(2)).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, times(6)).updateConsumerOffsetOneway(anyString(), any(UpdateConsumerOffsetRequestHeader.class), anyLong());
+    }
+
+    @Test
+    public void testPersistAll_BatchFailed() throws Exception {
+        doAnswer(respond(ResponseCode.SYSTEM_ERROR))
+            .when(mqClientAPI).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 3; i++) {
+            MessageQueue messageQueue = new MessageQueue(topic, brokerName, i);
+            offsetStore.updateOffset(messageQueue, i, false);
+            mqs.add(messageQueue);
+        }
+
+        offsetStore.persistAll(mqs);
+        offsetStore.persistAll(mqs);
+
+        // failure other than not supported does not fall back to one way update.
+        verify(mqClientAPI, times(2)).updateConsumerOffsetBatch(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, never()).updateConsumerOffsetOneway(anyString(), any(UpdateConsumerOffsetRequestHeader.class), anyLong());
+    }
+
+    @Test
+    public void testPersistOnUpdate() throws Exception {
+        ScheduledExecutorService scheduledExecutorService = mock(ScheduledExecutorService.class);
+        when(mQClientFactory.getScheduledExecutorService()).thenReturn(scheduledExecutorService);
+        RemoteBrokerOffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        offsetStore.setPersistOnUpdateDelayMillis(100);
+        MessageQueue messageQueue1 = new MessageQueue(topic, brokerName, 1);
+        MessageQueue messageQueue2 = new MessageQueue(topic, brokerName, 2);
+
+        offsetStore.updateOffset(messageQueue1, 10, true);
+        offsetStore.updateOffset(messageQueue2, 20, true);
+        offsetStore.updateOffset(messageQueue1, 11, true);
+        verify(scheduledExecutorService, times(1)).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.MILLISECONDS));
+
+        offsetStore.persistDirty();
+        ArgumentCaptor<UpdateConsumerOffsetBatchRequestBody> captor = ArgumentCaptor.forClass(UpdateConsumerOffsetBatchRequestBody.class);
+        verify(mqClientAPI).updateConsumerOffsetBatch(eq("127.0.0.1"), captor.capture(), anyLong(), any(InvokeCallback.class));
+        assertThat(captor.getValue().getOffsetTable()).hasSize(2)
+            .containsEntry(messageQueue1, 11L)
+            .containsEntry(messageQueue2, 20L);
+
+        offsetStore.updateOffset(messageQueue2, 19, true);
+        verify(scheduledExecutorService, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        offsetStore.updateOffset(messageQueue2, 21, true);
+        verify(scheduledExecutorService, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
     @Test
     public void testRemoveOffset() throws Exception {
         OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
@@ -135,4 +264,17 @@ public class RemoteBrokerOffsetStoreTest {
         offsetStore.removeOffset(messageQueue);
         assertThat(offsetStore.readOffset(messageQueue, ReadOffsetType.READ_FROM_MEMORY)).isEqualTo(-1);
     }
-}
\ No newline at end of file
+
+    private static Answer respond(final int code) {
+        return new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                InvokeCallback invokeCallback = mock.getArgument(3);
+                ResponseFuture responseFuture = new ResponseFuture(null, 0, 3000, invokeCallback, null);
+                responseFuture.setResponseCommand(RemotingCommand.createResponseCommand(code, null));
+                invokeCallback.operationComplete(responseFuture);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumeBatchSizerTest {
+
+    @Test
+    public void testGrowForCheapListener() {
+        ConsumeBatchSizer sizer = new ConsumeBatchSizer();
+        assertThat(sizer.getBatchSize(32, 1000, 4)).isEqualTo(1);
+
+        // 1 microsecond for each message.
+        int expect = 1;
+        for (int i = 0; i < 5; i++) {
+            int size = sizer.getBatchSize(32, 1000, 4);
+            assertThat(size).isEqualTo(expect);
+            sizer.update(size, size * 1000L, 32);
+            expect = Math.min(expect * 2, 32);
+        }
+        assertThat(sizer.getBatchSize(32, 1000, 4)).isEqualTo(32);
+        assertThat(sizer.getBatchSize(64, 1000, 4)).isEqualTo(32);
+    }
+
+    @Test
+    public void testShrinkForExpensiveListener() {
+        ConsumeBatchSizer sizer = new ConsumeBatchSizer();
+        for (int i = 0; i < 10; i++) {
+            sizer.update(1, 1000L, 32);
+        }
+        assertThat(sizer.getBatchSize(32, 1000, 4)).isEqualTo(32);
+
+        // listener becomes slow, 1 second for each message.
+        sizer.update(32, 32 * ConsumeBatchSizer.TARGET_BATCH_NANOS * 100, 32);
+        assertThat(sizer.getBatchSize(32, 1000, 4)).isEqualTo(1);
+    }
+
+    @Test
+    public void testLimitedByBacklog() {
+        ConsumeBatchSizer sizer = new ConsumeBatchSizer();
+        for (int i = 0; i < 10; i++) {
+            sizer.update(1, 1000L, 32);
+        }
+        assertThat(sizer.getBatchSize(32, 40, 4)).isEqualTo(10);
+        assertThat(sizer.getBatchSize(32, 2, 4)).isEqualTo(1);
+        assertThat(sizer.getBatchSize(1, 1000, 4)).isEqualTo(1);
+    }
+}
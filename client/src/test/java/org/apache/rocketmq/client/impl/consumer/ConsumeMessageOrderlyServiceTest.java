@@ -16,19 +16,37 @@
  */
 package org.apache.rocketmq.client.impl.consumer;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.consumer.store.OffsetStore;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.client.stat.ConsumerStatsManager;
+import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.body.CMResult;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ConsumeMessageOrderlyServiceTest {
     private String consumerGroup;
@@ -83,4 +101,65 @@ public class ConsumeMessageOrderlyServiceTest {
         assertTrue(consumeMessageOrderlyService.consumeMessageDirectly(msg, brokerName).getConsumeResult().equals(CMResult.CR_THROW_EXCEPTION));
     }
 
+    @Test
+    public void testConsumeByShardingKey() throws Exception {
+        pushConsumer.setMessageModel(MessageModel.BROADCASTING);
+        pushConsumer.setConsumeOrderlyShardingKey(MessageConst.PROPERTY_KEYS);
+        pushConsumer.setSuspendCurrentQueueTimeMillis(10);
+        DefaultMQPushConsumerImpl pushConsumerImpl = pushConsumer.getDefaultMQPushConsumerImpl();
+        OffsetStore offsetStore = mock(OffsetStore.class);
+        pushConsumerImpl.setOffsetStore(offsetStore);
+        MQClientInstance mQClientFactory = mock(MQClientInstance.class);
+        when(mQClientFactory.getConsumerStatsManager()).thenReturn(mock(ConsumerStatsManager.class));
+        Field field = DefaultMQPushConsumerImpl.class.getDeclaredField("mQClientFactory");
+        field.setAccessible(true);
+        field.set(pushConsumerImpl, mQClientFactory);
+
+        final Map<String, List<Long>> consumedOffsets = new ConcurrentHashMap<String, List<Long>>();
+        final AtomicBoolean failedOnce = new AtomicBoolean(false);
+        MessageListenerOrderly listenerOrderly = new MessageListenerOrderly() {
+            @Override
+            public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                MessageExt first = msgs.get(0);
+                // the first message of key "K0" fails once, which blocks only its own key.
+                if (first.getQueueOffset() == 0 && failedOnce.compareAndSet(false, true)) {
+                    return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                }
+                for (MessageExt msg : msgs) {
+                    consumedOffsets.get(msg.getKeys()).add(msg.getQueueOffset());
+                }
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+        };
+
+        ConsumeMessageOrderlyService service = new ConsumeMessageOrderlyService(pushConsumerImpl, listenerOrderly);
+        MessageQueue mq = new MessageQueue(topic, brokerName, 0);
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        for (int i = 0; i < 30; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic(topic);
+            msg.setQueueOffset(i);
+            msg.setKeys("K" + (i % 3));
+            msg.setBody(new byte[8]);
+            msgs.add(msg);
+            consumedOffsets.put(msg.getKeys(), new CopyOnWriteArrayList<Long>());
+        }
+        pq.putMessage(msgs);
+        service.submitConsumeRequest(msgs, pq, mq, true);
+
+        verify(offsetStore, timeout(3000)).updateOffset(eq(mq), eq(30L), eq(true));
+        verify(offsetStore, never()).updateOffset(eq(mq), eq(-1L), eq(true));
+        assertThat(failedOnce.get()).isTrue();
+        for (int k = 0; k < 3; k++) {
+            List<Long> offsets = consumedOffsets.get("K" + k);
+            assertThat(offsets).hasSize(10);
+            for (int i = 0; i < offsets.size(); i++) {
+                assertThat(offsets.get(i)).isEqualTo(k + 3L * i);
+            }
+        }
+        assertThat(pq.getMsgCount().get()).isEqualTo(0);
+        service.shutdown(1000);
+    }
+
 }
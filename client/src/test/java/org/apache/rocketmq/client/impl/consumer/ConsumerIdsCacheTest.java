@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumerIdsCacheTest {
+    private static final String GROUP = "testGroup";
+    private static final String BROKER = "127.0.0.1:10911";
+
+    private final List<String> cidAll = Arrays.asList("CID-0", "CID-1");
+
+    @Test
+    public void testGetCopyUntilExpired() {
+        ConsumerIdsCache cache = new ConsumerIdsCache(1000);
+        assertThat(cache.get(GROUP, 0)).isNull();
+
+        cache.put(GROUP, BROKER, 5, cidAll, cache.stamp(), 0);
+        List<String> cached = cache.get(GROUP, 999);
+        assertThat(cached).isEqualTo(cidAll);
+        cached.clear();
+        assertThat(cache.get(GROUP, 999)).isEqualTo(cidAll);
+
+        assertThat(cache.get(GROUP, 1000)).isNull();
+    }
+
+    @Test
+    public void testIgnoreKnownVersion() {
+        ConsumerIdsCache cache = new ConsumerIdsCache(1000);
+        cache.put(GROUP, BROKER, 5, cidAll, cache.stamp(), 0);
+
+        assertThat(cache.invalidate(GROUP, BROKER, 4L)).isFalse();
+        assertThat(cache.invalidate(GROUP, BROKER, 5L)).isFalse();
+        assertThat(cache.get(GROUP, 0)).isEqualTo(cidAll);
+
+        assertThat(cache.invalidate(GROUP, BROKER, 6L)).isTrue();
+        assertThat(cache.get(GROUP, 0)).isNull();
+        assertThat(cache.invalidate(GROUP, BROKER, 6L)).isFalse();
+    }
+
+    @Test
+    public void testInvalidateWithoutVersion() {
+        ConsumerIdsCache cache = new ConsumerIdsCache(1000);
+        cache.put(GROUP, BROKER, 0, cidAll, cache.stamp(), 0);
+
+        assertThat(cache.invalidate(GROUP, BROKER, null)).isTrue();
+        assertThat(cache.get(GROUP, 0)).isNull();
+        assertThat(cache.invalidate(GROUP, BROKER, null)).isTrue();
+    }
+
+    @Test
+    public void testNotCacheListFetchedBeforeInvalidation() {
+        ConsumerIdsCache cache = new ConsumerIdsCache(1000);
+        long stamp = cache.stamp();
+        assertThat(cache.invalidate(GROUP, "127.0.0.2:10911", 7L)).isTrue();
+
+        cache.put(GROUP, BROKER, 5, cidAll, stamp, 0);
+        assertThat(cache.get(GROUP, 0)).isNull();
+        assertThat(cache.invalidate(GROUP, BROKER, 5L)).isFalse();
+    }
+}
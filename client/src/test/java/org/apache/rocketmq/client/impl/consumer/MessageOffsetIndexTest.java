@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageOffsetIndexTest {
+
+    @Test
+    public void testAckAndFirstPending() {
+        MessageOffsetIndex index = new MessageOffsetIndex();
+        for (long offset = 100; offset < 300; offset++) {
+            assertThat(index.put(createMessage(offset))).isTrue();
+        }
+        assertThat(index.put(createMessage(150))).isFalse();
+
+        assertThat(index.firstPendingOffset()).isEqualTo(100);
+        assertThat(index.lastPendingOffset()).isEqualTo(299);
+        assertThat(index.pendingCount()).isEqualTo(200);
+
+        assertThat(index.ack(101)).isTrue();
+        assertThat(index.ack(101)).isFalse();
+        assertThat(index.ack(99)).isFalse();
+        assertThat(index.ack(1000)).isFalse();
+        assertThat(index.firstPendingOffset()).isEqualTo(100);
+
+        assertThat(index.ack(100)).isTrue();
+        assertThat(index.firstPendingOffset()).isEqualTo(102);
+        assertThat(index.ack(299)).isTrue();
+        assertThat(index.lastPendingOffset()).isEqualTo(298);
+        assertThat(index.pendingSnapshot().firstKey()).isEqualTo(102);
+        assertThat(index.pendingSnapshot()).hasSize(197);
+
+        for (long offset = 102; offset < 299; offset++) {
+            assertThat(index.ack(offset)).isTrue();
+        }
+        assertThat(index.hasPending()).isFalse();
+        assertThat(index.firstPendingOffset()).isEqualTo(-1);
+
+        index.reclaim();
+        assertThat(index.getChunkCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGaps() {
+        MessageOffsetIndex index = new MessageOffsetIndex();
+        // filtered messages leave gaps of offset.
+        for (long offset = 0; offset < 100000; offset += 7) {
+            index.put(createMessage(offset));
+        }
+        assertThat(index.firstPendingOffset()).isEqualTo(0);
+        assertThat(index.lastPendingOffset()).isEqualTo(99995);
+
+        for (long offset = 0; offset < 50000; offset += 7) {
+            index.ack(offset);
+        }
+        index.reclaim();
+        assertThat(index.firstPendingOffset()).isEqualTo(50001);
+        assertThat(index.getChunkCount()).isEqualTo(99995 / MessageOffsetIndex.CHUNK_SIZE - 50001 / MessageOffsetIndex.CHUNK_SIZE + 1);
+
+        // offset before head is put again, e.g. pulled again.
+        index.put(createMessage(10));
+        assertThat(index.firstPendingOffset()).isEqualTo(10);
+        assertThat(index.peekFirstPending().getQueueOffset()).isEqualTo(10);
+    }
+
+    @Test
+    public void testSparseOffsets() {
+        MessageOffsetIndex index = new MessageOffsetIndex();
+        // one message is held while matched messages arrive far later, e.g. filtered by tag.
+        index.put(createMessage(100));
+        for (long offset = 10000000; offset < 10000000 + 100L * 1000000; offset += 1000000) {
+            index.put(createMessage(offset));
+        }
+        assertThat(index.getChunkCount()).isEqualTo(101);
+        assertThat(index.firstPendingOffset()).isEqualTo(100);
+        assertThat(index.lastPendingOffset()).isEqualTo(10000000 + 99L * 1000000);
+
+        assertThat(index.ack(100)).isTrue();
+        assertThat(index.firstPendingOffset()).isEqualTo(10000000);
+        for (long offset = 10000000; offset < 10000000 + 50L * 1000000; offset += 1000000) {
+            assertThat(index.ack(offset)).isTrue();
+        }
+        index.reclaim();
+        assertThat(index.getChunkCount()).isEqualTo(50);
+        assertThat(index.pendingCount()).isEqualTo(50);
+        assertThat(index.peekFirstPending().getQueueOffset()).isEqualTo(10000000 + 50L * 1000000);
+    }
+
+    @Test
+    public void testTakeAndRepend() {
+        MessageOffsetIndex index = new MessageOffsetIndex();
+        for (long offset = 0; offset < 10; offset++) {
+            index.put(createMessage(offset));
+        }
+
+        assertThat(index.pollFirstPending().getQueueOffset()).isEqualTo(0);
+        assertThat(index.pollFirstPending().getQueueOffset()).isEqualTo(1);
+        assertThat(index.firstPendingOffset()).isEqualTo(2);
+
+        // taken messages are still held, so the chunk could not be reclaimed.
+        for (long offset = 2; offset < 10; offset++) {
+            index.ack(offset);
+        }
+        index.reclaim();
+        assertThat(index.hasPending()).isFalse();
+        assertThat(index.getChunkCount()).isEqualTo(1);
+
+        assertThat(index.repend(1)).isTrue();
+        assertThat(index.repend(5)).isFalse();
+        assertThat(index.pollFirstPending().getQueueOffset()).isEqualTo(1);
+
+        assertThat(index.ack(0)).isTrue();
+        assertThat(index.ack(1)).isTrue();
+        index.reclaim();
+        assertThat(index.getChunkCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentAck() throws InterruptedException {
+        final MessageOffsetIndex index = new MessageOffsetIndex();
+        final int total = 64 * 1024;
+        final int threadNum = 4;
+        final AtomicInteger acked = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(threadNum);
+        for (int i = 0; i < threadNum; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (long offset = 0; offset < total; offset++) {
+                            // wait for offset to be put by the writer below.
+                            while (offset >= index.lastPendingOffset() + 1 && acked.get() < total) {
+                                Thread.yield();
+                            }
+                            if (index.ack(offset)) {
+                                acked.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        for (long offset = 0; offset < total; offset++) {
+            index.put(createMessage(offset));
+            if (offset % 32 == 0) {
+                index.reclaim();
+            }
+        }
+        latch.await();
+
+        assertThat(acked.get()).isEqualTo(total);
+        assertThat(index.hasPending()).isFalse();
+    }
+
+    private static MessageExt createMessage(final long offset) {
+        MessageExt msg = new MessageExt();
+        msg.setQueueOffset(offset);
+        msg.setBody(new byte[16]);
+        return msg;
+    }
+}
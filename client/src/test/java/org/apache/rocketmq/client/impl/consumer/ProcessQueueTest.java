@@ -19,6 +19,8 @@ package org.apache.rocketmq.client.impl.consumer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.body.ProcessQueueInfo;
 import org.junit.Test;
@@ -90,6 +92,90 @@ public class ProcessQueueTest {
         assertThat(processQueueInfo.getCachedMsgSizeInMiB()).isEqualTo(0);
     }
 
+    @Test
+    public void testRemoveMessageReturnsMinOffset() {
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = createMessageList();
+        assertThat(pq.putMessage(msgs)).isTrue();
+        assertThat(pq.getMaxSpan()).isEqualTo(99);
+
+        assertThat(pq.removeMessage(msgs.subList(1, 50))).isEqualTo(0);
+        assertThat(pq.removeMessage(Collections.singletonList(msgs.get(0)))).isEqualTo(50);
+        assertThat(pq.getMaxSpan()).isEqualTo(49);
+        assertThat(pq.getMsgCount().get()).isEqualTo(50);
+
+        assertThat(pq.removeMessage(msgs.subList(50, 100))).isEqualTo(100);
+        assertThat(pq.hasTempMessage()).isFalse();
+        assertThat(pq.getMsgCount().get()).isEqualTo(0);
+        assertThat(pq.getMaxSpan()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRemoveMessageNothingAcked() {
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = createMessageList();
+        pq.putMessage(msgs);
+
+        assertThat(pq.removeMessage(msgs.subList(0, 10))).isEqualTo(10);
+        assertThat(pq.removeMessage(msgs.subList(0, 10))).isEqualTo(10);
+        assertThat(pq.removeMessage(Collections.<MessageExt>emptyList())).isEqualTo(10);
+        assertThat(pq.getMsgCount().get()).isEqualTo(90);
+    }
+
+    @Test
+    public void testRemoveMessageConcurrentWithPut() throws Exception {
+        final ProcessQueue pq = new ProcessQueue();
+        final List<MessageExt> msgs = createMessageList(100000);
+        final CountDownLatch putDone = new CountDownLatch(1);
+        Thread puller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < msgs.size(); i += 32) {
+                    pq.putMessage(msgs.subList(i, Math.min(i + 32, msgs.size())));
+                }
+                putDone.countDown();
+            }
+        });
+        puller.start();
+
+        int next = 0;
+        long committed = -1;
+        while (next < msgs.size()) {
+            long max = pq.getMsgCount().get() > 0 ? pq.getMsgTreeMap().lastKey() : -1;
+            if (max < next) {
+                Thread.yield();
+                continue;
+            }
+            long offset = pq.removeMessage(msgs.subList(next, (int) max + 1));
+            next = (int) max + 1;
+            // never commit past a message not consumed yet
+            assertThat(offset).isLessThanOrEqualTo(next);
+            committed = Math.max(committed, offset);
+        }
+        assertThat(putDone.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(committed).isEqualTo(msgs.size());
+        assertThat(pq.getMsgCount().get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testOrderlyRollback() {
+        ProcessQueue pq = new ProcessQueue();
+        pq.putMessage(createMessageList());
+
+        List<MessageExt> taken = pq.takeMessages(10);
+        assertThat(taken).hasSize(10);
+        assertThat(pq.getMsgTreeMap().firstKey()).isEqualTo(10);
+
+        pq.rollback();
+        assertThat(pq.getMsgTreeMap().firstKey()).isEqualTo(0);
+
+        taken = pq.takeMessages(10);
+        pq.makeMessageToConsumeAgain(taken.subList(5, 10));
+        assertThat(pq.commit()).isEqualTo(5);
+        assertThat(pq.getMsgCount().get()).isEqualTo(95);
+        assertThat(pq.getMsgTreeMap().firstKey()).isEqualTo(5);
+    }
+
     private List<MessageExt> createMessageList() {
         return createMessageList(100);
     }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PullMemoryBudgetTest {
+
+    @Test
+    public void testShareByConsumingRate() {
+        PullMemoryBudget budget = new PullMemoryBudget(10000);
+        ProcessQueue fast = new ProcessQueue();
+        ProcessQueue slow = new ProcessQueue();
+        List<ProcessQueue> processQueues = Arrays.asList(fast, slow);
+
+        List<MessageExt> fastMsgs = createMessageList(0, 40, 100);
+        fast.putMessage(fastMsgs);
+        slow.putMessage(createMessageList(0, 40, 100));
+        assertThat(budget.getShare(fast, 2)).isEqualTo(5000);
+
+        long now = System.currentTimeMillis();
+        budget.refresh(processQueues, now);
+        fast.removeMessage(fastMsgs.subList(0, 30));
+        budget.refresh(processQueues, now + PullMemoryBudget.REFRESH_INTERVAL_MILLIS);
+
+        assertThat(fast.getConsumedMsgSize()).isEqualTo(3000);
+        assertThat(slow.getConsumedMsgSize()).isEqualTo(0);
+        assertThat(budget.getShare(fast, 2)).isGreaterThan(9000);
+        assertThat(budget.getShare(slow, 2)).isLessThan(1000);
+    }
+
+    @Test
+    public void testSuspendOnlyWhenBudgetExhausted() {
+        PullMemoryBudget budget = new PullMemoryBudget(10000);
+        ProcessQueue hot = new ProcessQueue();
+        ProcessQueue cold = new ProcessQueue();
+        List<ProcessQueue> processQueues = Arrays.asList(hot, cold);
+
+        // cold queue takes more than its share, but the budget is not exhausted.
+        cold.putMessage(createMessageList(0, 60, 100));
+        assertThat(budget.tryAcquire(cold, processQueues)).isTrue();
+
+        cold.putMessage(createMessageList(60, 40, 100));
+        assertThat(budget.tryAcquire(cold, processQueues)).isFalse();
+        // hot queue is still within its share.
+        assertThat(budget.tryAcquire(hot, processQueues)).isTrue();
+
+        hot.putMessage(createMessageList(0, 50, 100));
+        assertThat(budget.tryAcquire(hot, processQueues)).isFalse();
+        assertThat(PullMemoryBudget.getCachedSize(processQueues)).isEqualTo(15000);
+    }
+
+    private static List<MessageExt> createMessageList(final long firstOffset, final int count, final int bodySize) {
+        List<MessageExt> msgs = new ArrayList<MessageExt>(count);
+        for (int i = 0; i < count; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setQueueOffset(firstOffset + i);
+            msg.setBody(new byte[bodySize]);
+            msgs.add(msg);
+        }
+        return msgs;
+    }
+}
@@ -16,19 +16,29 @@
  */
 package org.apache.rocketmq.client.impl.consumer;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueAveragely;
 import org.apache.rocketmq.client.consumer.store.OffsetStore;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.FindBrokerResult;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.body.LockBatchRequestBody;
+import org.apache.rocketmq.common.protocol.body.UnlockBatchRequestBody;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
@@ -37,8 +47,17 @@ import org.mockito.stubbing.Answer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -49,6 +68,8 @@ public class RebalancePushImplTest {
     private MQClientInstance mqClientInstance;
     @Mock
     private OffsetStore offsetStore;
+    @Mock
+    private MQClientAPIImpl mqClientAPIImpl;
     private String consumerGroup = "CID_RebalancePushImplTest";
     private String topic = "TopicA";
 
@@ -160,4 +181,98 @@ public class RebalancePushImplTest {
         assertThat(defaultMQPushConsumer.consumerRunningInfo().getProperties().get("pullThresholdSizeForTopic")).isEqualTo("1024");
         assertThat(defaultMQPushConsumer.consumerRunningInfo().getProperties().get("pullThresholdForTopic")).isEqualTo("1024");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCooperativeRebalanceLock() throws Exception {
+        RebalancePushImpl rebalancePush = new RebalancePushImpl(consumerGroup, MessageModel.CLUSTERING,
+            new AllocateMessageQueueAveragely(), mqClientInstance, defaultMQPushConsumer);
+        init(rebalancePush);
+        defaultMQPushConsumer.getDefaultMQPushConsumer().setCooperativeRebalance(true);
+        final Set<MessageQueue> released = new HashSet<MessageQueue>();
+        initLock(released);
+
+        MessageQueue mq0 = new MessageQueue(topic, "BrokerA", 0);
+        MessageQueue mq1 = new MessageQueue(topic, "BrokerA", 1);
+        MessageQueue mq2 = new MessageQueue(topic, "BrokerA", 2);
+        Set<MessageQueue> allocateResultSet = new HashSet<MessageQueue>();
+        allocateResultSet.add(mq0);
+        allocateResultSet.add(mq1);
+        allocateResultSet.add(mq2);
+
+        // queues still locked by previous owners are not pulled, and retried once for all of them
+        released.add(mq0);
+        doRebalanceForcibly(rebalancePush, allocateResultSet);
+        assertThat(rebalancePush.getProcessQueueTable().keySet()).containsOnly(mq0);
+        verify(mqClientInstance, times(1)).rebalanceLater(anyLong());
+
+        released.add(mq1);
+        released.add(mq2);
+        doRebalanceForcibly(rebalancePush, allocateResultSet);
+        assertThat(rebalancePush.getProcessQueueTable().keySet()).containsOnly(mq0, mq1, mq2);
+        verify(mqClientInstance, times(1)).rebalanceLater(anyLong());
+    }
+
+    @Test
+    public void testCooperativeRebalanceUnlock() throws Exception {
+        RebalancePushImpl rebalancePush = new RebalancePushImpl(consumerGroup, MessageModel.CLUSTERING,
+            new AllocateMessageQueueAveragely(), mqClientInstance, defaultMQPushConsumer);
+        init(rebalancePush);
+        defaultMQPushConsumer.getDefaultMQPushConsumer().setCooperativeRebalance(true);
+        MessageQueue mq0 = new MessageQueue(topic, "BrokerA", 0);
+        MessageQueue mq1 = new MessageQueue(topic, "BrokerA", 1);
+        MessageQueue mq2 = new MessageQueue(topic, "BrokerA", 2);
+        initLock(new HashSet<MessageQueue>(Arrays.asList(mq0, mq1, mq2)));
+        ScheduledExecutorService scheduledExecutorService = mock(ScheduledExecutorService.class);
+        when(defaultMQPushConsumer.getmQClientFactory()).thenReturn(mqClientInstance);
+        when(mqClientInstance.getScheduledExecutorService()).thenReturn(scheduledExecutorService);
+
+        Set<MessageQueue> allocateResultSet = new HashSet<MessageQueue>(Arrays.asList(mq0, mq1, mq2));
+        doRebalanceForcibly(rebalancePush, allocateResultSet);
+        assertThat(rebalancePush.getProcessQueueTable()).hasSize(3);
+        ProcessQueue pq2 = rebalancePush.getProcessQueueTable().get(mq2);
+        MessageExt msg = new MessageExt();
+        msg.setQueueOffset(0);
+        msg.setBody(new byte[] {'a'});
+        pq2.putMessage(Collections.singletonList(msg));
+
+        // released at once after the offset is persisted
+        allocateResultSet.remove(mq1);
+        doRebalanceForcibly(rebalancePush, allocateResultSet);
+        assertThat(rebalancePush.getProcessQueueTable().keySet()).containsOnly(mq0, mq2);
+        InOrder inOrder = inOrder(offsetStore, mqClientAPIImpl);
+        inOrder.verify(offsetStore).persist(mq1);
+        inOrder.verify(mqClientAPIImpl).unlockBatchMQ(anyString(), argThat(containsQueue(mq1)), anyLong(), eq(true));
+
+        // released later while messages are still in flight
+        allocateResultSet.remove(mq2);
+        doRebalanceForcibly(rebalancePush, allocateResultSet);
+        assertThat(rebalancePush.getProcessQueueTable().keySet()).containsOnly(mq0);
+        verify(offsetStore).persist(mq2);
+        verify(scheduledExecutorService).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        verify(mqClientAPIImpl, never()).unlockBatchMQ(anyString(), argThat(containsQueue(mq2)), anyLong(), anyBoolean());
+    }
+
+    private void initLock(final Set<MessageQueue> released) throws Exception {
+        when(mqClientInstance.findBrokerAddressInSubscribe(anyString(), anyLong(), anyBoolean()))
+            .thenReturn(new FindBrokerResult("127.0.0.1:10911", false));
+        when(mqClientInstance.getMQClientAPIImpl()).thenReturn(mqClientAPIImpl);
+        doAnswer(new Answer<Set<MessageQueue>>() {
+            @Override
+            public Set<MessageQueue> answer(final InvocationOnMock invocation) {
+                LockBatchRequestBody requestBody = invocation.getArgument(1);
+                Set<MessageQueue> locked = new HashSet<MessageQueue>(requestBody.getMqSet());
+                locked.retainAll(released);
+                return locked;
+            }
+        }).when(mqClientAPIImpl).lockBatchMQ(anyString(), any(LockBatchRequestBody.class), anyLong());
+    }
+
+    private static ArgumentMatcher<UnlockBatchRequestBody> containsQueue(final MessageQueue mq) {
+        return new ArgumentMatcher<UnlockBatchRequestBody>() {
+            @Override
+            public boolean matches(UnlockBatchRequestBody requestBody) {
+                return requestBody != null && requestBody.getMqSet().contains(mq);
+            }
+        };
+    }
+}
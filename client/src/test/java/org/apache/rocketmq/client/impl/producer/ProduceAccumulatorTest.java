@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.exception.RemotingConnectException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProduceAccumulatorTest {
+    private final String topic = "FooBar";
+    private final List<MessageBatch> sentBatches = new CopyOnWriteArrayList<MessageBatch>();
+    private final List<MessageQueue> sentQueues = new CopyOnWriteArrayList<MessageQueue>();
+    private ExecutorService executor;
+    private DefaultMQProducerImpl producer;
+    private volatile boolean sendFailed = false;
+
+    @Before
+    public void init() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        producer = mock(DefaultMQProducerImpl.class);
+        when(producer.getAsyncSenderExecutor()).thenReturn(executor);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                MessageBatch msgBatch = invocation.getArgument(0);
+                MessageQueue mq = invocation.getArgument(1);
+                SendCallback callback = invocation.getArgument(2);
+                sentBatches.add(msgBatch);
+                sentQueues.add(mq);
+                if (sendFailed) {
+                    callback.onException(new RemotingConnectException("127.0.0.1:10911"));
+                    return null;
+                }
+                int nums = 0;
+                StringBuilder offsetMsgIds = new StringBuilder();
+                for (Message ignored : msgBatch) {
+                    offsetMsgIds.append(nums == 0 ? "" : ",").append("offset").append(nums++);
+                }
+                callback.onSuccess(new SendResult(SendStatus.SEND_OK, null, offsetMsgIds.toString(),
+                    new MessageQueue(topic, "BrokerA", 0), 100));
+                return null;
+            }
+        }).when(producer).sendBatchAsync(any(MessageBatch.class), nullable(MessageQueue.class), any(SendCallback.class), anyLong());
+    }
+
+    @After
+    public void terminate() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSendWhenBatchIsFull() throws Exception {
+        Message msg = new Message(topic, new byte[100]);
+        MessageClientIDSetter.setUniqID(msg);
+        int size = ProduceAccumulator.estimateSize(msg);
+        ProduceAccumulator accumulator = new ProduceAccumulator(producer, 60 * 1000, size * 3);
+
+        CountDownLatch latch = new CountDownLatch(3);
+        List<SendResult> results = new CopyOnWriteArrayList<SendResult>();
+        List<Message> msgs = new ArrayList<Message>();
+        for (int i = 0; i < 3; i++) {
+            Message message = new Message(topic, new byte[100]);
+            msgs.add(message);
+            accumulator.append(message, null, new ResultCallback(latch, results), 3000);
+        }
+
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(sentBatches).hasSize(1);
+        assertThat(sentQueues.get(0)).isNull();
+        assertThat(accumulator.getPendingBatchNums()).isZero();
+        for (int i = 0; i < 3; i++) {
+            SendResult result = findResult(results, MessageClientIDSetter.getUniqID(msgs.get(i)));
+            assertThat(result.getQueueOffset()).isEqualTo(100 + i);
+            assertThat(result.getOffsetMsgId()).isEqualTo("offset" + i);
+        }
+    }
+
+    @Test
+    public void testSendWhenLingered() throws Exception {
+        ProduceAccumulator accumulator = new ProduceAccumulator(producer, 10, 1024 * 1024);
+        accumulator.start();
+        try {
+            MessageQueue mq = new MessageQueue(topic, "BrokerA", 1);
+            CountDownLatch latch = new CountDownLatch(2);
+            List<SendResult> results = new CopyOnWriteArrayList<SendResult>();
+            accumulator.append(new Message(topic, new byte[10]), mq, new ResultCallback(latch, results), 3000);
+            accumulator.append(new Message(topic, new byte[10]), mq, new ResultCallback(latch, results), 3000);
+
+            assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+            assertThat(sentBatches).hasSize(1);
+            assertThat(sentQueues.get(0)).isEqualTo(mq);
+        } finally {
+            accumulator.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailAllWhenBatchFailed() throws Exception {
+        sendFailed = true;
+        ProduceAccumulator accumulator = new ProduceAccumulator(producer, 60 * 1000, 1024 * 1024);
+
+        CountDownLatch latch = new CountDownLatch(4);
+        List<SendResult> results = new CopyOnWriteArrayList<SendResult>();
+        for (int i = 0; i < 4; i++) {
+            accumulator.append(new Message(topic, new byte[10]), null, new ResultCallback(latch, results), 3000);
+        }
+        accumulator.flushAll();
+
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(sentBatches).hasSize(1);
+        assertThat(results).isEmpty();
+    }
+
+    @Test
+    public void testCanBatch() {
+        ProduceAccumulator accumulator = new ProduceAccumulator(producer, 5, 1024);
+        assertThat(accumulator.canBatch(new Message(topic, new byte[10]))).isTrue();
+        assertThat(accumulator.canBatch(new Message(topic, new byte[1024]))).isFalse();
+        assertThat(accumulator.canBatch(new Message(MixAll.RETRY_GROUP_TOPIC_PREFIX + "group", new byte[10]))).isFalse();
+
+        Message delayed = new Message(topic, new byte[10]);
+        delayed.setDelayTimeLevel(3);
+        assertThat(accumulator.canBatch(delayed)).isFalse();
+
+        Message timed = new Message(topic, new byte[10]);
+        timed.setDeliverTimeMs(System.currentTimeMillis() + 60 * 1000);
+        assertThat(accumulator.canBatch(timed)).isFalse();
+    }
+
+    private static SendResult findResult(final List<SendResult> results, final String msgId) {
+        for (SendResult result : results) {
+            if (result.getMsgId().equals(msgId)) {
+                return result;
+            }
+        }
+        throw new AssertionError("No send result of " + msgId);
+    }
+
+    private static class ResultCallback implements SendCallback {
+        private final CountDownLatch latch;
+        private final List<SendResult> results;
+
+        ResultCallback(final CountDownLatch latch, final List<SendResult> results) {
+            this.latch = latch;
+            this.results = results;
+        }
+
+        @Override
+        public void onSuccess(final SendResult sendResult) {
+            results.add(sendResult);
+            latch.countDown();
+        }
+
+        @Override
+        public void onException(final Throwable e) {
+            latch.countDown();
+        }
+    }
+}
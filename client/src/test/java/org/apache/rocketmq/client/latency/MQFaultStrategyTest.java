@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.latency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MQFaultStrategyTest {
+    private String topic = "FooBar";
+    private String brokerName = "BrokerA";
+    private String anotherBrokerName = "BrokerB";
+    private MQFaultStrategy mqFaultStrategy;
+    private TopicPublishInfo topicPublishInfo;
+
+    @Before
+    public void init() {
+        mqFaultStrategy = new MQFaultStrategy();
+        mqFaultStrategy.setSendLatencyAdaptiveEnable(true);
+
+        List<MessageQueue> queues = new ArrayList<MessageQueue>();
+        for (int i = 0; i < 4; i++) {
+            queues.add(new MessageQueue(topic, brokerName, i));
+            queues.add(new MessageQueue(topic, anotherBrokerName, i));
+        }
+        topicPublishInfo = new TopicPublishInfo();
+        topicPublishInfo.setMessageQueueList(queues);
+    }
+
+    @Test
+    public void testSelectLowLatencyBroker() {
+        mqFaultStrategy.updateFaultItem(brokerName, 500, false);
+        mqFaultStrategy.updateFaultItem(anotherBrokerName, 10, false);
+
+        int selectedFaster = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (mqFaultStrategy.selectOneMessageQueue(topicPublishInfo, null).getBrokerName().equals(anotherBrokerName)) {
+                selectedFaster++;
+            }
+        }
+        // the slow broker is only selected when both candidates are on it.
+        assertThat(selectedFaster).isGreaterThan(600);
+    }
+
+    @Test
+    public void testSelectLessInflightBroker() {
+        mqFaultStrategy.updateFaultItem(brokerName, 10, false);
+        mqFaultStrategy.updateFaultItem(anotherBrokerName, 10, false);
+        for (int i = 0; i < 10; i++) {
+            mqFaultStrategy.onSendStart(brokerName);
+        }
+
+        SendLatencyStats stats = mqFaultStrategy.getSendLatencyStats();
+        assertThat(stats.getInflight(brokerName)).isEqualTo(10);
+        assertThat(stats.getScore(brokerName)).isGreaterThan(stats.getScore(anotherBrokerName));
+
+        for (int i = 0; i < 10; i++) {
+            mqFaultStrategy.onSendEnd(brokerName);
+        }
+        assertThat(stats.getInflight(brokerName)).isZero();
+    }
+
+    @Test
+    public void testAvoidLastBroker() {
+        mqFaultStrategy.updateFaultItem(brokerName, 10, false);
+        mqFaultStrategy.updateFaultItem(anotherBrokerName, 500, false);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(mqFaultStrategy.selectOneMessageQueue(topicPublishInfo, brokerName).getBrokerName())
+                .isEqualTo(anotherBrokerName);
+        }
+    }
+
+    @Test
+    public void testFailureAndDecay() throws Exception {
+        SendLatencyStats stats = mqFaultStrategy.getSendLatencyStats();
+        stats.setDecayMillis(100);
+        mqFaultStrategy.updateFaultItem(brokerName, 5, true);
+        assertThat(stats.getLatency(brokerName)).isGreaterThan(SendLatencyStats.FAILURE_LATENCY / 2);
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertThat(stats.getLatency(brokerName)).isLessThan(SendLatencyStats.FAILURE_LATENCY / 10);
+    }
+}
@@ -42,6 +42,7 @@ import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.client.impl.producer.DefaultMQProducerImpl;
 import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.route.BrokerData;
@@ -66,7 +67,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -278,6 +281,39 @@ public class DefaultMQProducerTest {
         assertThat(cc.get()).isEqualTo(1);
     }
 
+    @Test
+    public void testSendLingeringBatchOnShutdown() throws Exception {
+        when(mQClientAPIImpl.getTopicRouteInfoFromNameServer(anyString(), anyLong())).thenReturn(createTopicRoute());
+        DefaultMQProducer batchProducer = new DefaultMQProducer(producerGroupPrefix + "_batch" + System.currentTimeMillis());
+        batchProducer.setNamesrvAddr("127.0.0.1:9876");
+        batchProducer.setAutoBatchEnable(true);
+        batchProducer.setBatchLingerMs(60 * 1000);
+        batchProducer.start();
+
+        Field field = DefaultMQProducerImpl.class.getDeclaredField("mQClientFactory");
+        field.setAccessible(true);
+        field.set(batchProducer.getDefaultMQProducerImpl(), mQClientFactory);
+        mQClientFactory.registerProducer(batchProducer.getProducerGroup(), batchProducer.getDefaultMQProducerImpl());
+
+        SendCallback sendCallback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+            }
+
+            @Override
+            public void onException(Throwable e) {
+            }
+        };
+        batchProducer.send(new Message(topic, new byte[] {'a'}), sendCallback);
+        batchProducer.send(new Message(topic, new byte[] {'b'}), sendCallback);
+        assertThat(batchProducer.getDefaultMQProducerImpl().getProduceAccumulator().getPendingBatchNums()).isEqualTo(1);
+
+        batchProducer.shutdown();
+        verify(mQClientAPIImpl).sendMessage(anyString(), anyString(), any(MessageBatch.class), any(SendMessageRequestHeader.class), anyLong(),
+            eq(CommunicationMode.ASYNC), nullable(SendCallback.class), nullable(TopicPublishInfo.class), nullable(MQClientInstance.class),
+            anyInt(), nullable(SendMessageContext.class), any(DefaultMQProducerImpl.class));
+    }
+
     @Test
     public void testSendMessageAsync_BodyCompressed() throws RemotingException, InterruptedException, MQBrokerException, MQClientException {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
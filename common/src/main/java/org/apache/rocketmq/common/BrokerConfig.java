@@ -141,6 +141,12 @@ public class BrokerConfig {
     // Error rate of bloom filter, 1~100.
     private int maxErrorRateOfBloomFilter = 20;
 
+    // Enlarge bloom filter when consumers are more than expected, or false positive rate is too high.
+    private boolean enableAdaptiveBloomFilter = true;
+
+    // Upper limit of expected num of consumers when enlarging bloom filter, which decides the length of bit map.
+    private int maxExpectConsumerNumUseFilter = 1024;
+
     //how long to clean filter data after dead.Default: 24h
     private long filterDataCleanTimeSpan = 24 * 3600 * 1000;
 
@@ -177,6 +183,26 @@ public class BrokerConfig {
     @ImportantField
     private long transactionCheckInterval = 60 * 1000;
 
+    /**
+     * Thread numbers to check half queues in parallel.
+     */
+    private int transactionCheckThreadPoolNums = 4;
+
+    /**
+     * Max check requests taken from one producer group in turn, also max requests written to one channel together.
+     */
+    private int transactionCheckBatchSize = 32;
+
+    /**
+     * Max check requests sent to one producer group per second, not limited if it is not positive.
+     */
+    private int transactionCheckMaxPerGroupPerSecond = 2000;
+
+    /**
+     * Max check requests waiting to be sent for one producer group, others are dropped and checked next time.
+     */
+    private int transactionCheckPendingPerGroup = 10000;
+
     /**
      * Acl feature switch
      */
@@ -645,6 +671,22 @@ public class BrokerConfig {
         this.maxErrorRateOfBloomFilter = maxErrorRateOfBloomFilter;
     }
 
+    public boolean isEnableAdaptiveBloomFilter() {
+        return enableAdaptiveBloomFilter;
+    }
+
+    public void setEnableAdaptiveBloomFilter(boolean enableAdaptiveBloomFilter) {
+        this.enableAdaptiveBloomFilter = enableAdaptiveBloomFilter;
+    }
+
+    public int getMaxExpectConsumerNumUseFilter() {
+        return maxExpectConsumerNumUseFilter;
+    }
+
+    public void setMaxExpectConsumerNumUseFilter(int maxExpectConsumerNumUseFilter) {
+        this.maxExpectConsumerNumUseFilter = maxExpectConsumerNumUseFilter;
+    }
+
     public long getFilterDataCleanTimeSpan() {
         return filterDataCleanTimeSpan;
     }
@@ -741,6 +783,38 @@ public class BrokerConfig {
         this.transactionCheckInterval = transactionCheckInterval;
     }
 
+    public int getTransactionCheckThreadPoolNums() {
+        return transactionCheckThreadPoolNums;
+    }
+
+    public void setTransactionCheckThreadPoolNums(int transactionCheckThreadPoolNums) {
+        this.transactionCheckThreadPoolNums = transactionCheckThreadPoolNums;
+    }
+
+    public int getTransactionCheckBatchSize() {
+        return transactionCheckBatchSize;
+    }
+
+    public void setTransactionCheckBatchSize(int transactionCheckBatchSize) {
+        this.transactionCheckBatchSize = transactionCheckBatchSize;
+    }
+
+    public int getTransactionCheckMaxPerGroupPerSecond() {
+        return transactionCheckMaxPerGroupPerSecond;
+    }
+
+    public void setTransactionCheckMaxPerGroupPerSecond(int transactionCheckMaxPerGroupPerSecond) {
+        this.transactionCheckMaxPerGroupPerSecond = transactionCheckMaxPerGroupPerSecond;
+    }
+
+    public int getTransactionCheckPendingPerGroup() {
+        return transactionCheckPendingPerGroup;
+    }
+
+    public void setTransactionCheckPendingPerGroup(int transactionCheckPendingPerGroup) {
+        this.transactionCheckPendingPerGroup = transactionCheckPendingPerGroup;
+    }
+
     public int getEndTransactionThreadPoolNums() {
         return endTransactionThreadPoolNums;
     }
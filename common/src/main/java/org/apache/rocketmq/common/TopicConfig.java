@@ -16,10 +16,13 @@
  */
 package org.apache.rocketmq.common;
 
+import java.util.HashSet;
+import java.util.Set;
 import org.apache.rocketmq.common.constant.PermName;
 
 public class TopicConfig {
     private static final String SEPARATOR = " ";
+    private static final String INDEXED_PROPERTY_SEPARATOR = ",";
     public static int defaultReadQueueNums = 16;
     public static int defaultWriteQueueNums = 16;
     private String topicName;
@@ -29,6 +32,10 @@ public class TopicConfig {
     private TopicFilterType topicFilterType = TopicFilterType.SINGLE_TAG;
     private int topicSysFlag = 0;
     private boolean order = false;
+    /**
+     * Names of user properties indexed by broker, separated by comma, so messages could be queried by their values.
+     */
+    private String indexedProperties;
 
     public TopicConfig() {
     }
@@ -134,6 +141,30 @@ public class TopicConfig {
         this.order = isOrder;
     }
 
+    public String getIndexedProperties() {
+        return indexedProperties;
+    }
+
+    public void setIndexedProperties(String indexedProperties) {
+        this.indexedProperties = indexedProperties;
+    }
+
+    /**
+     * @return names of indexed user properties, empty if none.
+     */
+    public Set<String> indexedPropertySet() {
+        Set<String> names = new HashSet<String>();
+        if (indexedProperties != null) {
+            for (String name : indexedProperties.split(INDEXED_PROPERTY_SEPARATOR)) {
+                name = name.trim();
+                if (name.length() > 0) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o)
@@ -155,6 +186,8 @@ public class TopicConfig {
             return false;
         if (topicName != null ? !topicName.equals(that.topicName) : that.topicName != null)
             return false;
+        if (indexedProperties != null ? !indexedProperties.equals(that.indexedProperties) : that.indexedProperties != null)
+            return false;
         return topicFilterType == that.topicFilterType;
 
     }
@@ -168,6 +201,7 @@ public class TopicConfig {
         result = 31 * result + (topicFilterType != null ? topicFilterType.hashCode() : 0);
         result = 31 * result + topicSysFlag;
         result = 31 * result + (order ? 1 : 0);
+        result = 31 * result + (indexedProperties != null ? indexedProperties.hashCode() : 0);
         return result;
     }
 
@@ -176,6 +210,6 @@ public class TopicConfig {
         return "TopicConfig [topicName=" + topicName + ", readQueueNums=" + readQueueNums
             + ", writeQueueNums=" + writeQueueNums + ", perm=" + PermName.perm2String(perm)
             + ", topicFilterType=" + topicFilterType + ", topicSysFlag=" + topicSysFlag + ", order="
-            + order + "]";
+            + order + ", indexedProperties=" + indexedProperties + "]";
     }
 }
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+
+/**
+ * Message decoded lazily from the buffer pulled from broker.
+ * <p>
+ * Fixed length fields and topic are decoded at once, while body, properties, hosts and message id are decoded on
+ * first access. Properties are looked up in the buffer without building the map, until the map is required.
+ * </p>
+ * <p>
+ * The pulled buffer is referenced until all messages decoded from it are released.
+ * </p>
+ */
+public class LazyMessageClientExt extends MessageClientExt {
+    private static final long serialVersionUID = -2530473712829213461L;
+
+    private transient ByteBuffer buffer;
+    private transient int bornHostPosition;
+    private transient int storeHostPosition;
+    private transient int bodyPosition;
+    private transient int bodyLength;
+    private transient int propertiesPosition;
+    private transient int propertiesLength;
+
+    private transient volatile boolean bodyDecoded;
+    private transient volatile boolean propertiesDecoded;
+    private transient volatile boolean hostsDecoded;
+    private transient volatile boolean msgIdDecoded;
+
+    /**
+     * Properties put before the map is built.
+     */
+    private transient Map<String, String> addedProperties;
+
+    LazyMessageClientExt(final ByteBuffer buffer, final int bornHostPosition, final int storeHostPosition,
+        final int bodyPosition, final int bodyLength, final int propertiesPosition, final int propertiesLength) {
+        this.buffer = buffer;
+        this.bornHostPosition = bornHostPosition;
+        this.storeHostPosition = storeHostPosition;
+        this.bodyPosition = bodyPosition;
+        this.bodyLength = bodyLength;
+        this.propertiesPosition = propertiesPosition;
+        this.propertiesLength = propertiesLength;
+    }
+
+    /**
+     * @return length of body without decoding it.
+     */
+    public int getBodyLength() {
+        if (this.bodyDecoded) {
+            byte[] body = super.getBody();
+            return body == null ? 0 : body.length;
+        }
+        return this.bodyLength;
+    }
+
+    /**
+     * @return read only view of body, which is not copied if it is not decoded yet.
+     */
+    public ByteBuffer getBodyBuffer() {
+        if (this.bodyDecoded) {
+            byte[] body = super.getBody();
+            return body == null ? null : ByteBuffer.wrap(body).asReadOnlyBuffer();
+        }
+        if (this.bodyLength <= 0) {
+            return null;
+        }
+        ByteBuffer view = this.buffer.duplicate();
+        view.limit(this.bodyPosition + this.bodyLength);
+        view.position(this.bodyPosition);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getBody() {
+        if (!this.bodyDecoded) {
+            this.decodeBody();
+        }
+        return super.getBody();
+    }
+
+    @Override
+    public void setBody(final byte[] body) {
+        synchronized (this) {
+            super.setBody(body);
+            this.bodyDecoded = true;
+        }
+    }
+
+    @Override
+    public String getProperty(final String name) {
+        if (this.propertiesDecoded) {
+            return super.getProperty(name);
+        }
+
+        synchronized (this) {
+            if (!this.propertiesDecoded) {
+                if (this.addedProperties != null && this.addedProperties.containsKey(name)) {
+                    return this.addedProperties.get(name);
+                }
+                return MessageDecoder.findProperty(this.buffer, this.propertiesPosition, this.propertiesLength, name);
+            }
+        }
+        return super.getProperty(name);
+    }
+
+    @Override
+    void putProperty(final String name, final String value) {
+        synchronized (this) {
+            if (!this.propertiesDecoded) {
+                if (null == this.addedProperties) {
+                    this.addedProperties = new HashMap<String, String>(4);
+                }
+                this.addedProperties.put(name, value);
+                return;
+            }
+        }
+        super.putProperty(name, value);
+    }
+
+    @Override
+    void clearProperty(final String name) {
+        this.decodeProperties();
+        super.clearProperty(name);
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        this.decodeProperties();
+        return super.getProperties();
+    }
+
+    @Override
+    void setProperties(final Map<String, String> properties) {
+        synchronized (this) {
+            super.setProperties(properties);
+            this.addedProperties = null;
+            this.propertiesDecoded = true;
+        }
+    }
+
+    @Override
+    public ByteBuffer getBornHostBytes() {
+        this.decodeHosts();
+        return super.getBornHostBytes();
+    }
+
+    @Override
+    public ByteBuffer getBornHostBytes(final ByteBuffer byteBuffer) {
+        this.decodeHosts();
+        return super.getBornHostBytes(byteBuffer);
+    }
+
+    @Override
+    public ByteBuffer getStoreHostBytes() {
+        this.decodeHosts();
+        return super.getStoreHostBytes();
+    }
+
+    @Override
+    public ByteBuffer getStoreHostBytes(final ByteBuffer byteBuffer) {
+        this.decodeHosts();
+        return super.getStoreHostBytes(byteBuffer);
+    }
+
+    @Override
+    public SocketAddress getBornHost() {
+        this.decodeHosts();
+        return super.getBornHost();
+    }
+
+    @Override
+    public void setBornHost(final SocketAddress bornHost) {
+        this.decodeHosts();
+        super.setBornHost(bornHost);
+    }
+
+    @Override
+    public String getBornHostString() {
+        this.decodeHosts();
+        return super.getBornHostString();
+    }
+
+    @Override
+    public String getBornHostNameString() {
+        this.decodeHosts();
+        return super.getBornHostNameString();
+    }
+
+    @Override
+    public SocketAddress getStoreHost() {
+        this.decodeHosts();
+        return super.getStoreHost();
+    }
+
+    @Override
+    public void setStoreHost(final SocketAddress storeHost) {
+        this.decodeHosts();
+        super.setStoreHost(storeHost);
+    }
+
+    @Override
+    public String getOffsetMsgId() {
+        if (!this.msgIdDecoded) {
+            this.decodeMsgId();
+        }
+        return super.getOffsetMsgId();
+    }
+
+    @Override
+    public void setOffsetMsgId(final String offsetMsgId) {
+        synchronized (this) {
+            super.setOffsetMsgId(offsetMsgId);
+            this.msgIdDecoded = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        this.decodeAll();
+        return super.toString();
+    }
+
+    private synchronized void decodeBody() {
+        if (this.bodyDecoded) {
+            return;
+        }
+
+        if (this.bodyLength > 0) {
+            byte[] body = new byte[this.bodyLength];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(this.bodyPosition);
+            view.get(body);
+            super.setBody(body);
+        }
+        this.bodyDecoded = true;
+    }
+
+    private synchronized void decodeProperties() {
+        if (this.propertiesDecoded) {
+            return;
+        }
+
+        Map<String, String> map = null;
+        if (this.propertiesLength > 0) {
+            byte[] properties = new byte[this.propertiesLength];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(this.propertiesPosition);
+            view.get(properties);
+            map = MessageDecoder.string2messageProperties(new String(properties, MessageDecoder.CHARSET_UTF8));
+        }
+        if (this.addedProperties != null) {
+            if (null == map) {
+                map = new HashMap<String, String>();
+            }
+            map.putAll(this.addedProperties);
+            this.addedProperties = null;
+        }
+        super.setProperties(map);
+        this.propertiesDecoded = true;
+    }
+
+    private synchronized void decodeHosts() {
+        if (this.hostsDecoded) {
+            return;
+        }
+
+        super.setBornHost(this.decodeHost(this.bornHostPosition, MessageSysFlag.BORNHOST_V6_FLAG));
+        super.setStoreHost(this.decodeHost(this.storeHostPosition, MessageSysFlag.STOREHOSTADDRESS_V6_FLAG));
+        this.hostsDecoded = true;
+    }
+
+    private InetSocketAddress decodeHost(final int position, final int v6Flag) {
+        int ipLength = (this.getSysFlag() & v6Flag) == 0 ? 4 : 16;
+        byte[] ip = new byte[ipLength];
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(position);
+        view.get(ip);
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(ip), view.getInt());
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Illegal host address of message", e);
+        }
+    }
+
+    private synchronized void decodeMsgId() {
+        if (this.msgIdDecoded) {
+            return;
+        }
+
+        int storeHostLength = ((this.getSysFlag() & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 4 : 16) + 4;
+        ByteBuffer storeHost = this.buffer.duplicate();
+        storeHost.limit(this.storeHostPosition + storeHostLength);
+        storeHost.position(this.storeHostPosition);
+        String msgId = MessageDecoder.createMessageId(ByteBuffer.allocate(storeHostLength + 8), storeHost.slice(),
+            this.getCommitLogOffset());
+        super.setOffsetMsgId(msgId);
+        this.msgIdDecoded = true;
+    }
+
+    private void decodeAll() {
+        this.decodeBody();
+        this.decodeProperties();
+        this.decodeHosts();
+        this.decodeMsgId();
+    }
+
+    private Object writeReplace() {
+        // fields of super class are written first, so decode them before serializing.
+        this.decodeAll();
+        return this;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.bodyDecoded = true;
+        this.propertiesDecoded = true;
+        this.hostsDecoded = true;
+        this.msgIdDecoded = true;
+    }
+}
@@ -48,6 +48,9 @@ public class MessageBatch extends Message implements Iterable<Message> {
             if (message.getDelayTimeLevel() > 0) {
                 throw new UnsupportedOperationException("TimeDelayLevel is not supported for batching");
             }
+            if (message.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) != null) {
+                throw new UnsupportedOperationException("Deliver time is not supported for batching");
+            }
             if (message.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
                 throw new UnsupportedOperationException("Retry Group is not supported for batching");
             }
@@ -106,6 +106,27 @@ public class MessageDecoder {
      * @param byteBuffer msg commit log buffer.
      */
     public static Map<String, String> decodeProperties(ByteBuffer byteBuffer) {
+        int propertiesPosition = decodePropertiesPosition(byteBuffer);
+        short propertiesLength = byteBuffer.getShort(propertiesPosition - 2);
+
+        byteBuffer.position(propertiesPosition);
+
+        if (propertiesLength > 0) {
+            byte[] properties = new byte[propertiesLength];
+            byteBuffer.get(properties);
+            String propertiesString = new String(properties, CHARSET_UTF8);
+            Map<String, String> map = string2messageProperties(propertiesString);
+            return map;
+        }
+        return null;
+    }
+
+    /**
+     * Get the position of properties in msg buffer, the length of properties(short) is just before it.
+     *
+     * @param byteBuffer msg commit log buffer.
+     */
+    public static int decodePropertiesPosition(ByteBuffer byteBuffer) {
         int sysFlag = byteBuffer.getInt(SYSFLAG_POSITION);
         int bornhostLength = (sysFlag & MessageSysFlag.BORNHOST_V6_FLAG) == 0 ? 8 : 20;
         int storehostAddressLength = (sysFlag & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 8 : 20;
@@ -127,18 +148,121 @@ public class MessageDecoder {
 
         byte topicLength = byteBuffer.get(topicLengthPosition);
 
-        short propertiesLength = byteBuffer.getShort(topicLengthPosition + 1 + topicLength);
+        return topicLengthPosition + 1 + topicLength + 2;
+    }
 
-        byteBuffer.position(topicLengthPosition + 1 + topicLength + 2);
+    /**
+     * Just decode one property from msg buffer, the position of buffer is not changed.
+     *
+     * @param byteBuffer msg commit log buffer.
+     * @param name property name.
+     * @return value of the property, null if not exist.
+     */
+    public static String decodeProperty(ByteBuffer byteBuffer, String name) {
+        int propertiesPosition = decodePropertiesPosition(byteBuffer);
+        short propertiesLength = byteBuffer.getShort(propertiesPosition - 2);
+        return findProperty(byteBuffer, propertiesPosition, propertiesLength, name);
+    }
 
-        if (propertiesLength > 0) {
-            byte[] properties = new byte[propertiesLength];
-            byteBuffer.get(properties);
-            String propertiesString = new String(properties, CHARSET_UTF8);
-            Map<String, String> map = string2messageProperties(propertiesString);
-            return map;
+    /**
+     * Scan properties in buffer for {@code name}, no object is created except the returned value.
+     * <br>Same as {@link #string2messageProperties(String)}, property with empty value is ignored,
+     * and the last one wins if the name is duplicated.
+     *
+     * @param byteBuffer buffer contains properties.
+     * @param propertiesPosition absolute position of properties in buffer.
+     * @param propertiesLength length of properties.
+     * @param name property name.
+     * @return value of the property, null if not exist.
+     */
+    public static String findProperty(ByteBuffer byteBuffer, int propertiesPosition, int propertiesLength,
+        String name) {
+        if (propertiesLength <= 0 || name == null) {
+            return null;
         }
-        return null;
+
+        byte[] nameBytes = null;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                nameBytes = name.getBytes(CHARSET_UTF8);
+                break;
+            }
+        }
+        int nameLength = nameBytes == null ? name.length() : nameBytes.length;
+
+        final int end = propertiesPosition + propertiesLength;
+        int valuePosition = -1;
+        int valueLength = 0;
+        int itemPosition = propertiesPosition;
+        while (itemPosition < end) {
+            int separatorPosition = -1;
+            int itemEnd = itemPosition;
+            for (; itemEnd < end; itemEnd++) {
+                byte b = byteBuffer.get(itemEnd);
+                if (b == PROPERTY_SEPARATOR) {
+                    break;
+                }
+                if (b == NAME_VALUE_SEPARATOR && separatorPosition < 0) {
+                    separatorPosition = itemEnd;
+                }
+            }
+
+            if (separatorPosition - itemPosition == nameLength && nameEquals(byteBuffer, itemPosition, name, nameBytes)) {
+                // trailing separators are dropped by String.split
+                int valueEnd = itemEnd;
+                while (valueEnd > separatorPosition + 1 && byteBuffer.get(valueEnd - 1) == NAME_VALUE_SEPARATOR) {
+                    valueEnd--;
+                }
+                // the value should not be empty, and no more separator in it.
+                if (valueEnd - separatorPosition > 1
+                    && indexOf(byteBuffer, separatorPosition + 1, valueEnd, (byte) NAME_VALUE_SEPARATOR) < 0) {
+                    valuePosition = separatorPosition + 1;
+                    valueLength = valueEnd - valuePosition;
+                }
+            }
+
+            itemPosition = itemEnd + 1;
+        }
+
+        if (valuePosition < 0) {
+            return null;
+        }
+
+        if (byteBuffer.hasArray()) {
+            return new String(byteBuffer.array(), byteBuffer.arrayOffset() + valuePosition, valueLength, CHARSET_UTF8);
+        }
+        byte[] value = new byte[valueLength];
+        for (int i = 0; i < valueLength; i++) {
+            value[i] = byteBuffer.get(valuePosition + i);
+        }
+        return new String(value, CHARSET_UTF8);
+    }
+
+    private static int indexOf(ByteBuffer byteBuffer, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (byteBuffer.get(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean nameEquals(ByteBuffer byteBuffer, int position, String name, byte[] nameBytes) {
+        if (nameBytes != null) {
+            for (int i = 0; i < nameBytes.length; i++) {
+                if (byteBuffer.get(position + i) != nameBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (byteBuffer.get(position + i) != (byte) name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static MessageExt decode(ByteBuffer byteBuffer) {
@@ -408,6 +532,87 @@ public class MessageDecoder {
         return msgExts;
     }
 
+    /**
+     * Decode messages pulled by client lazily, see {@link LazyMessageClientExt}.
+     */
+    public static List<MessageExt> decodesLazily(ByteBuffer byteBuffer) {
+        List<MessageExt> msgExts = new ArrayList<MessageExt>();
+        while (byteBuffer.hasRemaining()) {
+            MessageExt msgExt = lazyDecode(byteBuffer);
+            if (null != msgExt) {
+                msgExts.add(msgExt);
+            } else {
+                break;
+            }
+        }
+        return msgExts;
+    }
+
+    /**
+     * Decode fixed length fields and topic of one message, other fields are decoded on first access. The position of
+     * buffer is moved to the next message.
+     */
+    public static MessageExt lazyDecode(ByteBuffer byteBuffer) {
+        try {
+            final int start = byteBuffer.position();
+            int storeSize = byteBuffer.getInt(start);
+            if (storeSize <= 0 || storeSize > byteBuffer.limit() - start) {
+                byteBuffer.position(byteBuffer.limit());
+                return null;
+            }
+
+            int sysFlag = byteBuffer.getInt(start + SYSFLAG_POSITION);
+            int bornHostPosition = start + SYSFLAG_POSITION + 4 + 8;
+            int bornHostLength = (sysFlag & MessageSysFlag.BORNHOST_V6_FLAG) == 0 ? 8 : 20;
+            int storeTimestampPosition = bornHostPosition + bornHostLength;
+            int storeHostPosition = storeTimestampPosition + 8;
+            int storeHostLength = (sysFlag & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 8 : 20;
+            int reconsumeTimesPosition = storeHostPosition + storeHostLength;
+            int bodyLengthPosition = reconsumeTimesPosition + 4 + 8;
+            int bodyLength = byteBuffer.getInt(bodyLengthPosition);
+            int bodyPosition = bodyLengthPosition + 4;
+            int topicLengthPosition = bodyPosition + Math.max(bodyLength, 0);
+            int topicLength = byteBuffer.get(topicLengthPosition);
+            int propertiesPosition = topicLengthPosition + 1 + topicLength + 2;
+            int propertiesLength = byteBuffer.getShort(propertiesPosition - 2);
+
+            LazyMessageClientExt msgExt = new LazyMessageClientExt(byteBuffer, bornHostPosition, storeHostPosition,
+                bodyPosition, bodyLength, propertiesPosition, propertiesLength);
+            msgExt.setStoreSize(storeSize);
+            msgExt.setBodyCRC(byteBuffer.getInt(start + 8));
+            msgExt.setQueueId(byteBuffer.getInt(start + 12));
+            msgExt.setFlag(byteBuffer.getInt(start + 16));
+            msgExt.setQueueOffset(byteBuffer.getLong(start + QUEUE_OFFSET_POSITION));
+            msgExt.setCommitLogOffset(byteBuffer.getLong(start + PHY_POS_POSITION));
+            msgExt.setSysFlag(sysFlag);
+            msgExt.setBornTimestamp(byteBuffer.getLong(start + SYSFLAG_POSITION + 4));
+            msgExt.setStoreTimestamp(byteBuffer.getLong(storeTimestampPosition));
+            msgExt.setReconsumeTimes(byteBuffer.getInt(reconsumeTimesPosition));
+            msgExt.setPreparedTransactionOffset(byteBuffer.getLong(reconsumeTimesPosition + 4));
+
+            byte[] topic = new byte[topicLength];
+            for (int i = 0; i < topicLength; i++) {
+                topic[i] = byteBuffer.get(topicLengthPosition + 1 + i);
+            }
+            msgExt.setTopic(new String(topic, CHARSET_UTF8));
+
+            if (bodyLength > 0 && (sysFlag & MessageSysFlag.COMPRESSED_FLAG) == MessageSysFlag.COMPRESSED_FLAG) {
+                // compressed body is rare, uncompress it at once, so the failure is the same as eager decoding.
+                byte[] body = new byte[bodyLength];
+                byteBuffer.position(bodyPosition);
+                byteBuffer.get(body);
+                msgExt.setBody(UtilAll.uncompress(body));
+            }
+
+            byteBuffer.position(start + storeSize);
+            return msgExt;
+        } catch (Exception e) {
+            byteBuffer.position(byteBuffer.limit());
+        }
+
+        return null;
+    }
+
     public static String messageProperties2String(Map<String, String> properties) {
         StringBuilder sb = new StringBuilder();
         if (properties != null) {
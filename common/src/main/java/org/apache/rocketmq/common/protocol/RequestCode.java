@@ -188,4 +188,8 @@ public class RequestCode {
     public static final int SEND_REPLY_MESSAGE_V2 = 325;
 
     public static final int PUSH_REPLY_MESSAGE_TO_CLIENT = 326;
+
+    public static final int QUERY_MESSAGE_BY_PROPERTY = 327;
+
+    public static final int UPDATE_CONSUMER_OFFSET_BATCH = 328;
 }
@@ -41,6 +41,7 @@ public class CreateTopicRequestHeader implements CommandCustomHeader {
     private Integer topicSysFlag;
     @CFNotNull
     private Boolean order = false;
+    private String indexedProperties;
 
     @Override
     public void checkFields() throws RemotingCommandException {
@@ -118,4 +119,12 @@ public class CreateTopicRequestHeader implements CommandCustomHeader {
     public void setOrder(Boolean order) {
         this.order = order;
     }
+
+    public String getIndexedProperties() {
+        return indexedProperties;
+    }
+
+    public void setIndexedProperties(String indexedProperties) {
+        this.indexedProperties = indexedProperties;
+    }
 }
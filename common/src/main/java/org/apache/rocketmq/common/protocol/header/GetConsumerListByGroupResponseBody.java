@@ -22,6 +22,7 @@ import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 
 public class GetConsumerListByGroupResponseBody extends RemotingSerializable {
     private List<String> consumerIdList;
+    private long membershipVersion;
 
     public List<String> getConsumerIdList() {
         return consumerIdList;
@@ -30,4 +31,12 @@ public class GetConsumerListByGroupResponseBody extends RemotingSerializable {
     public void setConsumerIdList(List<String> consumerIdList) {
         this.consumerIdList = consumerIdList;
     }
+
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    public void setMembershipVersion(long membershipVersion) {
+        this.membershipVersion = membershipVersion;
+    }
 }
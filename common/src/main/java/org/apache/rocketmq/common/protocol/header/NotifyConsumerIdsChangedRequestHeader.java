@@ -19,11 +19,17 @@ package org.apache.rocketmq.common.protocol.header;
 
 import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 public class NotifyConsumerIdsChangedRequestHeader implements CommandCustomHeader {
     @CFNotNull
     private String consumerGroup;
+    /**
+     * Membership version of the group on the notifying broker, absent if the broker does not track it.
+     */
+    @CFNullable
+    private Long membershipVersion;
 
     @Override
     public void checkFields() throws RemotingCommandException {
@@ -36,4 +42,12 @@ public class NotifyConsumerIdsChangedRequestHeader implements CommandCustomHeade
     public void setConsumerGroup(String consumerGroup) {
         this.consumerGroup = consumerGroup;
     }
+
+    public Long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    public void setMembershipVersion(Long membershipVersion) {
+        this.membershipVersion = membershipVersion;
+    }
 }
@@ -22,4 +22,8 @@ public enum RunningStats {
     commitLogDiskRatio,
     consumeQueueDiskRatio,
     scheduleMessageOffset,
+    timerMessageOffset,
+    timerDeliverLag,
+    haTransferStats,
+    haClientStats,
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.benchmark;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.message.LazyMessageClientExt;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of decoding one message of a pulled batch, eagerly by {@link MessageDecoder#decodes(ByteBuffer)} or lazily by
+ * {@link MessageDecoder#decodesLazily(ByteBuffer)}.
+ * <p>
+ * Each message is accessed like a consumer does: tags are checked when pulled, then body and a user property are
+ * read by listener. Run {@link #main(String[])} from IDE, or with the test classpath of this module.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDecodeBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"1024"})
+    private int bodySize;
+
+    private byte[] pulled;
+
+    @Setup
+    public void setup() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(BATCH_SIZE * (bodySize + 512));
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic("BenchmarkTopic");
+            msg.setBody(new byte[bodySize]);
+            msg.setTags("TagA");
+            msg.setKeys("OrderId-" + i);
+            msg.putUserProperty("region", "hangzhou");
+            msg.putUserProperty("traceId", "trace-" + i);
+            MessageClientIDSetter.setUniqID(msg);
+            msg.setBornHost(new InetSocketAddress("127.0.0.1", 9000));
+            msg.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+            msg.setBornTimestamp(System.currentTimeMillis());
+            msg.setStoreTimestamp(System.currentTimeMillis());
+            msg.setQueueOffset(i);
+            msg.setCommitLogOffset(i * 2048L);
+            buffer.put(MessageDecoder.encode(msg, false));
+        }
+        buffer.flip();
+        this.pulled = new byte[buffer.remaining()];
+        buffer.get(this.pulled);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void eagerDecode(Blackhole blackhole) {
+        consume(MessageDecoder.decodes(ByteBuffer.wrap(this.pulled)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void lazyDecode(Blackhole blackhole) {
+        consume(MessageDecoder.decodesLazily(ByteBuffer.wrap(this.pulled)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void lazyDecodeBodyBuffer(Blackhole blackhole) {
+        List<MessageExt> msgs = MessageDecoder.decodesLazily(ByteBuffer.wrap(this.pulled));
+        for (MessageExt msg : msgs) {
+            blackhole.consume(msg.getTags());
+            blackhole.consume(((LazyMessageClientExt) msg).getBodyBuffer());
+            blackhole.consume(msg.getUserProperty("region"));
+        }
+    }
+
+    private static void consume(final List<MessageExt> msgs, final Blackhole blackhole) {
+        for (MessageExt msg : msgs) {
+            blackhole.consume(msg.getTags());
+            blackhole.consume(msg.getProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED));
+            blackhole.consume(msg.getBody());
+            blackhole.consume(msg.getUserProperty("region"));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(MessageDecodeBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LazyMessageClientExtTest {
+
+    @Test
+    public void testDecodesSameAsEager() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.put(MessageDecoder.encode(createMessage(false, "TagA"), false));
+        MessageExt ipv6 = createMessage(false, "TagB");
+        ipv6.setBornHost(new InetSocketAddress("::1", 9001));
+        ipv6.setStoreHost(new InetSocketAddress("::1", 10911));
+        ipv6.setBornHostV6Flag();
+        ipv6.setStoreHostAddressV6Flag();
+        buffer.put(MessageDecoder.encode(ipv6, false));
+        buffer.put(MessageDecoder.encode(createMessage(true, "TagC"), true));
+        buffer.flip();
+
+        List<MessageExt> eagerMsgs = MessageDecoder.decodes(buffer.duplicate());
+        List<MessageExt> lazyMsgs = MessageDecoder.decodesLazily(buffer.duplicate());
+        assertThat(lazyMsgs).hasSize(3);
+        assertThat(eagerMsgs).hasSize(3);
+
+        for (int i = 0; i < 3; i++) {
+            MessageExt eager = eagerMsgs.get(i);
+            MessageExt lazy = lazyMsgs.get(i);
+            assertThat(lazy).isInstanceOf(LazyMessageClientExt.class);
+            assertThat(lazy.getTopic()).isEqualTo(eager.getTopic());
+            assertThat(lazy.getTags()).isEqualTo(eager.getTags());
+            assertThat(lazy.getKeys()).isEqualTo(eager.getKeys());
+            assertThat(lazy.getMsgId()).isEqualTo(eager.getMsgId());
+            assertThat(((MessageClientExt) lazy).getOffsetMsgId()).isEqualTo(((MessageClientExt) eager).getOffsetMsgId());
+            assertThat(lazy.getQueueId()).isEqualTo(eager.getQueueId());
+            assertThat(lazy.getQueueOffset()).isEqualTo(eager.getQueueOffset());
+            assertThat(lazy.getCommitLogOffset()).isEqualTo(eager.getCommitLogOffset());
+            assertThat(lazy.getSysFlag()).isEqualTo(eager.getSysFlag());
+            assertThat(lazy.getBornTimestamp()).isEqualTo(eager.getBornTimestamp());
+            assertThat(lazy.getStoreTimestamp()).isEqualTo(eager.getStoreTimestamp());
+            assertThat(lazy.getReconsumeTimes()).isEqualTo(eager.getReconsumeTimes());
+            assertThat(lazy.getBornHost()).isEqualTo(eager.getBornHost());
+            assertThat(lazy.getStoreHost()).isEqualTo(eager.getStoreHost());
+            assertThat(lazy.getBody()).isEqualTo(eager.getBody());
+            assertThat(lazy.getProperties()).isEqualTo(eager.getProperties());
+        }
+    }
+
+    @Test
+    public void testDecodeOnFirstAccess() throws Exception {
+        MessageExt msg = createMessage(false, "TagA");
+        ByteBuffer buffer = ByteBuffer.wrap(MessageDecoder.encode(msg, false));
+        LazyMessageClientExt lazy = (LazyMessageClientExt) MessageDecoder.lazyDecode(buffer);
+        assertThat(buffer.hasRemaining()).isFalse();
+
+        assertThat(lazy.getBodyLength()).isEqualTo(msg.getBody().length);
+        ByteBuffer bodyBuffer = lazy.getBodyBuffer();
+        assertThat(bodyBuffer.isReadOnly()).isTrue();
+        assertThat(bodyBuffer.remaining()).isEqualTo(msg.getBody().length);
+        assertThat(bodyBuffer.get(0)).isEqualTo(msg.getBody()[0]);
+
+        MessageAccessor.putProperty(lazy, MessageConst.PROPERTY_MIN_OFFSET, "1");
+        MessageAccessor.putProperty(lazy, MessageConst.PROPERTY_TAGS, "TagB");
+        assertThat(lazy.getProperty(MessageConst.PROPERTY_MIN_OFFSET)).isEqualTo("1");
+        assertThat(lazy.getTags()).isEqualTo("TagB");
+        assertThat(lazy.getUserProperty("a")).isEqualTo("123");
+
+        assertThat(lazy.getProperties()).containsEntry(MessageConst.PROPERTY_MIN_OFFSET, "1")
+            .containsEntry(MessageConst.PROPERTY_TAGS, "TagB")
+            .containsEntry("a", "123");
+        MessageAccessor.clearProperty(lazy, "a");
+        assertThat(lazy.getUserProperty("a")).isNull();
+
+        lazy.setBody(new byte[] {'x'});
+        assertThat(lazy.getBody()).isEqualTo(new byte[] {'x'});
+        assertThat(lazy.getBodyLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        MessageExt msg = createMessage(false, "TagA");
+        MessageExt lazy = MessageDecoder.lazyDecode(ByteBuffer.wrap(MessageDecoder.encode(msg, false)));
+        String msgId = lazy.getMsgId();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(lazy);
+        out.close();
+        MessageExt copy = (MessageExt) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertThat(copy.getBody()).isEqualTo(msg.getBody());
+        assertThat(copy.getTags()).isEqualTo("TagA");
+        assertThat(copy.getStoreHost()).isEqualTo(msg.getStoreHost());
+        assertThat(copy.getMsgId()).isEqualTo(msgId);
+    }
+
+    private static MessageExt createMessage(final boolean compressed, final String tags) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("abc");
+        messageExt.setBody(("hello, lazy " + tags).getBytes());
+        messageExt.setTags(tags);
+        messageExt.setKeys("key-" + tags);
+        messageExt.putUserProperty("a", "123");
+        messageExt.setBornHost(new InetSocketAddress("127.0.0.1", 9000));
+        messageExt.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+        messageExt.setBornTimestamp(System.currentTimeMillis());
+        messageExt.setStoreTimestamp(System.currentTimeMillis());
+        messageExt.setCommitLogOffset(123456);
+        messageExt.setQueueId(1);
+        messageExt.setQueueOffset(123);
+        messageExt.setReconsumeTimes(2);
+        MessageClientIDSetter.setUniqID(messageExt);
+        if (compressed) {
+            messageExt.setSysFlag(messageExt.getSysFlag() | MessageSysFlag.COMPRESSED_FLAG);
+        }
+        return messageExt;
+    }
+}
@@ -79,6 +79,50 @@ public class MessageDecoderTest {
         assertThat("3.14").isEqualTo(properties.get("c"));
     }
 
+    @Test
+    public void testDecodeProperty() throws Exception {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("abc");
+        messageExt.setBody("hello!q!".getBytes());
+        messageExt.setBornHost(new InetSocketAddress("127.0.0.1", 9000));
+        messageExt.setStoreHost(new InetSocketAddress("127.0.0.1", 9000));
+        messageExt.putUserProperty("a", "123");
+        messageExt.putUserProperty("region", "\u676d\u5dde");
+        messageExt.putUserProperty("\u8ba2\u5355", "order-1");
+
+        byte[] msgBytes = MessageDecoder.encode(messageExt, false);
+        ByteBuffer heapBuffer = ByteBuffer.wrap(msgBytes);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(msgBytes.length);
+        directBuffer.put(msgBytes);
+        directBuffer.flip();
+
+        for (ByteBuffer byteBuffer : new ByteBuffer[] {heapBuffer, directBuffer}) {
+            assertThat(MessageDecoder.decodeProperty(byteBuffer, "a")).isEqualTo("123");
+            assertThat(MessageDecoder.decodeProperty(byteBuffer, "region")).isEqualTo("\u676d\u5dde");
+            assertThat(MessageDecoder.decodeProperty(byteBuffer, "\u8ba2\u5355")).isEqualTo("order-1");
+            assertThat(MessageDecoder.decodeProperty(byteBuffer, "b")).isNull();
+            assertThat(MessageDecoder.decodeProperty(byteBuffer, "regio")).isNull();
+            assertThat(byteBuffer.position()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testFindPropertySameAsString2messageProperties() {
+        String properties = "a\u0001" + "1\u0002" + "empty\u0001\u0002" + "\u0001novalue\u0002" + "dup\u00011\u0002"
+            + "twice\u0001x\u0001y\u0002" + "dup\u00012\u0002" + "trailing\u0001t\u0001\u0001\u0002\u0002" + "noseparator\u0002" + "last\u0001end";
+        byte[] bytes = properties.getBytes(MessageDecoder.CHARSET_UTF8);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bytes.length + 3);
+        byteBuffer.put(new byte[3]);
+        byteBuffer.put(bytes);
+
+        Map<String, String> expected = MessageDecoder.string2messageProperties(properties);
+        for (String name : new String[] {"a", "empty", "", "novalue", "dup", "twice", "trailing", "noseparator", "last", "none"}) {
+            assertThat(MessageDecoder.findProperty(byteBuffer, 3, bytes.length, name))
+                .describedAs(name)
+                .isEqualTo(expected.get(name));
+        }
+    }
+
     @Test
     public void testDecodePropertiesOnIPv6Host() {
         MessageExt messageExt = new MessageExt();
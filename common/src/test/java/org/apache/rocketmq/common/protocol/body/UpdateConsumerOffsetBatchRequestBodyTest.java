@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.body;
+
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateConsumerOffsetBatchRequestBodyTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        UpdateConsumerOffsetBatchRequestBody body = new UpdateConsumerOffsetBatchRequestBody();
+        body.setConsumerGroup("group");
+        MessageQueue mq1 = new MessageQueue("topic", "brokerName", 1);
+        MessageQueue mq2 = new MessageQueue("topic", "brokerName", 2);
+        body.getOffsetTable().put(mq1, 100L);
+        body.getOffsetTable().put(mq2, 200L);
+
+        UpdateConsumerOffsetBatchRequestBody decoded =
+            RemotingSerializable.decode(body.encode(), UpdateConsumerOffsetBatchRequestBody.class);
+        assertThat(decoded.getConsumerGroup()).isEqualTo("group");
+        assertThat(decoded.getOffsetTable()).hasSize(2);
+        assertThat(decoded.getOffsetTable().get(mq1)).isEqualTo(100L);
+        assertThat(decoded.getOffsetTable().get(mq2)).isEqualTo(200L);
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.filter.expression;
+
+import org.apache.rocketmq.filter.constant.UnaryType;
+
+/**
+ * Compile expression tree produced by {@link org.apache.rocketmq.filter.parser.SelectorParser} into
+ * specialized expressions.
+ * <p>
+ * Comparisons between a property and a constant are the most common nodes of SQL92 filter, the compiled ones
+ * convert the constant only once, and compare the string value of property with primitive types, instead of
+ * boxing and checking classes per evaluation. Constant sub expressions like {@code -1} are folded, and two
+ * comparisons of the same property, e.g. {@code a BETWEEN 1 AND 10}, read and convert the property only once.
+ * </p>
+ * <p>
+ * The compiled expression has exactly the same result as the original one. If the property value is not a string,
+ * which never happens for message properties, evaluation falls back to the original expression.
+ * </p>
+ */
+public class ExpressionCompiler {
+
+    private static final int OP_EQ = 0;
+    private static final int OP_GT = 1;
+    private static final int OP_GE = 2;
+    private static final int OP_LT = 3;
+    private static final int OP_LE = 4;
+
+    private static final int TYPE_INT = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_DOUBLE = 2;
+
+    /**
+     * Compile expression, return the original one if nothing could be optimized.
+     */
+    public static Expression compile(Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+
+        if (expression instanceof LogicExpression) {
+            LogicExpression logic = (LogicExpression) expression;
+            Expression left = compile(logic.getLeft());
+            Expression right = compile(logic.getRight());
+            if (left == logic.getLeft() && right == logic.getRight()) {
+                return expression;
+            }
+            boolean and = "&&".equals(logic.getExpressionSymbol());
+            if (left instanceof CompiledNumericComparisonExpression && right instanceof CompiledNumericComparisonExpression
+                && ((CompiledNumericComparisonExpression) left).isSameOperand((CompiledNumericComparisonExpression) right)) {
+                return new CompiledNumericRangeExpression(logic, (CompiledNumericComparisonExpression) left,
+                    (CompiledNumericComparisonExpression) right, and);
+            }
+            return new CompiledLogicExpression(logic, (BooleanExpression) left, (BooleanExpression) right, and);
+        }
+
+        if (expression instanceof ComparisonExpression) {
+            return compileComparison((ComparisonExpression) expression);
+        }
+
+        if (expression instanceof UnaryExpression
+            && ((UnaryExpression) expression).getUnaryType() == UnaryType.NOT) {
+            UnaryExpression not = (UnaryExpression) expression;
+            Expression child = compile(not.getRight());
+            if (child == not.getRight()) {
+                return expression;
+            }
+            return new CompiledNotExpression(not, (BooleanExpression) child);
+        }
+
+        return expression;
+    }
+
+    /**
+     * Find the string equality {@code property = 'constant'} which must be true if the compiled expression is true,
+     * e.g. {@code region = 'x'} of {@code region = 'x' AND age > 18}.
+     *
+     * @return null if there is no such equality.
+     */
+    public static EqualityPredicate findRequiredEquality(Expression compiled) {
+        if (compiled instanceof CompiledStringEqualExpression) {
+            CompiledStringEqualExpression equal = (CompiledStringEqualExpression) compiled;
+            return new EqualityPredicate(equal.property, equal.constant, true);
+        }
+
+        if (compiled instanceof CompiledLogicExpression && ((CompiledLogicExpression) compiled).and) {
+            CompiledLogicExpression logic = (CompiledLogicExpression) compiled;
+            EqualityPredicate predicate = findRequiredEquality(logic.left);
+            if (predicate == null) {
+                predicate = findRequiredEquality(logic.right);
+            }
+            return predicate == null ? null : new EqualityPredicate(predicate.property, predicate.value, false);
+        }
+
+        return null;
+    }
+
+    private static Expression compileComparison(ComparisonExpression comparison) {
+        int op = toOp(comparison.getExpressionSymbol());
+        // string is converted to the type of constant only if the expression is created by parser.
+        if (op < 0 || !comparison.convertStringExpressions) {
+            return comparison;
+        }
+
+        Expression left = comparison.getLeft();
+        Expression right = comparison.getRight();
+        boolean propertyOnLeft;
+        String property;
+        Object constant;
+        if (left instanceof PropertyExpression && isConstant(right)) {
+            propertyOnLeft = true;
+            property = ((PropertyExpression) left).getName();
+            constant = constantValue(right);
+        } else if (right instanceof PropertyExpression && isConstant(left)) {
+            propertyOnLeft = false;
+            property = ((PropertyExpression) right).getName();
+            constant = constantValue(left);
+        } else {
+            return comparison;
+        }
+
+        if (constant == null) {
+            if (op == OP_EQ && propertyOnLeft) {
+                return new CompiledIsNullExpression(comparison, property);
+            }
+            return comparison;
+        }
+
+        if (constant instanceof String && op == OP_EQ) {
+            return new CompiledStringEqualExpression(comparison, property, propertyOnLeft, (String) constant);
+        }
+
+        int type;
+        if (constant instanceof Integer) {
+            type = TYPE_INT;
+        } else if (constant instanceof Long) {
+            type = TYPE_LONG;
+        } else if (constant instanceof Double) {
+            type = TYPE_DOUBLE;
+        } else {
+            return comparison;
+        }
+
+        return new CompiledNumericComparisonExpression(comparison, property, propertyOnLeft, op, type,
+            (Number) constant);
+    }
+
+    private static int toOp(String symbol) {
+        if ("==".equals(symbol)) {
+            return OP_EQ;
+        } else if (">".equals(symbol)) {
+            return OP_GT;
+        } else if (">=".equals(symbol)) {
+            return OP_GE;
+        } else if ("<".equals(symbol)) {
+            return OP_LT;
+        } else if ("<=".equals(symbol)) {
+            return OP_LE;
+        }
+        return -1;
+    }
+
+    private static boolean isConstant(Expression expression) {
+        if (expression instanceof NowExpression) {
+            return false;
+        }
+        if (expression instanceof ConstantExpression) {
+            return true;
+        }
+        return expression instanceof UnaryExpression
+            && ((UnaryExpression) expression).getUnaryType() == UnaryType.NEGATE
+            && isConstant(((UnaryExpression) expression).getRight());
+    }
+
+    private static Object constantValue(Expression expression) {
+        try {
+            return expression.evaluate(new EmptyEvaluationContext());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not fold constant expression: " + expression, e);
+        }
+    }
+
+    /**
+     * String equality between a property and a constant.
+     */
+    public static class EqualityPredicate {
+        private final String property;
+        private final String value;
+        private final boolean whole;
+
+        EqualityPredicate(String property, String value, boolean whole) {
+            this.property = property;
+            this.value = value;
+            this.whole = whole;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if the equality is the whole expression, otherwise it is only one operand of AND.
+         */
+        public boolean isWhole() {
+            return whole;
+        }
+    }
+
+    abstract static class CompiledExpression implements BooleanExpression {
+        protected final Expression source;
+
+        CompiledExpression(Expression source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean matches(EvaluationContext context) throws Exception {
+            Object object = evaluate(context);
+            return object != null && object == Boolean.TRUE;
+        }
+
+        public Expression getSource() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    static class CompiledLogicExpression extends CompiledExpression {
+        private final BooleanExpression left;
+        private final BooleanExpression right;
+        private final boolean and;
+
+        CompiledLogicExpression(Expression source, BooleanExpression left, BooleanExpression right, boolean and) {
+            super(source);
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            Boolean lv = (Boolean) left.evaluate(context);
+            if (lv != null && lv.booleanValue() != and) {
+                return and ? Boolean.FALSE : Boolean.TRUE;
+            }
+            Boolean rv = (Boolean) right.evaluate(context);
+            if (rv != null && rv.booleanValue() != and) {
+                return and ? Boolean.FALSE : Boolean.TRUE;
+            }
+            if (lv == null || rv == null) {
+                return null;
+            }
+            return and ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static class CompiledNotExpression extends CompiledExpression {
+        private final BooleanExpression child;
+
+        CompiledNotExpression(Expression source, BooleanExpression child) {
+            super(source);
+            this.child = child;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            Boolean value = (Boolean) child.evaluate(context);
+            if (value == null) {
+                return null;
+            }
+            return value.booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+        }
+    }
+
+    static class CompiledIsNullExpression extends CompiledExpression {
+        private final String property;
+
+        CompiledIsNullExpression(Expression source, String property) {
+            super(source);
+            this.property = property;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            return context.get(property) == null ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static class CompiledStringEqualExpression extends CompiledExpression {
+        private final String property;
+        private final boolean propertyOnLeft;
+        private final String constant;
+
+        CompiledStringEqualExpression(Expression source, String property, boolean propertyOnLeft, String constant) {
+            super(source);
+            this.property = property;
+            this.propertyOnLeft = propertyOnLeft;
+            this.constant = constant;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            Object value = context.get(property);
+            if (value == null) {
+                return propertyOnLeft ? null : Boolean.FALSE;
+            }
+            if (value.getClass() != String.class) {
+                return source.evaluate(context);
+            }
+            return constant.equals(value) ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static class CompiledNumericComparisonExpression extends CompiledExpression {
+        private final String property;
+        private final int type;
+        private final long longValue;
+        private final double doubleValue;
+        private final Boolean nullResult;
+        // results indexed by (compare(value, constant) + 1)
+        private final Boolean[] results = new Boolean[3];
+
+        CompiledNumericComparisonExpression(Expression source, String property, boolean propertyOnLeft,
+            int op, int type, Number constant) {
+            super(source);
+            this.property = property;
+            this.type = type;
+            this.longValue = constant.longValue();
+            this.doubleValue = constant.doubleValue();
+            this.nullResult = op == OP_EQ && !propertyOnLeft ? Boolean.FALSE : null;
+            for (int answer = -1; answer <= 1; answer++) {
+                this.results[answer + 1] = asBoolean(op, propertyOnLeft ? answer : -answer);
+            }
+        }
+
+        private static Boolean asBoolean(int op, int answer) {
+            boolean ret;
+            switch (op) {
+                case OP_EQ:
+                    ret = answer == 0;
+                    break;
+                case OP_GT:
+                    ret = answer > 0;
+                    break;
+                case OP_GE:
+                    ret = answer >= 0;
+                    break;
+                case OP_LT:
+                    ret = answer < 0;
+                    break;
+                default:
+                    ret = answer <= 0;
+                    break;
+            }
+            return ret ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            Object value = context.get(property);
+            if (value == null) {
+                return nullResult;
+            }
+            if (value.getClass() != String.class) {
+                return source.evaluate(context);
+            }
+
+            try {
+                if (type == TYPE_DOUBLE) {
+                    return evaluate(Double.parseDouble((String) value));
+                }
+                return evaluate(parseLong((String) value, type));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Boolean evaluate(long value) {
+            return results[Long.compare(value, longValue) + 1];
+        }
+
+        Boolean evaluate(double value) {
+            return results[Double.compare(value, doubleValue) + 1];
+        }
+
+        boolean isSameOperand(CompiledNumericComparisonExpression other) {
+            return this.property.equals(other.property) && this.type == other.type;
+        }
+    }
+
+    /**
+     * Two comparisons of the same property which are combined by AND or OR, e.g. between expression.
+     * The property is read and converted only once.
+     */
+    static class CompiledNumericRangeExpression extends CompiledExpression {
+        private final String property;
+        private final int type;
+        private final CompiledNumericComparisonExpression left;
+        private final CompiledNumericComparisonExpression right;
+        private final boolean and;
+
+        CompiledNumericRangeExpression(Expression source, CompiledNumericComparisonExpression left,
+            CompiledNumericComparisonExpression right, boolean and) {
+            super(source);
+            this.property = left.property;
+            this.type = left.type;
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        public Object evaluate(EvaluationContext context) throws Exception {
+            Object value = context.get(property);
+            if (value == null) {
+                return combine(left.nullResult, right.nullResult, and);
+            }
+            if (value.getClass() != String.class) {
+                return source.evaluate(context);
+            }
+
+            try {
+                if (type == TYPE_DOUBLE) {
+                    double doubleValue = Double.parseDouble((String) value);
+                    return combine(left.evaluate(doubleValue), right.evaluate(doubleValue), and);
+                }
+                long longValue = parseLong((String) value, type);
+                return combine(left.evaluate(longValue), right.evaluate(longValue), and);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link Integer#valueOf(String)} or {@link Long#valueOf(String)}, without boxing.
+     */
+    private static long parseLong(String value, int type) {
+        long ret = Long.parseLong(value);
+        if (type == TYPE_INT && (ret < Integer.MIN_VALUE || ret > Integer.MAX_VALUE)) {
+            throw new NumberFormatException("For input string: \"" + value + "\"");
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link LogicExpression}, for values without side effect.
+     */
+    private static Boolean combine(Boolean lv, Boolean rv, boolean and) {
+        if (lv != null && lv.booleanValue() != and) {
+            return and ? Boolean.FALSE : Boolean.TRUE;
+        }
+        if (rv != null && rv.booleanValue() != and) {
+            return and ? Boolean.FALSE : Boolean.TRUE;
+        }
+        if (lv == null || rv == null) {
+            return null;
+        }
+        return and ? Boolean.TRUE : Boolean.FALSE;
+    }
+}
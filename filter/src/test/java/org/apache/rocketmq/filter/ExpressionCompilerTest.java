@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.filter.expression.EvaluationContext;
+import org.apache.rocketmq.filter.expression.Expression;
+import org.apache.rocketmq.filter.expression.ExpressionCompiler;
+import org.apache.rocketmq.filter.parser.SelectorParser;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpressionCompilerTest {
+
+    private static final String[] EXPRESSIONS = new String[] {
+        "a = 3",
+        "3 = a",
+        "a <> 3",
+        "a > 3",
+        "a >= 3",
+        "a < 3",
+        "a <= 3",
+        "3 < a",
+        "a > -3",
+        "a > 3000000000",
+        "a > 3.14",
+        "a between 2 and 10",
+        "a not between 2 and 10",
+        "a between 2.5 and 10.5",
+        "a > 2 and a < 3000000000",
+        "a >= 3 and a = 3",
+        "a = 'hello'",
+        "'hello' = a",
+        "a <> 'hello'",
+        "a is null",
+        "a is not null",
+        "a in ('3', '4', '5')",
+        "a = TRUE",
+        "a > b",
+        "a is not null and a > 3",
+        "a = 'hello' or b < 4",
+        "a = 3 and b <> 4 and c > 5 and d <= 4",
+        "a = 3 or b <> 4 or c > 5 or d <= 4",
+        "not (a > 3 and b = 'x')",
+        "(a > 3 or b = 'x') and not (c is null)"
+    };
+
+    private static final Object[] VALUES = new Object[] {
+        null, "3", "-3", "4", "2", "10", "11", "3.14", "3.5", "3000000001", "hello", "x", "abc", "true", "",
+        3, 3L, 3.5D
+    };
+
+    @Test
+    public void testCompiledSameAsOriginal() throws Exception {
+        for (String expr : EXPRESSIONS) {
+            Expression original = SelectorParser.parse(expr);
+            Expression compiled = ExpressionCompiler.compile(SelectorParser.parse(expr));
+            assertThat(compiled.toString()).isEqualTo(original.toString());
+
+            for (Map<String, Object> properties : genProperties()) {
+                EvaluationContext context = new MapContext(properties);
+                assertThat(evaluate(compiled, context))
+                    .describedAs("%s with %s", expr, properties)
+                    .isEqualTo(evaluate(original, context));
+            }
+        }
+    }
+
+    @Test
+    public void testCompileNothing() throws Exception {
+        Expression expression = SelectorParser.parse("a > b");
+        assertThat(ExpressionCompiler.compile(expression)).isSameAs(expression);
+
+        expression = SelectorParser.parse("a in ('3', '4')");
+        assertThat(ExpressionCompiler.compile(expression)).isSameAs(expression);
+    }
+
+    @Test
+    public void testCompiledBySqlFilter() throws Exception {
+        Expression expression = FilterFactory.INSTANCE.get("SQL92").compile("a > 3");
+        assertThat(expression.getClass().getName()).contains("ExpressionCompiler");
+        assertThat(expression.evaluate(new MapContext(singleton("a", "4")))).isEqualTo(Boolean.TRUE);
+    }
+
+    @Test
+    public void testFindRequiredEquality() throws Exception {
+        ExpressionCompiler.EqualityPredicate predicate = ExpressionCompiler.findRequiredEquality(
+            ExpressionCompiler.compile(SelectorParser.parse("'x' = region")));
+        assertThat(predicate.getProperty()).isEqualTo("region");
+        assertThat(predicate.getValue()).isEqualTo("x");
+        assertThat(predicate.isWhole()).isTrue();
+
+        predicate = ExpressionCompiler.findRequiredEquality(
+            ExpressionCompiler.compile(SelectorParser.parse("a > 3 and (region = 'x' and b < 4)")));
+        assertThat(predicate.getProperty()).isEqualTo("region");
+        assertThat(predicate.getValue()).isEqualTo("x");
+        assertThat(predicate.isWhole()).isFalse();
+
+        assertThat(ExpressionCompiler.findRequiredEquality(
+            ExpressionCompiler.compile(SelectorParser.parse("region = 'x' or b < 4")))).isNull();
+        assertThat(ExpressionCompiler.findRequiredEquality(
+            ExpressionCompiler.compile(SelectorParser.parse("region <> 'x'")))).isNull();
+        assertThat(ExpressionCompiler.findRequiredEquality(
+            ExpressionCompiler.compile(SelectorParser.parse("a = 3")))).isNull();
+    }
+
+    private static Object evaluate(Expression expression, EvaluationContext context) {
+        try {
+            return expression.evaluate(context);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+    private static List<Map<String, Object>> genProperties() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (Object a : VALUES) {
+            for (Object b : new Object[] {null, "4", "x", "2"}) {
+                Map<String, Object> properties = new HashMap<String, Object>();
+                properties.put("a", a);
+                properties.put("b", b);
+                properties.put("c", a);
+                properties.put("d", b);
+                result.add(properties);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> singleton(String key, Object value) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(key, value);
+        return properties;
+    }
+
+    static class MapContext implements EvaluationContext {
+        private final Map<String, Object> properties;
+
+        MapContext(Map<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Object get(String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        public Map<String, Object> keyValues() {
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.filter.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.filter.expression.EvaluationContext;
+import org.apache.rocketmq.filter.expression.Expression;
+import org.apache.rocketmq.filter.expression.ExpressionCompiler;
+import org.apache.rocketmq.filter.parser.SelectorParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare evaluation of parsed and compiled SQL92 expressions over message like properties.
+ * <p>
+ * Run {@link #main(String[])} from IDE, or with the test classpath of this module.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionEvaluateBenchmark {
+
+    @Param({
+        "region = 'hangzhou'",
+        "a between 10 and 100",
+        "price > 99.5 and region <> 'beijing'",
+        "region in ('hangzhou', 'shanghai', 'beijing') and level >= 3",
+        "(a > 10 and a < 1000) or (price <= 9.9 and vip = 'true') or region is null"
+    })
+    private String selector;
+
+    private Expression parsed;
+    private Expression compiled;
+    private EvaluationContext context;
+
+    @Setup
+    public void setup() throws Exception {
+        parsed = SelectorParser.parse(selector);
+        compiled = ExpressionCompiler.compile(SelectorParser.parse(selector));
+
+        final Map<String, String> properties = new HashMap<String, String>();
+        properties.put("region", "hangzhou");
+        properties.put("a", "50");
+        properties.put("price", "120.25");
+        properties.put("level", "5");
+        properties.put("vip", "true");
+        properties.put("KEYS", "order-1234567");
+        properties.put("TAGS", "TagA");
+        properties.put("UNIQ_KEY", "7F0000010BF318B4AAC2786CB86B0000");
+        context = new EvaluationContext() {
+            @Override
+            public Object get(String name) {
+                return properties.get(name);
+            }
+
+            @Override
+            public Map<String, Object> keyValues() {
+                return new HashMap<String, Object>(properties);
+            }
+        };
+    }
+
+    @Benchmark
+    public Object parsed() throws Exception {
+        return parsed.evaluate(context);
+    }
+
+    @Benchmark
+    public Object compiled() throws Exception {
+        return compiled.evaluate(context);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ExpressionEvaluateBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -23,15 +23,12 @@ import io.openmessaging.rocketmq.config.ClientConfig;
 import io.openmessaging.rocketmq.domain.ConsumeRequest;
 import java.util.Collections;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
@@ -132,6 +129,9 @@ class LocalMessageCache implements ServiceLifecycle {
     void ack(final MessageQueue messageQueue, final ProcessQueue processQueue, final MessageExt messageExt) {
         consumedRequest.remove(messageExt.getMsgId());
         long offset = processQueue.removeMessage(Collections.singletonList(messageExt));
+        if (offset < 0) {
+            return;
+        }
         try {
             rocketmqPullConsumer.updateConsumeOffset(messageQueue, offset);
         } catch (MQClientException e) {
@@ -144,7 +144,11 @@ class LocalMessageCache implements ServiceLifecycle {
         this.cleanExpireMsgExecutors.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                cleanExpireMsg();
+                try {
+                    cleanExpireMsg();
+                } catch (Throwable e) {
+                    log.error("Clean expired msg exception", e);
+                }
             }
         }, clientConfig.getRmqMessageConsumeTimeout(), clientConfig.getRmqMessageConsumeTimeout(), TimeUnit.MINUTES);
     }
@@ -154,41 +158,23 @@ class LocalMessageCache implements ServiceLifecycle {
         ThreadUtils.shutdownGracefully(cleanExpireMsgExecutors, 5000, TimeUnit.MILLISECONDS);
     }
 
-    private void cleanExpireMsg() {
+    void cleanExpireMsg() {
         for (final Map.Entry<MessageQueue, ProcessQueue> next : rocketmqPullConsumer.getDefaultMQPullConsumerImpl()
             .getRebalanceImpl().getProcessQueueTable().entrySet()) {
             ProcessQueue pq = next.getValue();
             MessageQueue mq = next.getKey();
-            ReadWriteLock lockTreeMap = getLockInProcessQueue(pq);
-            if (lockTreeMap == null) {
-                log.error("Gets tree map lock in process queue error, may be has compatibility issue");
-                return;
-            }
-
-            TreeMap<Long, MessageExt> msgTreeMap = pq.getMsgTreeMap();
 
-            int loop = msgTreeMap.size();
-            for (int i = 0; i < loop; i++) {
-                MessageExt msg = null;
-                try {
-                    lockTreeMap.readLock().lockInterruptibly();
-                    try {
-                        if (!msgTreeMap.isEmpty()) {
-                            msg = msgTreeMap.firstEntry().getValue();
-                            if (System.currentTimeMillis() - Long.parseLong(MessageAccessor.getConsumeStartTimeStamp(msg))
-                                > clientConfig.getRmqMessageConsumeTimeout() * 60 * 1000) {
-                                //Expired, ack and remove it.
-                            } else {
-                                break;
-                            }
-                        } else {
-                            break;
-                        }
-                    } finally {
-                        lockTreeMap.readLock().unlock();
-                    }
-                } catch (InterruptedException e) {
-                    log.error("Gets expired message exception", e);
+            long loop = pq.getMsgCount().get();
+            for (long i = 0; i < loop; i++) {
+                MessageExt msg = pq.peekFirstPending();
+                if (msg == null) {
+                    break;
+                }
+                // not polled yet, so not consumed for long.
+                String consumeStartTimeStamp = MessageAccessor.getConsumeStartTimeStamp(msg);
+                if (consumeStartTimeStamp == null || System.currentTimeMillis() - Long.parseLong(consumeStartTimeStamp)
+                    <= clientConfig.getRmqMessageConsumeTimeout() * 60 * 1000) {
+                    break;
                 }
 
                 try {
@@ -198,16 +184,9 @@ class LocalMessageCache implements ServiceLifecycle {
                     ack(mq, pq, msg);
                 } catch (Exception e) {
                     log.error("Send back expired msg exception", e);
+                    break;
                 }
             }
         }
     }
-
-    private ReadWriteLock getLockInProcessQueue(ProcessQueue pq) {
-        try {
-            return (ReadWriteLock) FieldUtils.readDeclaredField(pq, "lockTreeMap", true);
-        } catch (IllegalAccessException e) {
-            return null;
-        }
-    }
 }
@@ -19,7 +19,15 @@ package io.openmessaging.rocketmq.consumer;
 import io.openmessaging.rocketmq.config.ClientConfig;
 import io.openmessaging.rocketmq.domain.ConsumeRequest;
 import io.openmessaging.rocketmq.domain.NonStandardKeys;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.rocketmq.client.consumer.DefaultMQPullConsumer;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPullConsumerImpl;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.client.impl.consumer.RebalanceImpl;
+import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.junit.Before;
@@ -31,6 +39,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -40,6 +53,10 @@ public class LocalMessageCacheTest {
     private DefaultMQPullConsumer rocketmqPullConsume;
     @Mock
     private ConsumeRequest consumeRequest;
+    @Mock
+    private DefaultMQPullConsumerImpl rocketmqPullConsumerImpl;
+    @Mock
+    private RebalanceImpl rebalanceImpl;
 
     @Before
     public void init() {
@@ -86,4 +103,61 @@ public class LocalMessageCacheTest {
         localMessageCache.submitConsumeRequest(consumeRequest);
         assertThat(localMessageCache.poll()).isEqualTo(consumedMsg);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCleanExpireMsg() throws Exception {
+        MessageQueue messageQueue = new MessageQueue("HELLO_QUEUE", "DefaultBrokerName", 0);
+        ProcessQueue processQueue = new ProcessQueue();
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        for (int i = 0; i < 3; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setMsgId("MsgId" + i);
+            msg.setQueueOffset(i);
+            msg.setBody(new byte[] {'1', '2', '3'});
+            msgs.add(msg);
+        }
+        long expired = System.currentTimeMillis() - 60 * 60 * 1000;
+        MessageAccessor.setConsumeStartTimeStamp(msgs.get(0), String.valueOf(expired));
+        MessageAccessor.setConsumeStartTimeStamp(msgs.get(1), String.valueOf(expired));
+        MessageAccessor.setConsumeStartTimeStamp(msgs.get(2), String.valueOf(System.currentTimeMillis()));
+        processQueue.putMessage(msgs);
+        ConcurrentMap<MessageQueue, ProcessQueue> processQueueTable = new ConcurrentHashMap<MessageQueue, ProcessQueue>();
+        processQueueTable.put(messageQueue, processQueue);
+        when(rocketmqPullConsume.getDefaultMQPullConsumerImpl()).thenReturn(rocketmqPullConsumerImpl);
+        when(rocketmqPullConsumerImpl.getRebalanceImpl()).thenReturn(rebalanceImpl);
+        when(rebalanceImpl.getProcessQueueTable()).thenReturn(processQueueTable);
+
+        localMessageCache.cleanExpireMsg();
+
+        verify(rocketmqPullConsume).sendMessageBack(msgs.get(0), 3);
+        verify(rocketmqPullConsume).sendMessageBack(msgs.get(1), 3);
+        verify(rocketmqPullConsume, never()).sendMessageBack(eq(msgs.get(2)), anyInt());
+        verify(rocketmqPullConsume).updateConsumeOffset(messageQueue, 1L);
+        verify(rocketmqPullConsume).updateConsumeOffset(messageQueue, 2L);
+        assertThat(processQueue.getMsgCount().get()).isEqualTo(1);
+        assertThat(processQueue.peekFirstPending()).isSameAs(msgs.get(2));
+    }
+
+    @Test
+    public void testCleanExpireMsg_NotPolled() throws Exception {
+        MessageQueue messageQueue = new MessageQueue("HELLO_QUEUE", "DefaultBrokerName", 0);
+        ProcessQueue processQueue = new ProcessQueue();
+        MessageExt msg = new MessageExt();
+        msg.setQueueOffset(0);
+        msg.setBody(new byte[] {'1', '2', '3'});
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        msgs.add(msg);
+        processQueue.putMessage(msgs);
+        ConcurrentMap<MessageQueue, ProcessQueue> processQueueTable = new ConcurrentHashMap<MessageQueue, ProcessQueue>();
+        processQueueTable.put(messageQueue, processQueue);
+        when(rocketmqPullConsume.getDefaultMQPullConsumerImpl()).thenReturn(rocketmqPullConsumerImpl);
+        when(rocketmqPullConsumerImpl.getRebalanceImpl()).thenReturn(rebalanceImpl);
+        when(rebalanceImpl.getProcessQueueTable()).thenReturn(processQueueTable);
+
+        localMessageCache.cleanExpireMsg();
+
+        verify(rocketmqPullConsume, never()).sendMessageBack(any(MessageExt.class), anyInt());
+        verify(rocketmqPullConsume, never()).updateConsumeOffset(any(MessageQueue.class), anyLong());
+        assertThat(processQueue.getMsgCount().get()).isEqualTo(1);
+    }
+}
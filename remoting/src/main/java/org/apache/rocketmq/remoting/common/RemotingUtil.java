@@ -183,14 +183,22 @@ public class RemotingUtil {
     }
 
     public static SocketChannel connect(SocketAddress remote, final int timeoutMillis) {
+        return connect(remote, timeoutMillis, 1024 * 64);
+    }
+
+    /**
+     * @param socketBufferSize size of send and receive buffer, set before connecting so that the window scale
+     * negotiated allows a large receive window.
+     */
+    public static SocketChannel connect(SocketAddress remote, final int timeoutMillis, final int socketBufferSize) {
         SocketChannel sc = null;
         try {
             sc = SocketChannel.open();
             sc.configureBlocking(true);
             sc.socket().setSoLinger(false, -1);
             sc.socket().setTcpNoDelay(true);
-            sc.socket().setReceiveBufferSize(1024 * 64);
-            sc.socket().setSendBufferSize(1024 * 64);
+            sc.socket().setReceiveBufferSize(socketBufferSize);
+            sc.socket().setSendBufferSize(socketBufferSize);
             sc.socket().connect(remote, timeoutMillis);
             sc.configureBlocking(false);
             return sc;
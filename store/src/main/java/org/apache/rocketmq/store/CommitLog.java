@@ -353,6 +353,11 @@ public class CommitLog {
                                 storeTimestamp);
                         }
                     }
+
+                    String deliverMs = propertiesMap.get(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+                    if (TopicValidator.RMQ_SYS_WHEEL_TIMER.equals(topic) && deliverMs != null) {
+                        tagsCode = Long.parseLong(deliverMs);
+                    }
                 }
             }
 
@@ -588,6 +593,11 @@ public class CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getTimerMessageService() != null
+                && this.defaultMessageStore.getTimerMessageService().routeToTimer(msg)) {
+                // Deliver at arbitrary time
+                topic = msg.getTopic();
+                queueId = msg.getQueueId();
             }
         }
 
@@ -689,7 +699,8 @@ public class CommitLog {
         if (tranType != MessageSysFlag.TRANSACTION_NOT_TYPE) {
             return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null));
         }
-        if (messageExtBatch.getDelayTimeLevel() > 0) {
+        if (messageExtBatch.getDelayTimeLevel() > 0
+            || messageExtBatch.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) != null) {
             return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null));
         }
 
@@ -817,6 +828,11 @@ public class CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getTimerMessageService() != null
+                && this.defaultMessageStore.getTimerMessageService().routeToTimer(msg)) {
+                // Deliver at arbitrary time
+                topic = msg.getTopic();
+                queueId = msg.getQueueId();
             }
         }
 
@@ -1028,7 +1044,8 @@ public class CommitLog {
         if (tranType != MessageSysFlag.TRANSACTION_NOT_TYPE) {
             return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
         }
-        if (messageExtBatch.getDelayTimeLevel() > 0) {
+        if (messageExtBatch.getDelayTimeLevel() > 0
+            || messageExtBatch.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS) != null) {
             return new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null);
         }
 
@@ -43,6 +43,7 @@ public class ConsumeQueue {
     private long maxPhysicOffset = -1;
     private volatile long minLogicOffset = 0;
     private ConsumeQueueExt consumeQueueExt = null;
+    private ConsumeQueueTagsSummary tagsSummary = null;
 
     public ConsumeQueue(
         final String topic,
@@ -74,6 +75,11 @@ public class ConsumeQueue {
                 defaultMessageStore.getMessageStoreConfig().getBitMapLengthConsumeQueueExt()
             );
         }
+
+        if (defaultMessageStore.getMessageStoreConfig().isEnableConsumeQueueTagsSummary()) {
+            this.tagsSummary = new ConsumeQueueTagsSummary(
+                defaultMessageStore.getMessageStoreConfig().getConsumeQueueTagsSummaryBlockSize());
+        }
     }
 
     public boolean load() {
@@ -289,6 +295,10 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             this.consumeQueueExt.truncateByMaxAddress(maxExtAddr);
         }
+
+        if (this.tagsSummary != null) {
+            this.tagsSummary.truncateByMaxOffset(this.getMaxOffsetInQueue());
+        }
     }
 
     public long getLastOffset() {
@@ -370,6 +380,10 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             this.consumeQueueExt.truncateByMinAddress(minExtAddr);
         }
+
+        if (this.tagsSummary != null) {
+            this.tagsSummary.truncateByMinOffset(this.getMinOffsetInQueue());
+        }
     }
 
     public long getMinOffsetInQueue() {
@@ -398,6 +412,9 @@ public class ConsumeQueue {
             boolean result = this.putMessagePositionInfo(request.getCommitLogOffset(),
                 request.getMsgSize(), tagsCode, request.getConsumeQueueOffset());
             if (result) {
+                if (this.tagsSummary != null) {
+                    this.tagsSummary.record(request.getConsumeQueueOffset(), request.getTagsCode());
+                }
                 if (this.defaultMessageStore.getMessageStoreConfig().getBrokerRole() == BrokerRole.SLAVE ||
                     this.defaultMessageStore.getMessageStoreConfig().isEnableDLegerCommitLog()) {
                     this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(request.getStoreTimestamp());
@@ -515,6 +532,10 @@ public class ConsumeQueue {
         return false;
     }
 
+    public ConsumeQueueTagsSummary getTagsSummary() {
+        return tagsSummary;
+    }
+
     public long getMinLogicOffset() {
         return minLogicOffset;
     }
@@ -552,6 +573,9 @@ public class ConsumeQueue {
         if (isExtReadEnable()) {
             this.consumeQueueExt.destroy();
         }
+        if (this.tagsSummary != null) {
+            this.tagsSummary.clear();
+        }
     }
 
     public long getMessageTotalInQueue() {
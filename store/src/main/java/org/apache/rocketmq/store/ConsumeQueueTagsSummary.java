@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory summary of tags code of consume queue, grouped by block of {@code blockSize} units.
+ * <p>
+ * Each block keeps a small bloom filter of the tags code written into it. A block is only usable
+ * after all of its units have been recorded in order, so a summary never claims "no match"
+ * for units which it has not seen, e.g. units written before the broker started.
+ * </p>
+ * <p>
+ * Only one thread (the dispatcher of consume queue) records into the summary, others only read it.
+ * </p>
+ */
+public class ConsumeQueueTagsSummary {
+    private static final int BLOOM_WORDS = 8;
+    private static final int BLOOM_BITS = BLOOM_WORDS * Long.SIZE;
+
+    private final int blockSize;
+    private final ConcurrentSkipListMap<Long, Block> blockTable = new ConcurrentSkipListMap<Long, Block>();
+
+    public ConsumeQueueTagsSummary(final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Illegal block size of tags summary: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Record the tags code of unit at {@code cqOffset}.
+     */
+    public void record(final long cqOffset, final long tagsCode) {
+        long blockIndex = cqOffset / this.blockSize;
+        Block block = this.blockTable.get(blockIndex);
+        if (null == block) {
+            block = new Block(blockIndex * this.blockSize, this.blockSize);
+            Block prev = this.blockTable.putIfAbsent(blockIndex, block);
+            if (prev != null) {
+                block = prev;
+            }
+        }
+
+        block.record(cqOffset, tagsCode);
+    }
+
+    /**
+     * @return the block covering {@code cqOffset} if all of its units are recorded, otherwise null.
+     */
+    public Block getCompletedBlock(final long cqOffset) {
+        Block block = this.blockTable.get(cqOffset / this.blockSize);
+        if (block != null && block.isCompleted()) {
+            return block;
+        }
+        return null;
+    }
+
+    /**
+     * Remove blocks whose units are all before {@code minCqOffset}.
+     */
+    public void truncateByMinOffset(final long minCqOffset) {
+        this.blockTable.headMap(minCqOffset / this.blockSize).clear();
+    }
+
+    /**
+     * Remove blocks which contain units at or after {@code maxCqOffset}.
+     */
+    public void truncateByMaxOffset(final long maxCqOffset) {
+        ConcurrentNavigableMap<Long, Block> tail = this.blockTable.tailMap(maxCqOffset / this.blockSize, true);
+        tail.clear();
+    }
+
+    public void clear() {
+        this.blockTable.clear();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockCount() {
+        return this.blockTable.size();
+    }
+
+    public static class Block {
+        private final long startOffset;
+        private final int blockSize;
+        private final long[] bloom = new long[BLOOM_WORDS];
+        private volatile int recordedCount = 0;
+        private volatile boolean broken = false;
+
+        public Block(final long startOffset, final int blockSize) {
+            this.startOffset = startOffset;
+            this.blockSize = blockSize;
+        }
+
+        private void record(final long cqOffset, final long tagsCode) {
+            long expectOffset = this.startOffset + this.recordedCount;
+            if (cqOffset < expectOffset) {
+                // build consume queue repeatedly
+                return;
+            }
+
+            if (cqOffset > expectOffset) {
+                // some units are missed, never trust this block.
+                this.broken = true;
+                return;
+            }
+
+            int code = (int) tagsCode;
+            setBit(hash1(code));
+            setBit(hash2(code));
+            // publish bits before count.
+            this.recordedCount++;
+        }
+
+        /**
+         * @return false if no unit of this block has the tags code, true if it may have.
+         */
+        public boolean mayContain(final long tagsCode) {
+            int code = (int) tagsCode;
+            return isBitSet(hash1(code)) && isBitSet(hash2(code));
+        }
+
+        public boolean isCompleted() {
+            return !this.broken && this.recordedCount == this.blockSize;
+        }
+
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        public long getEndOffset() {
+            return startOffset + blockSize;
+        }
+
+        private void setBit(final int bitIndex) {
+            this.bloom[bitIndex >>> 6] |= 1L << (bitIndex & 63);
+        }
+
+        private boolean isBitSet(final int bitIndex) {
+            return (this.bloom[bitIndex >>> 6] & (1L << (bitIndex & 63))) != 0;
+        }
+
+        private static int hash1(final int code) {
+            return (code & Integer.MAX_VALUE) % BLOOM_BITS;
+        }
+
+        private static int hash2(final int code) {
+            int h = code * 0x9E3779B9;
+            h ^= h >>> 16;
+            return (h & Integer.MAX_VALUE) % BLOOM_BITS;
+        }
+    }
+}
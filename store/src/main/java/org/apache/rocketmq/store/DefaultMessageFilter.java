@@ -47,4 +47,22 @@ public class DefaultMessageFilter implements MessageFilter {
     public boolean isMatchedByCommitLog(ByteBuffer msgBuffer, Map<String, String> properties) {
         return true;
     }
+
+    @Override
+    public boolean isMatchedByTagsSummary(ConsumeQueueTagsSummary.Block block) {
+        if (null == block || null == subscriptionData) {
+            return true;
+        }
+
+        if (subscriptionData.isClassFilterMode() || subscriptionData.getSubString().equals(SubscriptionData.SUB_ALL)) {
+            return true;
+        }
+
+        for (Integer code : subscriptionData.getCodeSet()) {
+            if (block.mayContain(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -59,8 +59,10 @@ import org.apache.rocketmq.store.config.StorePathConfigHelper;
 import org.apache.rocketmq.store.dledger.DLedgerCommitLog;
 import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.index.IndexService;
+import org.apache.rocketmq.store.index.IndexedPropertyResolver;
 import org.apache.rocketmq.store.index.QueryOffsetResult;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageService;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class DefaultMessageStore implements MessageStore {
@@ -88,6 +90,8 @@ public class DefaultMessageStore implements MessageStore {
 
     private final ScheduleMessageService scheduleMessageService;
 
+    private final TimerMessageService timerMessageService;
+
     private final StoreStatsService storeStatsService;
 
     private final TransientStorePool transientStorePool;
@@ -146,6 +150,12 @@ public class DefaultMessageStore implements MessageStore {
 
         this.scheduleMessageService = new ScheduleMessageService(this);
 
+        if (messageStoreConfig.isTimerWheelEnable()) {
+            this.timerMessageService = new TimerMessageService(this);
+        } else {
+            this.timerMessageService = null;
+        }
+
         this.transientStorePool = new TransientStorePool(messageStoreConfig);
 
         if (messageStoreConfig.isTransientStorePoolEnable()) {
@@ -203,6 +213,10 @@ public class DefaultMessageStore implements MessageStore {
 
                 this.recover(lastExitOK);
 
+                if (null != timerMessageService) {
+                    result = this.timerMessageService.load(lastExitOK);
+                }
+
                 log.info("load over, and the max phy offset = {}", this.getMaxPhyOffset());
             }
         } catch (Exception e) {
@@ -308,14 +322,19 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.shutdown();
             }
+            if (this.timerMessageService != null) {
+                this.timerMessageService.shutdown();
+                this.timerMessageService.close();
+            }
             if (this.haService != null) {
                 this.haService.shutdown();
             }
 
             this.storeStatsService.shutdown();
-            this.indexService.shutdown();
             this.commitLog.shutdown();
             this.reputMessageService.shutdown();
+            // after reput stopped, so keys pending in index builders are all put.
+            this.indexService.shutdown();
             this.flushConsumeQueueService.shutdown();
             this.allocateMappedFileService.shutdown();
             this.storeCheckpoint.flush();
@@ -344,6 +363,9 @@ public class DefaultMessageStore implements MessageStore {
         this.destroyLogics();
         this.commitLog.destroy();
         this.indexService.destroy();
+        if (this.timerMessageService != null) {
+            this.timerMessageService.destroy();
+        }
         this.deleteFile(StorePathConfigHelper.getAbortFile(this.messageStoreConfig.getStorePathRootDir()));
         this.deleteFile(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
     }
@@ -607,10 +629,26 @@ public class DefaultMessageStore implements MessageStore {
                         long maxPhyOffsetPulling = 0;
 
                         int i = 0;
+                        // units skipped by tags summary are not counted in filter limit.
+                        int skippedBytes = 0;
                         final int maxFilterMessageCount = Math.max(16000, maxMsgNums * ConsumeQueue.CQ_STORE_UNIT_SIZE);
                         final boolean diskFallRecorded = this.messageStoreConfig.isDiskFallRecorded();
+                        final ConsumeQueueTagsSummary tagsSummary = messageFilter != null ? consumeQueue.getTagsSummary() : null;
                         ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
-                        for (; i < bufferConsumeQueue.getSize() && i < maxFilterMessageCount; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                        for (; i < bufferConsumeQueue.getSize() && i - skippedBytes < maxFilterMessageCount; i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                            if (tagsSummary != null) {
+                                int skipBytes = this.skipBytesByTagsSummary(tagsSummary, messageFilter, offset + i / ConsumeQueue.CQ_STORE_UNIT_SIZE, i == 0);
+                                skipBytes = Math.min(skipBytes, bufferConsumeQueue.getSize() - i);
+                                if (skipBytes > 0) {
+                                    skippedBytes += skipBytes;
+                                    // skipped units are consumed too, so they count in how far behind the pulling is.
+                                    maxPhyOffsetPulling = bufferConsumeQueue.getByteBuffer().getLong(i + skipBytes - ConsumeQueue.CQ_STORE_UNIT_SIZE);
+                                    bufferConsumeQueue.getByteBuffer().position(i + skipBytes);
+                                    i += skipBytes - ConsumeQueue.CQ_STORE_UNIT_SIZE;
+                                    continue;
+                                }
+                            }
+
                             long offsetPy = bufferConsumeQueue.getByteBuffer().getLong();
                             int sizePy = bufferConsumeQueue.getByteBuffer().getInt();
                             long tagsCode = bufferConsumeQueue.getByteBuffer().getLong();
@@ -719,6 +757,26 @@ public class DefaultMessageStore implements MessageStore {
         return getResult;
     }
 
+    /**
+     * @return bytes of consume queue units which could be skipped since the block of {@code cqOffset} has no matched tags,
+     * 0 if the units should be read one by one.
+     */
+    private int skipBytesByTagsSummary(final ConsumeQueueTagsSummary tagsSummary, final MessageFilter messageFilter,
+        final long cqOffset, final boolean firstUnit) {
+        // only check at the beginning of a block.
+        if (!firstUnit && cqOffset % tagsSummary.getBlockSize() != 0) {
+            return 0;
+        }
+
+        ConsumeQueueTagsSummary.Block block = tagsSummary.getCompletedBlock(cqOffset);
+        if (block == null || messageFilter.isMatchedByTagsSummary(block)) {
+            return 0;
+        }
+
+        this.storeStatsService.getGetMessageSkippedByTagsSummary().addAndGet(block.getEndOffset() - cqOffset);
+        return (int) (block.getEndOffset() - cqOffset) * ConsumeQueue.CQ_STORE_UNIT_SIZE;
+    }
+
     public long getMaxOffsetInQueue(String topic, int queueId) {
         ConsumeQueue logic = this.findConsumeQueue(topic, queueId);
         if (logic != null) {
@@ -836,6 +894,12 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.buildRunningStats(result);
             }
+            if (this.timerMessageService != null) {
+                this.timerMessageService.buildRunningStats(result);
+            }
+            if (this.haService != null) {
+                this.haService.buildRunningStats(result);
+            }
         }
 
         result.put(RunningStats.commitLogMinOffset.name(), String.valueOf(DefaultMessageStore.this.getMinPhyOffset()));
@@ -944,6 +1008,7 @@ public class DefaultMessageStore implements MessageStore {
 
     @Override
     public QueryMessageResult queryMessage(String topic, String key, int maxNum, long begin, long end) {
+        long beginTime = this.getSystemClock().now();
         QueryMessageResult queryMessageResult = new QueryMessageResult();
 
         long lastQueryMsgTime = end;
@@ -1005,6 +1070,7 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        this.storeStatsService.recordQueryMessage(this.getSystemClock().now() - beginTime);
         return queryMessageResult;
     }
 
@@ -1480,6 +1546,10 @@ public class DefaultMessageStore implements MessageStore {
         return storeStatsService;
     }
 
+    public void setIndexedPropertyResolver(final IndexedPropertyResolver indexedPropertyResolver) {
+        this.indexService.setIndexedPropertyResolver(indexedPropertyResolver);
+    }
+
     public RunningFlags getAccessRights() {
         return runningFlags;
     }
@@ -1500,6 +1570,10 @@ public class DefaultMessageStore implements MessageStore {
         return scheduleMessageService;
     }
 
+    public TimerMessageService getTimerMessageService() {
+        return timerMessageService;
+    }
+
     public RunningFlags getRunningFlags() {
         return runningFlags;
     }
@@ -1530,6 +1604,14 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        if (this.timerMessageService != null) {
+            if (brokerRole == BrokerRole.SLAVE) {
+                this.timerMessageService.shutdown();
+            } else {
+                this.timerMessageService.start();
+            }
+        }
+
     }
 
     public int remainTransientStoreBufferNumbs() {
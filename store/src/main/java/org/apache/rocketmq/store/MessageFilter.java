@@ -40,4 +40,14 @@ public interface MessageFilter {
      */
     boolean isMatchedByCommitLog(final ByteBuffer msgBuffer,
         final Map<String, String> properties);
+
+    /**
+     * match by tags summary of a block of consume queue units.
+     * <br>Return false only if no message in the block could be matched, then the whole block will be skipped.
+     *
+     * @param block completed tags summary block of consume queue
+     */
+    default boolean isMatchedByTagsSummary(final ConsumeQueueTagsSummary.Block block) {
+        return true;
+    }
 }
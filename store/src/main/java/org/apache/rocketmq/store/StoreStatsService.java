@@ -51,6 +51,11 @@ public class StoreStatsService extends ServiceThread {
     private final AtomicLong getMessageTimesTotalFound = new AtomicLong(0);
     private final AtomicLong getMessageTransferedMsgCount = new AtomicLong(0);
     private final AtomicLong getMessageTimesTotalMiss = new AtomicLong(0);
+    private final AtomicLong getMessageSkippedByTagsSummary = new AtomicLong(0);
+    private final AtomicLong queryMessageTimesTotal = new AtomicLong(0);
+    private final AtomicLong queryMessageElapsedTimeTotal = new AtomicLong(0);
+    private final AtomicLong queryIndexFileScanned = new AtomicLong(0);
+    private final AtomicLong queryIndexFileSkipped = new AtomicLong(0);
     private final LinkedList<CallSnapshot> putTimesList = new LinkedList<CallSnapshot>();
 
     private final LinkedList<CallSnapshot> getTimesFoundList = new LinkedList<CallSnapshot>();
@@ -65,6 +70,8 @@ public class StoreStatsService extends ServiceThread {
     // for getMessageEntireTimeMax
     private ReentrantLock lockGet = new ReentrantLock();
 
+    private volatile long queryMessageElapsedTimeMax = 0;
+
     private volatile long dispatchMaxBuffer = 0;
 
     private ReentrantLock lockSampling = new ReentrantLock();
@@ -157,6 +164,21 @@ public class StoreStatsService extends ServiceThread {
         }
     }
 
+    public void recordQueryMessage(long elapsedTime) {
+        this.queryMessageTimesTotal.incrementAndGet();
+        this.queryMessageElapsedTimeTotal.addAndGet(elapsedTime);
+        if (elapsedTime > this.queryMessageElapsedTimeMax) {
+            this.lockGet.lock();
+            this.queryMessageElapsedTimeMax =
+                elapsedTime > this.queryMessageElapsedTimeMax ? elapsedTime : this.queryMessageElapsedTimeMax;
+            this.lockGet.unlock();
+        }
+    }
+
+    public long getQueryMessageElapsedTimeMax() {
+        return queryMessageElapsedTimeMax;
+    }
+
     public long getDispatchMaxBuffer() {
         return dispatchMaxBuffer;
     }
@@ -440,6 +462,14 @@ public class StoreStatsService extends ServiceThread {
         result.put("getMissTps", String.valueOf(this.getGetMissTps()));
         result.put("getTotalTps", String.valueOf(this.getGetTotalTps()));
         result.put("getTransferedTps", String.valueOf(this.getGetTransferedTps()));
+        result.put("getMessageSkippedByTagsSummary", String.valueOf(this.getMessageSkippedByTagsSummary.get()));
+        long queryTimes = this.queryMessageTimesTotal.get();
+        result.put("queryMessageTimesTotal", String.valueOf(queryTimes));
+        result.put("queryMessageAverageTime",
+            String.valueOf(queryTimes == 0 ? 0 : this.queryMessageElapsedTimeTotal.get() / (double) queryTimes));
+        result.put("queryMessageElapsedTimeMax", String.valueOf(this.queryMessageElapsedTimeMax));
+        result.put("queryIndexFileScanned", String.valueOf(this.queryIndexFileScanned.get()));
+        result.put("queryIndexFileSkipped", String.valueOf(this.queryIndexFileSkipped.get()));
 
         return result;
     }
@@ -538,6 +568,22 @@ public class StoreStatsService extends ServiceThread {
         return getMessageTransferedMsgCount;
     }
 
+    public AtomicLong getGetMessageSkippedByTagsSummary() {
+        return getMessageSkippedByTagsSummary;
+    }
+
+    public AtomicLong getQueryMessageTimesTotal() {
+        return queryMessageTimesTotal;
+    }
+
+    public AtomicLong getQueryIndexFileScanned() {
+        return queryIndexFileScanned;
+    }
+
+    public AtomicLong getQueryIndexFileSkipped() {
+        return queryIndexFileSkipped;
+    }
+
     public AtomicLong getPutMessageFailedTimes() {
         return putMessageFailedTimes;
     }
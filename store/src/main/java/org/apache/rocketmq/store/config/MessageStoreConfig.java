@@ -41,6 +41,11 @@ public class MessageStoreConfig {
     // Bit count of filter bit map.
     // this will be set by pipe of calculate filter bit map.
     private int bitMapLengthConsumeQueueExt = 64;
+    // Keep an in-memory summary of tags code for every block of consume queue units,
+    // so that pulling by tags can skip whole blocks without any matched tag.
+    private boolean enableConsumeQueueTagsSummary = true;
+    // Count of consume queue units in one tags summary block
+    private int consumeQueueTagsSummaryBlockSize = 1024;
 
     // CommitLog flush interval
     // flush data to disk
@@ -111,6 +116,12 @@ public class MessageStoreConfig {
     private boolean messageIndexEnable = true;
     private int maxHashSlotNum = 5000000;
     private int maxIndexNum = 5000000 * 4;
+    // Threads to build index, keys are striped by hash slot. More than one thread builds index asynchronously,
+    // the keys queued are lost if broker crashes.
+    private int indexBuildThreadNum = 1;
+    // Bits per key of in-memory key bloom filter of each index file, 0 to disable.
+    // Each index file costs maxIndexNum * bits / 8 bytes of heap, about 20MB for 8 bits by default.
+    private int indexKeyBloomBitsPerKey = 0;
     private int maxMsgsNumBatch = 64;
     @ImportantField
     private boolean messageIndexSafe = false;
@@ -118,9 +129,26 @@ public class MessageStoreConfig {
     private int haSendHeartbeatInterval = 1000 * 5;
     private int haHousekeepingInterval = 1000 * 20;
     private int haTransferBatchSize = 1024 * 32;
+    // Transfer commit log to slave by FileChannel#transferTo, without copying it to user space.
+    private boolean haTransferZeroCopyEnable = true;
+    // Max bytes of one transfer if zero copy or compressed, at most 2M since the read buffer of slave is 4M.
+    private int haZeroCopyTransferBatchSize = 1024 * 1024;
+    // Socket buffer size of replication, send buffer of master and receive buffer of slave.
+    // Larger buffer keeps more data in flight on links with long round trip time.
+    private int haSocketBufferSize = 1024 * 64;
+    // Compress commit log transferred to slave, which costs CPU of both sides but saves bandwidth.
+    // Slave asks for it when connecting and master compresses only if enabled too. Masters of older
+    // versions do not understand the request, so upgrade them before enabling it on slaves.
+    private boolean haTransferCompressEnable = false;
+    // Level of deflate, from 1 (fastest) to 9 (smallest).
+    private int haTransferCompressLevel = 1;
     @ImportantField
     private String haMasterAddress = null;
     private int haSlaveFallbehindMax = 1024 * 1024 * 256;
+    // Number of slaves which must ack a write before SYNC_MASTER returns, the fastest one if no more than 1.
+    // A slave is in sync if its ack offset falls behind less than haSlaveFallbehindMax, writes fail fast
+    // with SLAVE_NOT_AVAILABLE if in-sync slaves are not enough.
+    private int haSyncSlaveAckNums = 1;
     @ImportantField
     private BrokerRole brokerRole = BrokerRole.ASYNC_MASTER;
     @ImportantField
@@ -153,6 +181,19 @@ public class MessageStoreConfig {
     private boolean isEnableBatchPush = false;
 
     private boolean enableScheduleMessageStats = true;
+    // max num of due messages delivered together by one delay level
+    private int scheduleDeliverBatchSize = 32;
+
+    /**
+     * Deliver messages at arbitrary timestamp by a timing wheel, besides the fixed delay levels.
+     */
+    private boolean timerWheelEnable = false;
+    // precision of delivery time, that is, time span of one slot of timing wheel.
+    private int timerPrecisionMs = 1000;
+    // time span covered by the wheel, messages delivered later are rolled over until the time is covered.
+    private int timerWheelSpanSec = 7 * 24 * 3600;
+    private int timerLogFileSize = 100 * 1024 * 1024;
+    private int timerDeliverBatchSize = 32;
 
     public boolean isDebugLockEnable() {
         return debugLockEnable;
@@ -236,6 +277,22 @@ public class MessageStoreConfig {
         this.bitMapLengthConsumeQueueExt = bitMapLengthConsumeQueueExt;
     }
 
+    public boolean isEnableConsumeQueueTagsSummary() {
+        return enableConsumeQueueTagsSummary;
+    }
+
+    public void setEnableConsumeQueueTagsSummary(boolean enableConsumeQueueTagsSummary) {
+        this.enableConsumeQueueTagsSummary = enableConsumeQueueTagsSummary;
+    }
+
+    public int getConsumeQueueTagsSummaryBlockSize() {
+        return consumeQueueTagsSummaryBlockSize;
+    }
+
+    public void setConsumeQueueTagsSummaryBlockSize(int consumeQueueTagsSummaryBlockSize) {
+        this.consumeQueueTagsSummaryBlockSize = consumeQueueTagsSummaryBlockSize;
+    }
+
     public int getFlushIntervalCommitLog() {
         return flushIntervalCommitLog;
     }
@@ -454,6 +511,22 @@ public class MessageStoreConfig {
         this.maxIndexNum = maxIndexNum;
     }
 
+    public int getIndexBuildThreadNum() {
+        return indexBuildThreadNum;
+    }
+
+    public void setIndexBuildThreadNum(int indexBuildThreadNum) {
+        this.indexBuildThreadNum = indexBuildThreadNum;
+    }
+
+    public int getIndexKeyBloomBitsPerKey() {
+        return indexKeyBloomBitsPerKey;
+    }
+
+    public void setIndexKeyBloomBitsPerKey(int indexKeyBloomBitsPerKey) {
+        this.indexKeyBloomBitsPerKey = indexKeyBloomBitsPerKey;
+    }
+
     public int getMaxMsgsNumBatch() {
         return maxMsgsNumBatch;
     }
@@ -506,6 +579,54 @@ public class MessageStoreConfig {
         this.haTransferBatchSize = haTransferBatchSize;
     }
 
+    public boolean isHaTransferZeroCopyEnable() {
+        return haTransferZeroCopyEnable;
+    }
+
+    public void setHaTransferZeroCopyEnable(boolean haTransferZeroCopyEnable) {
+        this.haTransferZeroCopyEnable = haTransferZeroCopyEnable;
+    }
+
+    public int getHaZeroCopyTransferBatchSize() {
+        return haZeroCopyTransferBatchSize;
+    }
+
+    public void setHaZeroCopyTransferBatchSize(int haZeroCopyTransferBatchSize) {
+        this.haZeroCopyTransferBatchSize = haZeroCopyTransferBatchSize;
+    }
+
+    public boolean isHaTransferCompressEnable() {
+        return haTransferCompressEnable;
+    }
+
+    public void setHaTransferCompressEnable(boolean haTransferCompressEnable) {
+        this.haTransferCompressEnable = haTransferCompressEnable;
+    }
+
+    public int getHaTransferCompressLevel() {
+        return haTransferCompressLevel;
+    }
+
+    public void setHaTransferCompressLevel(int haTransferCompressLevel) {
+        this.haTransferCompressLevel = haTransferCompressLevel;
+    }
+
+    public int getHaSocketBufferSize() {
+        return haSocketBufferSize;
+    }
+
+    public void setHaSocketBufferSize(int haSocketBufferSize) {
+        this.haSocketBufferSize = haSocketBufferSize;
+    }
+
+    public int getHaSyncSlaveAckNums() {
+        return haSyncSlaveAckNums;
+    }
+
+    public void setHaSyncSlaveAckNums(int haSyncSlaveAckNums) {
+        this.haSyncSlaveAckNums = haSyncSlaveAckNums;
+    }
+
     public int getHaSlaveFallbehindMax() {
         return haSlaveFallbehindMax;
     }
@@ -732,4 +853,52 @@ public class MessageStoreConfig {
     public void setEnableScheduleMessageStats(boolean enableScheduleMessageStats) {
         this.enableScheduleMessageStats = enableScheduleMessageStats;
     }
+
+    public boolean isTimerWheelEnable() {
+        return timerWheelEnable;
+    }
+
+    public void setTimerWheelEnable(boolean timerWheelEnable) {
+        this.timerWheelEnable = timerWheelEnable;
+    }
+
+    public int getTimerPrecisionMs() {
+        return timerPrecisionMs;
+    }
+
+    public void setTimerPrecisionMs(int timerPrecisionMs) {
+        this.timerPrecisionMs = timerPrecisionMs;
+    }
+
+    public int getTimerWheelSpanSec() {
+        return timerWheelSpanSec;
+    }
+
+    public void setTimerWheelSpanSec(int timerWheelSpanSec) {
+        this.timerWheelSpanSec = timerWheelSpanSec;
+    }
+
+    public int getTimerLogFileSize() {
+        return timerLogFileSize;
+    }
+
+    public void setTimerLogFileSize(int timerLogFileSize) {
+        this.timerLogFileSize = timerLogFileSize;
+    }
+
+    public int getTimerDeliverBatchSize() {
+        return timerDeliverBatchSize;
+    }
+
+    public void setTimerDeliverBatchSize(int timerDeliverBatchSize) {
+        this.timerDeliverBatchSize = timerDeliverBatchSize;
+    }
+
+    public int getScheduleDeliverBatchSize() {
+        return scheduleDeliverBatchSize;
+    }
+
+    public void setScheduleDeliverBatchSize(int scheduleDeliverBatchSize) {
+        this.scheduleDeliverBatchSize = scheduleDeliverBatchSize;
+    }
 }
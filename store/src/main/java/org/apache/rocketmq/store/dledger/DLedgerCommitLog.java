@@ -33,8 +33,8 @@ import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import java.net.Inet6Address;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -968,7 +968,12 @@ public class DLedgerCommitLog extends CommitLog {
             }
 
             for (byte[] data : batchData) {
-                ByteBuffer.wrap(data).putLong(MessageDecoder.QUEUE_OFFSET_POSITION, offset++);
+                // patch in place, big endian as ByteBuffer does.
+                long value = offset++;
+                for (int i = 7; i >= 0; i--) {
+                    data[MessageDecoder.QUEUE_OFFSET_POSITION + i] = (byte) value;
+                    value >>>= 8;
+                }
             }
         }
 
@@ -1030,16 +1035,14 @@ public class DLedgerCommitLog extends CommitLog {
 
             final int msgLen = calMsgLength(msgInner.getSysFlag(), bodyLength, topicLength, propertiesLength);
 
-            ByteBuffer msgStoreItemMemory = ByteBuffer.allocate(msgLen);
-
             // Exceeds the maximum message
             if (msgLen > this.maxMessageSize) {
                 DLedgerCommitLog.log.warn("message size exceeded, msg total size: " + msgLen + ", msg body size: " + bodyLength
                     + ", maxMessageSize: " + this.maxMessageSize);
                 return new EncodeResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED, null, key);
             }
-            // Initialization of storage space
-            this.resetByteBuffer(msgStoreItemMemory, msgLen);
+            // Encoded exactly in the array passed to dledger as the entry body.
+            ByteBuffer msgStoreItemMemory = ByteBuffer.allocate(msgLen);
             // 1 TOTALSIZE
             msgStoreItemMemory.putInt(msgLen);
             // 2 MAGICCODE
@@ -1092,13 +1095,16 @@ public class DLedgerCommitLog extends CommitLog {
 
             int totalMsgLen = 0;
             ByteBuffer messagesByteBuff = messageExtBatch.wrap();
-            List<byte[]> batchBody = new LinkedList<>();
+            List<byte[]> batchBody = new ArrayList<>();
 
             int sysFlag = messageExtBatch.getSysFlag();
             int bornHostLength = (sysFlag & MessageSysFlag.BORNHOST_V6_FLAG) == 0 ? 4 + 4 : 16 + 4;
             int storeHostLength = (sysFlag & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 4 + 4 : 16 + 4;
-            ByteBuffer bornHostHolder = ByteBuffer.allocate(bornHostLength);
-            ByteBuffer storeHostHolder = ByteBuffer.allocate(storeHostLength);
+            // Same for all messages of the batch.
+            final byte[] bornHostData = messageExtBatch.getBornHostBytes(ByteBuffer.allocate(bornHostLength)).array();
+            final byte[] storeHostData = messageExtBatch.getStoreHostBytes(ByteBuffer.allocate(storeHostLength)).array();
+            final byte[] topicData = messageExtBatch.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
+            final int topicLength = topicData.length;
 
             while (messagesByteBuff.hasRemaining()) {
                 // 1 TOTALSIZE
@@ -1119,12 +1125,7 @@ public class DLedgerCommitLog extends CommitLog {
                 int propertiesPos = messagesByteBuff.position();
                 messagesByteBuff.position(propertiesPos + propertiesLen);
 
-                final byte[] topicData = messageExtBatch.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
-
-                final int topicLength = topicData.length;
-
                 final int msgLen = calMsgLength(messageExtBatch.getSysFlag(), bodyLen, topicLength, propertiesLen);
-                ByteBuffer msgStoreItemMemory = ByteBuffer.allocate(msgLen);
 
                 // Exceeds the maximum message
                 if (msgLen > this.maxMessageSize) {
@@ -1140,8 +1141,9 @@ public class DLedgerCommitLog extends CommitLog {
                     throw new RuntimeException("message size exceeded");
                 }
 
-                // Initialization of storage space
-                this.resetByteBuffer(msgStoreItemMemory, msgLen);
+                // Encoded exactly in the array passed to dledger as the entry body, without an intermediate copy.
+                byte[] data = new byte[msgLen];
+                ByteBuffer msgStoreItemMemory = ByteBuffer.wrap(data);
                 // 1 TOTALSIZE
                 msgStoreItemMemory.putInt(msgLen);
                 // 2 MAGICCODE
@@ -1161,13 +1163,11 @@ public class DLedgerCommitLog extends CommitLog {
                 // 9 BORNTIMESTAMP
                 msgStoreItemMemory.putLong(messageExtBatch.getBornTimestamp());
                 // 10 BORNHOST
-                resetByteBuffer(bornHostHolder, bornHostLength);
-                msgStoreItemMemory.put(messageExtBatch.getBornHostBytes(bornHostHolder));
+                msgStoreItemMemory.put(bornHostData);
                 // 11 STORETIMESTAMP
                 msgStoreItemMemory.putLong(messageExtBatch.getStoreTimestamp());
                 // 12 STOREHOSTADDRESS
-                resetByteBuffer(storeHostHolder, storeHostLength);
-                msgStoreItemMemory.put(messageExtBatch.getStoreHostBytes(storeHostHolder));
+                msgStoreItemMemory.put(storeHostData);
                 // 13 RECONSUMETIMES
                 msgStoreItemMemory.putInt(messageExtBatch.getReconsumeTimes());
                 // 14 Prepared Transaction Offset
@@ -1185,9 +1185,6 @@ public class DLedgerCommitLog extends CommitLog {
                 if (propertiesLen > 0) {
                     msgStoreItemMemory.put(messagesByteBuff.array(), propertiesPos, propertiesLen);
                 }
-                byte[] data = new byte[msgLen];
-                msgStoreItemMemory.clear();
-                msgStoreItemMemory.get(data);
                 batchBody.add(data);
             }
 
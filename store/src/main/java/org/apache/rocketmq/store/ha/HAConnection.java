@@ -18,18 +18,28 @@ package org.apache.rocketmq.store.ha;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.Deflater;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
+import org.apache.rocketmq.store.MappedFile;
 import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
 
 public class HAConnection {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+    /**
+     * A transfer must fit in the read buffer of slave, which is 4M.
+     */
+    private static final int MAX_TRANSFER_SIZE = 1024 * 1024 * 2;
+    private static final int MAX_INFLIGHT_TRANSFERS = 1024;
     private final HAService haService;
     private final SocketChannel socketChannel;
     private final String clientAddr;
@@ -39,6 +49,19 @@ public class HAConnection {
     private volatile long slaveRequestOffset = -1;
     private volatile long slaveAckOffset = -1;
 
+    /**
+     * Transfers not acked by slave yet, to sample the replication round trip time.
+     */
+    private final LinkedBlockingQueue<TransferMark> inflightTransfers = new LinkedBlockingQueue<>(MAX_INFLIGHT_TRANSFERS);
+    private volatile long transferRttMicros = -1;
+    private volatile long transferBytesPerSecond = 0;
+
+    // slave asks for compressed transfers by a handshake.
+    private volatile boolean compressRequested = false;
+    private volatile long compressRawBytes = 0;
+    private volatile long compressedBytes = 0;
+    private volatile long compressCostNanos = 0;
+
     public HAConnection(final HAService haService, final SocketChannel socketChannel) throws IOException {
         this.haService = haService;
         this.socketChannel = socketChannel;
@@ -46,8 +69,9 @@ public class HAConnection {
         this.socketChannel.configureBlocking(false);
         this.socketChannel.socket().setSoLinger(false, -1);
         this.socketChannel.socket().setTcpNoDelay(true);
+        int socketBufferSize = haService.getDefaultMessageStore().getMessageStoreConfig().getHaSocketBufferSize();
         this.socketChannel.socket().setReceiveBufferSize(1024 * 64);
-        this.socketChannel.socket().setSendBufferSize(1024 * 64);
+        this.socketChannel.socket().setSendBufferSize(socketBufferSize);
         this.writeSocketService = new WriteSocketService(this.socketChannel);
         this.readSocketService = new ReadSocketService(this.socketChannel);
         this.haService.getConnectionCount().incrementAndGet();
@@ -78,6 +102,74 @@ public class HAConnection {
         return socketChannel;
     }
 
+    public String getClientAddr() {
+        return clientAddr;
+    }
+
+    public long getSlaveAckOffset() {
+        return slaveAckOffset;
+    }
+
+    /**
+     * @return smoothed time from sending data to receiving the ack of slave, in microseconds, -1 if not sampled yet.
+     */
+    public long getTransferRttMicros() {
+        return transferRttMicros;
+    }
+
+    /**
+     * @return bytes transferred to slave in the last second.
+     */
+    public long getTransferBytesPerSecond() {
+        return transferBytesPerSecond;
+    }
+
+    public boolean isCompressRequested() {
+        return compressRequested;
+    }
+
+    /**
+     * @return compressed size divided by raw size of bodies compressed, -1 if nothing compressed.
+     */
+    public double getCompressRatio() {
+        return this.compressRawBytes == 0 ? -1 : (double) this.compressedBytes / this.compressRawBytes;
+    }
+
+    /**
+     * @return CPU time to compress 1M of commit log, in microseconds, -1 if nothing compressed.
+     */
+    public long getCompressMicrosPerMB() {
+        return this.compressRawBytes == 0 ? -1 : this.compressCostNanos * 1024 / this.compressRawBytes;
+    }
+
+    private void markTransfer(final long endOffset) {
+        // sampling only, skip it if slave does not ack for long.
+        this.inflightTransfers.offer(new TransferMark(endOffset, System.nanoTime()));
+    }
+
+    private void sampleRtt(final long ackOffset) {
+        TransferMark acked = null;
+        TransferMark mark;
+        while ((mark = this.inflightTransfers.peek()) != null && mark.endOffset <= ackOffset) {
+            acked = this.inflightTransfers.poll();
+        }
+
+        if (acked != null) {
+            long rtt = (System.nanoTime() - acked.sendTimeNanos) / 1000;
+            this.transferRttMicros = this.transferRttMicros < 0 ? rtt : (this.transferRttMicros * 7 + rtt) / 8;
+        }
+    }
+
+    static class TransferMark {
+        private final long endOffset;
+        private final long sendTimeNanos;
+
+        TransferMark(final long endOffset, final long sendTimeNanos) {
+            this.endOffset = endOffset;
+            this.sendTimeNanos = sendTimeNanos;
+        }
+    }
+
     class ReadSocketService extends ServiceThread {
         private static final int READ_MAX_BUFFER_SIZE = 1024 * 1024;
         private final Selector selector;
@@ -161,10 +253,23 @@ public class HAConnection {
                         this.lastReadTimestamp = HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
                         if ((this.byteBufferRead.position() - this.processPosition) >= 8) {
                             int pos = this.byteBufferRead.position() - (this.byteBufferRead.position() % 8);
-                            long readOffset = this.byteBufferRead.getLong(pos - 8);
+                            long readOffset = -1;
+                            for (int i = this.processPosition; i < pos; i += 8) {
+                                long value = this.byteBufferRead.getLong(i);
+                                if (HAService.COMPRESS_HANDSHAKE == value) {
+                                    HAConnection.this.compressRequested = true;
+                                    log.info("slave[" + HAConnection.this.clientAddr + "] request compressed transfer");
+                                } else {
+                                    readOffset = value;
+                                }
+                            }
                             this.processPosition = pos;
+                            if (readOffset < 0) {
+                                continue;
+                            }
 
                             HAConnection.this.slaveAckOffset = readOffset;
+                            HAConnection.this.sampleRtt(readOffset);
                             if (HAConnection.this.slaveRequestOffset < 0) {
                                 HAConnection.this.slaveRequestOffset = readOffset;
                                 log.info("slave[" + HAConnection.this.clientAddr + "] request offset " + readOffset);
@@ -195,11 +300,22 @@ public class HAConnection {
         private final SocketChannel socketChannel;
 
         private final int headerSize = 8 + 4;
-        private final ByteBuffer byteBufferHeader = ByteBuffer.allocate(headerSize);
+        // header of compressed body has raw size too.
+        private final ByteBuffer byteBufferHeader = ByteBuffer.allocate(headerSize + 4);
         private long nextTransferFromWhere = -1;
         private SelectMappedBufferResult selectMappedBufferResult;
+        private ByteBuffer byteBufferBody;
+        private Deflater deflater;
+        private byte[] rawBytes = new byte[0];
+        private byte[] compressedBytes = new byte[0];
         private boolean lastWriteOver = true;
         private long lastWriteTimestamp = System.currentTimeMillis();
+        // body is transferred from file channel of commit log to socket directly if zero copy.
+        private boolean zeroCopy = false;
+        private long transferFilePosition;
+        private long transferRemaining;
+        private long speedWindowBeginTimestamp = System.currentTimeMillis();
+        private long speedWindowBytes = 0;
 
         public WriteSocketService(final SocketChannel socketChannel) throws IOException {
             this.selector = RemotingUtil.openSelector();
@@ -270,9 +386,14 @@ public class HAConnection {
                     SelectMappedBufferResult selectResult =
                         HAConnection.this.haService.getDefaultMessageStore().getCommitLogData(this.nextTransferFromWhere);
                     if (selectResult != null) {
+                        MessageStoreConfig messageStoreConfig = HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig();
+                        boolean compress = HAConnection.this.compressRequested && messageStoreConfig.isHaTransferCompressEnable();
+                        boolean zeroCopy = !compress && messageStoreConfig.isHaTransferZeroCopyEnable() && selectResult.getMappedFile() != null;
+                        int batchSize = zeroCopy || compress ? Math.min(messageStoreConfig.getHaZeroCopyTransferBatchSize(), MAX_TRANSFER_SIZE)
+                            : messageStoreConfig.getHaTransferBatchSize();
                         int size = selectResult.getSize();
-                        if (size > HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig().getHaTransferBatchSize()) {
-                            size = HAConnection.this.haService.getDefaultMessageStore().getMessageStoreConfig().getHaTransferBatchSize();
+                        if (size > batchSize) {
+                            size = batchSize;
                         }
 
                         long thisOffset = this.nextTransferFromWhere;
@@ -280,12 +401,24 @@ public class HAConnection {
 
                         selectResult.getByteBuffer().limit(size);
                         this.selectMappedBufferResult = selectResult;
+                        this.byteBufferBody = selectResult.getByteBuffer();
+                        this.zeroCopy = zeroCopy;
+                        if (zeroCopy) {
+                            MappedFile mappedFile = selectResult.getMappedFile();
+                            this.transferFilePosition = selectResult.getStartOffset() - mappedFile.getFileFromOffset();
+                            this.transferRemaining = size;
+                        }
+                        HAConnection.this.markTransfer(thisOffset + size);
 
                         // Build Header
                         this.byteBufferHeader.position(0);
-                        this.byteBufferHeader.limit(headerSize);
+                        this.byteBufferHeader.limit(this.byteBufferHeader.capacity());
                         this.byteBufferHeader.putLong(thisOffset);
-                        this.byteBufferHeader.putInt(size);
+                        if (compress) {
+                            this.compressBody(size, messageStoreConfig.getHaTransferCompressLevel());
+                        } else {
+                            this.byteBufferHeader.putInt(size);
+                        }
                         this.byteBufferHeader.flip();
 
                         this.lastWriteOver = this.transferData();
@@ -293,6 +426,7 @@ public class HAConnection {
 
                         HAConnection.this.haService.getWaitNotifyObject().allWaitForRunning(100);
                     }
+                    this.rollSpeedWindow();
                 } catch (Exception e) {
 
                     HAConnection.log.error(this.getServiceName() + " service has exception.", e);
@@ -306,6 +440,10 @@ public class HAConnection {
                 this.selectMappedBufferResult.release();
             }
 
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+
             this.makeStop();
 
             readSocketService.makeStop();
@@ -344,7 +482,7 @@ public class HAConnection {
                 }
             }
 
-            if (null == this.selectMappedBufferResult) {
+            if (null == this.selectMappedBufferResult && null == this.byteBufferBody) {
                 return !this.byteBufferHeader.hasRemaining();
             }
 
@@ -352,31 +490,112 @@ public class HAConnection {
 
             // Write Body
             if (!this.byteBufferHeader.hasRemaining()) {
-                while (this.selectMappedBufferResult.getByteBuffer().hasRemaining()) {
-                    int writeSize = this.socketChannel.write(this.selectMappedBufferResult.getByteBuffer());
-                    if (writeSize > 0) {
-                        writeSizeZeroTimes = 0;
-                        this.lastWriteTimestamp = HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
-                    } else if (writeSize == 0) {
-                        if (++writeSizeZeroTimes >= 3) {
-                            break;
+                if (this.zeroCopy) {
+                    this.transferBody();
+                } else {
+                    while (this.byteBufferBody.hasRemaining()) {
+                        int writeSize = this.socketChannel.write(this.byteBufferBody);
+                        if (writeSize > 0) {
+                            writeSizeZeroTimes = 0;
+                            this.speedWindowBytes += writeSize;
+                            this.lastWriteTimestamp = HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
+                        } else if (writeSize == 0) {
+                            if (++writeSizeZeroTimes >= 3) {
+                                break;
+                            }
+                        } else {
+                            throw new Exception("ha master write body error < 0");
                         }
-                    } else {
-                        throw new Exception("ha master write body error < 0");
                     }
                 }
             }
 
-            boolean result = !this.byteBufferHeader.hasRemaining() && !this.selectMappedBufferResult.getByteBuffer().hasRemaining();
+            boolean bodyOver = this.zeroCopy ? this.transferRemaining <= 0 : !this.byteBufferBody.hasRemaining();
+            boolean result = !this.byteBufferHeader.hasRemaining() && bodyOver;
 
-            if (!this.selectMappedBufferResult.getByteBuffer().hasRemaining()) {
-                this.selectMappedBufferResult.release();
-                this.selectMappedBufferResult = null;
+            if (bodyOver) {
+                if (this.selectMappedBufferResult != null) {
+                    this.selectMappedBufferResult.release();
+                    this.selectMappedBufferResult = null;
+                }
+                this.byteBufferBody = null;
             }
 
             return result;
         }
 
+        /**
+         * Compress body into the header and {@link #byteBufferBody}, the size in header is negative if compressed,
+         * followed by raw size. Body is sent as it is if compressing does not make it smaller.
+         */
+        private void compressBody(final int size, final int level) {
+            if (this.rawBytes.length < size) {
+                this.rawBytes = new byte[size];
+                this.compressedBytes = new byte[size];
+            }
+            this.selectMappedBufferResult.getByteBuffer().get(this.rawBytes, 0, size);
+            this.selectMappedBufferResult.release();
+            this.selectMappedBufferResult = null;
+
+            long beginTime = System.nanoTime();
+            if (null == this.deflater) {
+                this.deflater = new Deflater(level);
+            } else {
+                this.deflater.reset();
+                this.deflater.setLevel(level);
+            }
+            this.deflater.setInput(this.rawBytes, 0, size);
+            this.deflater.finish();
+            int compressedSize = 0;
+            while (!this.deflater.finished() && compressedSize < size) {
+                compressedSize += this.deflater.deflate(this.compressedBytes, compressedSize, size - compressedSize);
+            }
+            boolean compressed = this.deflater.finished() && compressedSize < size;
+
+            HAConnection.this.compressCostNanos += System.nanoTime() - beginTime;
+            HAConnection.this.compressRawBytes += size;
+            HAConnection.this.compressedBytes += compressed ? compressedSize : size;
+
+            if (compressed) {
+                this.byteBufferHeader.putInt(-compressedSize);
+                this.byteBufferHeader.putInt(size);
+                this.byteBufferBody = ByteBuffer.wrap(this.compressedBytes, 0, compressedSize);
+            } else {
+                this.byteBufferHeader.putInt(size);
+                this.byteBufferBody = ByteBuffer.wrap(this.rawBytes, 0, size);
+            }
+        }
+
+        /**
+         * Transfer body from page cache to socket by {@link FileChannel#transferTo}, without copying it to user space.
+         */
+        private void transferBody() throws IOException {
+            FileChannel fileChannel = this.selectMappedBufferResult.getMappedFile().getFileChannel();
+            int writeSizeZeroTimes = 0;
+            while (this.transferRemaining > 0) {
+                long writeSize = fileChannel.transferTo(this.transferFilePosition, this.transferRemaining, this.socketChannel);
+                if (writeSize > 0) {
+                    writeSizeZeroTimes = 0;
+                    this.transferFilePosition += writeSize;
+                    this.transferRemaining -= writeSize;
+                    this.speedWindowBytes += writeSize;
+                    this.lastWriteTimestamp = HAConnection.this.haService.getDefaultMessageStore().getSystemClock().now();
+                } else if (++writeSizeZeroTimes >= 3) {
+                    break;
+                }
+            }
+        }
+
+        private void rollSpeedWindow() {
+            long now = System.currentTimeMillis();
+            long interval = now - this.speedWindowBeginTimestamp;
+            if (interval >= 1000) {
+                HAConnection.this.transferBytesPerSecond = this.speedWindowBytes * 1000 / interval;
+                this.speedWindowBeginTimestamp = now;
+                this.speedWindowBytes = 0;
+            }
+        }
+
         @Override
         public String getServiceName() {
             return WriteSocketService.class.getSimpleName();
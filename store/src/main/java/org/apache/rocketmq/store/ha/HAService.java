@@ -26,14 +26,19 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
@@ -44,6 +49,11 @@ import org.apache.rocketmq.store.PutMessageStatus;
 public class HAService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
 
+    /**
+     * Sent by slave in place of an offset right after connecting, to ask master for compressed transfers.
+     */
+    static final long COMPRESS_HANDSHAKE = 0xC0DEC0DEC0DEC0DEL;
+
     private final AtomicInteger connectionCount = new AtomicInteger(0);
 
     private final List<HAConnection> connectionList = new LinkedList<>();
@@ -78,6 +88,11 @@ public class HAService {
     }
 
     public boolean isSlaveOK(final long masterPutWhere) {
+        int ackNums = this.defaultMessageStore.getMessageStoreConfig().getHaSyncSlaveAckNums();
+        if (ackNums > 1) {
+            return this.getInSyncSlaveNums(masterPutWhere) >= ackNums;
+        }
+
         boolean result = this.connectionCount.get() > 0;
         result =
             result
@@ -86,6 +101,60 @@ public class HAService {
         return result;
     }
 
+    /**
+     * @return number of slaves whose ack offset falls behind {@code masterPutWhere} less than
+     * {@link org.apache.rocketmq.store.config.MessageStoreConfig#getHaSlaveFallbehindMax()}.
+     */
+    public int getInSyncSlaveNums(final long masterPutWhere) {
+        int inSyncNums = 0;
+        synchronized (this.connectionList) {
+            for (HAConnection conn : this.connectionList) {
+                if (this.isInSync(conn, masterPutWhere)) {
+                    inSyncNums++;
+                }
+            }
+        }
+        return inSyncNums;
+    }
+
+    private boolean isInSync(final HAConnection conn, final long masterPutWhere) {
+        long ackOffset = conn.getSlaveAckOffset();
+        return ackOffset >= 0
+            && masterPutWhere - ackOffset < this.defaultMessageStore.getMessageStoreConfig().getHaSlaveFallbehindMax();
+    }
+
+    /**
+     * @return the max offset acked by enough slaves, a write of SYNC_MASTER is done once this offset reaches it.
+     */
+    public long getQuorumAckOffset() {
+        int ackNums = this.defaultMessageStore.getMessageStoreConfig().getHaSyncSlaveAckNums();
+        if (ackNums <= 1) {
+            return this.push2SlaveMaxOffset.get();
+        }
+
+        long[] ackOffsets;
+        synchronized (this.connectionList) {
+            ackOffsets = new long[this.connectionList.size()];
+            int i = 0;
+            for (HAConnection conn : this.connectionList) {
+                ackOffsets[i++] = conn.getSlaveAckOffset();
+            }
+        }
+        return quorumAckOffset(ackOffsets, ackNums);
+    }
+
+    /**
+     * @return the max offset which at least {@code ackNums} of {@code ackOffsets} reach, -1 if not enough offsets.
+     */
+    static long quorumAckOffset(final long[] ackOffsets, final int ackNums) {
+        if (ackNums <= 0 || ackOffsets.length < ackNums) {
+            return -1;
+        }
+        long[] sorted = ackOffsets.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length - ackNums];
+    }
+
     public void notifyTransferSome(final long offset) {
         for (long value = this.push2SlaveMaxOffset.get(); offset > value; ) {
             boolean ok = this.push2SlaveMaxOffset.compareAndSet(value, offset);
@@ -96,6 +165,11 @@ public class HAService {
                 value = this.push2SlaveMaxOffset.get();
             }
         }
+
+        if (this.defaultMessageStore.getMessageStoreConfig().getHaSyncSlaveAckNums() > 1) {
+            // ack of a slower slave may complete the quorum.
+            this.groupTransferService.notifyTransferSome();
+        }
     }
 
     public AtomicInteger getConnectionCount() {
@@ -154,6 +228,36 @@ public class HAService {
         return push2SlaveMaxOffset;
     }
 
+    /**
+     * Replication stats of each slave: ack offset, whether in sync, round trip time in microseconds and bytes transferred per second.
+     */
+    public void buildRunningStats(HashMap<String, String> stats) {
+        long masterOffset = this.defaultMessageStore.getMaxPhyOffset();
+        StringBuilder sb = new StringBuilder();
+        synchronized (this.connectionList) {
+            for (HAConnection conn : this.connectionList) {
+                if (sb.length() > 0) {
+                    sb.append(';');
+                }
+                sb.append(conn.getClientAddr())
+                    .append(",ackOffset=").append(conn.getSlaveAckOffset())
+                    .append(",inSync=").append(this.isInSync(conn, masterOffset))
+                    .append(",rttMicros=").append(conn.getTransferRttMicros())
+                    .append(",bytesPerSecond=").append(conn.getTransferBytesPerSecond());
+                if (conn.isCompressRequested()) {
+                    sb.append(",compressRatio=").append(String.format("%.4f", conn.getCompressRatio()))
+                        .append(",compressMicrosPerMB=").append(conn.getCompressMicrosPerMB());
+                }
+            }
+        }
+        stats.put(RunningStats.haTransferStats.name(), sb.toString());
+        if (this.haClient.decompressRawBytes > 0) {
+            stats.put(RunningStats.haClientStats.name(), String.format("decompressRatio=%.4f,decompressMicrosPerMB=%d",
+                (double) this.haClient.decompressedBytes / this.haClient.decompressRawBytes,
+                this.haClient.decompressCostNanos * 1024 / this.haClient.decompressRawBytes));
+        }
+    }
+
     /**
      * Listens to slave connections to create {@link HAConnection}.
      */
@@ -278,12 +382,12 @@ public class HAService {
             synchronized (this.requestsRead) {
                 if (!this.requestsRead.isEmpty()) {
                     for (CommitLog.GroupCommitRequest req : this.requestsRead) {
-                        boolean transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
+                        boolean transferOK = HAService.this.getQuorumAckOffset() >= req.getNextOffset();
                         long waitUntilWhen = HAService.this.defaultMessageStore.getSystemClock().now()
                             + HAService.this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout();
                         while (!transferOK && HAService.this.defaultMessageStore.getSystemClock().now() < waitUntilWhen) {
                             this.notifyTransferObject.waitForRunning(1000);
-                            transferOK = HAService.this.push2SlaveMaxOffset.get() >= req.getNextOffset();
+                            transferOK = HAService.this.getQuorumAckOffset() >= req.getNextOffset();
                         }
 
                         if (!transferOK) {
@@ -336,6 +440,11 @@ public class HAService {
         private int dispatchPosition = 0;
         private ByteBuffer byteBufferRead = ByteBuffer.allocate(READ_MAX_BUFFER_SIZE);
         private ByteBuffer byteBufferBackup = ByteBuffer.allocate(READ_MAX_BUFFER_SIZE);
+        private final Inflater inflater = new Inflater();
+        private byte[] compressedData = new byte[0];
+        private volatile long decompressRawBytes = 0;
+        private volatile long decompressedBytes = 0;
+        private volatile long decompressCostNanos = 0;
 
         public HAClient() throws IOException {
             this.selector = RemotingUtil.openSelector();
@@ -440,6 +549,13 @@ public class HAService {
                 if (diff >= msgHeaderSize) {
                     long masterPhyOffset = this.byteBufferRead.getLong(this.dispatchPosition);
                     int bodySize = this.byteBufferRead.getInt(this.dispatchPosition + 8);
+                    // compressed body has negative size, followed by raw size.
+                    boolean compressed = bodySize < 0;
+                    int headerSize = msgHeaderSize;
+                    if (compressed) {
+                        bodySize = -bodySize;
+                        headerSize += 4;
+                    }
 
                     long slavePhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
 
@@ -451,15 +567,25 @@ public class HAService {
                         }
                     }
 
-                    if (diff >= (msgHeaderSize + bodySize)) {
-                        byte[] bodyData = new byte[bodySize];
-                        this.byteBufferRead.position(this.dispatchPosition + msgHeaderSize);
-                        this.byteBufferRead.get(bodyData);
+                    if (diff >= (headerSize + bodySize)) {
+                        byte[] bodyData;
+                        if (compressed) {
+                            int rawSize = this.byteBufferRead.getInt(this.dispatchPosition + msgHeaderSize);
+                            this.byteBufferRead.position(this.dispatchPosition + headerSize);
+                            bodyData = this.decompress(bodySize, rawSize);
+                            if (null == bodyData) {
+                                return false;
+                            }
+                        } else {
+                            bodyData = new byte[bodySize];
+                            this.byteBufferRead.position(this.dispatchPosition + headerSize);
+                            this.byteBufferRead.get(bodyData);
+                        }
 
                         HAService.this.defaultMessageStore.appendToCommitLog(masterPhyOffset, bodyData);
 
                         this.byteBufferRead.position(readSocketPos);
-                        this.dispatchPosition += msgHeaderSize + bodySize;
+                        this.dispatchPosition += headerSize + bodySize;
 
                         if (!reportSlaveMaxOffsetPlus()) {
                             return false;
@@ -479,6 +605,45 @@ public class HAService {
             return true;
         }
 
+        /**
+         * Decompress body at current position of read buffer.
+         *
+         * @return raw body, null if it is corrupted.
+         */
+        private byte[] decompress(final int bodySize, final int rawSize) {
+            if (this.compressedData.length < bodySize) {
+                this.compressedData = new byte[bodySize];
+            }
+            this.byteBufferRead.get(this.compressedData, 0, bodySize);
+
+            long beginTime = System.nanoTime();
+            byte[] rawData = new byte[rawSize];
+            this.inflater.reset();
+            this.inflater.setInput(this.compressedData, 0, bodySize);
+            try {
+                int inflated = 0;
+                while (inflated < rawSize && !this.inflater.finished()) {
+                    int n = this.inflater.inflate(rawData, inflated, rawSize - inflated);
+                    if (0 == n && (this.inflater.needsInput() || this.inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != rawSize) {
+                    log.error("HAClient, decompressed size {} not equal raw size {}", inflated, rawSize);
+                    return null;
+                }
+            } catch (DataFormatException e) {
+                log.error("HAClient, decompress body error", e);
+                return null;
+            }
+
+            this.decompressCostNanos += System.nanoTime() - beginTime;
+            this.decompressRawBytes += rawSize;
+            this.decompressedBytes += bodySize;
+            return rawData;
+        }
+
         private boolean reportSlaveMaxOffsetPlus() {
             boolean result = true;
             long currentPhyOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
@@ -501,7 +666,8 @@ public class HAService {
 
                     SocketAddress socketAddress = RemotingUtil.string2SocketAddress(addr);
                     if (socketAddress != null) {
-                        this.socketChannel = RemotingUtil.connect(socketAddress);
+                        this.socketChannel = RemotingUtil.connect(socketAddress, 1000 * 5,
+                            HAService.this.defaultMessageStore.getMessageStoreConfig().getHaSocketBufferSize());
                         if (this.socketChannel != null) {
                             this.socketChannel.register(this.selector, SelectionKey.OP_READ);
                         }
@@ -510,6 +676,13 @@ public class HAService {
 
                 this.currentReportedOffset = HAService.this.defaultMessageStore.getMaxPhyOffset();
 
+                if (this.socketChannel != null
+                    && HAService.this.defaultMessageStore.getMessageStoreConfig().isHaTransferCompressEnable()
+                    && !this.reportSlaveMaxOffset(COMPRESS_HANDSHAKE)) {
+                    log.error("HAClient, send compress handshake error");
+                    this.closeMaster();
+                }
+
                 this.lastWriteTimestamp = System.currentTimeMillis();
             }
 
@@ -595,6 +768,7 @@ public class HAService {
         public void shutdown() {
             super.shutdown();
             closeMaster();
+            this.inflater.end();
         }
 
         // private void disableWriteFlag() {
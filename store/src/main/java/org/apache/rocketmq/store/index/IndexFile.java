@@ -22,6 +22,7 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
@@ -32,15 +33,31 @@ public class IndexFile {
     private static int hashSlotSize = 4;
     private static int indexSize = 20;
     private static int invalidIndex = 0;
+    private static final int SLOT_LOCK_NUM = 64;
     private final int hashSlotNum;
     private final int indexNum;
     private final MappedFile mappedFile;
     private final FileChannel fileChannel;
     private final MappedByteBuffer mappedByteBuffer;
     private final IndexHeader indexHeader;
+    // keys of the same slot are put by one thread at a time.
+    private final Object[] slotLocks = new Object[SLOT_LOCK_NUM];
+    // store timestamp range of keys put after created or loaded.
+    private final AtomicLong minTimestamp = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxTimestamp = new AtomicLong(0);
+    // null if disabled, or the file is loaded.
+    private final IndexKeyBloomFilter keyBloomFilter;
 
     public IndexFile(final String fileName, final int hashSlotNum, final int indexNum,
         final long endPhyOffset, final long endTimestamp) throws IOException {
+        this(fileName, hashSlotNum, indexNum, endPhyOffset, endTimestamp, 0);
+    }
+
+    /**
+     * @param keyBloomBitsPerKey bits for each key of the in-memory key bloom filter, 0 means no bloom filter.
+     */
+    public IndexFile(final String fileName, final int hashSlotNum, final int indexNum,
+        final long endPhyOffset, final long endTimestamp, final int keyBloomBitsPerKey) throws IOException {
         int fileTotalSize =
             IndexHeader.INDEX_HEADER_SIZE + (hashSlotNum * hashSlotSize) + (indexNum * indexSize);
         this.mappedFile = new MappedFile(fileName, fileTotalSize);
@@ -52,6 +69,11 @@ public class IndexFile {
         ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
         this.indexHeader = new IndexHeader(byteBuffer);
 
+        for (int i = 0; i < SLOT_LOCK_NUM; i++) {
+            this.slotLocks[i] = new Object();
+        }
+        this.keyBloomFilter = keyBloomBitsPerKey > 0 ? new IndexKeyBloomFilter(indexNum, keyBloomBitsPerKey) : null;
+
         if (endPhyOffset > 0) {
             this.indexHeader.setBeginPhyOffset(endPhyOffset);
             this.indexHeader.setEndPhyOffset(endPhyOffset);
@@ -89,18 +111,30 @@ public class IndexFile {
         return this.mappedFile.destroy(intervalForcibly);
     }
 
+    /**
+     * Put key of message, safe to be called by several threads.
+     *
+     * @return false if the file is full.
+     */
     public boolean putKey(final String key, final long phyOffset, final long storeTimestamp) {
-        if (this.indexHeader.getIndexCount() < this.indexNum) {
-            int keyHash = indexKeyHashMethod(key);
-            int slotPos = keyHash % this.hashSlotNum;
-            int absSlotPos = IndexHeader.INDEX_HEADER_SIZE + slotPos * hashSlotSize;
-
-            FileLock fileLock = null;
+        int keyHash = indexKeyHashMethod(key);
+        int slotPos = keyHash % this.hashSlotNum;
+        int absSlotPos = IndexHeader.INDEX_HEADER_SIZE + slotPos * hashSlotSize;
+
+        synchronized (this.slotLocks[slotPos % SLOT_LOCK_NUM]) {
+            int indexPos = this.indexHeader.allocateIndex(this.indexNum);
+            if (indexPos < 0) {
+                log.warn("Over index file capacity: index count = " + this.indexHeader.getIndexCount()
+                    + "; index max num = " + this.indexNum);
+                return false;
+            }
 
             try {
+                if (indexPos <= 1) {
+                    this.indexHeader.setBeginPhyOffset(phyOffset);
+                    this.indexHeader.setBeginTimestamp(storeTimestamp);
+                }
 
-                // fileLock = this.fileChannel.lock(absSlotPos, hashSlotSize,
-                // false);
                 int slotValue = this.mappedByteBuffer.getInt(absSlotPos);
                 if (slotValue <= invalidIndex || slotValue > this.indexHeader.getIndexCount()) {
                     slotValue = invalidIndex;
@@ -120,47 +154,48 @@ public class IndexFile {
 
                 int absIndexPos =
                     IndexHeader.INDEX_HEADER_SIZE + this.hashSlotNum * hashSlotSize
-                        + this.indexHeader.getIndexCount() * indexSize;
+                        + indexPos * indexSize;
 
                 this.mappedByteBuffer.putInt(absIndexPos, keyHash);
                 this.mappedByteBuffer.putLong(absIndexPos + 4, phyOffset);
                 this.mappedByteBuffer.putInt(absIndexPos + 4 + 8, (int) timeDiff);
                 this.mappedByteBuffer.putInt(absIndexPos + 4 + 8 + 4, slotValue);
 
-                this.mappedByteBuffer.putInt(absSlotPos, this.indexHeader.getIndexCount());
-
-                if (this.indexHeader.getIndexCount() <= 1) {
-                    this.indexHeader.setBeginPhyOffset(phyOffset);
-                    this.indexHeader.setBeginTimestamp(storeTimestamp);
-                }
+                this.mappedByteBuffer.putInt(absSlotPos, indexPos);
 
                 if (invalidIndex == slotValue) {
                     this.indexHeader.incHashSlotCount();
                 }
-                this.indexHeader.incIndexCount();
-                this.indexHeader.setEndPhyOffset(phyOffset);
-                this.indexHeader.setEndTimestamp(storeTimestamp);
+                this.indexHeader.updateEndPhyOffset(phyOffset);
+                this.indexHeader.updateEndTimestamp(storeTimestamp);
+
+                updateTimestampRange(storeTimestamp);
+                if (this.keyBloomFilter != null) {
+                    this.keyBloomFilter.put(keyHash);
+                }
 
                 return true;
             } catch (Exception e) {
                 log.error("putKey exception, Key: " + key + " KeyHashCode: " + key.hashCode(), e);
-            } finally {
-                if (fileLock != null) {
-                    try {
-                        fileLock.release();
-                    } catch (IOException e) {
-                        log.error("Failed to release the lock", e);
-                    }
-                }
             }
-        } else {
-            log.warn("Over index file capacity: index count = " + this.indexHeader.getIndexCount()
-                + "; index max num = " + this.indexNum);
         }
 
         return false;
     }
 
+    private void updateTimestampRange(final long storeTimestamp) {
+        for (long current = this.minTimestamp.get(); storeTimestamp < current; current = this.minTimestamp.get()) {
+            if (this.minTimestamp.compareAndSet(current, storeTimestamp)) {
+                break;
+            }
+        }
+        for (long current = this.maxTimestamp.get(); storeTimestamp > current; current = this.maxTimestamp.get()) {
+            if (this.maxTimestamp.compareAndSet(current, storeTimestamp)) {
+                break;
+            }
+        }
+    }
+
     public int indexKeyHashMethod(final String key) {
         int keyHash = key.hashCode();
         int keyHashPositive = Math.abs(keyHash);
@@ -181,13 +216,41 @@ public class IndexFile {
         return this.indexHeader.getEndPhyOffset();
     }
 
+    /**
+     * @return min store timestamp of keys in the file.
+     */
+    public long getMinTimestamp() {
+        long beginTimestamp = this.indexHeader.getBeginTimestamp();
+        return beginTimestamp > 0 ? Math.min(beginTimestamp, this.minTimestamp.get()) : 0;
+    }
+
+    /**
+     * @return max store timestamp of keys in the file.
+     */
+    public long getMaxTimestamp() {
+        return Math.max(this.indexHeader.getEndTimestamp(), this.maxTimestamp.get());
+    }
+
     public boolean isTimeMatched(final long begin, final long end) {
-        boolean result = begin < this.indexHeader.getBeginTimestamp() && end > this.indexHeader.getEndTimestamp();
-        result = result || (begin >= this.indexHeader.getBeginTimestamp() && begin <= this.indexHeader.getEndTimestamp());
-        result = result || (end >= this.indexHeader.getBeginTimestamp() && end <= this.indexHeader.getEndTimestamp());
+        long minTimestamp = getMinTimestamp();
+        long maxTimestamp = getMaxTimestamp();
+        boolean result = begin < minTimestamp && end > maxTimestamp;
+        result = result || (begin >= minTimestamp && begin <= maxTimestamp);
+        result = result || (end >= minTimestamp && end <= maxTimestamp);
         return result;
     }
 
+    /**
+     * @return false if the key is never put into this file, true if it may be put.
+     */
+    public boolean mayContainKey(final String key) {
+        return this.keyBloomFilter == null || this.keyBloomFilter.mayContain(indexKeyHashMethod(key));
+    }
+
+    public boolean hasKeyBloomFilter() {
+        return this.keyBloomFilter != null;
+    }
+
     public void selectPhyOffset(final List<Long> phyOffsets, final String key, final int maxNum,
         final long begin, final long end, boolean lock) {
         if (this.mappedFile.hold()) {
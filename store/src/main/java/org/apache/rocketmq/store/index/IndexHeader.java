@@ -117,4 +117,40 @@ public class IndexHeader {
         int value = this.indexCount.incrementAndGet();
         this.byteBuffer.putInt(indexCountIndex, value);
     }
+
+    /**
+     * Allocate position of a new index, the index count is increased before the index is written.
+     *
+     * @return position of the new index, or -1 if there are already {@code maxIndexNum} indexes.
+     */
+    public int allocateIndex(final int maxIndexNum) {
+        for (;;) {
+            int current = this.indexCount.get();
+            if (current >= maxIndexNum) {
+                return -1;
+            }
+            if (this.indexCount.compareAndSet(current, current + 1)) {
+                this.byteBuffer.putInt(indexCountIndex, this.indexCount.get());
+                return current;
+            }
+        }
+    }
+
+    public void updateEndPhyOffset(final long phyOffset) {
+        for (long current = this.endPhyOffset.get(); phyOffset > current; current = this.endPhyOffset.get()) {
+            if (this.endPhyOffset.compareAndSet(current, phyOffset)) {
+                this.byteBuffer.putLong(endPhyoffsetIndex, phyOffset);
+                break;
+            }
+        }
+    }
+
+    public void updateEndTimestamp(final long timestamp) {
+        for (long current = this.endTimestamp.get(); timestamp > current; current = this.endTimestamp.get()) {
+            if (this.endTimestamp.compareAndSet(current, timestamp)) {
+                this.byteBuffer.putLong(endTimestampIndex, timestamp);
+                break;
+            }
+        }
+    }
 }
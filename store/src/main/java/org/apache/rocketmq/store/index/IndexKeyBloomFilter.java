@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory bloom filter of key hash put into one index file, so querying could skip the file without reading
+ * its hash slot and index chain.
+ * <p>
+ * Bits are set atomically, keys could be put by several threads.
+ * </p>
+ */
+public class IndexKeyBloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitNum;
+    private final int hashNum;
+
+    /**
+     * @param keyNum expected num of keys.
+     * @param bitsPerKey bits for each key, decides false positive rate, e.g. about 2% for 8 bits.
+     */
+    public IndexKeyBloomFilter(final int keyNum, final int bitsPerKey) {
+        if (keyNum <= 0 || bitsPerKey <= 0) {
+            throw new IllegalArgumentException("Illegal key num or bits per key: " + keyNum + ", " + bitsPerKey);
+        }
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, ((long) keyNum * bitsPerKey + Long.SIZE - 1) / Long.SIZE);
+        this.bits = new AtomicLongArray(words);
+        this.bitNum = (long) words * Long.SIZE;
+        // k = ln2 * (m/n)
+        this.hashNum = Math.max(1, Math.min(8, (int) Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    public void put(final int keyHash) {
+        long hash1 = mix(keyHash);
+        long hash2 = (hash1 >>> 32) | 1;
+        for (int i = 0; i < this.hashNum; i++) {
+            long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % this.bitNum;
+            int word = (int) (bitIndex >>> 6);
+            long mask = 1L << (bitIndex & 63);
+            long value;
+            do {
+                value = this.bits.get(word);
+                if ((value & mask) != 0) {
+                    break;
+                }
+            } while (!this.bits.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    /**
+     * @return false if the key hash is never put, true if it may be put.
+     */
+    public boolean mayContain(final int keyHash) {
+        long hash1 = mix(keyHash);
+        long hash2 = (hash1 >>> 32) | 1;
+        for (int i = 0; i < this.hashNum; i++) {
+            long bitIndex = ((hash1 + i * hash2) & Long.MAX_VALUE) % this.bitNum;
+            if ((this.bits.get((int) (bitIndex >>> 6)) & (1L << (bitIndex & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitNum() {
+        return bitNum;
+    }
+
+    public int getHashNum() {
+        return hashNum;
+    }
+
+    private static long mix(final int keyHash) {
+        // finalizer of murmur3, spread hash code of string.
+        long h = keyHash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
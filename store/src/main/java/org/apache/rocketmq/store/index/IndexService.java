@@ -21,8 +21,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -31,6 +37,7 @@ import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.store.DefaultMessageStore;
 import org.apache.rocketmq.store.DispatchRequest;
+import org.apache.rocketmq.store.StoreStatsService;
 import org.apache.rocketmq.store.config.StorePathConfigHelper;
 
 public class IndexService {
@@ -39,12 +46,18 @@ public class IndexService {
      * Maximum times to attempt index file creation.
      */
     private static final int MAX_TRY_IDX_CREATE = 3;
+    private static final int MAX_PENDING_KEYS_PER_BUILDER = 100000;
     private final DefaultMessageStore defaultMessageStore;
     private final int hashSlotNum;
     private final int indexNum;
     private final String storePath;
     private final ArrayList<IndexFile> indexFileList = new ArrayList<IndexFile>();
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final Object createLock = new Object();
+    private final int keyBloomBitsPerKey;
+    // null if index is built by the dispatcher thread.
+    private final IndexBuildService[] indexBuildServices;
+    private volatile IndexedPropertyResolver indexedPropertyResolver;
 
     public IndexService(final DefaultMessageStore store) {
         this.defaultMessageStore = store;
@@ -52,6 +65,17 @@ public class IndexService {
         this.indexNum = store.getMessageStoreConfig().getMaxIndexNum();
         this.storePath =
             StorePathConfigHelper.getStorePathIndex(store.getMessageStoreConfig().getStorePathRootDir());
+        this.keyBloomBitsPerKey = store.getMessageStoreConfig().getIndexKeyBloomBitsPerKey();
+
+        int buildThreadNum = store.getMessageStoreConfig().getIndexBuildThreadNum();
+        if (buildThreadNum > 1) {
+            this.indexBuildServices = new IndexBuildService[buildThreadNum];
+            for (int i = 0; i < buildThreadNum; i++) {
+                this.indexBuildServices[i] = new IndexBuildService(i);
+            }
+        } else {
+            this.indexBuildServices = null;
+        }
     }
 
     public boolean load(final boolean lastExitOK) {
@@ -160,35 +184,51 @@ public class IndexService {
         long indexLastUpdateTimestamp = 0;
         long indexLastUpdatePhyoffset = 0;
         maxNum = Math.min(maxNum, this.defaultMessageStore.getMessageStoreConfig().getMaxMsgsNumBatch());
+
+        // files are held when selecting, so scan a snapshot without lock, building index is never blocked.
+        Object[] files;
         try {
             this.readWriteLock.readLock().lock();
-            if (!this.indexFileList.isEmpty()) {
-                for (int i = this.indexFileList.size(); i > 0; i--) {
-                    IndexFile f = this.indexFileList.get(i - 1);
-                    boolean lastFile = i == this.indexFileList.size();
-                    if (lastFile) {
-                        indexLastUpdateTimestamp = f.getEndTimestamp();
-                        indexLastUpdatePhyoffset = f.getEndPhyOffset();
-                    }
+            files = this.indexFileList.toArray();
+        } finally {
+            this.readWriteLock.readLock().unlock();
+        }
 
-                    if (f.isTimeMatched(begin, end)) {
+        String idxKey = buildKey(topic, key);
+        long scanned = 0;
+        long skipped = 0;
+        try {
+            for (int i = files.length; i > 0; i--) {
+                IndexFile f = (IndexFile) files[i - 1];
+                boolean lastFile = i == files.length;
+                if (lastFile) {
+                    indexLastUpdateTimestamp = f.getEndTimestamp();
+                    indexLastUpdatePhyoffset = f.getEndPhyOffset();
+                }
 
-                        f.selectPhyOffset(phyOffsets, buildKey(topic, key), maxNum, begin, end, lastFile);
-                    }
+                if (f.isTimeMatched(begin, end) && f.mayContainKey(idxKey)) {
+                    scanned++;
+                    f.selectPhyOffset(phyOffsets, idxKey, maxNum, begin, end, lastFile);
+                } else {
+                    skipped++;
+                }
 
-                    if (f.getBeginTimestamp() < begin) {
-                        break;
-                    }
+                if (f.getMinTimestamp() < begin) {
+                    break;
+                }
 
-                    if (phyOffsets.size() >= maxNum) {
-                        break;
-                    }
+                if (phyOffsets.size() >= maxNum) {
+                    break;
                 }
             }
         } catch (Exception e) {
             log.error("queryMsg exception", e);
-        } finally {
-            this.readWriteLock.readLock().unlock();
+        }
+
+        StoreStatsService storeStatsService = this.defaultMessageStore.getStoreStatsService();
+        if (storeStatsService != null) {
+            storeStatsService.getQueryIndexFileScanned().addAndGet(scanned);
+            storeStatsService.getQueryIndexFileSkipped().addAndGet(skipped);
         }
 
         return new QueryOffsetResult(phyOffsets, indexLastUpdateTimestamp, indexLastUpdatePhyoffset);
@@ -198,6 +238,14 @@ public class IndexService {
         return topic + "#" + key;
     }
 
+    /**
+     * Build the key under which a message is indexed by value of user property, it could be queried as an
+     * ordinary key. It never conflicts with message keys, which never contain the separator.
+     */
+    public static String buildPropertyKey(final String propertyName, final String propertyValue) {
+        return propertyName + MessageConst.KEY_SEPARATOR + propertyValue;
+    }
+
     public void buildIndex(DispatchRequest req) {
         IndexFile indexFile = retryGetAndCreateIndexFile();
         if (indexFile != null) {
@@ -240,13 +288,43 @@ public class IndexService {
                     }
                 }
             }
+
+            IndexedPropertyResolver resolver = this.indexedPropertyResolver;
+            Map<String, String> properties = msg.getPropertiesMap();
+            if (resolver != null && properties != null) {
+                Set<String> indexedProperties = resolver.getIndexedProperties(topic);
+                if (indexedProperties != null) {
+                    for (String propertyName : indexedProperties) {
+                        String propertyValue = properties.get(propertyName);
+                        if (propertyValue != null && propertyValue.length() > 0) {
+                            indexFile = putKey(indexFile, msg, buildKey(topic, buildPropertyKey(propertyName, propertyValue)));
+                            if (indexFile == null) {
+                                log.error("putKey error commitlog {} property {}", req.getCommitLogOffset(), propertyName);
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
         } else {
             log.error("build index error, stop building index");
         }
     }
 
     private IndexFile putKey(IndexFile indexFile, DispatchRequest msg, String idxKey) {
-        for (boolean ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp()); !ok; ) {
+        if (this.indexBuildServices != null) {
+            int slotPos = indexFile.indexKeyHashMethod(idxKey) % this.hashSlotNum;
+            IndexBuildService indexBuildService = this.indexBuildServices[slotPos % this.indexBuildServices.length];
+            if (indexBuildService.putRequest(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp())) {
+                return indexFile;
+            }
+        }
+
+        return putKey(indexFile, idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp());
+    }
+
+    private IndexFile putKey(IndexFile indexFile, String idxKey, long phyOffset, long storeTimestamp) {
+        for (boolean ok = indexFile.putKey(idxKey, phyOffset, storeTimestamp); !ok; ) {
             log.warn("Index file [" + indexFile.getFileName() + "] is full, trying to create another one");
 
             indexFile = retryGetAndCreateIndexFile();
@@ -254,7 +332,7 @@ public class IndexService {
                 return null;
             }
 
-            ok = indexFile.putKey(idxKey, msg.getCommitLogOffset(), msg.getStoreTimestamp());
+            ok = indexFile.putKey(idxKey, phyOffset, storeTimestamp);
         }
 
         return indexFile;
@@ -290,60 +368,82 @@ public class IndexService {
     }
 
     public IndexFile getAndCreateLastIndexFile() {
-        IndexFile indexFile = null;
-        IndexFile prevIndexFile = null;
-        long lastUpdateEndPhyOffset = 0;
-        long lastUpdateIndexTimestamp = 0;
+        IndexFile indexFile = getLastIndexFileNotFull();
+        if (indexFile != null) {
+            return indexFile;
+        }
 
-        {
-            this.readWriteLock.readLock().lock();
-            if (!this.indexFileList.isEmpty()) {
-                IndexFile tmp = this.indexFileList.get(this.indexFileList.size() - 1);
-                if (!tmp.isWriteFull()) {
-                    indexFile = tmp;
-                } else {
-                    lastUpdateEndPhyOffset = tmp.getEndPhyOffset();
-                    lastUpdateIndexTimestamp = tmp.getEndTimestamp();
-                    prevIndexFile = tmp;
+        // several builders may find the last file full at the same time, only one of them creates a new file.
+        synchronized (this.createLock) {
+            IndexFile prevIndexFile = null;
+            long lastUpdateEndPhyOffset = 0;
+            long lastUpdateIndexTimestamp = 0;
+
+            {
+                this.readWriteLock.readLock().lock();
+                if (!this.indexFileList.isEmpty()) {
+                    IndexFile tmp = this.indexFileList.get(this.indexFileList.size() - 1);
+                    if (!tmp.isWriteFull()) {
+                        indexFile = tmp;
+                    } else {
+                        lastUpdateEndPhyOffset = tmp.getEndPhyOffset();
+                        lastUpdateIndexTimestamp = tmp.getEndTimestamp();
+                        prevIndexFile = tmp;
+                    }
                 }
-            }
 
-            this.readWriteLock.readLock().unlock();
-        }
-
-        if (indexFile == null) {
-            try {
-                String fileName =
-                    this.storePath + File.separator
-                        + UtilAll.timeMillisToHumanString(System.currentTimeMillis());
-                indexFile =
-                    new IndexFile(fileName, this.hashSlotNum, this.indexNum, lastUpdateEndPhyOffset,
-                        lastUpdateIndexTimestamp);
-                this.readWriteLock.writeLock().lock();
-                this.indexFileList.add(indexFile);
-            } catch (Exception e) {
-                log.error("getLastIndexFile exception ", e);
-            } finally {
-                this.readWriteLock.writeLock().unlock();
+                this.readWriteLock.readLock().unlock();
             }
 
-            if (indexFile != null) {
-                final IndexFile flushThisFile = prevIndexFile;
-                Thread flushThread = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        IndexService.this.flush(flushThisFile);
-                    }
-                }, "FlushIndexFileThread");
+            if (indexFile == null) {
+                try {
+                    String fileName =
+                        this.storePath + File.separator
+                            + UtilAll.timeMillisToHumanString(System.currentTimeMillis());
+                    indexFile =
+                        new IndexFile(fileName, this.hashSlotNum, this.indexNum, lastUpdateEndPhyOffset,
+                            lastUpdateIndexTimestamp, this.keyBloomBitsPerKey);
+                    this.readWriteLock.writeLock().lock();
+                    this.indexFileList.add(indexFile);
+                } catch (Exception e) {
+                    log.error("getLastIndexFile exception ", e);
+                } finally {
+                    this.readWriteLock.writeLock().unlock();
+                }
 
-                flushThread.setDaemon(true);
-                flushThread.start();
+                if (indexFile != null) {
+                    final IndexFile flushThisFile = prevIndexFile;
+                    Thread flushThread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            IndexService.this.flush(flushThisFile);
+                        }
+                    }, "FlushIndexFileThread");
+
+                    flushThread.setDaemon(true);
+                    flushThread.start();
+                }
             }
         }
 
         return indexFile;
     }
 
+    private IndexFile getLastIndexFileNotFull() {
+        try {
+            this.readWriteLock.readLock().lock();
+            if (!this.indexFileList.isEmpty()) {
+                IndexFile tmp = this.indexFileList.get(this.indexFileList.size() - 1);
+                if (!tmp.isWriteFull()) {
+                    return tmp;
+                }
+            }
+        } finally {
+            this.readWriteLock.readLock().unlock();
+        }
+        return null;
+    }
+
     public void flush(final IndexFile f) {
         if (null == f)
             return;
@@ -363,10 +463,117 @@ public class IndexService {
     }
 
     public void start() {
-
+        if (this.indexBuildServices != null) {
+            for (IndexBuildService indexBuildService : this.indexBuildServices) {
+                indexBuildService.start();
+            }
+        }
     }
 
     public void shutdown() {
+        if (this.indexBuildServices != null) {
+            for (IndexBuildService indexBuildService : this.indexBuildServices) {
+                indexBuildService.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return num of keys waiting to be put into index file.
+     */
+    public long getPendingKeyNum() {
+        long num = 0;
+        if (this.indexBuildServices != null) {
+            for (IndexBuildService indexBuildService : this.indexBuildServices) {
+                num += indexBuildService.requestQueue.size();
+            }
+        }
+        return num;
+    }
+
+    public IndexedPropertyResolver getIndexedPropertyResolver() {
+        return indexedPropertyResolver;
+    }
+
+    public void setIndexedPropertyResolver(final IndexedPropertyResolver indexedPropertyResolver) {
+        this.indexedPropertyResolver = indexedPropertyResolver;
+    }
+
+    static class IndexKeyRequest {
+        private final String idxKey;
+        private final long phyOffset;
+        private final long storeTimestamp;
+
+        IndexKeyRequest(final String idxKey, final long phyOffset, final long storeTimestamp) {
+            this.idxKey = idxKey;
+            this.phyOffset = phyOffset;
+            this.storeTimestamp = storeTimestamp;
+        }
+    }
+
+    /**
+     * Put keys of one stripe of hash slots into index file, so builders never contend for the same slot.
+     */
+    class IndexBuildService extends ServiceThread {
+        private final int stripe;
+        private final BlockingQueue<IndexKeyRequest> requestQueue =
+            new LinkedBlockingQueue<IndexKeyRequest>(MAX_PENDING_KEYS_PER_BUILDER);
+
+        IndexBuildService(final int stripe) {
+            this.stripe = stripe;
+        }
+
+        /**
+         * @return false if the service is stopped, the key should be put by caller.
+         */
+        boolean putRequest(final String idxKey, final long phyOffset, final long storeTimestamp) {
+            if (this.isStopped()) {
+                return false;
+            }
+            try {
+                this.requestQueue.put(new IndexKeyRequest(idxKey, phyOffset, storeTimestamp));
+                return true;
+            } catch (InterruptedException e) {
+                log.warn("Interrupted when putting index key {}", idxKey);
+                return false;
+            }
+        }
+
+        @Override
+        public String getServiceName() {
+            return IndexBuildService.class.getSimpleName() + "-" + this.stripe;
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
 
+            while (!this.isStopped()) {
+                try {
+                    IndexKeyRequest request = this.requestQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (request != null) {
+                        this.doPut(request);
+                    }
+                } catch (Exception e) {
+                    log.warn(this.getServiceName() + " service has exception. ", e);
+                }
+            }
+
+            // put keys left before exit.
+            IndexKeyRequest request;
+            while ((request = this.requestQueue.poll()) != null) {
+                this.doPut(request);
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+
+        private void doPut(final IndexKeyRequest request) {
+            IndexFile indexFile = retryGetAndCreateIndexFile();
+            if (indexFile == null
+                || putKey(indexFile, request.idxKey, request.phyOffset, request.storeTimestamp) == null) {
+                log.error("putKey error commitlog {} key {}", request.phyOffset, request.idxKey);
+            }
+        }
     }
 }
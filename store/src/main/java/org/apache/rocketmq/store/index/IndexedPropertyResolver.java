@@ -14,28 +14,18 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.apache.rocketmq.broker.transaction.queue;
 
-import org.apache.rocketmq.client.consumer.PullResult;
-import org.apache.rocketmq.common.message.MessageExt;
+package org.apache.rocketmq.store.index;
 
-public class GetResult {
-    private MessageExt msg;
-    private PullResult pullResult;
+import java.util.Set;
 
-    public MessageExt getMsg() {
-        return msg;
-    }
-
-    public void setMsg(MessageExt msg) {
-        this.msg = msg;
-    }
-
-    public PullResult getPullResult() {
-        return pullResult;
-    }
+/**
+ * Tell which user properties of messages should be indexed, besides keys and unique key.
+ */
+public interface IndexedPropertyResolver {
 
-    public void setPullResult(PullResult pullResult) {
-        this.pullResult = pullResult;
-    }
+    /**
+     * @return names of user properties indexed for the topic, null or empty if none.
+     */
+    Set<String> getIndexedProperties(final String topic);
 }
@@ -16,15 +16,21 @@
  */
 package org.apache.rocketmq.store.schedule;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.common.ConfigManager;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicFilterType;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.topic.TopicValidator;
@@ -44,6 +50,7 @@ import org.apache.rocketmq.store.PutMessageResult;
 import org.apache.rocketmq.store.PutMessageStatus;
 import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.apache.rocketmq.store.config.StorePathConfigHelper;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class ScheduleMessageService extends ConfigManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
@@ -59,7 +66,7 @@ public class ScheduleMessageService extends ConfigManager {
         new ConcurrentHashMap<Integer, Long>(32);
     private final DefaultMessageStore defaultMessageStore;
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private Timer timer;
+    private ScheduledExecutorService deliverExecutorService;
     private MessageStore writeMessageStore;
     private int maxDelayLevel;
 
@@ -113,7 +120,12 @@ public class ScheduleMessageService extends ConfigManager {
     public void start() {
         if (started.compareAndSet(false, true)) {
             super.load();
-            this.timer = new Timer("ScheduleMessageTimerThread", true);
+            // one thread for each level, so a burst of one level never delays others, and one for persisting.
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(this.delayLevelTable.size() + 1,
+                new ThreadFactoryImpl("ScheduleMessageTimerThread_", true));
+            // delivery tasks waiting for their delay are dropped by shutdown, a later start schedules new ones.
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            this.deliverExecutorService = executor;
             for (Map.Entry<Integer, Long> entry : this.delayLevelTable.entrySet()) {
                 Integer level = entry.getKey();
                 Long timeDelay = entry.getValue();
@@ -123,11 +135,11 @@ public class ScheduleMessageService extends ConfigManager {
                 }
 
                 if (timeDelay != null) {
-                    this.timer.schedule(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME);
+                    this.scheduleNextTimerTask(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME);
                 }
             }
 
-            this.timer.scheduleAtFixedRate(new TimerTask() {
+            this.deliverExecutorService.scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -137,18 +149,50 @@ public class ScheduleMessageService extends ConfigManager {
                         log.error("scheduleAtFixedRate flush exception", e);
                     }
                 }
-            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval());
+            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval(), TimeUnit.MILLISECONDS);
         }
     }
 
     public void shutdown() {
         if (this.started.compareAndSet(true, false)) {
-            if (null != this.timer)
-                this.timer.cancel();
+            if (null != this.deliverExecutorService) {
+                this.deliverExecutorService.shutdown();
+                try {
+                    // tasks running now must finish before a later start, or they may deliver along with new ones.
+                    if (!this.deliverExecutorService.awaitTermination(DELAY_FOR_A_PERIOD, TimeUnit.MILLISECONDS)) {
+                        log.warn("ScheduleMessageService shutdown, delivery tasks not finished in {}ms", DELAY_FOR_A_PERIOD);
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("ScheduleMessageService shutdown interrupted", e);
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
 
     }
 
+    private void scheduleNextTimerTask(final DeliverDelayedMessageTimerTask task, final long delay) {
+        if (!this.isStarted()) {
+            return;
+        }
+
+        try {
+            this.deliverExecutorService.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("ScheduleMessageService is shutdown, level {} stops at offset {}", task.delayLevel, task.offset);
+        }
+    }
+
+    private void recordDeliverLag(final int delayLevel, final long offset, final long lagTime) {
+        BrokerStatsManager brokerStatsManager = this.defaultMessageStore.getBrokerStatsManager();
+        if (brokerStatsManager != null) {
+            long maxOffset = this.defaultMessageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_SCHEDULE_TOPIC,
+                delayLevel2QueueId(delayLevel));
+            brokerStatsManager.recordScheduleDeliverLagTime(delayLevel, Math.max(0, lagTime));
+            brokerStatsManager.recordScheduleDeliverLagNums(delayLevel, Math.max(0, maxOffset - offset));
+        }
+    }
+
     public boolean isStarted() {
         return started.get();
     }
@@ -222,7 +266,7 @@ public class ScheduleMessageService extends ConfigManager {
         return true;
     }
 
-    class DeliverDelayedMessageTimerTask extends TimerTask {
+    class DeliverDelayedMessageTimerTask implements Runnable {
         private final int delayLevel;
         private final long offset;
 
@@ -233,14 +277,16 @@ public class ScheduleMessageService extends ConfigManager {
 
         @Override
         public void run() {
+            if (!isStarted()) {
+                return;
+            }
+
             try {
-                if (isStarted()) {
-                    this.executeOnTimeup();
-                }
+                this.executeOnTimeup();
             } catch (Exception e) {
                 // XXX: warn and notify me
                 log.error("ScheduleMessageService, executeOnTimeup exception", e);
-                ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
+                ScheduleMessageService.this.scheduleNextTimerTask(new DeliverDelayedMessageTimerTask(
                     this.delayLevel, this.offset), DELAY_FOR_A_PERIOD);
             }
         }
@@ -270,8 +316,13 @@ public class ScheduleMessageService extends ConfigManager {
             if (cq != null) {
                 SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.offset);
                 if (bufferCQ != null) {
+                    int batchSize = Math.max(1,
+                        ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().getScheduleDeliverBatchSize());
+                    List<DeliverRequest> batch = new ArrayList<DeliverRequest>(batchSize);
+                    long nextOffset = offset;
+                    long countdown = 0;
+                    long lagTime = -1;
                     try {
-                        long nextOffset = offset;
                         int i = 0;
                         ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
                         for (; i < bufferCQ.getSize(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
@@ -296,77 +347,73 @@ public class ScheduleMessageService extends ConfigManager {
 
                             nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
 
-                            long countdown = deliverTimestamp - now;
-
-                            if (countdown <= 0) {
-                                MessageExt msgExt =
-                                    ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(
-                                        offsetPy, sizePy);
-
-                                if (msgExt != null) {
-                                    try {
-                                        MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
-                                        if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
-                                            log.error("[BUG] the real topic of schedule msg is {}, discard the msg. msg={}",
-                                                    msgInner.getTopic(), msgInner);
-                                            continue;
-                                        }
-                                        PutMessageResult putMessageResult =
-                                            ScheduleMessageService.this.writeMessageStore
-                                                .putMessage(msgInner);
-
-                                        if (putMessageResult != null
-                                            && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
-                                            if (ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()) {
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutNums(msgInner.getTopic(), putMessageResult.getAppendMessageResult().getMsgNum(), 1);
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutSize(msgInner.getTopic(),
-                                                    putMessageResult.getAppendMessageResult().getWroteBytes());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incBrokerPutNums(putMessageResult.getAppendMessageResult().getMsgNum());
-                                            }
-                                            continue;
-                                        } else {
-                                            // XXX: warn and notify me
-                                            log.error(
-                                                "ScheduleMessageService, a message time up, but reput it failed, topic: {} msgId {}",
-                                                msgExt.getTopic(), msgExt.getMsgId());
-                                            ScheduleMessageService.this.timer.schedule(
-                                                new DeliverDelayedMessageTimerTask(this.delayLevel,
-                                                    nextOffset), DELAY_FOR_A_PERIOD);
-                                            ScheduleMessageService.this.updateOffset(this.delayLevel,
-                                                nextOffset);
-                                            return;
-                                        }
-                                    } catch (Exception e) {
-                                        /*
-                                         * XXX: warn and notify me
-
-
-
-                                         */
-                                        log.error(
-                                            "ScheduleMessageService, messageTimeup execute error, drop it. msgExt="
-                                                + msgExt + ", nextOffset=" + nextOffset + ",offsetPy="
-                                                + offsetPy + ",sizePy=" + sizePy, e);
+                            countdown = deliverTimestamp - now;
+                            if (lagTime < 0) {
+                                lagTime = -countdown;
+                            }
+
+                            if (countdown > 0) {
+                                break;
+                            }
+
+                            MessageExt msgExt =
+                                ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(
+                                    offsetPy, sizePy);
+
+                            if (msgExt != null) {
+                                try {
+                                    MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
+                                    if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
+                                        log.error("[BUG] the real topic of schedule msg is {}, discard the msg. msg={}",
+                                                msgInner.getTopic(), msgInner);
+                                        continue;
                                     }
+                                    batch.add(new DeliverRequest(nextOffset, msgInner,
+                                        ScheduleMessageService.this.writeMessageStore.asyncPutMessage(msgInner)));
+                                } catch (Exception e) {
+                                    /*
+                                     * XXX: warn and notify me
+
+
+
+                                     */
+                                    log.error(
+                                        "ScheduleMessageService, messageTimeup execute error, drop it. msgExt="
+                                            + msgExt + ", nextOffset=" + nextOffset + ",offsetPy="
+                                            + offsetPy + ",sizePy=" + sizePy, e);
+                                }
+                            }
+
+                            if (batch.size() >= batchSize) {
+                                long failOffset = this.waitDeliverResult(batch);
+                                batch.clear();
+                                if (failOffset >= 0) {
+                                    this.retryLater(failOffset, lagTime);
+                                    return;
                                 }
-                            } else {
-                                ScheduleMessageService.this.timer.schedule(
-                                    new DeliverDelayedMessageTimerTask(this.delayLevel, nextOffset),
-                                    countdown);
-                                ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
-                                return;
+                                ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset + 1);
                             }
                         } // end of for
 
-                        nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
-                        ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
-                            this.delayLevel, nextOffset), DELAY_FOR_A_WHILE);
-                        ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
-                        return;
+                        if (countdown <= 0) {
+                            nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+                        }
                     } finally {
 
                         bufferCQ.release();
                     }
+
+                    long failOffset = this.waitDeliverResult(batch);
+                    if (failOffset >= 0) {
+                        this.retryLater(failOffset, lagTime);
+                        return;
+                    }
+
+                    ScheduleMessageService.this.recordDeliverLag(this.delayLevel, nextOffset, lagTime);
+                    ScheduleMessageService.this.scheduleNextTimerTask(new DeliverDelayedMessageTimerTask(
+                        this.delayLevel, nextOffset), countdown > 0 ? countdown : DELAY_FOR_A_WHILE);
+                    ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
+                    return;
                 } // end of if (bufferCQ != null)
                 else {
 
@@ -376,13 +423,58 @@ public class ScheduleMessageService extends ConfigManager {
                         log.error("schedule CQ offset invalid. offset=" + offset + ", cqMinOffset="
                             + cqMinOffset + ", queueId=" + cq.getQueueId());
                     }
+                    ScheduleMessageService.this.recordDeliverLag(this.delayLevel, failScheduleOffset, 0);
                 }
             } // end of if (cq != null)
 
-            ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(this.delayLevel,
+            ScheduleMessageService.this.scheduleNextTimerTask(new DeliverDelayedMessageTimerTask(this.delayLevel,
                 failScheduleOffset), DELAY_FOR_A_WHILE);
         }
 
+        /**
+         * Wait until all messages of the batch are put.
+         *
+         * @return offset of the first message failed to put, -1 if all are put.
+         */
+        private long waitDeliverResult(final List<DeliverRequest> batch) {
+            long failOffset = -1;
+            for (DeliverRequest request : batch) {
+                PutMessageResult putMessageResult = null;
+                try {
+                    putMessageResult = request.future.get();
+                } catch (Exception e) {
+                    log.error("ScheduleMessageService, wait for reput result exception", e);
+                }
+
+                if (putMessageResult != null
+                    && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                    if (ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()) {
+                        ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutNums(request.msgInner.getTopic(), putMessageResult.getAppendMessageResult().getMsgNum(), 1);
+                        ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutSize(request.msgInner.getTopic(),
+                            putMessageResult.getAppendMessageResult().getWroteBytes());
+                        ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incBrokerPutNums(putMessageResult.getAppendMessageResult().getMsgNum());
+                    }
+                } else if (failOffset < 0) {
+                    // XXX: warn and notify me
+                    log.error(
+                        "ScheduleMessageService, a message time up, but reput it failed, topic: {} msgId {}",
+                        request.msgInner.getTopic(), request.msgInner.getProperty(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX));
+                    failOffset = request.offset;
+                }
+            }
+            return failOffset;
+        }
+
+        /**
+         * Deliver again from the first failed message. Messages put after it in the same batch may be delivered twice.
+         */
+        private void retryLater(final long failOffset, final long lagTime) {
+            ScheduleMessageService.this.recordDeliverLag(this.delayLevel, failOffset, lagTime);
+            ScheduleMessageService.this.scheduleNextTimerTask(
+                new DeliverDelayedMessageTimerTask(this.delayLevel, failOffset), DELAY_FOR_A_PERIOD);
+            ScheduleMessageService.this.updateOffset(this.delayLevel, failOffset);
+        }
+
         private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
             MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
             msgInner.setBody(msgExt.getBody());
@@ -413,4 +505,17 @@ public class ScheduleMessageService extends ConfigManager {
             return msgInner;
         }
     }
+
+    static class DeliverRequest {
+        private final long offset;
+        private final MessageExtBrokerInner msgInner;
+        private final CompletableFuture<PutMessageResult> future;
+
+        DeliverRequest(final long offset, final MessageExtBrokerInner msgInner,
+            final CompletableFuture<PutMessageResult> future) {
+            this.offset = offset;
+            this.msgInner = msgInner;
+            this.future = future;
+        }
+    }
 }
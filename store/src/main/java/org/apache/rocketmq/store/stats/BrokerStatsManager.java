@@ -56,6 +56,11 @@ public class BrokerStatsManager {
     public static final String GROUP_GET_FALL_TIME = "GROUP_GET_FALL_TIME";
     // Pull Message Latency
     public static final String GROUP_GET_LATENCY = "GROUP_GET_LATENCY";
+    // Query Message Latency
+    public static final String TOPIC_QUERY_LATENCY = "TOPIC_QUERY_LATENCY";
+    // Delivery lag of each delay level
+    public static final String SCHEDULE_DELIVER_LAG_TIME = "SCHEDULE_DELIVER_LAG_TIME";
+    public static final String SCHEDULE_DELIVER_LAG_NUMS = "SCHEDULE_DELIVER_LAG_NUMS";
 
     /**
      * read disk follow stats
@@ -70,6 +75,8 @@ public class BrokerStatsManager {
     private final String clusterName;
     private final MomentStatsItemSet momentStatsItemSetFallSize = new MomentStatsItemSet(GROUP_GET_FALL_SIZE, scheduledExecutorService, log);
     private final MomentStatsItemSet momentStatsItemSetFallTime = new MomentStatsItemSet(GROUP_GET_FALL_TIME, scheduledExecutorService, log);
+    private final MomentStatsItemSet momentStatsItemSetScheduleLagTime = new MomentStatsItemSet(SCHEDULE_DELIVER_LAG_TIME, scheduledExecutorService, log);
+    private final MomentStatsItemSet momentStatsItemSetScheduleLagNums = new MomentStatsItemSet(SCHEDULE_DELIVER_LAG_NUMS, scheduledExecutorService, log);
 
     public BrokerStatsManager(String clusterName) {
         this.clusterName = clusterName;
@@ -79,6 +86,7 @@ public class BrokerStatsManager {
         this.statsTable.put(GROUP_GET_NUMS, new StatsItemSet(GROUP_GET_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(GROUP_GET_SIZE, new StatsItemSet(GROUP_GET_SIZE, this.scheduledExecutorService, log));
         this.statsTable.put(GROUP_GET_LATENCY, new StatsItemSet(GROUP_GET_LATENCY, this.scheduledExecutorService, log));
+        this.statsTable.put(TOPIC_QUERY_LATENCY, new StatsItemSet(TOPIC_QUERY_LATENCY, this.scheduledExecutorService, log));
         this.statsTable.put(SNDBCK_PUT_NUMS, new StatsItemSet(SNDBCK_PUT_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_PUT_NUMS, new StatsItemSet(BROKER_PUT_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_GET_NUMS, new StatsItemSet(BROKER_GET_NUMS, this.scheduledExecutorService, log));
@@ -104,6 +112,14 @@ public class BrokerStatsManager {
         return momentStatsItemSetFallTime;
     }
 
+    public MomentStatsItemSet getMomentStatsItemSetScheduleLagTime() {
+        return momentStatsItemSetScheduleLagTime;
+    }
+
+    public MomentStatsItemSet getMomentStatsItemSetScheduleLagNums() {
+        return momentStatsItemSetScheduleLagNums;
+    }
+
     public void start() {
     }
 
@@ -124,6 +140,7 @@ public class BrokerStatsManager {
     public void onTopicDeleted(final String topic) {
         this.statsTable.get(TOPIC_PUT_NUMS).delValue(topic);
         this.statsTable.get(TOPIC_PUT_SIZE).delValue(topic);
+        this.statsTable.get(TOPIC_QUERY_LATENCY).delValue(topic);
         this.statsTable.get(GROUP_GET_NUMS).delValueByPrefixKey(topic, "@");
         this.statsTable.get(GROUP_GET_SIZE).delValueByPrefixKey(topic, "@");
         this.statsTable.get(SNDBCK_PUT_NUMS).delValueByPrefixKey(topic, "@");
@@ -176,6 +193,10 @@ public class BrokerStatsManager {
         this.statsTable.get(GROUP_GET_LATENCY).addValue(statsKey, incValue, 1);
     }
 
+    public void incTopicQueryLatency(final String topic, final int incValue) {
+        this.statsTable.get(TOPIC_QUERY_LATENCY).addValue(topic, incValue, 1);
+    }
+
     public void incBrokerPutNums() {
         this.statsTable.get(BROKER_PUT_NUMS).getAndCreateStatsItem(this.clusterName).getValue().incrementAndGet();
     }
@@ -210,6 +231,20 @@ public class BrokerStatsManager {
         this.momentStatsItemSetFallSize.getAndCreateStatsItem(statsKey).getValue().set(fallBehind);
     }
 
+    /**
+     * @param lagTime how long the earliest undelivered message of the level is overdue, in milliseconds.
+     */
+    public void recordScheduleDeliverLagTime(final int delayLevel, final long lagTime) {
+        this.momentStatsItemSetScheduleLagTime.getAndCreateStatsItem(String.valueOf(delayLevel)).getValue().set(lagTime);
+    }
+
+    /**
+     * @param lagNums number of messages of the level not delivered yet, including those not due.
+     */
+    public void recordScheduleDeliverLagNums(final int delayLevel, final long lagNums) {
+        this.momentStatsItemSetScheduleLagNums.getAndCreateStatsItem(String.valueOf(delayLevel)).getValue().set(lagNums);
+    }
+
     public void incCommercialValue(final String key, final String owner, final String group,
         final String topic, final String type, final int incValue) {
         final String statsKey = buildCommercialStatsKey(owner, topic, group, type);
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+/**
+ * Progress of timing wheel covered by flushed timer log and wheel.
+ */
+public class TimerCheckpoint extends RemotingSerializable {
+    // offset of next unit to enqueue in consume queue of timer topic.
+    private long enqueueOffset = 0;
+    // slots before it have been delivered.
+    private long dequeueMs = 0;
+    private long timerLogOffset = 0;
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    public void setEnqueueOffset(long enqueueOffset) {
+        this.enqueueOffset = enqueueOffset;
+    }
+
+    public long getDequeueMs() {
+        return dequeueMs;
+    }
+
+    public void setDequeueMs(long dequeueMs) {
+        this.dequeueMs = dequeueMs;
+    }
+
+    public long getTimerLogOffset() {
+        return timerLogOffset;
+    }
+
+    public void setTimerLogOffset(long timerLogOffset) {
+        this.timerLogOffset = timerLogOffset;
+    }
+}
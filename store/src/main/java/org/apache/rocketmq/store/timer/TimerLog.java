@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * Append only log of timers. Units of one slot of {@link TimerWheel} are linked backward by {@code prevPos}.
+ * <p>
+ * The first field of unit is the time after which the unit is never read, so expired files are deleted the same
+ * way as consume queue.
+ * </p>
+ */
+public class TimerLog {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    // expireMs(8) + unitSize(4) + sizePy(4) + prevPos(8) + slotMs(8) + deliverMs(8) + offsetPy(8)
+    public static final int UNIT_SIZE = 48;
+    private static final int PREV_POS_INDEX = 16;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final int fileSize;
+    private final ByteBuffer unitBuffer = ByteBuffer.allocate(UNIT_SIZE);
+    // where to create the first file if there is none.
+    private long initOffset = 0;
+
+    public TimerLog(final String storePath, final int fileSize) {
+        // units never span two files.
+        this.fileSize = fileSize / UNIT_SIZE * UNIT_SIZE;
+        this.mappedFileQueue = new MappedFileQueue(storePath, this.fileSize, null);
+    }
+
+    public boolean load() {
+        boolean result = this.mappedFileQueue.load();
+        log.info("load timer log " + (result ? "OK" : "Failed"));
+        return result;
+    }
+
+    /**
+     * Drop units after {@code offset}, which are not covered by checkpoint.
+     */
+    public void recover(final long offset) {
+        this.mappedFileQueue.setFlushedWhere(offset);
+        this.mappedFileQueue.setCommittedWhere(offset);
+        this.mappedFileQueue.truncateDirtyFiles(offset);
+        this.initOffset = offset;
+    }
+
+    /**
+     * Not thread safe, appended by one thread at a time.
+     *
+     * @return position of the unit, -1 if failed.
+     */
+    public long append(final long expireMs, final long offsetPy, final int sizePy, final long prevPos,
+        final long slotMs, final long deliverMs) {
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(this.initOffset);
+        if (null == mappedFile) {
+            log.error("create timer log file error");
+            return -1;
+        }
+
+        this.unitBuffer.clear();
+        this.unitBuffer.putLong(expireMs);
+        this.unitBuffer.putInt(UNIT_SIZE);
+        this.unitBuffer.putInt(sizePy);
+        this.unitBuffer.putLong(prevPos);
+        this.unitBuffer.putLong(slotMs);
+        this.unitBuffer.putLong(deliverMs);
+        this.unitBuffer.putLong(offsetPy);
+
+        long pos = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+        if (!mappedFile.appendMessage(this.unitBuffer.array())) {
+            log.error("append timer log error, pos {}", pos);
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the unit at {@code pos}, null if it is not found.
+     */
+    public Unit getUnit(final long pos) {
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos);
+        if (null == mappedFile) {
+            return null;
+        }
+
+        SelectMappedBufferResult result = mappedFile.selectMappedBuffer((int) (pos % this.fileSize), UNIT_SIZE);
+        if (null == result) {
+            return null;
+        }
+
+        try {
+            ByteBuffer byteBuffer = result.getByteBuffer();
+            long expireMs = byteBuffer.getLong();
+            int unitSize = byteBuffer.getInt();
+            if (unitSize != UNIT_SIZE) {
+                return null;
+            }
+            int sizePy = byteBuffer.getInt();
+            long prevPos = byteBuffer.getLong();
+            long slotMs = byteBuffer.getLong();
+            long deliverMs = byteBuffer.getLong();
+            long offsetPy = byteBuffer.getLong();
+            return new Unit(pos, expireMs, offsetPy, sizePy, prevPos, slotMs, deliverMs);
+        } finally {
+            result.release();
+        }
+    }
+
+    /**
+     * Relink the unit, only used when rebuilding wheel.
+     */
+    public void updatePrevPos(final long pos, final long prevPos) {
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos);
+        if (mappedFile != null) {
+            mappedFile.sliceByteBuffer().putLong((int) (pos % this.fileSize) + PREV_POS_INDEX, prevPos);
+        }
+    }
+
+    public void flush() {
+        this.mappedFileQueue.flush(0);
+    }
+
+    /**
+     * Delete files whose units all expire before {@code timeMs}.
+     */
+    public int deleteExpiredFile(final long timeMs) {
+        return this.mappedFileQueue.deleteExpiredFileByOffset(timeMs, UNIT_SIZE);
+    }
+
+    public long getMinOffset() {
+        return this.mappedFileQueue.getMinOffset();
+    }
+
+    public long getMaxOffset() {
+        return this.mappedFileQueue.getMaxOffset();
+    }
+
+    public void shutdown() {
+        this.mappedFileQueue.flush(0);
+        this.mappedFileQueue.shutdown(1000 * 30);
+    }
+
+    public void destroy() {
+        this.mappedFileQueue.destroy();
+    }
+
+    public static class Unit {
+        private final long pos;
+        private final long expireMs;
+        private final long offsetPy;
+        private final int sizePy;
+        private final long prevPos;
+        private final long slotMs;
+        private final long deliverMs;
+
+        public Unit(final long pos, final long expireMs, final long offsetPy, final int sizePy, final long prevPos,
+            final long slotMs, final long deliverMs) {
+            this.pos = pos;
+            this.expireMs = expireMs;
+            this.offsetPy = offsetPy;
+            this.sizePy = sizePy;
+            this.prevPos = prevPos;
+            this.slotMs = slotMs;
+            this.deliverMs = deliverMs;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public long getExpireMs() {
+            return expireMs;
+        }
+
+        public long getOffsetPy() {
+            return offsetPy;
+        }
+
+        public int getSizePy() {
+            return sizePy;
+        }
+
+        public long getPrevPos() {
+            return prevPos;
+        }
+
+        public long getSlotMs() {
+            return slotMs;
+        }
+
+        public long getDeliverMs() {
+            return deliverMs;
+        }
+    }
+}
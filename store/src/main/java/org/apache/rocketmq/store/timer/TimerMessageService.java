@@ -0,0 +1,693 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.common.ConfigManager;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.TopicFilterType;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.config.StorePathConfigHelper;
+
+/**
+ * Deliver messages at arbitrary timestamp.
+ * <p>
+ * Messages are routed to {@link TopicValidator#RMQ_SYS_WHEEL_TIMER} when put, the enqueue thread reads them from
+ * consume queue and links them into the slot of {@link TimerWheel} covering their delivery time, units are appended
+ * to {@link TimerLog}. The dequeue thread walks the wheel slot by slot as time goes on, and puts messages of the
+ * slot back to their real topic. Messages delivered beyond the span of wheel are linked into the last slot of the
+ * span first, and linked again when the slot is dequeued, like an upper level of wheel.
+ * </p>
+ * <p>
+ * Timer log and wheel are flushed with a checkpoint periodically, a message may be delivered again after
+ * abnormal shutdown, but never lost.
+ * </p>
+ */
+public class TimerMessageService extends ConfigManager {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    private static final long IDLE_INTERVAL = 100L;
+    private static final long RETRY_INTERVAL = 1000L;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final int precisionMs;
+    private final long wheelSpanMs;
+    private final int deliverBatchSize;
+    private final TimerLog timerLog;
+    private TimerWheel timerWheel;
+    private MessageStore writeMessageStore;
+
+    private final Object linkLock = new Object();
+    private volatile long enqueueOffset = 0;
+    // slots before it are being or have been dequeued, nothing is linked into them any longer.
+    private volatile long dequeueMs = 0;
+    // slots before it have been delivered.
+    private volatile long committedMs = 0;
+    private TimerCheckpoint checkpoint = new TimerCheckpoint();
+
+    private final TimerEnqueueService enqueueService = new TimerEnqueueService();
+    private final TimerDequeueService dequeueService = new TimerDequeueService();
+    private final TimerFlushService flushService = new TimerFlushService();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private final AtomicLong enqueueNum = new AtomicLong(0);
+    private final AtomicLong rollNum = new AtomicLong(0);
+    private final AtomicLong deliverNum = new AtomicLong(0);
+    private volatile long lastDeliverLagMs = 0;
+
+    public TimerMessageService(final DefaultMessageStore defaultMessageStore) {
+        this.defaultMessageStore = defaultMessageStore;
+        this.writeMessageStore = defaultMessageStore;
+
+        MessageStoreConfig messageStoreConfig = defaultMessageStore.getMessageStoreConfig();
+        this.precisionMs = Math.max(1, messageStoreConfig.getTimerPrecisionMs());
+        long spanMs = (long) messageStoreConfig.getTimerWheelSpanSec() * 1000;
+        this.wheelSpanMs = Math.max(2, spanMs / this.precisionMs) * this.precisionMs;
+        this.deliverBatchSize = Math.max(1, messageStoreConfig.getTimerDeliverBatchSize());
+        this.timerLog = new TimerLog(StorePathConfigHelper.getStorePathTimerLog(messageStoreConfig.getStorePathRootDir()),
+            messageStoreConfig.getTimerLogFileSize());
+    }
+
+    /**
+     * @param writeMessageStore the writeMessageStore to set
+     */
+    public void setWriteMessageStore(MessageStore writeMessageStore) {
+        this.writeMessageStore = writeMessageStore;
+    }
+
+    /**
+     * Route a message to be delivered in future to the timer topic, after backing up its real topic and queue.
+     *
+     * @return true if the message is routed, false if it should be delivered right now.
+     */
+    public boolean routeToTimer(final MessageExtBrokerInner msg) {
+        String deliverMsStr = msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        if (null == deliverMsStr) {
+            return false;
+        }
+
+        try {
+            if (Long.parseLong(deliverMsStr) <= System.currentTimeMillis()) {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Illegal deliver time {} of message, deliver it right now", deliverMsStr);
+            return false;
+        }
+
+        // Backup real topic, queueId
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_TOPIC, msg.getTopic());
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_QUEUE_ID, String.valueOf(msg.getQueueId()));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+
+        msg.setTopic(TopicValidator.RMQ_SYS_WHEEL_TIMER);
+        msg.setQueueId(0);
+        return true;
+    }
+
+    public boolean load(final boolean lastExitOK) {
+        boolean result = super.load();
+        result = result && this.timerLog.load();
+        if (!result) {
+            return false;
+        }
+
+        try {
+            int slotNum = (int) (2 * this.wheelSpanMs / this.precisionMs);
+            this.timerWheel = new TimerWheel(StorePathConfigHelper.getTimerWheelPath(
+                this.defaultMessageStore.getMessageStoreConfig().getStorePathRootDir()), slotNum, this.precisionMs);
+        } catch (IOException e) {
+            log.error("load timer wheel exception", e);
+            return false;
+        }
+
+        this.enqueueOffset = this.checkpoint.getEnqueueOffset();
+        this.committedMs = this.checkpoint.getDequeueMs() > 0 ? this.checkpoint.getDequeueMs()
+            : System.currentTimeMillis() / this.precisionMs * this.precisionMs;
+        this.dequeueMs = this.committedMs;
+        this.timerLog.recover(this.checkpoint.getTimerLogOffset());
+
+        if (!lastExitOK || this.timerWheel.isCreated()) {
+            this.rebuildWheel();
+        }
+
+        log.info("load timer message service, enqueueOffset={}, dequeueMs={}, timerLogOffset={}",
+            this.enqueueOffset, this.dequeueMs, this.checkpoint.getTimerLogOffset());
+        return true;
+    }
+
+    /**
+     * Link units not dequeued yet into the wheel again, slots of wheel may be not consistent with timer log.
+     */
+    private void rebuildWheel() {
+        long beginTime = System.currentTimeMillis();
+        this.timerWheel.reset();
+
+        long minOffset = this.timerLog.getMinOffset();
+        long maxOffset = this.timerLog.getMaxOffset();
+        int linkedNum = 0;
+        for (long pos = Math.max(0, minOffset); pos + TimerLog.UNIT_SIZE <= maxOffset; pos += TimerLog.UNIT_SIZE) {
+            TimerLog.Unit unit = this.timerLog.getUnit(pos);
+            if (null == unit) {
+                log.warn("timer log unit at {} is illegal, skip it", pos);
+                continue;
+            }
+
+            if (unit.getSlotMs() < this.dequeueMs) {
+                continue;
+            }
+
+            TimerWheel.Slot slot = this.timerWheel.getSlot(unit.getSlotMs());
+            this.timerLog.updatePrevPos(pos, slot.getLastPos());
+            this.timerWheel.putSlot(unit.getSlotMs(), slot.getFirstPos() < 0 ? pos : slot.getFirstPos(), pos,
+                slot.getNum() + 1);
+            linkedNum++;
+        }
+
+        log.info("rebuild timer wheel over, timer log [{}, {}), {} units linked, elapsed time {}ms",
+            minOffset, maxOffset, linkedNum, System.currentTimeMillis() - beginTime);
+    }
+
+    public void start() {
+        if (this.started.compareAndSet(false, true)) {
+            this.enqueueService.start();
+            this.dequeueService.start();
+            this.flushService.start();
+        }
+    }
+
+    public void shutdown() {
+        if (this.started.compareAndSet(true, false)) {
+            this.enqueueService.shutdown();
+            this.dequeueService.shutdown();
+            // make the final checkpoint after others stopped.
+            this.flushService.shutdown();
+        }
+    }
+
+    /**
+     * Release files, after shutdown.
+     */
+    public void close() {
+        this.timerLog.shutdown();
+        if (this.timerWheel != null) {
+            this.timerWheel.shutdown();
+            this.timerWheel = null;
+        }
+    }
+
+    public void destroy() {
+        this.timerLog.destroy();
+        String rootDir = this.defaultMessageStore.getMessageStoreConfig().getStorePathRootDir();
+        if (this.timerWheel != null) {
+            this.timerWheel.destroy();
+            this.timerWheel = null;
+        } else {
+            new File(StorePathConfigHelper.getTimerWheelPath(rootDir)).delete();
+        }
+        new File(StorePathConfigHelper.getTimerCheckpointPath(rootDir)).delete();
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * Link the message into wheel, or deliver it if it is due.
+     *
+     * @return false if failed, it should be retried.
+     */
+    private boolean enqueue(final long offsetPy, final int sizePy, final long deliverMs) {
+        long slotMs = this.slotOf(deliverMs);
+        synchronized (this.linkLock) {
+            if (slotMs >= this.dequeueMs) {
+                long linkSlotMs = Math.min(slotMs, this.dequeueMs + this.wheelSpanMs - this.precisionMs);
+                TimerWheel.Slot slot = this.timerWheel.getSlot(linkSlotMs);
+                long pos = this.timerLog.append(this.dequeueMs + this.wheelSpanMs, offsetPy, sizePy,
+                    slot.getLastPos(), linkSlotMs, deliverMs);
+                if (pos < 0) {
+                    return false;
+                }
+                this.timerWheel.putSlot(linkSlotMs, slot.getFirstPos() < 0 ? pos : slot.getFirstPos(), pos,
+                    slot.getNum() + 1);
+
+                if (linkSlotMs < slotMs) {
+                    this.rollNum.incrementAndGet();
+                } else {
+                    this.enqueueNum.incrementAndGet();
+                }
+                return true;
+            }
+        }
+
+        MessageExtBrokerInner msgInner = this.lookMessage(offsetPy, sizePy, deliverMs);
+        if (null == msgInner) {
+            return true;
+        }
+        return this.putMessage(msgInner, deliverMs);
+    }
+
+    /**
+     * Deliver all messages of the slot, those delivered later are linked again.
+     */
+    private void dequeue(final long slotMs) {
+        TimerWheel.Slot slot = this.timerWheel.getSlot(slotMs);
+        List<TimerLog.Unit> batch = new ArrayList<TimerLog.Unit>(this.deliverBatchSize);
+        long pos = slot.getLastPos();
+        while (pos >= 0) {
+            TimerLog.Unit unit = this.timerLog.getUnit(pos);
+            if (null == unit) {
+                log.error("[BUG] timer log unit at {} of slot {} not found", pos, slotMs);
+                break;
+            }
+
+            batch.add(unit);
+            if (batch.size() >= this.deliverBatchSize) {
+                this.deliver(batch);
+                batch.clear();
+            }
+            pos = unit.getPrevPos();
+        }
+        this.deliver(batch);
+    }
+
+    private void deliver(final List<TimerLog.Unit> units) {
+        List<MessageExtBrokerInner> msgs = new ArrayList<MessageExtBrokerInner>(units.size());
+        List<Long> deliverTimes = new ArrayList<Long>(units.size());
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<CompletableFuture<PutMessageResult>>(units.size());
+        for (TimerLog.Unit unit : units) {
+            if (this.slotOf(unit.getDeliverMs()) > unit.getSlotMs()) {
+                // rolled over, not due yet.
+                while (!this.enqueue(unit.getOffsetPy(), unit.getSizePy(), unit.getDeliverMs()) && this.isStarted()) {
+                    this.sleep(RETRY_INTERVAL);
+                }
+                continue;
+            }
+
+            MessageExtBrokerInner msgInner = this.lookMessage(unit.getOffsetPy(), unit.getSizePy(), unit.getDeliverMs());
+            if (msgInner != null) {
+                msgs.add(msgInner);
+                deliverTimes.add(unit.getDeliverMs());
+                futures.add(this.writeMessageStore.asyncPutMessage(msgInner));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            PutMessageResult putMessageResult = null;
+            try {
+                putMessageResult = futures.get(i).get();
+            } catch (Exception e) {
+                log.warn("timer message put exception, put it again", e);
+            }
+
+            if (!this.isPutDone(msgs.get(i), putMessageResult, deliverTimes.get(i))) {
+                this.putMessage(msgs.get(i), deliverTimes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Put synchronously until it is done or the service is stopped.
+     */
+    private boolean putMessage(final MessageExtBrokerInner msgInner, final long deliverMs) {
+        while (true) {
+            PutMessageResult putMessageResult = this.writeMessageStore.putMessage(msgInner);
+            if (this.isPutDone(msgInner, putMessageResult, deliverMs)) {
+                return true;
+            }
+
+            if (!this.isStarted()) {
+                return false;
+            }
+            this.sleep(RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * @return false if it should be put again.
+     */
+    private boolean isPutDone(final MessageExtBrokerInner msgInner, final PutMessageResult putMessageResult,
+        final long deliverMs) {
+        if (null == putMessageResult) {
+            return false;
+        }
+
+        switch (putMessageResult.getPutMessageStatus()) {
+            case PUT_OK:
+            case FLUSH_DISK_TIMEOUT:
+            case FLUSH_SLAVE_TIMEOUT:
+            case SLAVE_NOT_AVAILABLE:
+                this.deliverNum.incrementAndGet();
+                this.lastDeliverLagMs = System.currentTimeMillis() - deliverMs;
+                if (this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()
+                    && putMessageResult.getAppendMessageResult() != null) {
+                    this.defaultMessageStore.getBrokerStatsManager().incTopicPutNums(msgInner.getTopic(),
+                        putMessageResult.getAppendMessageResult().getMsgNum(), 1);
+                    this.defaultMessageStore.getBrokerStatsManager().incTopicPutSize(msgInner.getTopic(),
+                        putMessageResult.getAppendMessageResult().getWroteBytes());
+                    this.defaultMessageStore.getBrokerStatsManager().incBrokerPutNums(
+                        putMessageResult.getAppendMessageResult().getMsgNum());
+                }
+                return true;
+            case MESSAGE_ILLEGAL:
+            case PROPERTIES_SIZE_EXCEEDED:
+                log.error("timer message time up, but it is illegal, drop it. topic: {} msgId {}",
+                    msgInner.getTopic(), msgInner.getMsgId());
+                return true;
+            default:
+                log.error("timer message time up, but reput it failed, status {}, topic: {}",
+                    putMessageResult.getPutMessageStatus(), msgInner.getTopic());
+                return false;
+        }
+    }
+
+    /**
+     * @return message put back to real topic, null if it is not found or should be dropped.
+     */
+    private MessageExtBrokerInner lookMessage(final long offsetPy, final int sizePy, final long deliverMs) {
+        MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+        if (null == msgExt) {
+            log.warn("timer message not found, maybe expired, offsetPy={}, sizePy={}, deliverMs={}",
+                offsetPy, sizePy, deliverMs);
+            return null;
+        }
+
+        MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
+        if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
+            log.error("[BUG] the real topic of timer msg is {}, discard the msg. msg={}",
+                msgInner.getTopic(), msgInner);
+            return null;
+        }
+        return msgInner;
+    }
+
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue =
+            MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+        // never routed to timer again.
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+
+        String queueIdStr = msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID);
+        int queueId = Integer.parseInt(queueIdStr);
+        msgInner.setQueueId(queueId);
+
+        return msgInner;
+    }
+
+    /**
+     * @return time of slot to which the delivery time belongs, messages are never delivered before their time.
+     */
+    private long slotOf(final long deliverMs) {
+        return (deliverMs + this.precisionMs - 1) / this.precisionMs * this.precisionMs;
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Flush timer log and wheel, then persist what they cover.
+     */
+    private void doCheckpoint() {
+        TimerCheckpoint snapshot = new TimerCheckpoint();
+        // read dequeue progress before timer log, units rolled over are never lost.
+        snapshot.setDequeueMs(this.committedMs);
+        snapshot.setEnqueueOffset(this.enqueueOffset);
+        snapshot.setTimerLogOffset(this.timerLog.getMaxOffset());
+
+        this.timerLog.flush();
+        this.timerWheel.flush();
+        this.checkpoint = snapshot;
+        this.persist();
+
+        int deleteCount = this.timerLog.deleteExpiredFile(snapshot.getDequeueMs());
+        if (deleteCount > 0) {
+            log.info("delete {} expired timer log files before {}", deleteCount, snapshot.getDequeueMs());
+        }
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        long maxOffset = this.defaultMessageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, 0);
+        stats.put(RunningStats.timerMessageOffset.name(), String.format("%d,%d", this.enqueueOffset, maxOffset));
+        stats.put(RunningStats.timerDeliverLag.name(), String.valueOf(this.getDeliverLagMs()));
+    }
+
+    /**
+     * @return how far the delivered slots fall behind current time in milliseconds.
+     */
+    public long getDeliverLagMs() {
+        return Math.max(0, System.currentTimeMillis() - this.committedMs - this.precisionMs);
+    }
+
+    public long getEnqueueOffset() {
+        return enqueueOffset;
+    }
+
+    public long getDequeueMs() {
+        return dequeueMs;
+    }
+
+    public long getEnqueueNum() {
+        return enqueueNum.get();
+    }
+
+    public long getRollNum() {
+        return rollNum.get();
+    }
+
+    public long getDeliverNum() {
+        return deliverNum.get();
+    }
+
+    public long getLastDeliverLagMs() {
+        return lastDeliverLagMs;
+    }
+
+    public TimerLog getTimerLog() {
+        return timerLog;
+    }
+
+    @Override
+    public String encode() {
+        return this.encode(false);
+    }
+
+    @Override
+    public String encode(final boolean prettyFormat) {
+        return this.checkpoint.toJson(prettyFormat);
+    }
+
+    @Override
+    public void decode(String jsonString) {
+        if (jsonString != null) {
+            TimerCheckpoint timerCheckpoint = TimerCheckpoint.fromJson(jsonString, TimerCheckpoint.class);
+            if (timerCheckpoint != null) {
+                this.checkpoint = timerCheckpoint;
+            }
+        }
+    }
+
+    @Override
+    public String configFilePath() {
+        return StorePathConfigHelper.getTimerCheckpointPath(this.defaultMessageStore.getMessageStoreConfig()
+            .getStorePathRootDir());
+    }
+
+    class TimerEnqueueService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return TimerEnqueueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    if (!this.doEnqueue()) {
+                        this.waitForRunning(IDLE_INTERVAL);
+                    }
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                    this.waitForRunning(RETRY_INTERVAL);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+
+        /**
+         * @return true if any unit of consume queue is enqueued.
+         */
+        private boolean doEnqueue() {
+            ConsumeQueue cq = TimerMessageService.this.defaultMessageStore.findConsumeQueue(
+                TopicValidator.RMQ_SYS_WHEEL_TIMER, 0);
+            long offset = TimerMessageService.this.enqueueOffset;
+            SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(offset);
+            if (null == bufferCQ) {
+                long cqMinOffset = cq.getMinOffsetInQueue();
+                if (offset < cqMinOffset) {
+                    log.error("timer CQ offset invalid. offset={}, cqMinOffset={}", offset, cqMinOffset);
+                    TimerMessageService.this.enqueueOffset = cqMinOffset;
+                    return true;
+                }
+                return false;
+            }
+
+            int num = 0;
+            try {
+                ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
+                for (int i = 0; i < bufferCQ.getSize() && !this.isStopped(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                    long offsetPy = bufferCQ.getByteBuffer().getLong();
+                    int sizePy = bufferCQ.getByteBuffer().getInt();
+                    long deliverMs = bufferCQ.getByteBuffer().getLong();
+
+                    if (cq.isExtAddr(deliverMs)) {
+                        if (cq.getExt(deliverMs, cqExtUnit)) {
+                            deliverMs = cqExtUnit.getTagsCode();
+                        } else {
+                            //can't find ext content.So re compute deliver time.
+                            log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}",
+                                deliverMs, offsetPy, sizePy);
+                            MessageExt msgExt = TimerMessageService.this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+                            deliverMs = msgExt != null ? msgExt.getDeliverTimeMs() : 0;
+                        }
+                    }
+
+                    if (!TimerMessageService.this.enqueue(offsetPy, sizePy, deliverMs)) {
+                        break;
+                    }
+                    num++;
+                    TimerMessageService.this.enqueueOffset = offset + num;
+                }
+            } finally {
+                bufferCQ.release();
+            }
+            return num > 0;
+        }
+    }
+
+    class TimerDequeueService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return TimerDequeueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    long slotMs = TimerMessageService.this.dequeueMs;
+                    long now = System.currentTimeMillis();
+                    if (now < slotMs) {
+                        this.waitForRunning(Math.min(slotMs - now, IDLE_INTERVAL));
+                        continue;
+                    }
+
+                    synchronized (TimerMessageService.this.linkLock) {
+                        TimerMessageService.this.dequeueMs = slotMs + TimerMessageService.this.precisionMs;
+                    }
+                    TimerMessageService.this.dequeue(slotMs);
+                    if (TimerMessageService.this.isStarted()) {
+                        TimerMessageService.this.committedMs = slotMs + TimerMessageService.this.precisionMs;
+                    }
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                    this.waitForRunning(RETRY_INTERVAL);
+                }
+            }
+
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+
+    class TimerFlushService extends ServiceThread {
+
+        @Override
+        public String getServiceName() {
+            return TimerFlushService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+
+            while (!this.isStopped()) {
+                try {
+                    this.waitForRunning(TimerMessageService.this.defaultMessageStore.getMessageStoreConfig()
+                        .getFlushDelayOffsetInterval());
+                    TimerMessageService.this.doCheckpoint();
+                } catch (Throwable e) {
+                    log.error(this.getServiceName() + " service has exception. ", e);
+                }
+            }
+
+            TimerMessageService.this.doCheckpoint();
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * Slots of timing wheel, mapped from one file. Each slot covers {@code precisionMs} and keeps the head and tail
+ * of a list of units in {@link TimerLog}, so pending timers are never held in memory.
+ * <p>
+ * The slot of time {@code t} is {@code (t / precisionMs) % slotNum}, the time of slot is stored too, a slot left by
+ * the last round of wheel is regarded as empty.
+ * </p>
+ */
+public class TimerWheel {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    // slotMs(8) + firstPos(8) + lastPos(8) + num(4) + reserved(4)
+    public static final int SLOT_SIZE = 32;
+
+    private final String fileName;
+    private final int slotNum;
+    private final int precisionMs;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+    private final boolean created;
+
+    public TimerWheel(final String fileName, final int slotNum, final int precisionMs) throws IOException {
+        this.fileName = fileName;
+        this.slotNum = slotNum;
+        this.precisionMs = precisionMs;
+
+        File file = new File(fileName);
+        MappedFile.ensureDirOK(file.getParent());
+        long size = (long) slotNum * SLOT_SIZE;
+        boolean matched = file.exists() && file.length() == size;
+        if (file.exists() && !matched) {
+            log.warn("timer wheel {} length {} not matched slot num {}, recreate it", fileName, file.length(), slotNum);
+            if (!file.delete()) {
+                throw new IOException("Failed to delete timer wheel " + fileName);
+            }
+        }
+        this.created = !matched;
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * @return the slot covering {@code slotMs}, which must be aligned to precision.
+     */
+    public Slot getSlot(final long slotMs) {
+        int index = this.indexOf(slotMs);
+        if (this.mappedByteBuffer.getLong(index) != slotMs) {
+            return new Slot(slotMs, -1, -1, 0);
+        }
+        return new Slot(slotMs, this.mappedByteBuffer.getLong(index + 8), this.mappedByteBuffer.getLong(index + 16),
+            this.mappedByteBuffer.getInt(index + 24));
+    }
+
+    public void putSlot(final long slotMs, final long firstPos, final long lastPos, final int num) {
+        int index = this.indexOf(slotMs);
+        this.mappedByteBuffer.putLong(index + 8, firstPos);
+        this.mappedByteBuffer.putLong(index + 16, lastPos);
+        this.mappedByteBuffer.putInt(index + 24, num);
+        // publish time of slot at last.
+        this.mappedByteBuffer.putLong(index, slotMs);
+    }
+
+    /**
+     * Clear all slots, e.g. before rebuilding from timer log.
+     */
+    public void reset() {
+        for (int i = 0; i < this.slotNum; i++) {
+            this.mappedByteBuffer.putLong(i * SLOT_SIZE, -1);
+        }
+    }
+
+    public void flush() {
+        this.mappedByteBuffer.force();
+    }
+
+    public void shutdown() {
+        this.flush();
+        MappedFile.clean(this.mappedByteBuffer);
+        try {
+            this.fileChannel.close();
+            this.randomAccessFile.close();
+        } catch (IOException e) {
+            log.error("close timer wheel " + this.fileName + " exception", e);
+        }
+    }
+
+    public void destroy() {
+        this.shutdown();
+        if (!new File(this.fileName).delete()) {
+            log.warn("delete timer wheel {} failed", this.fileName);
+        }
+    }
+
+    /**
+     * @return true if the file was not found or not usable, slots have to be rebuilt.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    public int getSlotNum() {
+        return slotNum;
+    }
+
+    public int getPrecisionMs() {
+        return precisionMs;
+    }
+
+    private int indexOf(final long slotMs) {
+        return (int) ((slotMs / this.precisionMs) % this.slotNum) * SLOT_SIZE;
+    }
+
+    public static class Slot {
+        private final long slotMs;
+        private final long firstPos;
+        private final long lastPos;
+        private final int num;
+
+        public Slot(final long slotMs, final long firstPos, final long lastPos, final int num) {
+            this.slotMs = slotMs;
+            this.firstPos = firstPos;
+            this.lastPos = lastPos;
+            this.num = num;
+        }
+
+        public long getSlotMs() {
+            return slotMs;
+        }
+
+        public long getFirstPos() {
+            return firstPos;
+        }
+
+        public long getLastPos() {
+            return lastPos;
+        }
+
+        public int getNum() {
+            return num;
+        }
+    }
+}
@@ -134,6 +134,29 @@ public class BatchPutMessageTest {
 
     }
 
+    @Test
+    public void testPutTimerMessages() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        String topic = "batch-write-topic";
+        for (int i = 0; i < 10; i++) {
+            Message msg = new Message();
+            msg.setBody(("body" + i).getBytes());
+            msg.setTopic(topic);
+            messages.add(msg);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(topic);
+        messageExtBatch.setQueueId(0);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        messageExtBatch.setDeliverTimeMs(System.currentTimeMillis() + 60 * 1000);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setStoreHost(new InetSocketAddress("127.0.0.1", 125));
+        messageExtBatch.setBornHost(new InetSocketAddress("127.0.0.1", 126));
+
+        assertThat(messageStore.putMessages(messageExtBatch).getPutMessageStatus()).isEqualTo(PutMessageStatus.MESSAGE_ILLEGAL);
+        assertThat(messageStore.asyncPutMessages(messageExtBatch).get().getPutMessageStatus()).isEqualTo(PutMessageStatus.MESSAGE_ILLEGAL);
+    }
+
     @Test
     public void testPutIPv6HostMessages() throws Exception {
         List<Message> messages = new ArrayList<>();
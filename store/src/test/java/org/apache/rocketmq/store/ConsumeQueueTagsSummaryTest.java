@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumeQueueTagsSummaryTest {
+
+    @Test
+    public void testRecordAndMayContain() {
+        ConsumeQueueTagsSummary summary = new ConsumeQueueTagsSummary(4);
+        for (int i = 0; i < 8; i++) {
+            summary.record(i, i < 4 ? "TagA".hashCode() : "TagB".hashCode());
+        }
+        summary.record(8, "TagA".hashCode());
+
+        ConsumeQueueTagsSummary.Block first = summary.getCompletedBlock(2);
+        assertThat(first).isNotNull();
+        assertThat(first.getStartOffset()).isEqualTo(0);
+        assertThat(first.getEndOffset()).isEqualTo(4);
+        assertThat(first.mayContain("TagA".hashCode())).isTrue();
+        assertThat(first.mayContain("TagB".hashCode())).isFalse();
+
+        ConsumeQueueTagsSummary.Block second = summary.getCompletedBlock(4);
+        assertThat(second).isNotNull();
+        assertThat(second.mayContain("TagB".hashCode())).isTrue();
+        assertThat(second.mayContain("TagA".hashCode())).isFalse();
+
+        // last block is not full
+        assertThat(summary.getCompletedBlock(8)).isNull();
+    }
+
+    @Test
+    public void testRecordRepeatedly() {
+        ConsumeQueueTagsSummary summary = new ConsumeQueueTagsSummary(4);
+        for (int i = 0; i < 4; i++) {
+            summary.record(i, "TagA".hashCode());
+            summary.record(i, "TagA".hashCode());
+        }
+        assertThat(summary.getCompletedBlock(0)).isNotNull();
+    }
+
+    @Test
+    public void testBlockWithGap() {
+        ConsumeQueueTagsSummary summary = new ConsumeQueueTagsSummary(4);
+        // started in the middle of a block
+        for (int i = 2; i < 8; i++) {
+            summary.record(i, "TagA".hashCode());
+        }
+        assertThat(summary.getCompletedBlock(2)).isNull();
+        assertThat(summary.getCompletedBlock(4)).isNotNull();
+
+        summary.record(8, "TagA".hashCode());
+        summary.record(10, "TagA".hashCode());
+        summary.record(11, "TagA".hashCode());
+        assertThat(summary.getCompletedBlock(8)).isNull();
+    }
+
+    @Test
+    public void testTruncate() {
+        ConsumeQueueTagsSummary summary = new ConsumeQueueTagsSummary(4);
+        for (int i = 0; i < 16; i++) {
+            summary.record(i, "TagA".hashCode());
+        }
+        assertThat(summary.getBlockCount()).isEqualTo(4);
+
+        summary.truncateByMinOffset(5);
+        assertThat(summary.getCompletedBlock(0)).isNull();
+        assertThat(summary.getCompletedBlock(4)).isNotNull();
+
+        summary.truncateByMaxOffset(10);
+        assertThat(summary.getCompletedBlock(8)).isNull();
+        assertThat(summary.getCompletedBlock(4)).isNotNull();
+        assertThat(summary.getBlockCount()).isEqualTo(1);
+
+        summary.clear();
+        assertThat(summary.getBlockCount()).isEqualTo(0);
+    }
+}
@@ -29,15 +29,21 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.filter.FilterAPI;
+import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.config.StorePathConfigHelper;
+import org.apache.rocketmq.store.index.IndexService;
+import org.apache.rocketmq.store.index.IndexedPropertyResolver;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 import org.junit.After;
 import org.junit.Before;
@@ -507,6 +513,162 @@ public class DefaultMessageStoreTest {
 
     }
 
+    @Test
+    public void testGetMessageSkipByTagsSummary() throws Exception {
+        String topic = "tagsSummaryTopic";
+        getDefaultMessageStore().getMessageStoreConfig().setConsumeQueueTagsSummaryBlockSize(8);
+
+        for (int i = 0; i < 17; i++) {
+            MessageExtBrokerInner messageExtBrokerInner = buildMessage();
+            messageExtBrokerInner.setTopic(topic);
+            messageExtBrokerInner.setQueueId(0);
+            messageExtBrokerInner.setTags(i < 16 ? "TAG1" : "TAG2");
+            messageExtBrokerInner.setPropertiesString(MessageDecoder.messageProperties2String(messageExtBrokerInner.getProperties()));
+            messageStore.putMessage(messageExtBrokerInner);
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+
+        String group = "simple";
+        MessageFilter tag2Filter = new DefaultMessageFilter(FilterAPI.buildSubscriptionData(topic, "TAG2"));
+        GetMessageResult result = messageStore.getMessage(group, topic, 0, 0, 32, tag2Filter);
+        assertThat(result.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+        assertThat(result.getMessageCount()).isEqualTo(1);
+        assertThat(result.getNextBeginOffset()).isEqualTo(17);
+        result.release();
+        assertThat(getDefaultMessageStore().getStoreStatsService().getGetMessageSkippedByTagsSummary().get()).isEqualTo(16);
+
+        // pull from the middle of a block
+        result = messageStore.getMessage(group, topic, 0, 3, 32, tag2Filter);
+        assertThat(result.getMessageCount()).isEqualTo(1);
+        result.release();
+        assertThat(getDefaultMessageStore().getStoreStatsService().getGetMessageSkippedByTagsSummary().get()).isEqualTo(29);
+
+        MessageFilter tag1Filter = new DefaultMessageFilter(FilterAPI.buildSubscriptionData(topic, "TAG1"));
+        result = messageStore.getMessage(group, topic, 0, 0, 32, tag1Filter);
+        assertThat(result.getMessageCount()).isEqualTo(16);
+        result.release();
+    }
+
+    @Test
+    public void testGetMessageAllSkippedByTagsSummary() throws Exception {
+        String topic = "tagsSummaryTopic";
+        getDefaultMessageStore().getMessageStoreConfig().setConsumeQueueTagsSummaryBlockSize(8);
+
+        for (int i = 0; i < 16; i++) {
+            MessageExtBrokerInner messageExtBrokerInner = buildMessage();
+            messageExtBrokerInner.setTopic(topic);
+            messageExtBrokerInner.setQueueId(0);
+            messageExtBrokerInner.setTags("TAG1");
+            messageExtBrokerInner.setPropertiesString(MessageDecoder.messageProperties2String(messageExtBrokerInner.getProperties()));
+            messageStore.putMessage(messageExtBrokerInner);
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+
+        String group = "simple";
+        MessageFilter tag2Filter = new DefaultMessageFilter(FilterAPI.buildSubscriptionData(topic, "TAG2"));
+        GetMessageResult result = messageStore.getMessage(group, topic, 0, 0, 32, tag2Filter);
+        assertThat(result.getStatus()).isEqualTo(GetMessageStatus.NO_MATCHED_MESSAGE);
+        assertThat(result.getMessageCount()).isEqualTo(0);
+        assertThat(result.getNextBeginOffset()).isEqualTo(16);
+        assertThat(result.isSuggestPullingFromSlave()).isFalse();
+        result.release();
+        assertThat(getDefaultMessageStore().getStoreStatsService().getGetMessageSkippedByTagsSummary().get()).isEqualTo(16);
+
+        // only the last skipped message is behind, not the whole commit log.
+        long fallBehind = getDefaultMessageStore().getBrokerStatsManager().getMomentStatsItemSetFallSize()
+            .getAndCreateStatsItem("0@" + topic + "@" + group).getValue().get();
+        assertThat(fallBehind).isEqualTo(messageStore.getMaxPhyOffset() - messageStore.getCommitLogOffsetInQueue(topic, 0, 15));
+    }
+
+    @Test
+    public void testQueryMessageByIndexBuilders() throws Exception {
+        messageStore.shutdown();
+        messageStore.destroy();
+
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024 * 10);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 1024 * 10);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        // several index files
+        messageStoreConfig.setMaxIndexNum(100);
+        messageStoreConfig.setIndexBuildThreadNum(4);
+        messageStoreConfig.setIndexKeyBloomBitsPerKey(8);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest"), new MyMessageArrivingListener(), new BrokerConfig());
+        assertTrue(messageStore.load());
+        messageStore.start();
+
+        String topic = "indexTopic";
+        int msgNum = 200;
+        MessageBody = StoreMessage.getBytes();
+        for (int i = 0; i < msgNum; i++) {
+            MessageExtBrokerInner messageExtBrokerInner = buildMessage();
+            messageExtBrokerInner.setTopic(topic);
+            messageExtBrokerInner.setQueueId(0);
+            messageExtBrokerInner.setKeys("key" + i);
+            messageExtBrokerInner.setPropertiesString(MessageDecoder.messageProperties2String(messageExtBrokerInner.getProperties()));
+            messageStore.putMessage(messageExtBrokerInner);
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+
+        for (int i = 0; i < msgNum; i++) {
+            QueryMessageResult result = null;
+            for (int times = 0; times < 100; times++) {
+                result = messageStore.queryMessage(topic, "key" + i, 32, 0, Long.MAX_VALUE);
+                if (result.getMessageBufferList().size() > 0) {
+                    break;
+                }
+                result.release();
+                Thread.sleep(10);
+            }
+            assertThat(result.getMessageBufferList()).hasSize(1);
+            MessageExt msg = MessageDecoder.decode(result.getMessageBufferList().get(0));
+            assertThat(msg.getKeys()).isEqualTo("key" + i);
+            result.release();
+        }
+
+        StoreStatsService storeStatsService = getDefaultMessageStore().getStoreStatsService();
+        assertThat(storeStatsService.getQueryMessageTimesTotal().get()).isGreaterThanOrEqualTo(msgNum);
+        // keys are spread over several files, most of them are skipped by key bloom filter.
+        assertThat(storeStatsService.getQueryIndexFileSkipped().get()).isGreaterThan(storeStatsService.getQueryIndexFileScanned().get());
+
+        QueryMessageResult result = messageStore.queryMessage(topic, "absentKey", 32, 0, Long.MAX_VALUE);
+        assertThat(result.getMessageBufferList()).isEmpty();
+    }
+
+    @Test
+    public void testQueryMessageByIndexedProperty() throws Exception {
+        final String topic = "propertyIndexTopic";
+        getDefaultMessageStore().setIndexedPropertyResolver(new IndexedPropertyResolver() {
+            @Override
+            public Set<String> getIndexedProperties(String t) {
+                return topic.equals(t) ? Collections.singleton("region") : null;
+            }
+        });
+
+        MessageBody = StoreMessage.getBytes();
+        for (int i = 0; i < 20; i++) {
+            MessageExtBrokerInner messageExtBrokerInner = buildMessage();
+            messageExtBrokerInner.setTopic(topic);
+            messageExtBrokerInner.setQueueId(0);
+            messageExtBrokerInner.putUserProperty("region", i % 2 == 0 ? "east" : "west");
+            messageExtBrokerInner.putUserProperty("color", "red");
+            messageExtBrokerInner.setPropertiesString(MessageDecoder.messageProperties2String(messageExtBrokerInner.getProperties()));
+            messageStore.putMessage(messageExtBrokerInner);
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+
+        QueryMessageResult result = messageStore.queryMessage(topic, IndexService.buildPropertyKey("region", "east"), 32, 0, Long.MAX_VALUE);
+        assertThat(result.getMessageBufferList()).hasSize(10);
+        for (ByteBuffer buffer : result.getMessageBufferList()) {
+            assertThat(MessageDecoder.decode(buffer).getUserProperty("region")).isEqualTo("east");
+        }
+        result.release();
+
+        // not indexed property
+        result = messageStore.queryMessage(topic, IndexService.buildPropertyKey("color", "red"), 32, 0, Long.MAX_VALUE);
+        assertThat(result.getMessageBufferList()).isEmpty();
+    }
+
     @Test
     public void testRecover() throws Exception {
         String topic = "recoverTopic";
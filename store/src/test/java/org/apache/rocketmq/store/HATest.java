@@ -21,6 +21,7 @@ import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.store.config.BrokerRole;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
@@ -153,6 +154,95 @@ public class HATest {
         }
     }
 
+    @Test
+    public void testZeroCopyTransfer() throws Exception {
+        QUEUE_TOTAL = 1;
+        MessageBody = new byte[1024 * 4];
+        Arrays.fill(MessageBody, (byte) 'a');
+        long totalMsgs = 64;
+        for (long i = 0; i < totalMsgs; i++) {
+            PutMessageResult result = messageStore.asyncPutMessage(buildMessage()).get();
+            assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+        }
+        assertEquals(messageStore.getMaxPhyOffset(), slaveMessageStore.getMaxPhyOffset());
+
+        String stats = messageStore.getRuntimeInfo().get(RunningStats.haTransferStats.name());
+        assertThat(stats).contains("ackOffset=" + messageStore.getMaxPhyOffset());
+        assertThat(stats).doesNotContain("rttMicros=-1");
+    }
+
+    @Test
+    public void testQuorumAck() throws Exception {
+        QUEUE_TOTAL = 1;
+        MessageBody = StoreMessage.getBytes();
+        masterMessageStoreConfig.setHaSyncSlaveAckNums(2);
+        // only one slave, not enough for the quorum.
+        PutMessageResult result = messageStore.asyncPutMessage(buildMessage()).get();
+        assertEquals(PutMessageStatus.SLAVE_NOT_AVAILABLE, result.getPutMessageStatus());
+
+        MessageStore anotherSlaveMessageStore = startAnotherSlave(false);
+        try {
+            for (int i = 0; i < 100 && ((DefaultMessageStore) messageStore).getHaService().getInSyncSlaveNums(messageStore.getMaxPhyOffset()) < 2; i++) {
+                Thread.sleep(100);
+            }
+
+            for (int i = 0; i < 5; i++) {
+                MessageExtBrokerInner msg = buildMessage();
+                result = messageStore.asyncPutMessage(msg).get();
+                assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+                long offset = result.getAppendMessageResult().getWroteOffset();
+                assertNotNull(slaveMessageStore.lookMessageByOffset(offset));
+                assertNotNull(anotherSlaveMessageStore.lookMessageByOffset(offset));
+            }
+        } finally {
+            anotherSlaveMessageStore.shutdown();
+            anotherSlaveMessageStore.destroy();
+        }
+    }
+
+    @Test
+    public void testCompressedTransfer() throws Exception {
+        QUEUE_TOTAL = 1;
+        MessageBody = new byte[1024 * 4];
+        Arrays.fill(MessageBody, (byte) 'a');
+        masterMessageStoreConfig.setHaTransferCompressEnable(true);
+        MessageStore anotherSlaveMessageStore = startAnotherSlave(true);
+        try {
+            for (int i = 0; i < 32; i++) {
+                PutMessageResult result = messageStore.asyncPutMessage(buildMessage()).get();
+                assertEquals(PutMessageStatus.PUT_OK, result.getPutMessageStatus());
+            }
+            for (int i = 0; i < 100 && anotherSlaveMessageStore.getMaxPhyOffset() < messageStore.getMaxPhyOffset(); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(messageStore.getMaxPhyOffset(), anotherSlaveMessageStore.getMaxPhyOffset());
+            MessageExt slaveMsg = anotherSlaveMessageStore.lookMessageByOffset(0);
+            assertNotNull(slaveMsg);
+            assertTrue(Arrays.equals(MessageBody, slaveMsg.getBody()));
+
+            assertThat(messageStore.getRuntimeInfo().get(RunningStats.haTransferStats.name())).contains("compressRatio=0.");
+            assertThat(anotherSlaveMessageStore.getRuntimeInfo().get(RunningStats.haClientStats.name())).contains("decompressRatio=0.");
+        } finally {
+            anotherSlaveMessageStore.shutdown();
+            anotherSlaveMessageStore.destroy();
+        }
+    }
+
+    private MessageStore startAnotherSlave(boolean compress) throws Exception {
+        MessageStoreConfig anotherSlaveStoreConfig = new MessageStoreConfig();
+        anotherSlaveStoreConfig.setBrokerRole(BrokerRole.SLAVE);
+        anotherSlaveStoreConfig.setStorePathRootDir(storePathRootDir + File.separator + "slave2");
+        anotherSlaveStoreConfig.setStorePathCommitLog(storePathRootDir + File.separator + "slave2" + File.separator + "commitlog");
+        anotherSlaveStoreConfig.setHaListenPort(10944);
+        anotherSlaveStoreConfig.setHaTransferCompressEnable(compress);
+        buildMessageStoreConfig(anotherSlaveStoreConfig);
+        MessageStore anotherSlaveMessageStore = buildMessageStore(anotherSlaveStoreConfig, 2L);
+        assertTrue(anotherSlaveMessageStore.load());
+        anotherSlaveMessageStore.updateHaMasterAddress("127.0.0.1:10912");
+        anotherSlaveMessageStore.start();
+        return anotherSlaveMessageStore;
+    }
+
     @After
     public void destroy() throws Exception{
         Thread.sleep(5000L);
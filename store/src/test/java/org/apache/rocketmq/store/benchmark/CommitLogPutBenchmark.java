@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.benchmark;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.dledger.DLedgerCommitLog;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare send throughput and allocation rate of the default commit log (master-slave mode) and the DLedger one.
+ * <p>
+ * Run {@link #main(String[])} from IDE, or with the test classpath of this module. Allocation rate is reported by
+ * the gc profiler as {@code gc.alloc.rate.norm}, bytes allocated per operation.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CommitLogPutBenchmark {
+
+    private static final String TOPIC = "BenchmarkTopic";
+    private static final int QUEUE_NUMS = 8;
+    private static final int BATCH_SIZE = 16;
+
+    @Param({"false", "true"})
+    private boolean dledger;
+
+    @Param({"1024"})
+    private int bodySize;
+
+    private String storePath;
+    private DefaultMessageStore messageStore;
+    private byte[] body;
+    private InetSocketAddress bornHost;
+    private InetSocketAddress storeHost;
+
+    @Setup
+    public void setup() throws Exception {
+        storePath = System.getProperty("java.io.tmpdir") + File.separator + "CommitLogPutBenchmark-" + UUID.randomUUID();
+        MessageStoreConfig storeConfig = new MessageStoreConfig();
+        storeConfig.setStorePathRootDir(storePath);
+        storeConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        storeConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        if (dledger) {
+            int port;
+            try (ServerSocket serverSocket = new ServerSocket(0)) {
+                port = serverSocket.getLocalPort();
+            }
+            storeConfig.setEnableDLegerCommitLog(true);
+            storeConfig.setdLegerGroup(UUID.randomUUID().toString());
+            storeConfig.setdLegerPeers("n0-localhost:" + port);
+            storeConfig.setdLegerSelfId("n0");
+        }
+
+        messageStore = new DefaultMessageStore(storeConfig, new BrokerStatsManager("CommitLogPutBenchmark"),
+            null, new BrokerConfig());
+        if (dledger) {
+            ((DLedgerCommitLog) messageStore.getCommitLog()).getdLedgerServer().getdLedgerConfig().setEnableLeaderElector(false);
+            ((DLedgerCommitLog) messageStore.getCommitLog()).getdLedgerServer().getMemberState().changeToLeader(0);
+        }
+        if (!messageStore.load()) {
+            throw new IllegalStateException("Load message store failed");
+        }
+        messageStore.start();
+
+        body = new byte[bodySize];
+        bornHost = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        storeHost = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8123);
+    }
+
+    @TearDown
+    public void tearDown() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Benchmark
+    public PutMessageResult putMessage() {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TagA");
+        msg.setBody(body);
+        msg.setQueueId((int) (Thread.currentThread().getId() % QUEUE_NUMS));
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(bornHost);
+        msg.setStoreHost(storeHost);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return check(messageStore.putMessage(msg));
+    }
+
+    @Benchmark
+    public PutMessageResult putMessages() {
+        List<Message> messages = new ArrayList<Message>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            messages.add(new Message(TOPIC, "TagA", body));
+        }
+        MessageExtBatch batch = new MessageExtBatch();
+        batch.setTopic(TOPIC);
+        batch.setQueueId((int) (Thread.currentThread().getId() % QUEUE_NUMS));
+        batch.setBornTimestamp(System.currentTimeMillis());
+        batch.setBornHost(bornHost);
+        batch.setStoreHost(storeHost);
+        batch.setBody(MessageDecoder.encodeMessages(messages));
+        return check(messageStore.putMessages(batch));
+    }
+
+    private static PutMessageResult check(PutMessageResult result) {
+        if (result.getPutMessageStatus() != PutMessageStatus.PUT_OK) {
+            throw new IllegalStateException("Put message failed: " + result);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(CommitLogPutBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
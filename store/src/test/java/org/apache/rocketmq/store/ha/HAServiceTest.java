@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.ha;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HAServiceTest {
+
+    @Test
+    public void testQuorumAckOffset() {
+        long[] ackOffsets = new long[] {300, 100, 200};
+        assertThat(HAService.quorumAckOffset(ackOffsets, 1)).isEqualTo(300);
+        assertThat(HAService.quorumAckOffset(ackOffsets, 2)).isEqualTo(200);
+        assertThat(HAService.quorumAckOffset(ackOffsets, 3)).isEqualTo(100);
+        // not enough slaves.
+        assertThat(HAService.quorumAckOffset(ackOffsets, 4)).isEqualTo(-1);
+        // slave connected but not reported yet.
+        assertThat(HAService.quorumAckOffset(new long[] {-1, 100}, 2)).isEqualTo(-1);
+        // offsets are not changed.
+        assertThat(ackOffsets).containsExactly(300, 100, 200);
+    }
+}
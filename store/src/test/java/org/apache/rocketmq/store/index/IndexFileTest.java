@@ -23,6 +23,8 @@ package org.apache.rocketmq.store.index;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.rocketmq.common.UtilAll;
 import org.junit.Test;
@@ -70,4 +72,69 @@ public class IndexFileTest {
         File file = new File("200");
         UtilAll.deleteFile(file);
     }
+
+    @Test
+    public void testConcurrentPutKey() throws Exception {
+        final IndexFile indexFile = new IndexFile("300", HASH_SLOT_NUM, INDEX_NUM, 0, 0, 8);
+        final int threadNum = 4;
+        final int keysPerThread = (INDEX_NUM - 1) / threadNum;
+        final long now = System.currentTimeMillis();
+        final CountDownLatch latch = new CountDownLatch(threadNum);
+        for (int t = 0; t < threadNum; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < keysPerThread; i++) {
+                        long offset = thread * keysPerThread + i;
+                        indexFile.putKey(Long.toString(offset), offset, now + offset);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+
+        for (long i = 0; i < threadNum * keysPerThread; i++) {
+            String key = Long.toString(i);
+            assertThat(indexFile.mayContainKey(key)).isTrue();
+
+            List<Long> phyOffsets = new ArrayList<Long>();
+            indexFile.selectPhyOffset(phyOffsets, key, 10, 0, Long.MAX_VALUE, true);
+            assertThat(phyOffsets).contains(i);
+        }
+
+        assertThat(indexFile.getMinTimestamp()).isEqualTo(now);
+        assertThat(indexFile.getMaxTimestamp()).isEqualTo(now + threadNum * keysPerThread - 1);
+        assertThat(indexFile.getEndPhyOffset()).isEqualTo(threadNum * keysPerThread - 1);
+        indexFile.destroy(0);
+        UtilAll.deleteFile(new File("300"));
+    }
+
+    @Test
+    public void testKeyBloomFilter() throws Exception {
+        IndexFile indexFile = new IndexFile("400", HASH_SLOT_NUM, INDEX_NUM, 0, 0, 8);
+        assertThat(indexFile.hasKeyBloomFilter()).isTrue();
+        for (long i = 0; i < 100; i++) {
+            assertThat(indexFile.putKey("key" + i, i, System.currentTimeMillis())).isTrue();
+        }
+
+        int falsePositive = 0;
+        for (long i = 0; i < 1000; i++) {
+            assertThat(indexFile.mayContainKey("key" + (i % 100))).isTrue();
+            if (indexFile.mayContainKey("absent" + i)) {
+                falsePositive++;
+            }
+        }
+        assertThat(falsePositive).isLessThan(100);
+        indexFile.destroy(0);
+        UtilAll.deleteFile(new File("400"));
+
+        // no bloom filter, always may contain.
+        indexFile = new IndexFile("500", HASH_SLOT_NUM, INDEX_NUM, 0, 0);
+        assertThat(indexFile.hasKeyBloomFilter()).isFalse();
+        assertThat(indexFile.mayContainKey("absent")).isTrue();
+        indexFile.destroy(0);
+        UtilAll.deleteFile(new File("500"));
+    }
 }
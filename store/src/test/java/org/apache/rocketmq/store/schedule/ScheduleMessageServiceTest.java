@@ -101,6 +101,7 @@ public class ScheduleMessageServiceTest {
         messageStoreConfig.setEnableConsumeQueueExt(true);
         messageStoreConfig.setStorePathRootDir(storePath);
         messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setScheduleDeliverBatchSize(4);
 
         brokerConfig = new BrokerConfig();
         BrokerStatsManager manager = new BrokerStatsManager(brokerConfig.getBrokerClusterName());
@@ -174,6 +175,56 @@ public class ScheduleMessageServiceTest {
 
     }
 
+    @Test
+    public void deliverDelayedMessagesInBatchTest() throws Exception {
+        int msgNum = 10;
+        int level = 1;
+        long beginTime = System.currentTimeMillis();
+        for (int i = 0; i < msgNum; i++) {
+            MessageExtBrokerInner msg = buildMessage();
+            msg.setDelayTimeLevel(level);
+            assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        while (messageStore.getMaxOffsetInQueue(topic, 0) < msgNum
+            && System.currentTimeMillis() - beginTime < 15000) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        assertThat(messageStore.getMaxOffsetInQueue(topic, 0)).isEqualTo(msgNum);
+        assertThat(System.currentTimeMillis() - beginTime).isGreaterThanOrEqualTo(5000);
+
+        // lag is recorded by next run of the level.
+        TimeUnit.MILLISECONDS.sleep(500);
+        BrokerStatsManager statsManager = messageStore.getBrokerStatsManager();
+        assertThat(statsManager.getMomentStatsItemSetScheduleLagNums().getStatsItemTable().get(String.valueOf(level))
+            .getValue().get()).isEqualTo(0);
+        assertThat(statsManager.getMomentStatsItemSetScheduleLagTime().getStatsItemTable().get(String.valueOf(level))
+            .getValue().get()).isEqualTo(0);
+    }
+
+    @Test
+    public void deliverOnceAfterRestartTest() throws Exception {
+        // as on role change, restarted before the first delivery tasks are due.
+        scheduleMessageService.shutdown();
+        scheduleMessageService.start();
+
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDelayTimeLevel(1);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        long beginTime = System.currentTimeMillis();
+        while (messageStore.getMaxOffsetInQueue(topic, 0) < 1 && System.currentTimeMillis() - beginTime < 15000) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        assertThat(messageStore.getMaxOffsetInQueue(topic, 0)).isEqualTo(1);
+
+        // a delivery chain left by the shutdown would deliver the message once more.
+        TimeUnit.SECONDS.sleep(2);
+        assertThat(messageStore.getMaxOffsetInQueue(topic, 0)).isEqualTo(1);
+    }
+
     /**
      * add some [error/no use] code test
      */
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.MessageArrivingListener;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.StoreTestUtil;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerMessageServiceTest {
+    private static final String TOPIC = "timer_topic_test";
+    private static final String GROUP = "timerGroupTest";
+
+    private final String storePath = System.getProperty("user.home") + File.separator + "timer_test#" + UUID.randomUUID();
+    private MessageStoreConfig messageStoreConfig;
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 20);
+        messageStoreConfig.setMessageIndexEnable(false);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        messageStoreConfig.setTimerWheelSpanSec(2);
+        messageStoreConfig.setTimerLogFileSize(TimerLog.UNIT_SIZE * 8);
+        messageStoreConfig.setFlushDelayOffsetInterval(200);
+
+        messageStore = createMessageStore();
+    }
+
+    @After
+    public void destroy() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testDeliverAtTime() throws Exception {
+        long now = System.currentTimeMillis();
+        long[] deliverTimes = new long[] {now + 300, now + 1000, now + 1050};
+        for (long deliverMs : deliverTimes) {
+            PutMessageResult result = messageStore.putMessage(buildMessage(deliverMs));
+            assertThat(result.isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        assertThat(messageStore.getMaxOffsetInQueue(TOPIC, 0)).isEqualTo(0);
+        assertThat(messageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, 0)).isEqualTo(3);
+
+        List<MessageExt> msgs = waitMessages(3, 5000);
+        assertThat(msgs).hasSize(3);
+        for (MessageExt msg : msgs) {
+            assertThat(msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS)).isNull();
+            assertThat(msg.getProperty(MessageConst.PROPERTY_REAL_TOPIC)).isEqualTo(TOPIC);
+            assertThat(msg.getStoreTimestamp()).isGreaterThanOrEqualTo(Long.parseLong(new String(msg.getBody())));
+        }
+        assertThat(messageStore.getTimerMessageService().getDeliverNum()).isEqualTo(3);
+    }
+
+    @Test
+    public void testDeliverBeyondSpan() throws Exception {
+        long deliverMs = System.currentTimeMillis() + 3000;
+        assertThat(messageStore.putMessage(buildMessage(deliverMs)).isOk()).isTrue();
+
+        TimeUnit.MILLISECONDS.sleep(2000);
+        assertThat(messageStore.getMaxOffsetInQueue(TOPIC, 0)).isEqualTo(0);
+
+        List<MessageExt> msgs = waitMessages(1, 5000);
+        assertThat(msgs).hasSize(1);
+        assertThat(msgs.get(0).getStoreTimestamp()).isGreaterThanOrEqualTo(deliverMs);
+        assertThat(messageStore.getTimerMessageService().getRollNum()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void testDeliverDueMessageDirectly() throws Exception {
+        assertThat(messageStore.putMessage(buildMessage(System.currentTimeMillis() - 1000)).isOk()).isTrue();
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        assertThat(messageStore.getMaxOffsetInQueue(TOPIC, 0)).isEqualTo(1);
+        assertThat(messageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void testRecoverAfterRestart() throws Exception {
+        long deliverMs = System.currentTimeMillis() + 1500;
+        assertThat(messageStore.putMessage(buildMessage(deliverMs)).isOk()).isTrue();
+        StoreTestUtil.waitCommitLogReput(messageStore);
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertThat(messageStore.getTimerMessageService().getEnqueueOffset()).isEqualTo(1);
+
+        messageStore.shutdown();
+        messageStore = createMessageStore();
+        assertThat(messageStore.getTimerMessageService().getEnqueueOffset()).isEqualTo(1);
+
+        List<MessageExt> msgs = waitMessages(1, 5000);
+        assertThat(msgs).hasSize(1);
+        assertThat(msgs.get(0).getStoreTimestamp()).isGreaterThanOrEqualTo(deliverMs);
+    }
+
+    private DefaultMessageStore createMessageStore() throws Exception {
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager(new BrokerConfig().getBrokerClusterName()), new MessageArrivingListener() {
+                @Override
+                public void arriving(String topic, int queueId, long logicOffset, long tagsCode, long msgStoreTime,
+                    byte[] filterBitMap, Map<String, String> properties) {
+                }
+            }, new BrokerConfig());
+        assertThat(store.load()).isTrue();
+        store.start();
+        return store;
+    }
+
+    private MessageExtBrokerInner buildMessage(final long deliverMs) throws Exception {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setQueueId(0);
+        msg.setBody(String.valueOf(deliverMs).getBytes());
+        msg.setDeliverTimeMs(deliverMs);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(new InetSocketAddress(InetAddress.getLocalHost(), 8123));
+        msg.setStoreHost(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return msg;
+    }
+
+    private List<MessageExt> waitMessages(final int num, final long timeoutMs) throws Exception {
+        long beginTime = System.currentTimeMillis();
+        while (messageStore.getMaxOffsetInQueue(TOPIC, 0) < num
+            && System.currentTimeMillis() - beginTime < timeoutMs) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        GetMessageResult result = messageStore.getMessage(GROUP, TOPIC, 0, 0, 32, null);
+        if (result.getMessageBufferList() != null) {
+            for (ByteBuffer buffer : result.getMessageBufferList()) {
+                msgs.add(MessageDecoder.decode(buffer));
+            }
+        }
+        result.release();
+        return msgs;
+    }
+}
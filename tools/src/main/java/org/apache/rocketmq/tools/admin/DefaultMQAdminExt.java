@@ -140,6 +140,13 @@ public class DefaultMQAdminExt extends ClientConfig implements MQAdminExt {
         return defaultMQAdminExtImpl.queryMessageByUniqKey(topic, key, maxNum, begin, end);
     }
 
+    @Override
+    public QueryResult queryMessageByProperty(String topic, String propertyName, String propertyValue, int maxNum,
+        long begin, long end) throws MQClientException, InterruptedException {
+
+        return defaultMQAdminExtImpl.queryMessageByProperty(topic, propertyName, propertyValue, maxNum, begin, end);
+    }
+
     @Override
     public void start() throws MQClientException {
         defaultMQAdminExtImpl.start();
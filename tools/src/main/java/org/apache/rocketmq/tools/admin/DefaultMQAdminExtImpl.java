@@ -1010,6 +1010,14 @@ public class DefaultMQAdminExtImpl implements MQAdminExt, MQAdminExtInner {
         return this.mqClientInstance.getMQAdminImpl().queryMessageByUniqKey(topic, key, maxNum, begin, end);
     }
 
+    @Override
+    public QueryResult queryMessageByProperty(String topic, String propertyName, String propertyValue, int maxNum,
+        long begin, long end) throws MQClientException, InterruptedException {
+
+        return this.mqClientInstance.getMQAdminImpl().queryMessageByProperty(topic, propertyName, propertyValue,
+            maxNum, begin, end);
+    }
+
     @Override
     public void updateConsumeOffset(String brokerAddr, String consumeGroup, MessageQueue mq,
         long offset) throws RemotingException, InterruptedException, MQBrokerException {
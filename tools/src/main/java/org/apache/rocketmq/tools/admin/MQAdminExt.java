@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import org.apache.rocketmq.client.MQAdmin;
+import org.apache.rocketmq.client.QueryResult;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.AclConfig;
@@ -285,4 +286,10 @@ public interface MQAdminExt extends MQAdmin {
             throws RemotingException, MQClientException, InterruptedException, MQBrokerException;
 
     boolean resumeCheckHalfMessage(final String topic, final String msgId) throws RemotingException, MQClientException, InterruptedException, MQBrokerException;
+
+    /**
+     * Query messages by value of an indexed user property of the topic.
+     */
+    QueryResult queryMessageByProperty(final String topic, final String propertyName, final String propertyValue,
+        final int maxNum, final long begin, final long end) throws MQClientException, InterruptedException;
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tools.command.message;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.rocketmq.client.QueryResult;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.remoting.RPCHook;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+import org.apache.rocketmq.tools.admin.MQAdminExt;
+import org.apache.rocketmq.tools.command.SubCommand;
+import org.apache.rocketmq.tools.command.SubCommandException;
+
+public class QueryMsgByPropertySubCommand implements SubCommand {
+
+    @Override
+    public String commandName() {
+        return "queryMsgByProperty";
+    }
+
+    @Override
+    public String commandDesc() {
+        return "Query Message by value of indexed user property";
+    }
+
+    @Override
+    public Options buildCommandlineOptions(Options options) {
+        Option opt = new Option("t", "topic", true, "topic name");
+        opt.setRequired(true);
+        options.addOption(opt);
+
+        opt = new Option("p", "property", true, "name of indexed user property");
+        opt.setRequired(true);
+        options.addOption(opt);
+
+        opt = new Option("v", "value", true, "value of user property");
+        opt.setRequired(true);
+        options.addOption(opt);
+
+        opt = new Option("b", "beginTimestamp", true, "begin store timestamp of message in milliseconds");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("e", "endTimestamp", true, "end store timestamp of message in milliseconds");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("m", "maxNum", true, "max num of messages queried, default 64");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        return options;
+    }
+
+    @Override
+    public void execute(CommandLine commandLine, Options options, RPCHook rpcHook) throws SubCommandException {
+        DefaultMQAdminExt defaultMQAdminExt = new DefaultMQAdminExt(rpcHook);
+
+        defaultMQAdminExt.setInstanceName(Long.toString(System.currentTimeMillis()));
+
+        try {
+            defaultMQAdminExt.start();
+            this.queryByProperty(defaultMQAdminExt, commandLine);
+        } catch (Exception e) {
+            throw new SubCommandException(this.getClass().getSimpleName() + " command failed", e);
+        } finally {
+            defaultMQAdminExt.shutdown();
+        }
+    }
+
+    void queryByProperty(final MQAdminExt admin, final CommandLine commandLine)
+        throws MQClientException, InterruptedException {
+        final String topic = commandLine.getOptionValue('t').trim();
+        final String propertyName = commandLine.getOptionValue('p').trim();
+        final String propertyValue = commandLine.getOptionValue('v').trim();
+
+        long begin = 0;
+        if (commandLine.hasOption('b')) {
+            begin = Long.parseLong(commandLine.getOptionValue('b').trim());
+        }
+
+        long end = Long.MAX_VALUE;
+        if (commandLine.hasOption('e')) {
+            end = Long.parseLong(commandLine.getOptionValue('e').trim());
+        }
+
+        int maxNum = 64;
+        if (commandLine.hasOption('m')) {
+            maxNum = Integer.parseInt(commandLine.getOptionValue('m').trim());
+        }
+
+        QueryResult queryResult = admin.queryMessageByProperty(topic, propertyName, propertyValue, maxNum, begin, end);
+        System.out.printf("%-50s %4s %40s %20s%n",
+            "#Message ID",
+            "#QID",
+            "#Offset",
+            "#StoreTimestamp");
+        for (MessageExt msg : queryResult.getMessageList()) {
+            System.out.printf("%-50s %4d %40d %20d%n", msg.getMsgId(), msg.getQueueId(), msg.getQueueOffset(),
+                msg.getStoreTimestamp());
+        }
+    }
+}
@@ -83,6 +83,10 @@ public class UpdateTopicSubCommand implements SubCommand {
         opt.setRequired(false);
         options.addOption(opt);
 
+        opt = new Option("i", "indexedProperties", true, "user properties indexed for query, separated by comma");
+        opt.setRequired(false);
+        options.addOption(opt);
+
         return options;
     }
 
@@ -132,6 +136,10 @@ public class UpdateTopicSubCommand implements SubCommand {
             }
             topicConfig.setOrder(isOrder);
 
+            if (commandLine.hasOption('i')) {
+                topicConfig.setIndexedProperties(commandLine.getOptionValue('i').trim());
+            }
+
             if (commandLine.hasOption('b')) {
                 String addr = commandLine.getOptionValue('b').trim();
 
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tools.command.message;
+
+import java.util.Collections;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.rocketmq.client.QueryResult;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.srvutil.ServerUtil;
+import org.apache.rocketmq.tools.admin.MQAdminExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryMsgByPropertySubCommandTest {
+
+    @Test
+    public void testBuildCommandlineOptions() {
+        QueryMsgByPropertySubCommand cmd = new QueryMsgByPropertySubCommand();
+        Options options = cmd.buildCommandlineOptions(new Options());
+        assertThat(options.getOption("t").isRequired()).isTrue();
+        assertThat(options.getOption("p").isRequired()).isTrue();
+        assertThat(options.getOption("v").isRequired()).isTrue();
+        assertThat(options.getOption("b").isRequired()).isFalse();
+        assertThat(options.getOption("e").isRequired()).isFalse();
+        assertThat(options.getOption("m").isRequired()).isFalse();
+    }
+
+    @Test
+    public void testQueryByProperty() throws Exception {
+        MessageExt msg = new MessageExt();
+        msg.setMsgId("0A3A54F7BF7D18B4AAC28A3FA2CF0000");
+        msg.setQueueId(1);
+        msg.setQueueOffset(12L);
+        msg.setStoreTimestamp(System.currentTimeMillis());
+        MQAdminExt admin = mock(MQAdminExt.class);
+        when(admin.queryMessageByProperty("FooBar", "orderId", "1024", 16, 100, Long.MAX_VALUE))
+            .thenReturn(new QueryResult(0, Collections.singletonList(msg)));
+
+        QueryMsgByPropertySubCommand cmd = new QueryMsgByPropertySubCommand();
+        Options options = ServerUtil.buildCommandlineOptions(new Options());
+        String[] subargs = new String[] {"-t FooBar", "-p orderId", "-v 1024", "-b 100", "-m 16"};
+        CommandLine commandLine = ServerUtil.parseCmdLine("mqadmin " + cmd.commandName(), subargs,
+            cmd.buildCommandlineOptions(options), new PosixParser());
+        cmd.queryByProperty(admin, commandLine);
+
+        verify(admin).queryMessageByProperty("FooBar", "orderId", "1024", 16, 100, Long.MAX_VALUE);
+    }
+}